@@ -0,0 +1,109 @@
+package com.moulberry.flashback.benchmark;
+
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.action.Action;
+import com.moulberry.flashback.action.ActionAccuratePlayerPosition;
+import com.moulberry.flashback.action.ActionConfigurationPacket;
+import com.moulberry.flashback.action.ActionCreateLocalPlayer;
+import com.moulberry.flashback.action.ActionGamePacket;
+import com.moulberry.flashback.action.ActionLevelChunkCached;
+import com.moulberry.flashback.action.ActionMoveEntities;
+import com.moulberry.flashback.action.ActionNextTick;
+import com.moulberry.flashback.action.ActionRegistry;
+import com.moulberry.flashback.configuration.FlashbackConfig;
+import com.moulberry.flashback.playback.ReplayServer;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.LayeredRegistryAccess;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.resources.RegistryDataLoader;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.server.RegistryLayer;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.repository.PackRepository;
+import net.minecraft.server.packs.repository.ServerPacksSource;
+import net.minecraft.server.packs.resources.CloseableResourceManager;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Sets up the parts of Flashback & Minecraft that the benchmarks depend on, without a client, GPU or network.
+ * Only the server-side bootstrap is done, the mod initializer is never run.
+ */
+public class BenchmarkEnvironment {
+
+    private static boolean initialized = false;
+    private static RegistryAccess.Frozen vanillaRegistries = null;
+
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        // The config is normally loaded by the mod initializer
+        try {
+            Field config = Flashback.class.getDeclaredField("config");
+            config.setAccessible(true);
+            config.set(null, new FlashbackConfig());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+
+        ActionRegistry.register(ActionNextTick.INSTANCE);
+        ActionRegistry.register(ActionGamePacket.INSTANCE);
+        ActionRegistry.register(ActionConfigurationPacket.INSTANCE);
+        ActionRegistry.register(ActionCreateLocalPlayer.INSTANCE);
+        ActionRegistry.register(ActionMoveEntities.INSTANCE);
+        ActionRegistry.register(ActionLevelChunkCached.INSTANCE);
+        ActionRegistry.register(ActionAccuratePlayerPosition.INSTANCE);
+        ActionRegistry.register(PayloadAction.INSTANCE);
+    }
+
+    /**
+     * Loads the registries from the vanilla data pack, the same ones a replay server without any other packs uses
+     */
+    public static synchronized RegistryAccess.Frozen vanillaRegistries() {
+        init();
+
+        if (vanillaRegistries == null) {
+            PackRepository packRepository = ServerPacksSource.createVanillaTrustedRepository();
+            packRepository.reload();
+            packRepository.setSelected(List.of("vanilla"));
+            try (CloseableResourceManager resourceManager = new MultiPackResourceManager(PackType.SERVER_DATA, packRepository.openAllSelected())) {
+                LayeredRegistryAccess<RegistryLayer> registries = RegistryLayer.createRegistryAccess();
+                RegistryAccess.Frozen worldgen = RegistryDataLoader.load(resourceManager, registries.getAccessForLoading(RegistryLayer.WORLDGEN),
+                    RegistryDataLoader.WORLDGEN_REGISTRIES);
+                vanillaRegistries = registries.replaceFrom(RegistryLayer.WORLDGEN, worldgen).compositeAccess();
+            }
+        }
+        return vanillaRegistries;
+    }
+
+    /**
+     * Stand-in for a game packet action, skips its payload instead of handling it so that reading doesn't need a server
+     */
+    public static class PayloadAction implements Action {
+        private static final ResourceLocation NAME = Flashback.createResourceLocation("action/benchmark_payload_optional");
+        public static final PayloadAction INSTANCE = new PayloadAction();
+        private PayloadAction() {
+        }
+
+        @Override
+        public ResourceLocation name() {
+            return NAME;
+        }
+
+        @Override
+        public void handle(ReplayServer replayServer, RegistryFriendlyByteBuf friendlyByteBuf) {
+            friendlyByteBuf.skipBytes(friendlyByteBuf.readableBytes());
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.moulberry.flashback.benchmark;
+
+import com.moulberry.flashback.CachedChunkPacket;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing chunk packets for deduplication, and looking up an identical chunk in the cache. The packets are decoded from
+ * synthetic bytes with the size of a typical overworld chunk: 24 sections of data and light, and no block entities.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachedChunkPacketBenchmark {
+
+    private static final int SECTIONS = 24;
+    private static final int CHUNK_DATA_SIZE = 12 * 1024;
+
+    private ClientboundLevelChunkWithLightPacket packet;
+    private CachedChunkPacket duplicate;
+    private Map<CachedChunkPacket, Integer> cache;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment.init();
+
+        SplittableRandom random = new SplittableRandom(1729);
+        this.packet = createPacket(0, 0, random);
+
+        this.cache = new HashMap<>();
+        for (int i = 0; i < 256; i++) {
+            CachedChunkPacket cached = new CachedChunkPacket(createPacket(i & 15, i >> 4, random), i);
+            this.cache.put(cached, cached.index);
+        }
+        this.duplicate = new CachedChunkPacket(createPacket(7, 7, new SplittableRandom(1729 + 7)), -1);
+        this.cache.put(new CachedChunkPacket(createPacket(7, 7, new SplittableRandom(1729 + 7)), 256), 256);
+    }
+
+    private static ClientboundLevelChunkWithLightPacket createPacket(int x, int z, SplittableRandom random) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.buffer(), RegistryAccess.EMPTY);
+        buf.writeInt(x);
+        buf.writeInt(z);
+
+        // Chunk data
+        CompoundTag heightmaps = new CompoundTag();
+        heightmaps.putLongArray("MOTION_BLOCKING", random.longs(37).toArray());
+        heightmaps.putLongArray("WORLD_SURFACE", random.longs(37).toArray());
+        buf.writeNbt(heightmaps);
+
+        byte[] chunkData = new byte[CHUNK_DATA_SIZE];
+        for (int i = 0; i < chunkData.length; i++) {
+            chunkData[i] = (byte) random.nextInt(256);
+        }
+        buf.writeVarInt(chunkData.length);
+        buf.writeBytes(chunkData);
+        buf.writeVarInt(0); // block entities
+
+        // Light data, both masks include the sections above & below the world
+        BitSet mask = new BitSet();
+        mask.set(0, SECTIONS + 2);
+        buf.writeBitSet(mask);
+        buf.writeBitSet(mask);
+        buf.writeBitSet(new BitSet());
+        buf.writeBitSet(new BitSet());
+
+        List<byte[]> light = new ArrayList<>();
+        for (int i = 0; i < SECTIONS + 2; i++) {
+            byte[] section = new byte[2048];
+            for (int j = 0; j < section.length; j++) {
+                section[j] = (byte) random.nextInt(256);
+            }
+            light.add(section);
+        }
+        buf.writeCollection(light, (b, bytes) -> b.writeByteArray(bytes));
+        buf.writeCollection(light, (b, bytes) -> b.writeByteArray(bytes));
+
+        return ClientboundLevelChunkWithLightPacket.STREAM_CODEC.decode(buf);
+    }
+
+    @Benchmark
+    public CachedChunkPacket hash() {
+        return new CachedChunkPacket(this.packet, 0);
+    }
+
+    @Benchmark
+    public Integer lookup() {
+        return this.cache.get(this.duplicate);
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.moulberry.flashback.benchmark;
+
+import com.moulberry.flashback.keyframe.Keyframe;
+import com.moulberry.flashback.keyframe.change.KeyframeChange;
+import com.moulberry.flashback.keyframe.handler.KeyframeHandler;
+import com.moulberry.flashback.keyframe.impl.CameraKeyframe;
+import com.moulberry.flashback.keyframe.impl.FOVKeyframe;
+import com.moulberry.flashback.keyframe.impl.TickrateKeyframe;
+import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
+import com.moulberry.flashback.keyframe.types.CameraKeyframeType;
+import com.moulberry.flashback.keyframe.types.FOVKeyframeType;
+import com.moulberry.flashback.keyframe.types.SpeedKeyframeType;
+import com.moulberry.flashback.state.CompiledKeyframeTrack;
+import com.moulberry.flashback.state.EditorScene;
+import com.moulberry.flashback.state.EditorState;
+import com.moulberry.flashback.state.KeyframeTrack;
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating keyframes at a tick, both for a single compiled camera track and for a whole scene through
+ * {@link EditorState#applyKeyframes(KeyframeHandler, float)}. The tick advances on every call and runs a little past
+ * the last keyframe, so every segment and the "after the last keyframe" path is covered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyframeBenchmark {
+
+    private static final int KEYFRAME_SPACING = 20;
+
+    @Param({"SMOOTH", "LINEAR", "HERMITE"})
+    public InterpolationType interpolation;
+
+    @Param({"64"})
+    public int keyframes;
+
+    private CompiledKeyframeTrack cameraTrack;
+    private EditorState editorState;
+    private final CapturingHandler handler = new CapturingHandler();
+
+    private float tick = 0.0f;
+    private float endTick;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment.init();
+
+        SplittableRandom random = new SplittableRandom(8675309);
+
+        KeyframeTrack camera = new KeyframeTrack(CameraKeyframeType.INSTANCE);
+        KeyframeTrack fov = new KeyframeTrack(FOVKeyframeType.INSTANCE);
+        KeyframeTrack speed = new KeyframeTrack(SpeedKeyframeType.INSTANCE);
+
+        TreeMap<Integer, Keyframe> cameraKeyframes = camera.mutableKeyframes();
+        TreeMap<Integer, Keyframe> fovKeyframes = fov.mutableKeyframes();
+        TreeMap<Integer, Keyframe> speedKeyframes = speed.mutableKeyframes();
+        for (int i = 0; i < this.keyframes; i++) {
+            int tick = i * KEYFRAME_SPACING;
+            Vector3d position = new Vector3d(random.nextDouble(-64, 64), random.nextDouble(60, 120), random.nextDouble(-64, 64));
+            cameraKeyframes.put(tick, new CameraKeyframe(position, (float) random.nextDouble(-180, 180),
+                (float) random.nextDouble(-90, 90), 0.0f, this.interpolation));
+            fovKeyframes.put(tick, new FOVKeyframe((float) random.nextDouble(30, 110), this.interpolation));
+            if (i % 8 == 0) {
+                speedKeyframes.put(tick, new TickrateKeyframe((float) random.nextDouble(5, 40), this.interpolation));
+            }
+        }
+
+        this.cameraTrack = camera.compile();
+        this.endTick = (this.keyframes - 1) * KEYFRAME_SPACING + KEYFRAME_SPACING / 2f;
+
+        this.editorState = new EditorState();
+        long stamp = this.editorState.acquireWrite();
+        try {
+            EditorScene scene = this.editorState.getCurrentScene(stamp);
+            scene.keyframeTracks.add(camera);
+            scene.keyframeTracks.add(fov);
+            scene.keyframeTracks.add(speed);
+        } finally {
+            this.editorState.release(stamp);
+        }
+        this.editorState.markDirty();
+    }
+
+    private float nextTick() {
+        float tick = this.tick + 0.37f;
+        if (tick >= this.endTick) {
+            tick -= this.endTick;
+        }
+        this.tick = tick;
+        return tick;
+    }
+
+    @Benchmark
+    public KeyframeChange createKeyframeChange() {
+        return this.cameraTrack.createKeyframeChange(this.nextTick(), null);
+    }
+
+    @Benchmark
+    public CapturingHandler applyKeyframes() {
+        this.editorState.applyKeyframes(this.handler, this.nextTick());
+        return this.handler;
+    }
+
+    public static class CapturingHandler implements KeyframeHandler {
+        public final Vector3d position = new Vector3d();
+        public double yaw, pitch, roll;
+        public float fov;
+        public float tickrate;
+
+        @Override
+        public boolean supportsKeyframeChange(Class<? extends KeyframeChange> clazz) {
+            return true;
+        }
+
+        @Override
+        public void applyCameraPosition(Vector3d position, double yaw, double pitch, double roll) {
+            this.position.set(position);
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.roll = roll;
+        }
+
+        @Override
+        public void applyFov(float fov) {
+            this.fov = fov;
+        }
+
+        @Override
+        public void applyTickrate(float tickrate) {
+            this.tickrate = tickrate;
+        }
+    }
+
+}
@@ -0,0 +1,307 @@
+package com.moulberry.flashback.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.moulberry.flashback.FlashbackGson;
+import com.moulberry.flashback.action.Action;
+import com.moulberry.flashback.action.ActionConfigurationPacket;
+import com.moulberry.flashback.action.ActionGamePacket;
+import com.moulberry.flashback.action.ActionLevelChunkCached;
+import com.moulberry.flashback.action.ActionNextTick;
+import com.moulberry.flashback.io.LevelChunkCaches;
+import com.moulberry.flashback.io.ReplayReader;
+import com.moulberry.flashback.record.FlashbackMeta;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.configuration.ClientConfigurationPacketListener;
+import net.minecraft.network.protocol.configuration.ConfigurationProtocols;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.GameProtocols;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Decodes every replay in a directory and compares the result against golden digests stored next to each replay, so
+ * that changes to reading, combining, exporting or the action codecs can be checked against old replays. Only the
+ * server-side classes are used.
+ * <p>
+ * Every action is decoded through the {@link com.moulberry.flashback.action.ActionRegistry} into a normalised form:
+ * packets are decoded & re-encoded with the vanilla registries, and cached level chunks are replaced by a hash of the
+ * chunk they refer to so that the digest doesn't depend on the layout of the chunk caches. The normalised actions of
+ * each tick are hashed, and the tick hashes are chained into a digest per replay chunk.
+ * <p>
+ * Usage: {@code ./gradlew replayCorpus --args="<directory> [--update] [--report=<file>]"}. With {@code --update} the
+ * golden files ({@code <replay>.golden.json}) are rewritten instead of compared. Decode throughput is recorded in the
+ * report next to the throughput from when the golden file was written, but isn't checked since it depends on the
+ * machine.
+ */
+public class ReplayCorpusHarness {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final RegistryAccess registryAccess;
+    private final StreamCodec<ByteBuf, Packet<? super ClientGamePacketListener>> gamePacketCodec;
+    private final StreamCodec<ByteBuf, Packet<? super ClientConfigurationPacketListener>> configurationPacketCodec;
+
+    private ReplayCorpusHarness(RegistryAccess registryAccess) {
+        this.registryAccess = registryAccess;
+        this.gamePacketCodec = GameProtocols.CLIENTBOUND_TEMPLATE.bind(RegistryFriendlyByteBuf.decorator(registryAccess)).codec();
+        this.configurationPacketCodec = ConfigurationProtocols.CLIENTBOUND.codec();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: <directory> [--update] [--report=<file>]");
+            System.exit(1);
+        }
+
+        Path directory = Path.of(args[0]);
+        boolean update = false;
+        Path reportPath = Path.of("build/reports/replay-corpus/report.json");
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--update")) {
+                update = true;
+            } else if (args[i].startsWith("--report=")) {
+                reportPath = Path.of(args[i].substring("--report=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        List<Path> replays;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            replays = stream.filter(path -> path.getFileName().toString().endsWith(".zip")).sorted().toList();
+        }
+
+        ReplayCorpusHarness harness = new ReplayCorpusHarness(BenchmarkEnvironment.vanillaRegistries());
+
+        int failures = 0;
+        JsonArray results = new JsonArray();
+        for (Path replay : replays) {
+            JsonObject result = harness.check(replay, update);
+            results.add(result);
+
+            String status = result.get("status").getAsString();
+            if (status.equals("mismatch") || status.equals("error")) {
+                failures += 1;
+            }
+            System.out.println(status.toUpperCase() + " " + directory.relativize(replay) +
+                (result.has("actionsPerSecond") ? String.format(" (%.0f actions/s)", result.get("actionsPerSecond").getAsDouble()) : ""));
+        }
+
+        JsonObject report = new JsonObject();
+        report.addProperty("replays", replays.size());
+        report.addProperty("failures", failures);
+        report.add("results", results);
+
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        Files.writeString(reportPath, FlashbackGson.PRETTY.toJson(report));
+        System.out.println("Checked " + replays.size() + " replays, " + failures + " failed. Report written to " + reportPath);
+
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private JsonObject check(Path replay, boolean update) {
+        JsonObject result = new JsonObject();
+        result.addProperty("replay", replay.toString());
+
+        JsonObject decoded;
+        try {
+            decoded = this.decode(replay);
+        } catch (Exception e) {
+            result.addProperty("status", "error");
+            result.addProperty("error", e.toString());
+            return result;
+        }
+        result.add("actionsPerSecond", decoded.get("actionsPerSecond"));
+        result.add("bytesPerSecond", decoded.get("bytesPerSecond"));
+
+        Path goldenPath = replay.resolveSibling(replay.getFileName() + ".golden.json");
+        try {
+            if (update) {
+                Files.writeString(goldenPath, FlashbackGson.PRETTY.toJson(decoded));
+                result.addProperty("status", "updated");
+                return result;
+            }
+            if (!Files.exists(goldenPath)) {
+                result.addProperty("status", "new");
+                return result;
+            }
+
+            JsonObject golden = FlashbackGson.COMPRESSED.fromJson(Files.readString(goldenPath), JsonObject.class);
+            result.add("goldenActionsPerSecond", golden.get("actionsPerSecond"));
+
+            if (golden.get("digest").getAsString().equals(decoded.get("digest").getAsString())) {
+                result.addProperty("status", "match");
+                return result;
+            }
+
+            // Find out which chunks changed
+            JsonArray mismatchedChunks = new JsonArray();
+            JsonObject goldenChunks = golden.getAsJsonObject("chunks");
+            JsonObject decodedChunks = decoded.getAsJsonObject("chunks");
+            for (String chunkName : decodedChunks.keySet()) {
+                if (!goldenChunks.has(chunkName) || !goldenChunks.get(chunkName).equals(decodedChunks.get(chunkName))) {
+                    mismatchedChunks.add(chunkName);
+                }
+            }
+            for (String chunkName : goldenChunks.keySet()) {
+                if (!decodedChunks.has(chunkName)) {
+                    mismatchedChunks.add(chunkName);
+                }
+            }
+            result.addProperty("status", "mismatch");
+            result.add("mismatchedChunks", mismatchedChunks);
+        } catch (Exception e) {
+            result.addProperty("status", "error");
+            result.addProperty("error", e.toString());
+        }
+        return result;
+    }
+
+    private JsonObject decode(Path replay) throws IOException {
+        try (FileSystem fileSystem = FileSystems.newFileSystem(replay)) {
+            String metadataJson = Files.readString(fileSystem.getPath("/metadata.json"));
+            FlashbackMeta metadata = FlashbackMeta.fromJson(FlashbackGson.COMPRESSED.fromJson(metadataJson, JsonObject.class));
+            if (metadata == null) {
+                throw new IOException("Unable to load /metadata.json");
+            }
+
+            MessageDigest chunkHashDigest = createDigest();
+            Int2ObjectMap<byte[]> cachedChunkHashes = new Int2ObjectOpenHashMap<>();
+            LevelChunkCaches.forEachEntry(fileSystem, (index, bytes, length) -> {
+                chunkHashDigest.update(bytes, 0, length);
+                cachedChunkHashes.put(index, chunkHashDigest.digest());
+            });
+
+            MessageDigest replayDigest = createDigest();
+            JsonObject chunks = new JsonObject();
+            long totalActions = 0;
+            long totalBytes = 0;
+            long totalNanos = 0;
+
+            for (String chunkName : metadata.chunks.keySet()) {
+                byte[] bytes = Files.readAllBytes(fileSystem.getPath("/" + chunkName));
+
+                long start = System.nanoTime();
+                ChunkDecoder decoder = new ChunkDecoder(cachedChunkHashes);
+                ReplayReader replayReader = new ReplayReader(Unpooled.wrappedBuffer(bytes), this.registryAccess);
+                replayReader.visitSnapshot(decoder);
+                decoder.endTick();
+                while (replayReader.visitNextAction(decoder)) {}
+                decoder.endTick();
+                totalNanos += System.nanoTime() - start;
+
+                byte[] chunkDigest = decoder.chunkDigest.digest();
+                replayDigest.update(chunkDigest);
+
+                JsonObject chunk = new JsonObject();
+                chunk.addProperty("ticks", decoder.ticks);
+                chunk.addProperty("actions", decoder.actions);
+                chunk.addProperty("digest", HEX.formatHex(chunkDigest));
+                chunks.add(chunkName, chunk);
+
+                totalActions += decoder.actions;
+                totalBytes += bytes.length;
+            }
+
+            double seconds = Math.max(totalNanos, 1) / 1_000_000_000.0;
+
+            JsonObject decoded = new JsonObject();
+            decoded.addProperty("digest", HEX.formatHex(replayDigest.digest()));
+            decoded.addProperty("actionsPerSecond", totalActions / seconds);
+            decoded.addProperty("bytesPerSecond", totalBytes / seconds);
+            decoded.add("chunks", chunks);
+            return decoded;
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class ChunkDecoder implements ReplayReader.ActionVisitor {
+        private final Int2ObjectMap<byte[]> cachedChunkHashes;
+        private final MessageDigest tickDigest = createDigest();
+        private final MessageDigest chunkDigest = createDigest();
+        private final RegistryFriendlyByteBuf reencoded = new RegistryFriendlyByteBuf(Unpooled.buffer(), ReplayCorpusHarness.this.registryAccess);
+        private int ticks = 0;
+        private int actions = 0;
+
+        private ChunkDecoder(Int2ObjectMap<byte[]> cachedChunkHashes) {
+            this.cachedChunkHashes = cachedChunkHashes;
+        }
+
+        @Override
+        public void visit(Action action, RegistryFriendlyByteBuf friendlyByteBuf) {
+            this.actions += 1;
+
+            if (action == ActionNextTick.INSTANCE) {
+                this.endTick();
+                return;
+            }
+
+            this.tickDigest.update(action.name().toString().getBytes(StandardCharsets.UTF_8));
+
+            if (action == ActionGamePacket.INSTANCE) {
+                this.updateWithPacket(friendlyByteBuf, ReplayCorpusHarness.this.gamePacketCodec);
+            } else if (action == ActionConfigurationPacket.INSTANCE) {
+                this.updateWithPacket(friendlyByteBuf, ReplayCorpusHarness.this.configurationPacketCodec);
+            } else if (action == ActionLevelChunkCached.INSTANCE) {
+                byte[] hash = this.cachedChunkHashes.get(friendlyByteBuf.readVarInt());
+                this.tickDigest.update(hash == null ? "missing".getBytes(StandardCharsets.UTF_8) : hash);
+            } else {
+                this.updateWithRemaining(friendlyByteBuf);
+            }
+        }
+
+        private <T extends Packet<?>> void updateWithPacket(RegistryFriendlyByteBuf friendlyByteBuf, StreamCodec<ByteBuf, T> codec) {
+            int start = friendlyByteBuf.readerIndex();
+            try {
+                T packet = codec.decode(friendlyByteBuf);
+                this.reencoded.clear();
+                codec.encode(this.reencoded, packet);
+                this.tickDigest.update(packet.type().toString().getBytes(StandardCharsets.UTF_8));
+                this.tickDigest.update(this.reencoded.nioBuffer());
+            } catch (Exception e) {
+                // Packets that need registry entries from the replay's own registry data can't be decoded here
+                friendlyByteBuf.readerIndex(start);
+                this.tickDigest.update("undecodable".getBytes(StandardCharsets.UTF_8));
+                this.updateWithRemaining(friendlyByteBuf);
+            }
+        }
+
+        private void updateWithRemaining(RegistryFriendlyByteBuf friendlyByteBuf) {
+            this.tickDigest.update(friendlyByteBuf.nioBuffer());
+            friendlyByteBuf.skipBytes(friendlyByteBuf.readableBytes());
+        }
+
+        private void endTick() {
+            this.chunkDigest.update(this.tickDigest.digest());
+            this.ticks += 1;
+        }
+    }
+
+}
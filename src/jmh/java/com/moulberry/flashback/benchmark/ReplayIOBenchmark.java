@@ -0,0 +1,96 @@
+package com.moulberry.flashback.benchmark;
+
+import com.moulberry.flashback.benchmark.BenchmarkEnvironment.PayloadAction;
+import com.moulberry.flashback.io.ReplayReader;
+import com.moulberry.flashback.io.ReplayWriter;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.RegistryAccess;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading a replay segment made of one tick per 20 actions, with payload sizes around {@link #payloadSize}.
+ * Reading only measures the framing and dispatch of the reader, the payloads are skipped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayIOBenchmark {
+
+    private static final int ACTIONS_PER_TICK = 20;
+
+    @Param({"10000"})
+    public int actions;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    private byte[][] payloads;
+    private ReplayWriter writer;
+    private byte[] replay;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment.init();
+
+        // Vary the sizes so that the varint lengths & buffer growth aren't identical for every action
+        SplittableRandom random = new SplittableRandom(4526);
+        this.payloads = new byte[this.actions][];
+        for (int i = 0; i < this.actions; i++) {
+            byte[] payload = new byte[random.nextInt(this.payloadSize / 2, this.payloadSize * 3 / 2)];
+            for (int j = 0; j < payload.length; j++) {
+                payload[j] = (byte) random.nextInt(256);
+            }
+            this.payloads[i] = payload;
+        }
+
+        this.writer = new ReplayWriter(RegistryAccess.EMPTY);
+        this.replay = this.write();
+    }
+
+    @Benchmark
+    public byte[] write() {
+        ReplayWriter writer = this.writer;
+        writer.startSnapshot();
+        writer.endSnapshot();
+
+        for (int i = 0; i < this.payloads.length; i++) {
+            writer.startAction(PayloadAction.INSTANCE);
+            writer.friendlyByteBuf().writeBytes(this.payloads[i]);
+            writer.finishAction(PayloadAction.INSTANCE);
+
+            if (i % ACTIONS_PER_TICK == ACTIONS_PER_TICK - 1) {
+                // Also a payload action, ActionNextTick would need a server to be read back
+                writer.startAndFinishAction(PayloadAction.INSTANCE);
+            }
+        }
+
+        return writer.popBytes();
+    }
+
+    @Benchmark
+    public int read() {
+        ReplayReader reader = new ReplayReader(Unpooled.wrappedBuffer(this.replay), RegistryAccess.EMPTY);
+        int count = 0;
+        while (reader.handleNextAction(null)) {
+            count += 1;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.moulberry.flashback.benchmark;
+
+import com.moulberry.flashback.spline.CatmullRom;
+import com.moulberry.flashback.spline.Hermite;
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Evaluating a single point of the splines used for smooth & hermite interpolation. The amount advances on every call
+ * so that consecutive evaluations don't hit the same point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplineBenchmark {
+
+    private static final int HERMITE_SAMPLES = 16;
+    private static final Function<Vector3d, Vector3d> POSITION = position -> position;
+    private static final ToDoubleFunction<Vector3d> YAW = position -> position.x * 10.0;
+
+    private Vector3d p0, p1, p2, p3;
+    private float[] hermiteTimes;
+    private Vector3d[] hermiteSamples;
+    private Hermite<Vector3d> hermite;
+
+    private float amount = 0.0f;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(31337);
+        this.p0 = new Vector3d(random.nextDouble(-64, 64), random.nextDouble(60, 120), random.nextDouble(-64, 64));
+        this.p1 = new Vector3d(random.nextDouble(-64, 64), random.nextDouble(60, 120), random.nextDouble(-64, 64));
+        this.p2 = new Vector3d(random.nextDouble(-64, 64), random.nextDouble(60, 120), random.nextDouble(-64, 64));
+        this.p3 = new Vector3d(random.nextDouble(-64, 64), random.nextDouble(60, 120), random.nextDouble(-64, 64));
+
+        this.hermiteTimes = new float[HERMITE_SAMPLES];
+        this.hermiteSamples = new Vector3d[HERMITE_SAMPLES];
+        for (int i = 0; i < HERMITE_SAMPLES; i++) {
+            this.hermiteTimes[i] = i * 20;
+            this.hermiteSamples[i] = new Vector3d(random.nextDouble(-64, 64), random.nextDouble(60, 120), random.nextDouble(-64, 64));
+        }
+        this.hermite = new Hermite<>(this.hermiteTimes, this.hermiteSamples);
+    }
+
+    private float nextAmount() {
+        float amount = this.amount + 0.0137f;
+        if (amount >= 1.0f) {
+            amount -= 1.0f;
+        }
+        this.amount = amount;
+        return amount;
+    }
+
+    @Benchmark
+    public Vector3d catmullRomPosition() {
+        return CatmullRom.position(this.p0, this.p1, this.p2, this.p3, 20, 45, 60, this.nextAmount());
+    }
+
+    @Benchmark
+    public float catmullRomValue() {
+        return CatmullRom.value(70, 85, 60, 90, 20, 45, 60, this.nextAmount());
+    }
+
+    @Benchmark
+    public float catmullRomDegrees() {
+        return CatmullRom.degrees(170, -175, -150, 160, 20, 45, 60, this.nextAmount());
+    }
+
+    @Benchmark
+    public Vector3d hermitePosition() {
+        float time = this.nextAmount() * this.hermiteTimes[HERMITE_SAMPLES - 1];
+        return this.hermite.position(POSITION, time);
+    }
+
+    @Benchmark
+    public double hermiteDegrees() {
+        float time = this.nextAmount() * this.hermiteTimes[HERMITE_SAMPLES - 1];
+        return this.hermite.degrees(YAW, time);
+    }
+
+    /**
+     * Building the interpolator from scratch, which happens once per hermite run whenever the keyframes change
+     */
+    @Benchmark
+    public Vector3d hermiteBuildAndPosition() {
+        Hermite<Vector3d> hermite = new Hermite<>(this.hermiteTimes, this.hermiteSamples);
+        return hermite.position(POSITION, this.nextAmount() * this.hermiteTimes[HERMITE_SAMPLES - 1]);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.moulberry.flashback.benchmark;
+
+import com.moulberry.flashback.io.SyntheticReplayGenerator;
+import com.moulberry.flashback.io.SyntheticReplayGenerator.Settings;
+import com.moulberry.flashback.record.FlashbackMeta;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Generates a synthetic replay from the command line, for example
+ * {@code ./gradlew generateSyntheticReplay --args="build/synthetic/large.zip seed=1 duration=432000 players=200 entities=50000"}
+ * <p>
+ * The output is a zip if it ends with {@code .zip}, otherwise a replay folder. Settings that aren't given use
+ * {@link Settings#DEFAULT}.
+ */
+public class SyntheticReplayTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: <output> [seed=N] [duration=ticks] [players=N] [entities=N] [movement=fraction] " +
+                "[viewDistance=chunks] [churn=chance] [chat=perSecond]");
+            System.exit(1);
+        }
+
+        Settings defaults = Settings.DEFAULT;
+        long seed = defaults.seed();
+        int duration = defaults.durationTicks();
+        int players = defaults.players();
+        int entities = defaults.entities();
+        float movement = defaults.movementDensity();
+        int viewDistance = defaults.viewDistance();
+        float churn = defaults.chunkChurn();
+        float chat = defaults.chatPerSecond();
+
+        for (int i = 1; i < args.length; i++) {
+            String[] split = args[i].split("=", 2);
+            if (split.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got " + args[i]);
+            }
+            String value = split[1];
+            switch (split[0]) {
+                case "seed" -> seed = Long.parseLong(value);
+                case "duration" -> duration = Integer.parseInt(value);
+                case "players" -> players = Integer.parseInt(value);
+                case "entities" -> entities = Integer.parseInt(value);
+                case "movement" -> movement = Float.parseFloat(value);
+                case "viewDistance" -> viewDistance = Integer.parseInt(value);
+                case "churn" -> churn = Float.parseFloat(value);
+                case "chat" -> chat = Float.parseFloat(value);
+                default -> throw new IllegalArgumentException("Unknown setting: " + split[0]);
+            }
+        }
+
+        Settings settings = new Settings(seed, duration, players, entities, movement, viewDistance, churn, chat);
+        Path output = Path.of(args[0]).toAbsolutePath();
+        String name = "Synthetic " + seed;
+
+        FlashbackMeta meta;
+        if (output.getFileName().toString().endsWith(".zip")) {
+            meta = SyntheticReplayGenerator.generateZip(settings, BenchmarkEnvironment.vanillaRegistries(), output, name);
+        } else {
+            meta = SyntheticReplayGenerator.generate(settings, BenchmarkEnvironment.vanillaRegistries(), output, name);
+        }
+        System.out.println("Generated " + output + " with " + meta.totalTicks + " ticks in " + meta.chunks.size() + " chunks");
+    }
+
+}
@@ -16,6 +16,7 @@ import com.moulberry.flashback.exporting.AsyncFileDialogs;
 import com.moulberry.flashback.exporting.ExportJob;
 import com.moulberry.flashback.exporting.taskbar.TaskbarManager;
 import com.moulberry.flashback.ext.MinecraftExt;
+import com.moulberry.flashback.io.ReplayOptimiser;
 import com.moulberry.flashback.keyframe.KeyframeRegistry;
 import com.moulberry.flashback.keyframe.types.*;
 import com.moulberry.flashback.packet.FlashbackAccurateEntityPosition;
@@ -50,6 +51,7 @@ import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientEntityEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
@@ -137,6 +139,11 @@ public class Flashback implements ModInitializer, ClientModInitializer {
     private static final List<Path> pendingReplayRecovery = new ArrayList<>();
     private static List<String> pendingUnsupportedModsForRecording = null;
 
+    // Legacy json states, followed by the files written by EditorStateJournal
+    private static final String[] REPLAY_STATE_SUFFIXES = new String[]{
+        ".json", ".json.old", ".snapshot", ".snapshot.old", ".snapshot.tmp", ".journal"
+    };
+
     private static boolean isOpeningReplay = false;
 
     public static long worldBorderLerpStartTime = -1L;
@@ -345,6 +352,11 @@ public class Flashback implements ModInitializer, ClientModInitializer {
             flashback.then(ClientCommandManager.literal("finish").executes(this::finishRecordingReplay));
             flashback.then(ClientCommandManager.literal("end").executes(this::finishRecordingReplay));
             flashback.then(ClientCommandManager.literal("config").executes(this::openFlashbackConfig));
+            flashback.then(ClientCommandManager.literal("optimise")
+                .then(ClientCommandManager.argument("replay", StringArgumentType.greedyString()).executes(command -> {
+                    this.optimiseReplay(command, command.getArgument("replay", String.class));
+                    return 0;
+                })));
             flashback.then(ClientCommandManager.literal("mark")
                 .executes(command -> {
                     this.addMarker(command, null, null, null);
@@ -386,7 +398,7 @@ public class Flashback implements ModInitializer, ClientModInitializer {
                 var entities = EntityArgument.getEntities(command, "targets");
 
                 for (Entity entity : entities) {
-                    editorState.hideDuringExport.add(entity.getUUID());
+                    editorState.setHiddenDuringExport(entity.getUUID(), true);
                 }
 
                 int count = entities.size();
@@ -408,7 +420,7 @@ public class Flashback implements ModInitializer, ClientModInitializer {
                 var entities = EntityArgument.getEntities(command, "targets");
 
                 for (Entity entity : entities) {
-                    editorState.hideDuringExport.remove(entity.getUUID());
+                    editorState.setHiddenDuringExport(entity.getUUID(), false);
                 }
 
                 int count = entities.size();
@@ -449,6 +461,19 @@ public class Flashback implements ModInitializer, ClientModInitializer {
             Flashback.getConfig().tickDelayedSave();
         });
 
+        ClientEntityEvents.ENTITY_LOAD.register((entity, level) -> {
+            EditorState editorState = EditorStateManager.getCurrent();
+            if (editorState != null) {
+                editorState.onClientEntityLoad(entity, level);
+            }
+        });
+        ClientEntityEvents.ENTITY_UNLOAD.register((entity, level) -> {
+            EditorState editorState = EditorStateManager.getCurrent();
+            if (editorState != null) {
+                editorState.onClientEntityUnload(entity, level);
+            }
+        });
+
         ClientTickEvents.START_CLIENT_TICK.register(minecraft -> {
             if (canReplaceScreen(Minecraft.getInstance().screen)) {
                 openNewScreen(unsupportedLoader);
@@ -515,7 +540,7 @@ public class Flashback implements ModInitializer, ClientModInitializer {
             Component description = Component.empty()
                     .append(Component.literal("Flashback has detected ").append(Component.literal("unfinished recordings\n").withStyle(ChatFormatting.YELLOW)))
                     .append(Component.literal("This is usually because the game closed unexpectedly while recording\n\n"))
-                    .append(Component.literal("Unfortunately, up to 5 minutes of gameplay from the end of the recording may be lost\n\n").withStyle(ChatFormatting.RED)
+                    .append(Component.literal("Unfortunately, the last few seconds of gameplay from the end of the recording may be lost\n\n").withStyle(ChatFormatting.RED)
                             .append(Component.literal("Would you like to try to recover the recording?").withStyle(ChatFormatting.GREEN)));
             Minecraft.getInstance().setScreen(new RecoverRecordingsScreen(Minecraft.getInstance().screen, title, description, recover -> {
                 switch (recover) {
@@ -636,6 +661,32 @@ public class Flashback implements ModInitializer, ClientModInitializer {
         RECORDER.addMarker(new ReplayMarker(colour, position, description));
     }
 
+    private void optimiseReplay(CommandContext<FabricClientCommandSource> command, String replay) {
+        Path path = getReplayFolder().resolve(replay.trim());
+        if (!Files.exists(path) && !replay.endsWith(".zip")) {
+            path = getReplayFolder().resolve(replay.trim() + ".zip");
+        }
+        if (!Files.isRegularFile(path)) {
+            command.getSource().sendError(Component.literal("Unable to find replay " + path));
+            return;
+        }
+
+        Path replayPath = path;
+        FabricClientCommandSource source = command.getSource();
+        source.sendFeedback(Component.literal("Optimising " + replayPath.getFileName() + "..."));
+
+        Util.ioPool().execute(() -> {
+            try {
+                ReplayOptimiser.Result result = ReplayOptimiser.optimiseInPlace(replayPath);
+                Minecraft.getInstance().execute(() -> source.sendFeedback(Component.literal("Optimised " + replayPath.getFileName() +
+                    ", level chunk cache entries: " + result.originalChunkCacheEntries() + " -> " + result.writtenChunkCacheEntries())));
+            } catch (Exception e) {
+                Flashback.LOGGER.error("Unable to optimise replay", e);
+                Minecraft.getInstance().execute(() -> source.sendError(Component.literal("Unable to optimise replay: " + e.getMessage())));
+            }
+        });
+    }
+
     private void deleteUnusedReplayStates() {
         Path flashbackDir = Flashback.getDataDirectory();
         Path replayDir = Flashback.getReplayFolder();
@@ -650,7 +701,7 @@ public class Flashback implements ModInitializer, ClientModInitializer {
 
         CompletableFuture.runAsync(() -> {
             long currentTime = System.currentTimeMillis();
-            Map<UUID, Path> replayStates = new HashMap<>();
+            Map<UUID, List<Path>> replayStates = new HashMap<>();
 
             // Find existing replay states
             try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(replayStatesDir)) {
@@ -659,10 +710,11 @@ public class Flashback implements ModInitializer, ClientModInitializer {
 
                     String withoutExtension = null;
 
-                    if (filename.endsWith(".json")) {
-                        withoutExtension = filename.substring(0, filename.length() - 5);
-                    } else if (filename.endsWith(".json.old")) {
-                        withoutExtension = filename.substring(0, filename.length() - 9);
+                    for (String suffix : REPLAY_STATE_SUFFIXES) {
+                        if (filename.endsWith(suffix)) {
+                            withoutExtension = filename.substring(0, filename.length() - suffix.length());
+                            break;
+                        }
                     }
 
                     BasicFileAttributeView attributeView = Files.getFileAttributeView(path, BasicFileAttributeView.class);
@@ -682,7 +734,7 @@ public class Flashback implements ModInitializer, ClientModInitializer {
                             continue;
                         }
 
-                        replayStates.put(uuid, path);
+                        replayStates.computeIfAbsent(uuid, k -> new ArrayList<>()).add(path);
                     }
                 }
             } catch (IOException ignored) {}
@@ -723,11 +775,13 @@ public class Flashback implements ModInitializer, ClientModInitializer {
                 return;
             }
 
-            for (Map.Entry<UUID, Path> entry : replayStates.entrySet()) {
+            for (Map.Entry<UUID, List<Path>> entry : replayStates.entrySet()) {
                 if (!replayUuids.contains(entry.getKey())) {
-                    try {
-                        Files.deleteIfExists(entry.getValue());
-                    } catch (IOException ignored) {}
+                    for (Path path : entry.getValue()) {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException ignored) {}
+                    }
                 }
             }
         }, Util.backgroundExecutor());
@@ -46,12 +46,22 @@ public class FlashbackConfig {
     @OptionDescription("flashback.option.quicksave.description")
     public boolean quicksave = false;
 
+    @OptionCaption("flashback.option.store_level_chunk_caches")
+    @OptionDescription("flashback.option.store_level_chunk_caches.description")
+    public boolean storeLevelChunkCaches = false;
+
+    @OptionCaption("flashback.option.show_recording_stats")
+    @OptionDescription("flashback.option.show_recording_stats.description")
+    public boolean showRecordingStats = false;
+
 
 
     public boolean cjson = false;
 
     public boolean etjson = false;
 
+    public boolean exportProfileReport = false;
+
     @OptionCaption("flashback.option.hide_pause_menu_controls")
     @OptionDescription("flashback.option.hide_pause_menu_controls.description")
     public boolean hidePauseMenuControls = false;
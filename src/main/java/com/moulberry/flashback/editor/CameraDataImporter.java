@@ -0,0 +1,365 @@
+package com.moulberry.flashback.editor;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.moulberry.flashback.keyframe.impl.CameraKeyframe;
+import com.moulberry.flashback.keyframe.impl.FOVKeyframe;
+import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
+import com.moulberry.flashback.keyframe.types.CameraKeyframeType;
+import com.moulberry.flashback.keyframe.types.FOVKeyframeType;
+import com.moulberry.flashback.state.EditorScene;
+import com.moulberry.flashback.state.EditorSceneHistoryAction;
+import com.moulberry.flashback.state.EditorSceneHistoryEntry;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.util.Mth;
+import org.joml.Vector3d;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Imports camera samples from external tools into new camera and fov tracks, as a single history entry.
+ * <p>
+ * Accepts the same json written by the "Export Camera Json File" option
+ * ({@code {"keyframes": [{"tick", "position": [x, y, z], "yaw", "pitch", "roll", "fov"}, ...]}}, where tick is the
+ * frame number) or a csv file with a header containing the columns {@code tick, x, y, z, yaw, pitch} and optionally
+ * {@code roll, fov}. Samples are read in a streaming fashion into primitive arrays, so large files don't create an
+ * object per sample.
+ */
+public class CameraDataImporter {
+
+    public record Options(double framerate, int startTick, boolean simplify, double positionTolerance, double angleTolerance, double fovTolerance) {}
+
+    public record Result(int samples, int cameraKeyframes, int fovKeyframes) {}
+
+    public static class Samples {
+        private final DoubleArrayList frames = new DoubleArrayList();
+        private final DoubleArrayList x = new DoubleArrayList();
+        private final DoubleArrayList y = new DoubleArrayList();
+        private final DoubleArrayList z = new DoubleArrayList();
+        private final FloatArrayList yaw = new FloatArrayList();
+        private final FloatArrayList pitch = new FloatArrayList();
+        private final FloatArrayList roll = new FloatArrayList();
+        private final FloatArrayList fov = new FloatArrayList();
+        private boolean hasFov = true;
+
+        private void add(double frame, double x, double y, double z, float yaw, float pitch, float roll, float fov, boolean hasFov) {
+            if (!this.frames.isEmpty() && frame <= this.frames.getDouble(this.frames.size() - 1)) {
+                throw new IllegalArgumentException("Samples must be in order of increasing tick, got " + frame + " after " + this.frames.getDouble(this.frames.size() - 1));
+            }
+            this.frames.add(frame);
+            this.x.add(x);
+            this.y.add(y);
+            this.z.add(z);
+            this.yaw.add(yaw);
+            this.pitch.add(pitch);
+            this.roll.add(roll);
+            this.fov.add(fov);
+            this.hasFov &= hasFov;
+        }
+
+        public int size() {
+            return this.frames.size();
+        }
+    }
+
+    public static Samples read(Path path) throws IOException {
+        String filename = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if (filename.endsWith(".csv")) {
+                return readCsv(reader);
+            } else {
+                return readJson(new JsonReader(reader));
+            }
+        }
+    }
+
+    private static Samples readJson(JsonReader reader) throws IOException {
+        Samples samples = new Samples();
+
+        // Either the exported {"keyframes": [...]} object, or just the array
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("keyframes")) {
+                    readJsonSamples(reader, samples);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } else {
+            readJsonSamples(reader, samples);
+        }
+
+        return samples;
+    }
+
+    private static void readJsonSamples(JsonReader reader, Samples samples) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            double frame = Double.NaN;
+            double x = Double.NaN;
+            double y = Double.NaN;
+            double z = Double.NaN;
+            float yaw = 0.0f;
+            float pitch = 0.0f;
+            float roll = 0.0f;
+            float fov = 0.0f;
+            boolean hasFov = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "tick" -> frame = reader.nextDouble();
+                    case "position" -> {
+                        reader.beginArray();
+                        x = reader.nextDouble();
+                        y = reader.nextDouble();
+                        z = reader.nextDouble();
+                        reader.endArray();
+                    }
+                    case "yaw" -> yaw = (float) reader.nextDouble();
+                    case "pitch" -> pitch = (float) reader.nextDouble();
+                    case "roll" -> roll = (float) reader.nextDouble();
+                    case "fov" -> {
+                        fov = (float) reader.nextDouble();
+                        hasFov = true;
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (Double.isNaN(frame) || Double.isNaN(x)) {
+                throw new IllegalArgumentException("Sample " + samples.size() + " is missing its tick or position");
+            }
+            samples.add(frame, x, y, z, yaw, pitch, roll, fov, hasFov);
+        }
+        reader.endArray();
+    }
+
+    private static Samples readCsv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("Csv file is empty");
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (String column : header.split(",")) {
+            columns.add(column.trim().toLowerCase(Locale.ROOT));
+        }
+
+        int tickColumn = requireColumn(columns, "tick");
+        int xColumn = requireColumn(columns, "x");
+        int yColumn = requireColumn(columns, "y");
+        int zColumn = requireColumn(columns, "z");
+        int yawColumn = requireColumn(columns, "yaw");
+        int pitchColumn = requireColumn(columns, "pitch");
+        int rollColumn = columns.indexOf("roll");
+        int fovColumn = columns.indexOf("fov");
+
+        Samples samples = new Samples();
+
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber += 1;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            String[] values = line.split(",");
+            if (values.length < columns.size()) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has " + values.length + " values, expected " + columns.size());
+            }
+
+            try {
+                samples.add(Double.parseDouble(values[tickColumn].trim()),
+                    Double.parseDouble(values[xColumn].trim()),
+                    Double.parseDouble(values[yColumn].trim()),
+                    Double.parseDouble(values[zColumn].trim()),
+                    Float.parseFloat(values[yawColumn].trim()),
+                    Float.parseFloat(values[pitchColumn].trim()),
+                    rollColumn < 0 ? 0.0f : Float.parseFloat(values[rollColumn].trim()),
+                    fovColumn < 0 ? 0.0f : Float.parseFloat(values[fovColumn].trim()),
+                    fovColumn >= 0);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + " contains an invalid number", e);
+            }
+        }
+
+        return samples;
+    }
+
+    private static int requireColumn(List<String> columns, String name) {
+        int index = columns.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Csv header is missing the '" + name + "' column");
+        }
+        return index;
+    }
+
+    /**
+     * Adds the samples to the scene as new tracks. Must be called while holding the scene write lock
+     */
+    public static Result importInto(EditorScene editorScene, Samples samples, Options options, int totalTicks) {
+        // Convert frames to replay ticks, keeping the first sample when several end up on the same tick
+        IntArrayList ticks = new IntArrayList();
+        IntArrayList sampleIndices = new IntArrayList();
+        for (int i = 0; i < samples.size(); i++) {
+            int tick = options.startTick + (int) Math.round(samples.frames.getDouble(i) * 20 / options.framerate);
+            if (tick < 0 || tick > totalTicks) {
+                continue;
+            }
+            if (!ticks.isEmpty() && ticks.getInt(ticks.size() - 1) >= tick) {
+                continue;
+            }
+            ticks.add(tick);
+            sampleIndices.add(i);
+        }
+
+        if (ticks.isEmpty()) {
+            return new Result(samples.size(), 0, 0);
+        }
+
+        int[] tickArray = ticks.toIntArray();
+        int[] sampleArray = sampleIndices.toIntArray();
+
+        boolean[] keepCamera;
+        boolean[] keepFov;
+        if (options.simplify) {
+            keepCamera = simplify(tickArray, (start, end, index) -> cameraError(samples, options, tickArray, sampleArray, start, end, index));
+            keepFov = samples.hasFov ? simplify(tickArray, (start, end, index) -> fovError(samples, options, tickArray, sampleArray, start, end, index)) : null;
+        } else {
+            keepCamera = null;
+            keepFov = null;
+        }
+
+        List<EditorSceneHistoryAction> undo = new ArrayList<>();
+        List<EditorSceneHistoryAction> redo = new ArrayList<>();
+
+        InterpolationType interpolationType = InterpolationType.getDefault();
+
+        int cameraTrackIndex = editorScene.keyframeTracks.size();
+        redo.add(new EditorSceneHistoryAction.AddTrack(CameraKeyframeType.INSTANCE, cameraTrackIndex));
+
+        int cameraKeyframes = 0;
+        for (int i = 0; i < tickArray.length; i++) {
+            if (keepCamera != null && !keepCamera[i]) {
+                continue;
+            }
+            int sample = sampleArray[i];
+            CameraKeyframe keyframe = new CameraKeyframe(new Vector3d(samples.x.getDouble(sample), samples.y.getDouble(sample), samples.z.getDouble(sample)),
+                samples.yaw.getFloat(sample), samples.pitch.getFloat(sample), samples.roll.getFloat(sample), interpolationType);
+            redo.add(new EditorSceneHistoryAction.SetKeyframe(CameraKeyframeType.INSTANCE, cameraTrackIndex, tickArray[i], keyframe));
+            cameraKeyframes += 1;
+        }
+
+        int fovKeyframes = 0;
+        if (samples.hasFov) {
+            int fovTrackIndex = cameraTrackIndex + 1;
+            redo.add(new EditorSceneHistoryAction.AddTrack(FOVKeyframeType.INSTANCE, fovTrackIndex));
+            undo.add(new EditorSceneHistoryAction.RemoveTrack(FOVKeyframeType.INSTANCE, fovTrackIndex));
+
+            for (int i = 0; i < tickArray.length; i++) {
+                if (keepFov != null && !keepFov[i]) {
+                    continue;
+                }
+                FOVKeyframe keyframe = new FOVKeyframe(samples.fov.getFloat(sampleArray[i]), interpolationType);
+                redo.add(new EditorSceneHistoryAction.SetKeyframe(FOVKeyframeType.INSTANCE, fovTrackIndex, tickArray[i], keyframe));
+                fovKeyframes += 1;
+            }
+        }
+
+        undo.add(new EditorSceneHistoryAction.RemoveTrack(CameraKeyframeType.INSTANCE, cameraTrackIndex));
+
+        editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Imported " + (cameraKeyframes + fovKeyframes) + " keyframe(s)"));
+        return new Result(samples.size(), cameraKeyframes, fovKeyframes);
+    }
+
+    @FunctionalInterface
+    private interface SegmentError {
+        /**
+         * @return how far the sample at {@code index} is from the line between {@code start} and {@code end}, relative to
+         * the tolerance. Values above 1 mean the sample must be kept
+         */
+        double error(int start, int end, int index);
+    }
+
+    /**
+     * Ramer-Douglas-Peucker simplification, using an explicit stack so long recordings can't overflow
+     */
+    private static boolean[] simplify(int[] ticks, SegmentError segmentError) {
+        boolean[] keep = new boolean[ticks.length];
+        keep[0] = true;
+        keep[ticks.length - 1] = true;
+
+        IntArrayList stack = new IntArrayList();
+        stack.add(0);
+        stack.add(ticks.length - 1);
+
+        while (!stack.isEmpty()) {
+            int end = stack.popInt();
+            int start = stack.popInt();
+
+            double maxError = 1.0;
+            int maxIndex = -1;
+            for (int i = start + 1; i < end; i++) {
+                double error = segmentError.error(start, end, i);
+                if (error > maxError) {
+                    maxError = error;
+                    maxIndex = i;
+                }
+            }
+
+            if (maxIndex >= 0) {
+                keep[maxIndex] = true;
+                stack.add(start);
+                stack.add(maxIndex);
+                stack.add(maxIndex);
+                stack.add(end);
+            }
+        }
+
+        return keep;
+    }
+
+    private static double cameraError(Samples samples, Options options, int[] ticks, int[] sampleIndices, int start, int end, int index) {
+        float amount = (float) (ticks[index] - ticks[start]) / (ticks[end] - ticks[start]);
+        int from = sampleIndices[start];
+        int to = sampleIndices[end];
+        int sample = sampleIndices[index];
+
+        double dx = Mth.lerp(amount, samples.x.getDouble(from), samples.x.getDouble(to)) - samples.x.getDouble(sample);
+        double dy = Mth.lerp(amount, samples.y.getDouble(from), samples.y.getDouble(to)) - samples.y.getDouble(sample);
+        double dz = Mth.lerp(amount, samples.z.getDouble(from), samples.z.getDouble(to)) - samples.z.getDouble(sample);
+        double error = Math.sqrt(dx*dx + dy*dy + dz*dz) / options.positionTolerance;
+
+        error = Math.max(error, angleError(samples.yaw, from, to, sample, amount) / options.angleTolerance);
+        error = Math.max(error, angleError(samples.pitch, from, to, sample, amount) / options.angleTolerance);
+        error = Math.max(error, angleError(samples.roll, from, to, sample, amount) / options.angleTolerance);
+        return error;
+    }
+
+    private static double angleError(FloatArrayList angles, int from, int to, int sample, float amount) {
+        float fromAngle = angles.getFloat(from);
+        float interpolated = fromAngle + Mth.wrapDegrees(angles.getFloat(to) - fromAngle) * amount;
+        return Math.abs(Mth.wrapDegrees(interpolated - angles.getFloat(sample)));
+    }
+
+    private static double fovError(Samples samples, Options options, int[] ticks, int[] sampleIndices, int start, int end, int index) {
+        float amount = (float) (ticks[index] - ticks[start]) / (ticks[end] - ticks[start]);
+        float interpolated = Mth.lerp(amount, samples.fov.getFloat(sampleIndices[start]), samples.fov.getFloat(sampleIndices[end]));
+        return Math.abs(interpolated - samples.fov.getFloat(sampleIndices[index])) / options.fovTolerance;
+    }
+
+}
@@ -146,11 +146,11 @@ public class PlayerListWindow {
                     ImGui.sameLine();
                     if (editorState.hideDuringExport.contains(profile.getId())) {
                         if (ImGui.smallButton("Show")) {
-                            editorState.hideDuringExport.remove(profile.getId());
+                            editorState.setHiddenDuringExport(profile.getId(), false);
                             lastUpdate = currentTime;
                         }
                     } else if (ImGui.smallButton("Hide")) {
-                        editorState.hideDuringExport.add(profile.getId());
+                        editorState.setHiddenDuringExport(profile.getId(), true);
                         lastUpdate = currentTime;
                     }
                 }
@@ -201,17 +201,17 @@ public class PlayerListWindow {
 
             if (blankSearch) {
                 if (visible) {
-                    editorState.hideDuringExport.remove(profile.getId());
+                    editorState.setHiddenDuringExport(profile.getId(), false);
                 } else {
-                    editorState.hideDuringExport.add(profile.getId());
+                    editorState.setHiddenDuringExport(profile.getId(), true);
                 }
             } else {
                 String nameLower = profile.getName().toLowerCase(Locale.ROOT);
                 if (nameLower.contains(searchLower)) {
                     if (visible) {
-                        editorState.hideDuringExport.remove(profile.getId());
+                        editorState.setHiddenDuringExport(profile.getId(), false);
                     } else {
-                        editorState.hideDuringExport.add(profile.getId());
+                        editorState.setHiddenDuringExport(profile.getId(), true);
                     }
                 }
             }
@@ -113,6 +113,7 @@ public class RenderFilterWindow {
                                         } else {
                                             editorState.filteredEntities.add(resourceLocation.toString());
                                         }
+                                        editorState.markRenderFiltersChanged();
                                     }
                                 }
                             });
@@ -121,6 +122,7 @@ public class RenderFilterWindow {
 
                         if (ImGui.smallButton("Enable All")) {
                             editorState.filteredEntities.clear();
+                            editorState.markRenderFiltersChanged();
                         }
                         ImGui.sameLine();
                         if (ImGui.smallButton("Disable All")) {
@@ -128,6 +130,7 @@ public class RenderFilterWindow {
                                 ResourceLocation resourceLocation = BuiltInRegistries.ENTITY_TYPE.getKey(entityType);
                                 editorState.filteredEntities.add(resourceLocation.toString());
                             }
+                            editorState.markRenderFiltersChanged();
                         }
                     }
 
@@ -189,6 +192,7 @@ public class RenderFilterWindow {
                                         } else {
                                             editorState.filteredParticles.add(particleType.toString());
                                         }
+                                        editorState.markRenderFiltersChanged();
                                     }
                                 }
                             });
@@ -197,6 +201,7 @@ public class RenderFilterWindow {
 
                         if (ImGui.smallButton("Enable All")) {
                             editorState.filteredParticles.clear();
+                            editorState.markRenderFiltersChanged();
                         }
                         ImGui.sameLine();
                         if (ImGui.smallButton("Disable All")) {
@@ -207,6 +212,7 @@ public class RenderFilterWindow {
                                 }
                                 editorState.filteredParticles.add(resourceLocation.toString());
                             }
+                            editorState.markRenderFiltersChanged();
                         }
                     }
 
@@ -162,12 +162,7 @@ public class SelectedEntityPopup {
 
         boolean isHiddenDuringExport = editorState.hideDuringExport.contains(entity.getUUID());
         if (ImGui.checkbox("Hide During Export", isHiddenDuringExport)) {
-            if (isHiddenDuringExport) {
-                editorState.hideDuringExport.remove(entity.getUUID());
-            } else {
-                editorState.hideDuringExport.add(entity.getUUID());
-            }
-            editorState.markDirty();
+            editorState.setHiddenDuringExport(entity.getUUID(), !isHiddenDuringExport);
         }
 
         if (!isHiddenDuringExport) {
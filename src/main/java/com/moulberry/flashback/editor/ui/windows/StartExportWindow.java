@@ -174,6 +174,11 @@ public class StartExportWindow {
 
             ImGuiHelper.tooltip("Creates a Simple Json File with all the camera information for each frame of the exported video.");
 
+            if (ImGui.checkbox("Export Profiling Report", config.exportProfileReport)) {
+                config.exportProfileReport = !config.exportProfileReport;
+            }
+            ImGuiHelper.tooltip("Writes a json file next to the output with timings for each stage of the export, to find which stage is the bottleneck");
+
 
             ImGuiHelper.inputFloat("Framerate", config.framerate);
 
@@ -4,11 +4,13 @@ import com.google.gson.reflect.TypeToken;
 import com.moulberry.flashback.Flashback;
 import com.moulberry.flashback.FlashbackGson;
 import com.moulberry.flashback.Utils;
+import com.moulberry.flashback.editor.CameraDataImporter;
 import com.moulberry.flashback.editor.CopiedKeyframes;
 import com.moulberry.flashback.editor.SavedTrack;
 import com.moulberry.flashback.editor.SelectedKeyframes;
 import com.moulberry.flashback.editor.ui.KeyframeRelativeOffsets;
 import com.moulberry.flashback.editor.ui.ReplayUI;
+import com.moulberry.flashback.exporting.AsyncFileDialogs;
 import com.moulberry.flashback.keyframe.KeyframeType;
 import com.moulberry.flashback.keyframe.KeyframeRegistry;
 import com.moulberry.flashback.keyframe.handler.MinecraftKeyframeHandler;
@@ -43,6 +45,7 @@ import imgui.flag.ImGuiStyleVar;
 import imgui.flag.ImGuiWindowFlags;
 import imgui.type.ImString;
 import it.unimi.dsi.fastutil.ints.*;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.client.player.LocalPlayer;
@@ -51,6 +54,7 @@ import org.joml.Vector2f;
 import org.joml.Vector3d;
 import org.lwjgl.glfw.GLFW;
 
+import java.nio.file.Path;
 import java.util.*;
 
 public class TimelineWindow {
@@ -132,6 +136,12 @@ public class TimelineWindow {
     private static int editingKeyframeTick = 0;
 
     private static int createKeyframeAtTick = 0;
+
+    private static final float[] importFramerate = new float[]{60};
+    private static boolean importSimplify = true;
+    private static final float[] importPositionTolerance = new float[]{0.05f};
+    private static final float[] importAngleTolerance = new float[]{0.5f};
+    private static final float[] importFovTolerance = new float[]{0.5f};
     private static int openCreateKeyframeAtTickTrack = -1;
 
     private static final float[] replayTickSpeeds = new float[]{1.0f, 2.0f, 4.0f, 10.0f, 20.0f, 40.0f, 100.0f, 200.0f, 400.0f};
@@ -761,12 +771,12 @@ public class TimelineWindow {
         if (ImGui.isKeyPressed(GLFW.GLFW_KEY_Z, false) && (ImGui.isKeyDown(GLFW.GLFW_KEY_LEFT_CONTROL) || ImGui.isKeyDown(GLFW.GLFW_KEY_RIGHT_CONTROL))) {
             upgradeToSceneWrite();
             editorScene.undo(ReplayUI::setInfoOverlayShort);
-            editorState.markDirty();
+            editorState.markHistoryDirty();
         }
         if (ImGui.isKeyPressed(GLFW.GLFW_KEY_Y, false) && (ImGui.isKeyDown(GLFW.GLFW_KEY_LEFT_CONTROL) || ImGui.isKeyDown(GLFW.GLFW_KEY_RIGHT_CONTROL))) {
             upgradeToSceneWrite();
             editorScene.redo(ReplayUI::setInfoOverlayShort);
-            editorState.markDirty();
+            editorState.markHistoryDirty();
         }
 
         if (pressedIn || pressedOut) {
@@ -823,7 +833,7 @@ public class TimelineWindow {
 
                     if (count > 0) {
                         ReplayUI.setInfoOverlay("Pasted " + count + " keyframe(s) from clipboard");
-                        editorState.markDirty();
+                        editorState.markHistoryDirty();
                     }
                 }
             } catch (Exception ignored) {}
@@ -890,7 +900,7 @@ public class TimelineWindow {
         editingKeyframeTrack = -1;
         editingKeyframeTick = -1;
         editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Deleted " + undo.size() + " keyframe(s)"));
-        editorState.markDirty();
+        editorState.markHistoryDirty();
     }
 
     private static void handleClick(ReplayServer replayServer, int totalTicks, float contentY) {
@@ -1169,12 +1179,13 @@ public class TimelineWindow {
             for (SelectedKeyframes selectedKeyframes : selectedKeyframesList) {
                 KeyframeTrack track = editorScene.keyframeTracks.get(selectedKeyframes.trackIndex());
                 for (int tick : selectedKeyframes.keyframeTicks()) {
-                    Keyframe keyframe = track.keyframesByTick.get(tick);
+                    Keyframe keyframe = track.mutableKeyframes().get(tick);
                     if (keyframe.getClass() == editingKeyframe.getClass()) {
                         modified += 1;
 
                         undo.add(new EditorSceneHistoryAction.SetKeyframe(track.keyframeType, selectedKeyframes.trackIndex(), tick, keyframe.copy()));
                         updateFunction.accept(keyframe);
+                        keyframe.markModified();
                         redo.add(new EditorSceneHistoryAction.SetKeyframe(track.keyframeType, selectedKeyframes.trackIndex(), tick, keyframe.copy()));
                     }
                 }
@@ -1182,7 +1193,7 @@ public class TimelineWindow {
 
             if (modified > 0) {
                 editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Modified " + modified + " keyframe(s)"));
-                editorState.markDirty();
+                editorState.markHistoryDirty();
             }
         });
 
@@ -1213,7 +1224,7 @@ public class TimelineWindow {
                 }
 
                 editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Changed interpolation type to " + interpolationType));
-                editorState.markDirty();
+                editorState.markHistoryDirty();
             }
         }
         if (editingKeyframe.keyframeType().allowChangingTimelineTick()) {
@@ -1240,7 +1251,7 @@ public class TimelineWindow {
                         );
 
                         editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Moved 1 keyframe(s)"));
-                        editorState.markDirty();
+                        editorState.markHistoryDirty();
                         selectedKeyframes.keyframeTicks().remove(editingKeyframeTick);
                         selectedKeyframes.keyframeTicks().add(newEditingKeyframeTick);
                         editingKeyframeTick = newEditingKeyframeTick;
@@ -1320,12 +1331,12 @@ public class TimelineWindow {
 
                 IntSet intSet = new IntOpenHashSet();
 
-                for (int tick = minTick; tick <= maxTick; tick++) {
-                    var entry = keyframeTrack.keyframesByTick.ceilingEntry(tick);
-                    if (entry == null || entry.getKey() > maxTick) {
+                KeyframeTrack.SortedKeyframes sortedKeyframes = keyframeTrack.sortedKeyframes(editorState.modCount);
+                for (int index = sortedKeyframes.ceilingIndex(minTick); index < sortedKeyframes.size(); index++) {
+                    int tick = sortedKeyframes.tick(index);
+                    if (tick > maxTick) {
                         break;
                     }
-                    tick = entry.getKey();
                     intSet.add(tick);
                 }
 
@@ -1434,7 +1445,7 @@ public class TimelineWindow {
                 }
 
                 editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Moved " + movedKeyframes + " keyframe(s)"));
-                editorState.markDirty();
+                editorState.markHistoryDirty();
             }
 
             grabbedKeyframe = false;
@@ -1553,7 +1564,8 @@ public class TimelineWindow {
         for (int trackIndex = 0; trackIndex < editorScene.keyframeTracks.size(); trackIndex++) {
             KeyframeTrack keyframeTrack = editorScene.keyframeTracks.get(trackIndex);
 
-            TreeMap<Integer, Keyframe> keyframeTimes = keyframeTrack.keyframesByTick;
+            KeyframeTrack.SortedKeyframes sortedKeyframes = keyframeTrack.sortedKeyframes(editorState.modCount);
+            boolean isTimelapse = keyframeTrack.keyframeType == TimelapseKeyframeType.INSTANCE;
 
             SelectedKeyframes selectedKeyframesForTrack = null;
             for (SelectedKeyframes selectedKeyframes : selectedKeyframesList) {
@@ -1563,58 +1575,37 @@ public class TimelineWindow {
                 }
             }
 
-            for (int tick = minTicks - 10; tick <= minTicks + availableTicks + 10; tick++) {
-                var entry = keyframeTimes.ceilingEntry(tick);
-                if (entry == null || entry.getKey() > minTicks + availableTicks + 10) {
+            float midY = y + 2 + (trackIndex+0.5f) * lineHeight;
+
+            int index = sortedKeyframes.ceilingIndex(minTicks - 10);
+            while (index < sortedKeyframes.size()) {
+                int tick = sortedKeyframes.tick(index);
+                if (tick > minTicks + availableTicks + 10) {
                     break;
                 }
-                tick = entry.getKey();
-
-                Keyframe keyframe = entry.getValue();
-
-                float midY = y + 2 + (trackIndex+0.5f) * lineHeight;
-
-                if (selectedKeyframesForTrack != null && selectedKeyframesForTrack.keyframeTicks().contains(tick)) {
-                    int newTick = tick;
-
-                    if (grabMovementInfo != null) {
-                        newTick = tick + grabMovementInfo.grabbedDelta;
-
-                        if (grabMovementInfo.grabbedScalePivotTick >= 0) {
-                            int tickDelta = tick - grabMovementInfo.grabbedScalePivotTick;
-                            newTick = grabMovementInfo.grabbedScalePivotTick + Math.round(tickDelta * grabMovementInfo.grabbedScaleFactor);
-                        }
 
-                        newTick = Math.max(0, Math.min(totalTicks, newTick));
-                    }
-
-                    int keyframeX = replayTickToTimelineX(newTick);
-
-                    float midX = x + keyframeX;
-
-                    drawKeyframe(drawList, keyframe.interpolationType(), midX, midY, keyframeTrack.enabled ? 0xFF0000FF : 0x800000FF);
-                } else {
-                    int keyframeX = replayTickToTimelineX(tick);
+                Keyframe keyframe = sortedKeyframes.keyframe(index);
+                int keyframeX = replayTickToTimelineX(tick);
 
+                // Selected keyframes are drawn afterwards, on top of the others
+                boolean unselected = selectedKeyframesForTrack == null || !selectedKeyframesForTrack.keyframeTicks().contains(tick);
+                if (unselected) {
                     float midX = x + keyframeX;
 
                     int colour = -1;
-                    if (keyframeTrack.keyframeType == TimelapseKeyframeType.INSTANCE) {
-                        if (keyframeTrack.keyframesByTick.size() == 1) {
+                    if (isTimelapse) {
+                        if (sortedKeyframes.size() == 1) {
                             colour = 0xFF155FFF;
 
                             if (Math.abs(mouseX - midX) < keyframeSize && Math.abs(mouseY - midY) < keyframeSize) {
                                 ImGuiHelper.drawTooltip("Timelapse requires two keyframes");
                             }
-                        } else {
-                            var floorEntry = keyframeTrack.keyframesByTick.floorEntry(tick - 1);
-                            if (floorEntry != null && floorEntry.getValue() instanceof TimelapseKeyframe timelapseKeyframe) {
-                                if (timelapseKeyframe.ticks >= ((TimelapseKeyframe) keyframe).ticks) {
-                                    colour = 0xFF155FFF;
-
-                                    if (Math.abs(mouseX - midX) < keyframeSize && Math.abs(mouseY - midY) < keyframeSize) {
-                                        ImGuiHelper.drawTooltip("This keyframe's Time must be greater than the Time on the left.\nThe left keyframe must be set to the base time, e.g. 0s and the right keyframe must be set to the duration of the timelapse e.g. 10s");
-                                    }
+                        } else if (index > 0 && sortedKeyframes.keyframe(index - 1) instanceof TimelapseKeyframe timelapseKeyframe) {
+                            if (timelapseKeyframe.ticks >= ((TimelapseKeyframe) keyframe).ticks) {
+                                colour = 0xFF155FFF;
+
+                                if (Math.abs(mouseX - midX) < keyframeSize && Math.abs(mouseY - midY) < keyframeSize) {
+                                    ImGuiHelper.drawTooltip("This keyframe's Time must be greater than the Time on the left.\nThe left keyframe must be set to the base time, e.g. 0s and the right keyframe must be set to the duration of the timelapse e.g. 10s");
                                 }
                             }
                         }
@@ -1627,52 +1618,93 @@ public class TimelineWindow {
                     drawKeyframe(drawList, keyframe.interpolationType(), midX, midY, colour);
                 }
 
-                if ((selectedKeyframesForTrack == null || grabMovementInfo == null) && keyframeTrack.keyframeType == TimelapseKeyframeType.INSTANCE) {
-                    var floorEntry = keyframeTrack.keyframesByTick.floorEntry(tick - 1);
-                    if (floorEntry != null) {
-                        TimelapseKeyframe left = (TimelapseKeyframe) floorEntry.getValue();
-                        TimelapseKeyframe right = (TimelapseKeyframe) keyframe;
+                if ((selectedKeyframesForTrack == null || grabMovementInfo == null) && isTimelapse && index > 0) {
+                    TimelapseKeyframe left = (TimelapseKeyframe) sortedKeyframes.keyframe(index - 1);
+                    TimelapseKeyframe right = (TimelapseKeyframe) keyframe;
 
-                        int leftX = replayTickToTimelineX(floorEntry.getKey());
-                        int rightX = replayTickToTimelineX(tick);
+                    int leftX = replayTickToTimelineX(sortedKeyframes.tick(index - 1));
+                    int rightX = keyframeX;
 
-                        int tickDelta = right.ticks - left.ticks;
-                        String message;
-                        int textColour = -1;
-                        if (tickDelta <= 0) {
-                            message = "INVALID";
-                            textColour = 0xFF155FFF;
-                        } else {
-                            message = Utils.timeToString(tickDelta);
-                        }
+                    int tickDelta = right.ticks - left.ticks;
+                    String message;
+                    int textColour = -1;
+                    if (tickDelta <= 0) {
+                        message = "INVALID";
+                        textColour = 0xFF155FFF;
+                    } else {
+                        message = Utils.timeToString(tickDelta);
+                    }
 
-                        float textY = midY - lineHeight*0.3f;
-                        float midX = (leftX + rightX)/2f;
+                    float textY = midY - lineHeight*0.3f;
+                    float midX = (leftX + rightX)/2f;
 
-                        float textWidth = ImGuiHelper.calcTextWidth("Duration: " + message);
+                    float textWidth = ImGuiHelper.calcTextWidth("Duration: " + message);
+                    if (textWidth <= rightX - leftX) {
+                        ImGui.getWindowDrawList().addText(x + midX - textWidth/2, textY,
+                            textColour, "Duration: " + message);
+                    } else {
+                        textWidth = ImGuiHelper.calcTextWidth(message);
                         if (textWidth <= rightX - leftX) {
                             ImGui.getWindowDrawList().addText(x + midX - textWidth/2, textY,
-                                textColour, "Duration: " + message);
-                        } else {
-                            textWidth = ImGuiHelper.calcTextWidth(message);
-                            if (textWidth <= rightX - leftX) {
-                                ImGui.getWindowDrawList().addText(x + midX - textWidth/2, textY,
-                                    textColour, message);
-                            }
+                                textColour, message);
                         }
+                    }
 
-                        float startLine1 = x + leftX + keyframeSize;
-                        float endLine1 = x + midX - textWidth/2f - 5;
-                        float startLine2 = x + midX + textWidth/2f + 5;
-                        float endLine2 = x + rightX - keyframeSize;
-                        if (startLine1 < endLine1) {
-                            ImGui.getWindowDrawList().addLine(startLine1, midY, endLine1, midY, 0x80FFFFFF);
-                        }
-                        if (startLine2 < endLine2) {
-                            ImGui.getWindowDrawList().addLine(startLine2, midY, endLine2, midY, 0x80FFFFFF);
-                        }
+                    float startLine1 = x + leftX + keyframeSize;
+                    float endLine1 = x + midX - textWidth/2f - 5;
+                    float startLine2 = x + midX + textWidth/2f + 5;
+                    float endLine2 = x + rightX - keyframeSize;
+                    if (startLine1 < endLine1) {
+                        ImGui.getWindowDrawList().addLine(startLine1, midY, endLine1, midY, 0x80FFFFFF);
+                    }
+                    if (startLine2 < endLine2) {
+                        ImGui.getWindowDrawList().addLine(startLine2, midY, endLine2, midY, 0x80FFFFFF);
+                    }
+                }
+
+                index += 1;
+
+                // When zoomed out, skip over the keyframes that would be drawn in the same pixel column. Only skip once an
+                // unselected keyframe has been drawn there, a selected one might be dragged away from the column. Timelapse
+                // keyframes are never skipped because each pair displays its duration
+                if (unselected && !isTimelapse && index < sortedKeyframes.size() && replayTickToTimelineX(sortedKeyframes.tick(index)) <= keyframeX) {
+                    int nextColumnTick = minTicks + (int) Math.ceil((keyframeX + 1 - timelineOffset) * availableTicks / timelineWidth);
+                    index = Math.max(index, sortedKeyframes.ceilingIndex(nextColumnTick));
+                }
+            }
+
+            if (selectedKeyframesForTrack == null) {
+                continue;
+            }
+
+            for (int tick : selectedKeyframesForTrack.keyframeTicks()) {
+                if (tick < minTicks - 10 || tick > minTicks + availableTicks + 10) {
+                    continue;
+                }
+
+                Keyframe keyframe = keyframeTrack.keyframesByTick.get(tick);
+                if (keyframe == null) {
+                    continue;
+                }
+
+                int newTick = tick;
+
+                if (grabMovementInfo != null) {
+                    newTick = tick + grabMovementInfo.grabbedDelta;
+
+                    if (grabMovementInfo.grabbedScalePivotTick >= 0) {
+                        int tickDelta = tick - grabMovementInfo.grabbedScalePivotTick;
+                        newTick = grabMovementInfo.grabbedScalePivotTick + Math.round(tickDelta * grabMovementInfo.grabbedScaleFactor);
                     }
+
+                    newTick = Math.max(0, Math.min(totalTicks, newTick));
                 }
+
+                int keyframeX = replayTickToTimelineX(newTick);
+
+                float midX = x + keyframeX;
+
+                drawKeyframe(drawList, keyframe.interpolationType(), midX, midY, keyframeTrack.enabled ? 0xFF0000FF : 0x800000FF);
             }
         }
     }
@@ -1903,7 +1935,7 @@ public class TimelineWindow {
                     if (keyframe != null) {
                         upgradeToSceneWrite();
                         editorScene.setKeyframe(trackIndex, createKeyframeWithPopupTick, keyframe);
-                        editorState.markDirty();
+                        editorState.markHistoryDirty();
                         ImGui.closeCurrentPopup();
                     }
                 } else {
@@ -1983,7 +2015,7 @@ public class TimelineWindow {
                 redo.add(new EditorSceneHistoryAction.RemoveTrack(keyframeTrack.keyframeType, keyframeTrackToDelete));
 
                 editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Delete " + keyframeTrack.keyframeType.name() + " track"));
-                editorState.markDirty();
+                editorState.markHistoryDirty();
                 selectedKeyframesList.clear();
             }
         } else if (keyframeTrackToClear >= 0) {
@@ -2001,7 +2033,7 @@ public class TimelineWindow {
                 }
 
                 editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Clear " + keyframeTrack.keyframeType.name() + " track"));
-                editorState.markDirty();
+                editorState.markHistoryDirty();
                 selectedKeyframesList.clear();
             }
         }
@@ -2133,6 +2165,7 @@ public class TimelineWindow {
             ImGui.endPopup();
         }
 
+        boolean openImportCameraDataPopup = false;
         if (ImGui.beginPopup("##AddKeyframeElement")) {
             for (KeyframeType<?> type : KeyframeRegistry.getTypes()) {
                 if (!type.canBeCreatedNormally()) {
@@ -2148,12 +2181,94 @@ public class TimelineWindow {
                     redo.add(new EditorSceneHistoryAction.AddTrack(type, index));
 
                     editorScene.push(new EditorSceneHistoryEntry(undo, redo, "Create " + type.name() + " track"));
-                    editorState.markDirty();
+                    editorState.markHistoryDirty();
                     ImGui.closeCurrentPopup();
                 }
             }
+            ImGui.separator();
+            if (ImGui.selectable("Import Camera Data...")) {
+                openImportCameraDataPopup = true;
+            }
             ImGui.endPopup();
         }
+
+        if (openImportCameraDataPopup) {
+            ImGui.openPopup("##ImportCameraData");
+        }
+        if (ImGui.beginPopup("##ImportCameraData")) {
+            renderImportCameraDataPopup();
+            ImGui.endPopup();
+        }
+    }
+
+    private static void renderImportCameraDataPopup() {
+        ImGui.textUnformatted("Imports json (from 'Export Camera Json File') or csv");
+        ImGui.textUnformatted("(tick,x,y,z,yaw,pitch,roll,fov) at the cursor");
+
+        ImGui.setNextItemWidth(160);
+        ImGuiHelper.inputFloat("Framerate", importFramerate);
+        importFramerate[0] = Math.max(1, importFramerate[0]);
+
+        if (ImGui.checkbox("Simplify", importSimplify)) {
+            importSimplify = !importSimplify;
+        }
+        ImGuiHelper.tooltip("Removes samples that can be recreated by interpolating between the remaining ones");
+        if (importSimplify) {
+            ImGui.setNextItemWidth(160);
+            ImGuiHelper.inputFloat("Position Tolerance", importPositionTolerance);
+            ImGui.setNextItemWidth(160);
+            ImGuiHelper.inputFloat("Angle Tolerance", importAngleTolerance);
+            ImGui.setNextItemWidth(160);
+            ImGuiHelper.inputFloat("FOV Tolerance", importFovTolerance);
+            importPositionTolerance[0] = Math.max(0.0001f, importPositionTolerance[0]);
+            importAngleTolerance[0] = Math.max(0.0001f, importAngleTolerance[0]);
+            importFovTolerance[0] = Math.max(0.0001f, importFovTolerance[0]);
+        }
+
+        if (ImGui.button("Choose File")) {
+            ImGui.closeCurrentPopup();
+
+            CameraDataImporter.Options options = new CameraDataImporter.Options(importFramerate[0], cursorTicks, importSimplify,
+                importPositionTolerance[0], importAngleTolerance[0], importFovTolerance[0]);
+            Path gameDir = FabricLoader.getInstance().getGameDir();
+
+            AsyncFileDialogs.openFileDialog(gameDir.toString(), "Camera Data", "json", "csv").thenAccept(pathStr -> {
+                if (pathStr == null) {
+                    return;
+                }
+
+                // Parse off-thread, then apply on the main thread where the editor state is usually modified
+                CameraDataImporter.Samples samples;
+                try {
+                    samples = CameraDataImporter.read(Path.of(pathStr));
+                } catch (Exception e) {
+                    Flashback.LOGGER.error("Failed to read camera data from {}", pathStr, e);
+                    Minecraft.getInstance().execute(() -> ReplayUI.setInfoOverlay("Failed to import camera data: " + e.getMessage()));
+                    return;
+                }
+
+                Minecraft.getInstance().execute(() -> {
+                    ReplayServer replayServer = Flashback.getReplayServer();
+                    EditorState editorState = EditorStateManager.getCurrent();
+                    if (replayServer == null || editorState == null) {
+                        return;
+                    }
+
+                    CameraDataImporter.Result result;
+                    long stamp = editorState.acquireWrite();
+                    try {
+                        EditorScene scene = editorState.getCurrentScene(stamp);
+                        result = CameraDataImporter.importInto(scene, samples, options, replayServer.getTotalReplayTicks());
+                        editorState.markHistoryDirty();
+                    } finally {
+                        editorState.release(stamp);
+                    }
+
+                    ReplayUI.setInfoOverlay("Imported " + result.cameraKeyframes() + " camera and " + result.fovKeyframes() +
+                        " FOV keyframe(s) from " + result.samples() + " sample(s)");
+                });
+            });
+        }
     }
 
     private static void createNewKeyframe(int trackIndex, int tick, KeyframeType<?> keyframeType, KeyframeTrack keyframeTrack) {
@@ -2166,11 +2281,11 @@ public class TimelineWindow {
         Keyframe keyframe = keyframeType.createDirect();
         if (keyframe != null) {
             editorScene.setKeyframe(trackIndex, tick, keyframe);
-            editorState.markDirty();
+            editorState.markHistoryDirty();
         } else {
             if (keyframeType == TimelapseKeyframeType.INSTANCE && keyframeTrack.keyframesByTick.isEmpty()) {
                 editorScene.setKeyframe(trackIndex, tick, new TimelapseKeyframe(0));
-                editorState.markDirty();
+                editorState.markHistoryDirty();
             } else {
                 createKeyframeWithPopup = keyframeType.createPopup();
                 if (createKeyframeWithPopup != null) {
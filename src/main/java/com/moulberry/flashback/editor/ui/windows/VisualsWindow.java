@@ -313,6 +313,14 @@ public class VisualsWindow {
                 visuals.cameraPath = !visuals.cameraPath;
                 editorState.markDirty();
             }
+            if (visuals.cameraPath) {
+                ImGui.indent();
+                if (ImGui.checkbox("Show Entire Path", visuals.cameraPathShowEntirePath)) {
+                    visuals.cameraPathShowEntirePath = !visuals.cameraPathShowEntirePath;
+                    editorState.markDirty();
+                }
+                ImGui.unindent();
+            }
 
             visuals.sizing = ImGuiHelper.enumCombo("Sizing", visuals.sizing);
             if (visuals.sizing == Sizing.CHANGE_ASPECT_RATIO) {
@@ -322,8 +330,7 @@ public class VisualsWindow {
 
             if (!editorState.hideDuringExport.isEmpty()) {
                 if (ImGui.button("Unhide All Entities")) {
-                    editorState.hideDuringExport.clear();
-                    editorState.markDirty();
+                    editorState.clearHiddenDuringExport();
                 }
             }
         }
@@ -341,6 +348,7 @@ public class VisualsWindow {
                 KeyframeTrack keyframeTrack = scene.keyframeTracks.get(i);
                 if (keyframeTrack.enabled && keyframeTrack.keyframeType == keyframeType) {
                     scene.setKeyframe(i, replayServer.getReplayTick(), keyframe);
+                    editorState.markHistoryDirty();
                     return;
                 }
             }
@@ -350,6 +358,7 @@ public class VisualsWindow {
                 KeyframeTrack keyframeTrack = scene.keyframeTracks.get(i);
                 if (keyframeTrack.keyframeType == keyframeType) {
                     scene.setKeyframe(i, replayServer.getReplayTick(), keyframe);
+                    editorState.markHistoryDirty();
                     return;
                 }
             }
@@ -364,7 +373,7 @@ public class VisualsWindow {
                 ),
                 description
             ));
-            editorState.markDirty();
+            editorState.markHistoryDirty();
         } finally {
             editorState.release(stamp);
         }
@@ -48,6 +48,8 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
 
     private final AtomicReference<Throwable> threadedError = new AtomicReference<>(null);
 
+    private final ExportProfiler profiler;
+
     private record ImageFrame(long pointer, int size, int width, int height, int channels, int imageDepth, int stride, int pixelFormat,
                               @Nullable FloatBuffer audioBuffer) implements AutoCloseable {
         public void close() {
@@ -55,7 +57,9 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
         }
     }
 
-    public AsyncFFmpegVideoWriter(ExportSettings settings, String filename) {
+    public AsyncFFmpegVideoWriter(ExportSettings settings, String filename, ExportProfiler profiler) {
+        this.profiler = profiler;
+
         int width = settings.resolutionX();
         int height = settings.resolutionY();
 
@@ -154,10 +158,12 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
                             this.finishedWriting.set(true);
                             return;
                         } else {
+                            this.profiler.stall(ExportProfiler.Stage.ENCODE);
                             continue;
                         }
                     }
 
+                    long start = System.nanoTime();
                     int size = src.height * src.stride * Frame.pixelSize(src.imageDepth);
                     ByteBuffer buffer = MemoryUtil.memByteBuffer(src.pointer, size);
 
@@ -166,6 +172,7 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
                     if (src.audioBuffer != null) {
                         recorder.recordSamples(src.audioBuffer);
                     }
+                    this.profiler.record(ExportProfiler.Stage.ENCODE, start);
 
                     if (this.reusePictureData != null) {
                         if (this.reusePictureData.offer(src.pointer)) { // try adding to the reuse queue, ignore if full
@@ -233,10 +240,12 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
                             this.finishEncodeThread.set(true);
                             return;
                         } else {
+                            this.profiler.stall(ExportProfiler.Stage.RESCALE);
                             continue;
                         }
                     }
 
+                    long start = System.nanoTime();
                     img_convert_ctx = swscale.sws_getCachedContext(img_convert_ctx, src.width, src.height, src.pixelFormat,
                             dstWidth, dstHeight, dstPixelFormat, swscale.SWS_LANCZOS | swscale.SWS_ACCURATE_RND | swscale.SWS_FULL_CHR_H_INT,
                             null, null, (DoublePointer) null);
@@ -288,9 +297,14 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
 
                     swscale.sws_scale(img_convert_ctx, tmp_picture_ptr, tmp_picture.linesize(),
                             0, src.height, picture_ptr, picture.linesize());
+                    this.profiler.record(ExportProfiler.Stage.RESCALE, start);
 
-                    this.encodeQueue.put(new ImageFrame(tempPointerAddress, dstSize, dstWidth, dstHeight, dstChannels, dstDepth,
-                            dstWidth, dstPixelFormat, src.audioBuffer));
+                    ImageFrame dst = new ImageFrame(tempPointerAddress, dstSize, dstWidth, dstHeight, dstChannels, dstDepth,
+                            dstWidth, dstPixelFormat, src.audioBuffer);
+                    if (!this.encodeQueue.offer(dst)) {
+                        this.profiler.stall(ExportProfiler.Stage.RESCALE);
+                        this.encodeQueue.put(dst);
+                    }
                 } catch (Throwable t) {
                     try {
                         av_frame_free(picture);
@@ -338,15 +352,22 @@ public class AsyncFFmpegVideoWriter implements AutoCloseable, VideoWriter {
             throw new IllegalStateException("Cannot encode after finish()");
         }
 
+        if (this.rescaleQueue != null) {
+            this.profiler.gauge(ExportProfiler.Gauge.RESCALE_QUEUE, this.rescaleQueue.size());
+        }
+        this.profiler.gauge(ExportProfiler.Gauge.ENCODE_QUEUE, this.encodeQueue.size());
+
+        ImageFrame imageFrame = new ImageFrame(src.pixels, (int) src.size, src.getWidth(), src.getHeight(),
+                4, Frame.DEPTH_INT, src.getWidth(), ExportJob.SRC_PIXEL_FORMAT, audioBuffer);
+        ArrayBlockingQueue<ImageFrame> queue = this.rescaleQueue != null ? this.rescaleQueue : this.encodeQueue;
+        if (queue.offer(imageFrame)) {
+            return;
+        }
+        this.profiler.stall(ExportProfiler.Stage.SUBMIT);
+
         while (true) {
             try {
-                ImageFrame imageFrame = new ImageFrame(src.pixels, (int) src.size, src.getWidth(), src.getHeight(),
-                        4, Frame.DEPTH_INT, src.getWidth(), ExportJob.SRC_PIXEL_FORMAT, audioBuffer);
-                if (this.rescaleQueue != null) {
-                    this.rescaleQueue.put(imageFrame);
-                } else {
-                    this.encodeQueue.put(imageFrame);
-                }
+                queue.put(imageFrame);
                 break;
             } catch (InterruptedException ignored) {}
             checkEncodeError(src);
@@ -23,6 +23,8 @@ import com.moulberry.flashback.keyframe.handler.TickrateKeyframeCapture;
 import com.moulberry.flashback.state.EditorState;
 import com.moulberry.flashback.playback.ReplayServer;
 import com.moulberry.flashback.visuals.AccurateEntityPositionHandler;
+import com.moulberry.flashback.visuals.CameraRotation;
+import com.moulberry.flashback.visuals.CameraShakeTable;
 import com.moulberry.flashback.visuals.ReplayVisuals;
 import net.minecraft.ChatFormatting;
 import net.minecraft.Util;
@@ -73,11 +75,7 @@ public class ExportJob {
 
     private boolean showingDebug = false;
     private boolean pressedDebugKey = false;
-    private long serverTickTimeNanos = 0;
-    private long clientTickTimeNanos = 0;
-    private long renderTimeNanos = 0;
-    private long encodeTimeNanos = 0;
-    private long downloadTimeNanos = 0;
+    private final ExportProfiler profiler = new ExportProfiler();
     private boolean patreonLinkClicked = false;
 
     private int extraDummyFrames = 0;
@@ -90,6 +88,7 @@ public class ExportJob {
     private double audioSamples = 0.0;
 
     private final AtomicBoolean finishedServerTick = new AtomicBoolean(false);
+    private volatile Thread waitingForServerTick = null;
 
     public static final int SRC_PIXEL_FORMAT = avutil.AV_PIX_FMT_RGBA;
 
@@ -104,6 +103,11 @@ public class ExportJob {
 
     public void onFinishedServerTick() {
         this.finishedServerTick.set(true);
+
+        Thread waiting = this.waitingForServerTick;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
     }
 
     public boolean shouldChangeFramebufferSize() {
@@ -158,7 +162,7 @@ public class ExportJob {
             RenderTarget mainTarget = Minecraft.getInstance().mainRenderTarget;
             infoRenderTarget = new TextureTarget(mainTarget.width, mainTarget.height, false, Minecraft.ON_OSX);
 
-            try (VideoWriter encoder = createVideoWriter(this.settings, tempFileName);
+            try (VideoWriter encoder = createVideoWriter(this.settings, tempFileName, this.profiler);
                  SaveableFramebufferQueue downloader = new SaveableFramebufferQueue(this.settings.resolutionX(), this.settings.resolutionY())) {
                 doExport(encoder, downloader, infoRenderTarget,Path.of(this.settings.output().toAbsolutePath().toString().substring(0, this.settings.output().toAbsolutePath().toString().indexOf('.'))), "CJ.json");
             }
@@ -207,11 +211,11 @@ public class ExportJob {
         }
     }
 
-    private static VideoWriter createVideoWriter(ExportSettings settings, String tempFileName) {
+    private static VideoWriter createVideoWriter(ExportSettings settings, String tempFileName, ExportProfiler profiler) {
         if (settings.container() == VideoContainer.PNG_SEQUENCE) {
-            return new PNGSequenceVideoWriter(settings);
+            return new PNGSequenceVideoWriter(settings, profiler);
         } else {
-            return new AsyncFFmpegVideoWriter(settings, tempFileName);
+            return new AsyncFFmpegVideoWriter(settings, tempFileName, profiler);
         }
     }
 
@@ -292,8 +296,13 @@ public class ExportJob {
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
 
+        this.profiler.start();
+
         float oldfov = replayServer.savefov;
         for (int tickIndex = 0; tickIndex < ticks.size(); tickIndex++) {
+            long frameStart = System.nanoTime();
+            this.profiler.setCurrentFrame(tickIndex);
+
             TickInfo tickInfo = ticks.get(tickIndex);
             boolean frozen = tickInfo.frozen;
             this.currentTickDouble = tickInfo.serverTick;
@@ -306,14 +315,14 @@ public class ExportJob {
             // Wait until server is on correct replay tick
             long start = System.nanoTime();
             this.setServerTickAndWait(replayServer, targetServerTick, false);
-            serverTickTimeNanos += System.nanoTime() - start;
+            this.profiler.record(ExportProfiler.Stage.SERVER_TICK, start);
 
             // Tick client
             while (clientTickCount < (int) tickInfo.clientTick) {
                 start = System.nanoTime();
                 this.updateRandoms(random, mathRandom);
                 this.runClientTick(frozen);
-                clientTickTimeNanos += System.nanoTime() - start;
+                this.profiler.record(ExportProfiler.Stage.CLIENT_TICK, start);
 
                 clientTickCount += 1;
             }
@@ -394,9 +403,17 @@ public class ExportJob {
                     Vec3 positionVec3 = camera.getPosition();
                     keyframeData.put("position", new double[]{positionVec3.x, positionVec3.y, positionVec3.z});
 
-                    // Get rotation (yaw and pitch)
-                    keyframeData.put("yaw", camera.getYRot() - replayServer.ShakeY);
-                    keyframeData.put("pitch", camera.getXRot() - replayServer.ShakeX);
+                    // Get rotation (yaw and pitch), using the shake of this frame rather than the last rendered one
+                    float shakeYaw = 0.0f;
+                    float shakePitch = 0.0f;
+                    EditorState editorState = this.settings.editorState();
+                    if (editorState.replayVisuals.overrideCameraShake) {
+                        CameraShakeTable.Shake shake = CameraShakeTable.sample(editorState, CameraRotation.getExportTick(), replayServer.getTotalReplayTicks());
+                        shakeYaw = shake.yaw();
+                        shakePitch = shake.pitch();
+                    }
+                    keyframeData.put("yaw", camera.getYRot() - shakeYaw);
+                    keyframeData.put("pitch", camera.getXRot() - shakePitch);
                     keyframeData.put("roll", replayServer.saveroll);
 
                     // Get FOV (might need to get it from options or game settings)
@@ -503,13 +520,15 @@ public class ExportJob {
             RenderSystem.clear(16640, Minecraft.ON_OSX);
 
             // Perform rendering
+            start = System.nanoTime();
             PerfectFrames.waitUntilFrameReady();
+            this.profiler.record(ExportProfiler.Stage.FRAME_READY, start);
             FogRenderer.setupNoFog();
             RenderSystem.enableCull();
 
             start = System.nanoTime();
             Minecraft.getInstance().gameRenderer.render(timer, true);
-            renderTimeNanos += System.nanoTime() - start;
+            this.profiler.record(ExportProfiler.Stage.RENDER, start);
 
             renderTarget.unbindWrite();
 
@@ -518,6 +537,7 @@ public class ExportJob {
             // Capture audio if necessary
             FloatBuffer audioBuffer = null;
             if (this.settings.recordAudio()) {
+                start = System.nanoTime();
                 long device = Minecraft.getInstance().getSoundManager().soundEngine.library.currentDevice;
 
                 audioSamples += 48000 / this.settings.framerate();
@@ -528,6 +548,7 @@ public class ExportJob {
 
                 audioBuffer = ByteBuffer.allocateDirect(renderSamples * 4 * channels).order(ByteOrder.nativeOrder()).asFloatBuffer();
                 SOFTLoopback.alcRenderSamplesSOFT(device, audioBuffer, renderSamples);
+                this.profiler.record(ExportProfiler.Stage.AUDIO, start);
             }
 
             this.shouldChangeFramebufferSize = false;
@@ -538,6 +559,8 @@ public class ExportJob {
 
             saveable.audioBuffer = audioBuffer;
             downloader.startDownload(renderTarget, saveable, this.settings.ssaa());
+            this.profiler.gauge(ExportProfiler.Gauge.PENDING_READBACKS, downloader.pendingDownloads());
+            this.profiler.record(ExportProfiler.Stage.FRAME, frameStart);
 
             if (cancel) {
                 ExportJobQueue.drainingQueue = false;
@@ -624,6 +647,11 @@ public class ExportJob {
 
         submitDownloadedFrames(videoWriter, downloader, true);
         videoWriter.finish();
+
+        this.profiler.finish();
+        if (Flashback.getConfig().exportProfileReport) {
+            this.profiler.writeReport(this.settings);
+        }
     }
 
     private void updateRandoms(Random random, Random mathRandom) {
@@ -711,14 +739,18 @@ public class ExportJob {
     private void setServerTickAndWait(ReplayServer replayServer, int targetTick, boolean force) {
         if (force || replayServer.getReplayTick() != targetTick) {
             this.finishedServerTick.set(false);
+            this.waitingForServerTick = Thread.currentThread();
 
             replayServer.jumpToTick = targetTick;
             replayServer.replayPaused = true;
             replayServer.sendFinishedServerTick.set(true);
 
+            // Woken up by onFinishedServerTick, the timeout is only a safety net
             while (!this.finishedServerTick.compareAndExchange(true, false)) {
-                LockSupport.parkNanos("waiting for server thread", 100000L);
+                LockSupport.parkNanos("waiting for server thread", 50_000_000L);
             }
+
+            this.waitingForServerTick = null;
         }
     }
 
@@ -760,15 +792,15 @@ public class ExportJob {
         while (true) {
             long start = System.nanoTime();
             frame = downloader.finishDownload(drain);
-            downloadTimeNanos += System.nanoTime() - start;
 
             if (frame == null) {
                 break;
             }
+            this.profiler.record(ExportProfiler.Stage.READBACK, start);
 
             start = System.nanoTime();
             videoWriter.encode(frame.image(), frame.audioBuffer());
-            encodeTimeNanos += System.nanoTime() - start;
+            this.profiler.record(ExportProfiler.Stage.SUBMIT, start);
         }
     }
 
@@ -857,9 +889,9 @@ public class ExportJob {
             }
 
             if (showingDebug) {
-                lines.add("ST: " + serverTickTimeNanos/1000000 + ", CT: " + clientTickTimeNanos/1000000);
-                lines.add("RT: " + renderTimeNanos/1000000 + ", ET: " + encodeTimeNanos/1000000);
-                lines.add("DT: " + downloadTimeNanos/1000000);
+                lines.add("ST: " + this.profiler.totalMillis(ExportProfiler.Stage.SERVER_TICK) + ", CT: " + this.profiler.totalMillis(ExportProfiler.Stage.CLIENT_TICK));
+                lines.add("RT: " + this.profiler.totalMillis(ExportProfiler.Stage.RENDER) + ", ET: " + this.profiler.totalMillis(ExportProfiler.Stage.SUBMIT));
+                lines.add("DT: " + this.profiler.totalMillis(ExportProfiler.Stage.READBACK));
             } else {
                 lines.add("Press [F3] to show debug info");
             }
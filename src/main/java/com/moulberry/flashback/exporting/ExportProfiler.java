@@ -0,0 +1,239 @@
+package com.moulberry.flashback.exporting;
+
+import com.google.gson.JsonObject;
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.FlashbackGson;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Collects timings for each stage of an export. Every sample is also published as a JFR event, so a recording can be
+ * lined up with other JFR data. At the end of the export the samples can be summarised into a json report.
+ * <p>
+ * Each stage and gauge must only be recorded from a single thread. The report must only be written after the threads
+ * of the video writer have finished.
+ */
+public class ExportProfiler {
+
+    public enum Stage {
+        SERVER_TICK("server_tick"),
+        CLIENT_TICK("client_tick"),
+        FRAME_READY("frame_ready"),
+        RENDER("render"),
+        AUDIO("audio"),
+        READBACK("readback"),
+        SUBMIT("submit"),
+        RESCALE("rescale"),
+        ENCODE("encode"),
+        PNG_WRITE("png_write"),
+        FRAME("frame");
+
+        private final String id;
+
+        Stage(String id) {
+            this.id = id;
+        }
+    }
+
+    public enum Gauge {
+        PENDING_READBACKS("pending_readbacks"),
+        RESCALE_QUEUE("rescale_queue"),
+        ENCODE_QUEUE("encode_queue");
+
+        private final String id;
+
+        Gauge(String id) {
+            this.id = id;
+        }
+    }
+
+    @Name("flashback.ExportStage")
+    @Label("Export Stage")
+    @Category({"Flashback", "Export"})
+    @StackTrace(false)
+    public static class StageEvent extends Event {
+        @Label("Stage")
+        public String stage;
+        @Label("Frame")
+        public int frame;
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        public long durationNanos;
+    }
+
+    @Name("flashback.ExportQueueDepth")
+    @Label("Export Queue Depth")
+    @Category({"Flashback", "Export"})
+    @StackTrace(false)
+    public static class QueueDepthEvent extends Event {
+        @Label("Queue")
+        public String queue;
+        @Label("Depth")
+        public int depth;
+    }
+
+    private final LongArrayList[] samples = new LongArrayList[Stage.values().length];
+    private final long[] totals = new long[Stage.values().length];
+    private final long[] stalls = new long[Stage.values().length];
+
+    private final long[] gaugeSampleCount = new long[Gauge.values().length];
+    private final long[] gaugeSum = new long[Gauge.values().length];
+    private final int[] gaugeMax = new int[Gauge.values().length];
+
+    private volatile int currentFrame = 0;
+    private long startNanos = System.nanoTime();
+    private long endNanos = -1;
+
+    public ExportProfiler() {
+        for (int i = 0; i < this.samples.length; i++) {
+            this.samples[i] = new LongArrayList();
+        }
+    }
+
+    /**
+     * Marks the start of the frame loop, the throughput in the report is measured from here
+     */
+    public void start() {
+        this.startNanos = System.nanoTime();
+    }
+
+    public void setCurrentFrame(int frame) {
+        this.currentFrame = frame;
+    }
+
+    /**
+     * Records a stage which started at {@code startNanos} (from {@link System#nanoTime()}) and ended now
+     */
+    public void record(Stage stage, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        this.samples[stage.ordinal()].add(duration);
+        this.totals[stage.ordinal()] += duration;
+
+        StageEvent event = new StageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage.id;
+            event.frame = this.currentFrame;
+            event.durationNanos = duration;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records that a stage had to wait, either for input or for space to put its output
+     */
+    public void stall(Stage stage) {
+        this.stalls[stage.ordinal()] += 1;
+    }
+
+    public void gauge(Gauge gauge, int depth) {
+        this.gaugeSampleCount[gauge.ordinal()] += 1;
+        this.gaugeSum[gauge.ordinal()] += depth;
+        this.gaugeMax[gauge.ordinal()] = Math.max(this.gaugeMax[gauge.ordinal()], depth);
+
+        QueueDepthEvent event = new QueueDepthEvent();
+        if (event.isEnabled()) {
+            event.queue = gauge.id;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    public long totalMillis(Stage stage) {
+        return this.totals[stage.ordinal()] / 1000000;
+    }
+
+    public void finish() {
+        if (this.endNanos < 0) {
+            this.endNanos = System.nanoTime();
+        }
+    }
+
+    public JsonObject createReport(ExportSettings settings) {
+        this.finish();
+
+        int frames = this.samples[Stage.FRAME.ordinal()].size();
+        double elapsedSeconds = (this.endNanos - this.startNanos) / 1_000_000_000.0;
+
+        JsonObject report = new JsonObject();
+        report.addProperty("frames", frames);
+        report.addProperty("elapsedSeconds", elapsedSeconds);
+        report.addProperty("framesPerSecond", elapsedSeconds <= 0 ? 0 : frames / elapsedSeconds);
+        report.addProperty("resolution", settings.resolutionX() + "x" + settings.resolutionY());
+        report.addProperty("framerate", settings.framerate());
+        report.addProperty("container", settings.container().extension());
+        report.addProperty("encoder", settings.encoder());
+        report.addProperty("ssaa", settings.ssaa());
+
+        JsonObject stages = new JsonObject();
+        for (Stage stage : Stage.values()) {
+            long[] values = this.samples[stage.ordinal()].toLongArray();
+            if (values.length == 0 && this.stalls[stage.ordinal()] == 0) {
+                continue;
+            }
+            Arrays.sort(values);
+
+            JsonObject stageJson = new JsonObject();
+            stageJson.addProperty("count", values.length);
+            stageJson.addProperty("totalMillis", this.totals[stage.ordinal()] / 1_000_000.0);
+            stageJson.addProperty("p50Millis", percentile(values, 0.50) / 1_000_000.0);
+            stageJson.addProperty("p95Millis", percentile(values, 0.95) / 1_000_000.0);
+            stageJson.addProperty("maxMillis", values.length == 0 ? 0 : values[values.length - 1] / 1_000_000.0);
+            stageJson.addProperty("stalls", this.stalls[stage.ordinal()]);
+            stages.add(stage.id, stageJson);
+        }
+        report.add("stages", stages);
+
+        JsonObject queues = new JsonObject();
+        for (Gauge gauge : Gauge.values()) {
+            long count = this.gaugeSampleCount[gauge.ordinal()];
+            if (count == 0) {
+                continue;
+            }
+
+            JsonObject queueJson = new JsonObject();
+            queueJson.addProperty("samples", count);
+            queueJson.addProperty("average", (double) this.gaugeSum[gauge.ordinal()] / count);
+            queueJson.addProperty("max", this.gaugeMax[gauge.ordinal()]);
+            queues.add(gauge.id, queueJson);
+        }
+        report.add("queues", queues);
+
+        return report;
+    }
+
+    public void writeReport(ExportSettings settings) {
+        Path output = settings.output().toAbsolutePath();
+        Path reportPath;
+        if (Files.isDirectory(output)) {
+            reportPath = output.resolve("export-profile.json");
+        } else {
+            reportPath = output.resolveSibling(output.getFileName() + ".profile.json");
+        }
+
+        try {
+            Files.writeString(reportPath, FlashbackGson.PRETTY.toJson(this.createReport(settings)));
+            Flashback.LOGGER.info("Wrote export profile to {}", reportPath);
+        } catch (IOException e) {
+            Flashback.LOGGER.error("Failed to write export profile", e);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+}
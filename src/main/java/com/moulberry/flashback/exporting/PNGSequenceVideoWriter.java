@@ -32,8 +32,11 @@ public class PNGSequenceVideoWriter implements VideoWriter {
 
     private final ArrayBlockingQueue<NativeImage> encodeQueue;
 
-    public PNGSequenceVideoWriter(ExportSettings settings) {
+    private final ExportProfiler profiler;
+
+    public PNGSequenceVideoWriter(ExportSettings settings, ExportProfiler profiler) {
         this.settings = settings;
+        this.profiler = profiler;
         this.encodeQueue = new ArrayBlockingQueue<>(32);
 
         createEncodeThread().start();
@@ -59,10 +62,13 @@ public class PNGSequenceVideoWriter implements VideoWriter {
                             this.finishedWriting.set(true);
                             return;
                         } else {
+                            this.profiler.stall(ExportProfiler.Stage.PNG_WRITE);
                             continue;
                         }
                     }
 
+                    long start = System.nanoTime();
+
                     // Ensure pixels are fully opaque if transparency is disabled
                     if (!this.settings.transparent() && src.format().hasAlpha()) {
                         int alpha = 255 << src.format().alphaOffset();
@@ -107,6 +113,7 @@ public class PNGSequenceVideoWriter implements VideoWriter {
                     } else {
                         src.writeToFile(this.settings.output());
                     }
+                    this.profiler.record(ExportProfiler.Stage.PNG_WRITE, start);
                 } catch (Throwable t) {
                     this.threadedError.set(t);
                     this.finishEncodeThread.set(true);
@@ -152,6 +159,12 @@ public class PNGSequenceVideoWriter implements VideoWriter {
             throw new IllegalStateException("Cannot encode after finish()");
         }
 
+        this.profiler.gauge(ExportProfiler.Gauge.ENCODE_QUEUE, this.encodeQueue.size());
+        if (this.encodeQueue.offer(src)) {
+            return;
+        }
+        this.profiler.stall(ExportProfiler.Stage.SUBMIT);
+
         while (true) {
             try {
                 this.encodeQueue.put(src);
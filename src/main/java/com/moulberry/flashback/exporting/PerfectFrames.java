@@ -8,6 +8,7 @@ import net.minecraft.client.player.AbstractClientPlayer;
 import net.minecraft.client.resources.SkinManager;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
@@ -17,6 +18,7 @@ public class PerfectFrames {
     static List<Consumer<Boolean>> frexFlawlessFrames = new ArrayList<>();
 
     private static final Set<UUID> ignoreSkinLoading = new HashSet<>();
+    private static final long SKIN_LOADING_TIMEOUT_MILLIS = 15000;
 
     public static void enable() {
         isEnabled = true;
@@ -39,16 +41,33 @@ public class PerfectFrames {
     }
 
     public static void waitUntilFrameReady() {
+        Thread thread = Thread.currentThread();
+        Set<CompletableFuture<?>> wakeOnCompletion = Collections.newSetFromMap(new IdentityHashMap<>());
+
         long start = System.currentTimeMillis();
-        while (!isFrameReady(start)) {
-            LockSupport.parkNanos("waiting for frame to be ready", 100000L);
+        while (true) {
+            CompletableFuture<?> pending = findPendingSkin(start);
+            if (pending == null) {
+                return;
+            }
+
+            if (wakeOnCompletion.add(pending)) {
+                pending.whenComplete((result, throwable) -> LockSupport.unpark(thread));
+            }
+
+            // Submitting a task to the main thread also unparks it, so skin textures being uploaded wake us up too
+            long remaining = start + SKIN_LOADING_TIMEOUT_MILLIS - System.currentTimeMillis() + 1;
+            LockSupport.parkNanos("waiting for frame to be ready", Math.max(1, remaining) * 1_000_000L);
             while (Minecraft.getInstance().pollTask()) {}
         }
     }
 
-    private static boolean isFrameReady(long start) {
+    /**
+     * @return a skin that still needs to load before the frame is ready, or null if the frame is ready
+     */
+    private static CompletableFuture<?> findPendingSkin(long start) {
         long current = System.currentTimeMillis();
-        boolean forceFrameReady = current - start > 15000;
+        boolean forceFrameReady = current - start > SKIN_LOADING_TIMEOUT_MILLIS;
 
         ClientLevel level = Minecraft.getInstance().level;
         SkinManager skinManager = Minecraft.getInstance().getSkinManager();
@@ -75,14 +94,17 @@ public class PerfectFrames {
                         continue;
                     }
                     PlayerInfo playerInfo = player.getPlayerInfo();
-                    if (playerInfo != null && !skinManager.getOrLoad(playerInfo.getProfile()).isDone()) {
-                        return false;
+                    if (playerInfo != null) {
+                        CompletableFuture<?> skin = skinManager.getOrLoad(playerInfo.getProfile());
+                        if (!skin.isDone()) {
+                            return skin;
+                        }
                     }
                 }
             }
         }
 
-        return true;
+        return null;
     }
 
 }
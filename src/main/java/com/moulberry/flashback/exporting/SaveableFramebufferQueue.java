@@ -94,6 +94,10 @@ public class SaveableFramebufferQueue implements AutoCloseable {
         this.waiting.add(texture);
     }
 
+    public int pendingDownloads() {
+        return this.waiting.size();
+    }
+
     record DownloadedFrame(NativeImage image, @Nullable FloatBuffer audioBuffer) {}
 
     public @Nullable DownloadedFrame finishDownload(boolean drain) {
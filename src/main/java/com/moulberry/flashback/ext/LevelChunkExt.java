@@ -2,11 +2,18 @@ package com.moulberry.flashback.ext;
 
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+import java.util.function.Consumer;
 
 public interface LevelChunkExt {
 
     BlockState flashback$setBlockStateWithoutUpdates(BlockPos blockPos, BlockState blockState);
+    int flashback$setSectionBlocksWithoutUpdates(int sectionY, PalettedContainer<BlockState> blocks, BlockState skipState, Consumer<BlockPos> changed);
+    int flashback$getBlockModCount();
     int flashback$getCachedChunkId();
     void flashback$setCachedChunkId(int id);
+    void flashback$setOverrideVariant(int chunkId, int overrideVersion);
+    boolean flashback$isOverrideVariant(int chunkId, int overrideVersion);
 
 }
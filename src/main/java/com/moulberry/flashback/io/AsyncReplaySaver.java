@@ -1,9 +1,12 @@
 package com.moulberry.flashback.io;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.mojang.authlib.GameProfile;
 import com.mojang.blaze3d.platform.NativeImage;
 import com.moulberry.flashback.CachedChunkPacket;
 import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.FlashbackGson;
 import com.moulberry.flashback.SneakyThrow;
 import com.moulberry.flashback.TempFolderProvider;
 import com.moulberry.flashback.action.ActionConfigurationPacket;
@@ -11,6 +14,8 @@ import com.moulberry.flashback.action.ActionCreateLocalPlayer;
 import com.moulberry.flashback.action.ActionGamePacket;
 import com.moulberry.flashback.action.ActionLevelChunkCached;
 import com.moulberry.flashback.playback.ReplayServer;
+import com.moulberry.flashback.record.FlashbackChunkMeta;
+import com.moulberry.flashback.record.PacketBatch;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
@@ -30,12 +35,17 @@ import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
 import net.minecraft.network.protocol.game.ClientboundLoginPacket;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -46,15 +56,42 @@ import java.util.function.Consumer;
 
 public class AsyncReplaySaver {
 
-    private final ArrayBlockingQueue<Consumer<ReplayWriter>> tasks = new ArrayBlockingQueue<>(1024);
+    public static final int QUEUE_CAPACITY = 1024;
+
+    private final ArrayBlockingQueue<Consumer<ReplayWriter>> tasks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
     private final AtomicReference<Throwable> error = new AtomicReference<>(null);
     private final AtomicBoolean shouldStop = new AtomicBoolean(false);
     private final AtomicBoolean hasStopped = new AtomicBoolean(false);
 
     private final Path recordFolder;
+    private final RecordingSegmentLog segmentLog;
+
+    private FileChannel levelChunkCacheChannel = null;
+    private int levelChunkCacheChannelIndex = -1;
+
+    // Health counters, each one is only written by a single thread so they are plain volatile fields
+    // Written by the saver thread
+    private volatile long writtenPackets = 0;
+    private volatile long writtenBytes = 0;
+    private volatile long writtenChunkPackets = 0;
+    private volatile long chunkCacheHits = 0;
+    // Written by the recording thread. Custom tasks can also be submitted from other threads, a lost update is harmless
+    private volatile int queueStalls = 0;
+    private int chunkMaxQueueDepth = 0;
+    private int chunkQueueStalls = 0;
+
+    // Values of the counters when the previous replay chunk was written, only used by the saver thread
+    private long chunkStartPackets = 0;
+    private long chunkStartBytes = 0;
+    private long chunkStartChunkPackets = 0;
+    private long chunkStartChunkCacheHits = 0;
+    private long chunkStartNanos = System.nanoTime();
+    private final Map<String, FlashbackChunkMeta.Stats> chunkStats = new LinkedHashMap<>();
+    private int writtenChunks = 0;
 
     public AsyncReplaySaver(RegistryAccess registryAccess) {
         this.recordFolder = TempFolderProvider.createTemp(TempFolderProvider.TempFolderType.RECORDING, UUID.randomUUID());
+        this.segmentLog = new RecordingSegmentLog(this.recordFolder, chunkName(0));
 
         ReplayWriter replayWriter = new ReplayWriter(registryAccess);
         new Thread(() -> {
@@ -64,14 +101,24 @@ public class AsyncReplaySaver {
 
                     if (task == null) {
                         if (this.shouldStop.get()) {
+                            this.closeLevelChunkCacheChannel();
+                            this.segmentLog.close();
                             this.hasStopped.set(true);
                             return;
                         } else {
+                            this.segmentLog.commit(replayWriter, false, this::syncLevelChunkCache);
                             continue;
                         }
                     }
 
+                    int writtenBefore = replayWriter.writtenBytes();
                     task.accept(replayWriter);
+                    int writtenAfter = replayWriter.writtenBytes();
+                    if (writtenAfter > writtenBefore) {
+                        this.writtenBytes += writtenAfter - writtenBefore;
+                    }
+
+                    this.segmentLog.commit(replayWriter, false, this::syncLevelChunkCache);
                 } catch (Throwable t) {
                     this.error.set(t);
                     this.hasStopped.set(true);
@@ -88,118 +135,169 @@ public class AsyncReplaySaver {
             throw new IllegalStateException("Cannot submit task to AsyncReplayWriter that has already stopped");
         }
 
-        while (true) {
-            try {
-                this.tasks.put(consumer);
-                break;
-            } catch (InterruptedException ignored) {}
+        if (!this.tasks.offer(consumer)) {
+            // The saver thread is falling behind, the recording thread will now block until it catches up
+            this.queueStalls += 1;
+            this.chunkQueueStalls += 1;
+
+            while (true) {
+                try {
+                    this.tasks.put(consumer);
+                    break;
+                } catch (InterruptedException ignored) {}
+            }
+        }
+
+        int queueDepth = this.tasks.size();
+        if (queueDepth > this.chunkMaxQueueDepth) {
+            this.chunkMaxQueueDepth = queueDepth;
         }
     }
 
+    public long writtenPackets() {
+        return this.writtenPackets;
+    }
+
+    public long writtenBytes() {
+        return this.writtenBytes;
+    }
+
+    public long writtenChunkPackets() {
+        return this.writtenChunkPackets;
+    }
+
+    public long chunkCacheHits() {
+        return this.chunkCacheHits;
+    }
+
+    public int queueDepth() {
+        return this.tasks.size();
+    }
+
+    public int queueStalls() {
+        return this.queueStalls;
+    }
+
     private final Int2ObjectMap<List<CachedChunkPacket>> cachedChunkPackets = new Int2ObjectOpenHashMap<>();
     private int totalWrittenChunkPackets = 0;
 
     public void writeGamePackets(StreamCodec<ByteBuf, Packet<? super ClientGamePacketListener>> gamePacketCodec,
                                  List<Packet<? super ClientGamePacketListener>> packets) {
         List<Packet<? super ClientGamePacketListener>> packetCopy = new ArrayList<>(packets);
-        this.submit(writer -> {
-            RegistryFriendlyByteBuf chunkCacheOutput = null;
-            int lastChunkCacheIndex = -1;
-
-            FriendlyByteBuf customPayloadTempBuffer = null;
-
-            for (Packet<? super ClientGamePacketListener> packet : packetCopy) {
-                if (packet instanceof ClientboundLevelChunkWithLightPacket levelChunkPacket) {
-                    int index = -1;
-
-                    CachedChunkPacket cachedChunkPacket = new CachedChunkPacket(levelChunkPacket, -1);
-                    int hashCode = cachedChunkPacket.hashCode();
-
-                    boolean add = true;
-
-                    List<CachedChunkPacket> cached = this.cachedChunkPackets.get(hashCode);
-                    if (cached == null) {
-                        cached = new ArrayList<>();
-                        this.cachedChunkPackets.put(hashCode, cached);
-                    } else {
-                        for (CachedChunkPacket existingChunkPacket : cached) {
-                            if (existingChunkPacket.equals(cachedChunkPacket)) {
-                                add = false;
-                                index = existingChunkPacket.index;
-                                break;
-                            }
-                        }
-                    }
+        this.submit(writer -> this.writeGamePackets(writer, gamePacketCodec, packetCopy));
+    }
+
+    /**
+     * Writes a range of packets from a batch without copying them. The batch must not be changed until the task has run
+     */
+    public void writeGamePackets(StreamCodec<ByteBuf, Packet<? super ClientGamePacketListener>> gamePacketCodec,
+                                 PacketBatch batch, int from, int to) {
+        this.submit(writer -> this.writeGamePackets(writer, gamePacketCodec, batch.view(from, to)));
+    }
 
-                    if (add) {
-                        index = this.totalWrittenChunkPackets;
-                        this.totalWrittenChunkPackets += 1;
+    private void writeGamePackets(ReplayWriter writer, StreamCodec<ByteBuf, Packet<? super ClientGamePacketListener>> gamePacketCodec,
+                                  List<Packet<? super ClientGamePacketListener>> packets) {
+        this.writtenPackets += packets.size();
 
-                        // Write chunk cache file if necessary
-                        int cacheIndex = index / ReplayServer.CHUNK_CACHE_SIZE;
-                        if (lastChunkCacheIndex >= 0 && cacheIndex != lastChunkCacheIndex) {
-                            this.writeChunkCacheFile(chunkCacheOutput, lastChunkCacheIndex);
-                            chunkCacheOutput = null;
-                        }
-                        lastChunkCacheIndex = cacheIndex;
+        RegistryFriendlyByteBuf chunkCacheOutput = null;
+        int lastChunkCacheIndex = -1;
 
-                        // Create new chunk cache output buffer if necessary
-                        if (chunkCacheOutput == null) {
-                            chunkCacheOutput = new RegistryFriendlyByteBuf(Unpooled.buffer(), writer.registryAccess());
-                        }
+        FriendlyByteBuf customPayloadTempBuffer = null;
 
-                        // Write placeholder value for size
-                        int startWriterIndex = chunkCacheOutput.writerIndex();
-                        chunkCacheOutput.writeInt(-1);
+        for (int i = 0; i < packets.size(); i++) {
+            Packet<? super ClientGamePacketListener> packet = packets.get(i);
+            if (packet instanceof ClientboundLevelChunkWithLightPacket levelChunkPacket) {
+                int index = -1;
+
+                CachedChunkPacket cachedChunkPacket = new CachedChunkPacket(levelChunkPacket, -1);
+                int hashCode = cachedChunkPacket.hashCode();
+
+                boolean add = true;
+                this.writtenChunkPackets += 1;
+
+                List<CachedChunkPacket> cached = this.cachedChunkPackets.get(hashCode);
+                if (cached == null) {
+                    cached = new ArrayList<>();
+                    this.cachedChunkPackets.put(hashCode, cached);
+                } else {
+                    for (CachedChunkPacket existingChunkPacket : cached) {
+                        if (existingChunkPacket.equals(cachedChunkPacket)) {
+                            add = false;
+                            index = existingChunkPacket.index;
+                            this.chunkCacheHits += 1;
+                            break;
+                        }
+                    }
+                }
 
-                        // Write chunk packet
-                        gamePacketCodec.encode(chunkCacheOutput, packet);
-                        int endWriterIndex = chunkCacheOutput.writerIndex();
+                if (add) {
+                    index = this.totalWrittenChunkPackets;
+                    this.totalWrittenChunkPackets += 1;
 
-                        // Write real size value
-                        int size = endWriterIndex - startWriterIndex - 4;
-                        chunkCacheOutput.writerIndex(startWriterIndex);
-                        chunkCacheOutput.writeInt(size);
-                        chunkCacheOutput.writerIndex(endWriterIndex);
+                    // Write chunk cache file if necessary
+                    int cacheIndex = index / ReplayServer.CHUNK_CACHE_SIZE;
+                    if (lastChunkCacheIndex >= 0 && cacheIndex != lastChunkCacheIndex) {
+                        this.writeChunkCacheFile(chunkCacheOutput, lastChunkCacheIndex);
+                        chunkCacheOutput = null;
+                    }
+                    lastChunkCacheIndex = cacheIndex;
 
-                        // Add to list so that this chunk can be reused
-                        cachedChunkPacket.index = index;
-                        cached.add(cachedChunkPacket);
+                    // Create new chunk cache output buffer if necessary
+                    if (chunkCacheOutput == null) {
+                        chunkCacheOutput = new RegistryFriendlyByteBuf(Unpooled.buffer(), writer.registryAccess());
                     }
 
-                    writer.startAction(ActionLevelChunkCached.INSTANCE);
-                    writer.friendlyByteBuf().writeVarInt(index);
-                    writer.finishAction(ActionLevelChunkCached.INSTANCE);
+                    // Write placeholder value for size
+                    int startWriterIndex = chunkCacheOutput.writerIndex();
+                    chunkCacheOutput.writeInt(-1);
+
+                    // Write chunk packet
+                    gamePacketCodec.encode(chunkCacheOutput, packet);
+                    int endWriterIndex = chunkCacheOutput.writerIndex();
 
-                    continue;
+                    // Write real size value
+                    int size = endWriterIndex - startWriterIndex - 4;
+                    chunkCacheOutput.writerIndex(startWriterIndex);
+                    chunkCacheOutput.writeInt(size);
+                    chunkCacheOutput.writerIndex(endWriterIndex);
+
+                    // Add to list so that this chunk can be reused
+                    cachedChunkPacket.index = index;
+                    cached.add(cachedChunkPacket);
                 }
 
-                if (packet instanceof ClientboundCustomPayloadPacket) {
-                    // Some mods might throw errors when encoding packets, so this
-                    // attempts to encode the packet before starting the action
-                    try {
-                        if (customPayloadTempBuffer == null) {
-                            customPayloadTempBuffer = new RegistryFriendlyByteBuf(Unpooled.buffer(), writer.registryAccess());
-                        }
+                writer.startAction(ActionLevelChunkCached.INSTANCE);
+                writer.friendlyByteBuf().writeVarInt(index);
+                writer.finishAction(ActionLevelChunkCached.INSTANCE);
+
+                continue;
+            }
+
+            if (packet instanceof ClientboundCustomPayloadPacket) {
+                // Some mods might throw errors when encoding packets, so this
+                // attempts to encode the packet before starting the action
+                try {
+                    if (customPayloadTempBuffer == null) {
+                        customPayloadTempBuffer = new RegistryFriendlyByteBuf(Unpooled.buffer(), writer.registryAccess());
+                    }
 
-                        customPayloadTempBuffer.clear();
-                        gamePacketCodec.encode(customPayloadTempBuffer, packet);
+                    customPayloadTempBuffer.clear();
+                    gamePacketCodec.encode(customPayloadTempBuffer, packet);
 
-                        writer.startAction(ActionGamePacket.INSTANCE);
-                        writer.friendlyByteBuf().writeBytes(customPayloadTempBuffer);
-                        writer.finishAction(ActionGamePacket.INSTANCE);
-                    } catch (Exception ignored) {}
-                } else {
                     writer.startAction(ActionGamePacket.INSTANCE);
-                    gamePacketCodec.encode(writer.friendlyByteBuf(), packet);
+                    writer.friendlyByteBuf().writeBytes(customPayloadTempBuffer);
                     writer.finishAction(ActionGamePacket.INSTANCE);
-                }
+                } catch (Exception ignored) {}
+            } else {
+                writer.startAction(ActionGamePacket.INSTANCE);
+                gamePacketCodec.encode(writer.friendlyByteBuf(), packet);
+                writer.finishAction(ActionGamePacket.INSTANCE);
             }
+        }
 
-            if (lastChunkCacheIndex >= 0) {
-                writeChunkCacheFile(chunkCacheOutput, lastChunkCacheIndex);
-            }
-        });
+        if (lastChunkCacheIndex >= 0) {
+            writeChunkCacheFile(chunkCacheOutput, lastChunkCacheIndex);
+        }
     }
 
     private void writeChunkCacheFile(RegistryFriendlyByteBuf chunkCacheOutput, int index) {
@@ -208,27 +306,65 @@ public class AsyncReplaySaver {
         }
 
         try {
-            byte[] bytes = new byte[chunkCacheOutput.writerIndex()];
-            chunkCacheOutput.getBytes(0, bytes);
+            if (this.levelChunkCacheChannelIndex != index) {
+                this.closeLevelChunkCacheChannel();
+
+                Path levelChunkCachePath = this.recordFolder.resolve("level_chunk_caches").resolve(""+index);
+                Files.createDirectories(levelChunkCachePath.getParent());
+                this.levelChunkCacheChannel = FileChannel.open(levelChunkCachePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+                this.levelChunkCacheChannelIndex = index;
+            }
 
-            Path levelChunkCachePath = this.recordFolder.resolve("level_chunk_caches").resolve(""+index);
-            Files.createDirectories(levelChunkCachePath.getParent());
-            Files.write(levelChunkCachePath, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            // Durability is handled by the group commit in RecordingSegmentLog instead of syncing every write
+            ByteBuffer byteBuffer = chunkCacheOutput.nioBuffer(0, chunkCacheOutput.writerIndex());
+            this.writtenBytes += byteBuffer.remaining();
+            while (byteBuffer.hasRemaining()) {
+                this.levelChunkCacheChannel.write(byteBuffer);
+            }
         } catch (IOException e) {
             SneakyThrow.sneakyThrow(e);
         }
     }
 
+    private void syncLevelChunkCache() throws IOException {
+        if (this.levelChunkCacheChannel != null) {
+            this.levelChunkCacheChannel.force(false);
+        }
+    }
+
+    private void closeLevelChunkCacheChannel() throws IOException {
+        if (this.levelChunkCacheChannel != null) {
+            this.levelChunkCacheChannel.force(false);
+            this.levelChunkCacheChannel.close();
+            this.levelChunkCacheChannel = null;
+            this.levelChunkCacheChannelIndex = -1;
+        }
+    }
+
     public void writeConfigurationPackets(StreamCodec<ByteBuf, Packet<? super ClientConfigurationPacketListener>> configurationPacketCodec,
                                  List<Packet<? super ClientConfigurationPacketListener>> packets) {
         List<Packet<? super ClientConfigurationPacketListener>> packetCopy = new ArrayList<>(packets);
-        this.submit(writer -> {
-            for (Packet<? super ClientConfigurationPacketListener> packet : packetCopy) {
-                writer.startAction(ActionConfigurationPacket.INSTANCE);
-                configurationPacketCodec.encode(writer.friendlyByteBuf(), packet);
-                writer.finishAction(ActionConfigurationPacket.INSTANCE);
-            }
-        });
+        this.submit(writer -> this.writeConfigurationPackets(writer, configurationPacketCodec, packetCopy));
+    }
+
+    /**
+     * Writes a range of packets from a batch without copying them. The batch must not be changed until the task has run
+     */
+    public void writeConfigurationPackets(StreamCodec<ByteBuf, Packet<? super ClientConfigurationPacketListener>> configurationPacketCodec,
+                                          PacketBatch batch, int from, int to) {
+        this.submit(writer -> this.writeConfigurationPackets(writer, configurationPacketCodec, batch.view(from, to)));
+    }
+
+    private void writeConfigurationPackets(ReplayWriter writer, StreamCodec<ByteBuf, Packet<? super ClientConfigurationPacketListener>> configurationPacketCodec,
+                                           List<Packet<? super ClientConfigurationPacketListener>> packets) {
+        this.writtenPackets += packets.size();
+
+        for (int i = 0; i < packets.size(); i++) {
+            writer.startAction(ActionConfigurationPacket.INSTANCE);
+            configurationPacketCodec.encode(writer.friendlyByteBuf(), packets.get(i));
+            writer.finishAction(ActionConfigurationPacket.INSTANCE);
+        }
     }
 
     public void writeIcon(NativeImage nativeImage) {
@@ -255,25 +391,110 @@ public class AsyncReplaySaver {
         }
     }
 
-    public void writeReplayChunk(String chunkName, String metadata) {
+    public void writeMetadata(JsonObject metadata) {
         this.submit(writer -> {
             try {
-                Path chunkFile = this.recordFolder.resolve(chunkName);
-                Files.write(chunkFile, writer.popBytes());
+                this.writeMetadataFile(metadata);
+            } catch (IOException e) {
+                SneakyThrow.sneakyThrow(e);
+            }
+        });
+    }
+
+    public void writeReplayChunk(String chunkName, JsonObject metadata) {
+        int maxQueueDepth = this.chunkMaxQueueDepth;
+        int queueStalls = this.chunkQueueStalls;
+        this.chunkMaxQueueDepth = 0;
+        this.chunkQueueStalls = 0;
+
+        this.submit(writer -> {
+            try {
+                this.syncLevelChunkCache();
+
+                long nanos = System.nanoTime();
+                this.chunkStats.put(chunkName, new FlashbackChunkMeta.Stats(
+                    this.writtenPackets - this.chunkStartPackets,
+                    this.writtenBytes - this.chunkStartBytes,
+                    (int) (this.writtenChunkPackets - this.chunkStartChunkPackets),
+                    (int) (this.chunkCacheHits - this.chunkStartChunkCacheHits),
+                    maxQueueDepth,
+                    queueStalls,
+                    (nanos - this.chunkStartNanos) / 1_000_000L
+                ));
+                this.chunkStartPackets = this.writtenPackets;
+                this.chunkStartBytes = this.writtenBytes;
+                this.chunkStartChunkPackets = this.writtenChunkPackets;
+                this.chunkStartChunkCacheHits = this.chunkCacheHits;
+                this.chunkStartNanos = nanos;
 
-                Path metaFile = this.recordFolder.resolve("metadata.json");
-                if (Files.exists(metaFile)) {
-                    Files.move(metaFile, this.recordFolder.resolve("metadata.json.old"), StandardCopyOption.ATOMIC_MOVE,
-                            StandardCopyOption.REPLACE_EXISTING);
+                Path chunkFile = this.recordFolder.resolve(chunkName);
+                try (FileChannel channel = FileChannel.open(chunkFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(writer.popBytes());
+                    while (byteBuffer.hasRemaining()) {
+                        channel.write(byteBuffer);
+                    }
+                    channel.force(false);
                 }
 
-                Files.writeString(metaFile, metadata);
+                this.writeMetadataFile(metadata);
+
+                // The chunk and the metadata listing it are now durable, so the segment log mirroring it can be discarded
+                this.writtenChunks += 1;
+                this.segmentLog.reset(chunkName(this.writtenChunks));
             } catch (IOException e) {
                 SneakyThrow.sneakyThrow(e);
             }
         });
     }
 
+    private void writeMetadataFile(JsonObject metadata) throws IOException {
+        // The stats are only known by this thread, so they are added to the metadata here
+        JsonElement chunks = metadata.get("chunks");
+        if (chunks != null && chunks.isJsonObject()) {
+            for (Map.Entry<String, FlashbackChunkMeta.Stats> entry : this.chunkStats.entrySet()) {
+                JsonElement chunkMeta = chunks.getAsJsonObject().get(entry.getKey());
+                if (chunkMeta != null && chunkMeta.isJsonObject()) {
+                    chunkMeta.getAsJsonObject().add("stats", entry.getValue().toJson());
+                }
+            }
+        }
+
+        // Written to a temporary file and synced before being moved into place, so that a crash leaves either the old or
+        // the new metadata. The exporter falls back to metadata.json.old if it happens between the two moves
+        Path metaFile = this.recordFolder.resolve("metadata.json");
+        Path tempFile = this.recordFolder.resolve("metadata.json.tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(FlashbackGson.PRETTY.toJson(metadata).getBytes(StandardCharsets.UTF_8));
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            channel.force(false);
+        }
+
+        if (Files.exists(metaFile)) {
+            Files.move(metaFile, this.recordFolder.resolve("metadata.json.old"), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tempFile, metaFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        this.syncRecordFolder();
+    }
+
+    /**
+     * Makes the renames & newly created files in the record folder durable. Not supported on every platform (e.g. Windows
+     * can't open a directory), in which case the renames are only as durable as the filesystem makes them
+     */
+    private void syncRecordFolder() {
+        try (FileChannel channel = FileChannel.open(this.recordFolder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {}
+    }
+
+    private static String chunkName(int index) {
+        return "c" + index + ".flashback";
+    }
+
     private void waitForTasks() {
         checkForError();
 
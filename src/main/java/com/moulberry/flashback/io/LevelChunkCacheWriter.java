@@ -0,0 +1,113 @@
+package com.moulberry.flashback.io;
+
+import com.moulberry.flashback.playback.ReplayServer;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams raw level chunk cache entries into {@code level_chunk_caches/N} zip entries of {@link ReplayServer#CHUNK_CACHE_SIZE}
+ * entries each. Entries are deduplicated by a hash of their encoded bytes, so nothing is ever decoded or kept in memory
+ * apart from the hashes themselves.
+ */
+public class LevelChunkCacheWriter {
+
+    private final ZipOutputStream zipOut;
+    private final MessageDigest digest;
+    private final Object2IntMap<RawChunkHash> indexByHash = new Object2IntOpenHashMap<>();
+
+    private int written = 0;
+    private int deduplicated = 0;
+    private int openCacheIndex = -1;
+
+    public LevelChunkCacheWriter(ZipOutputStream zipOut) {
+        this.zipOut = zipOut;
+        this.indexByHash.defaultReturnValue(-1);
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes a single encoded chunk packet (without the size prefix) and returns the index it can be referenced by
+     * with {@link com.moulberry.flashback.action.ActionLevelChunkCached}. If an identical entry was already written,
+     * its index is returned instead.
+     */
+    public int write(byte[] bytes, int offset, int length) throws IOException {
+        this.digest.update(bytes, offset, length);
+        RawChunkHash hash = new RawChunkHash(this.digest.digest());
+
+        int existing = this.indexByHash.getInt(hash);
+        if (existing >= 0) {
+            this.deduplicated += 1;
+            return existing;
+        }
+
+        int index = this.written;
+        int cacheIndex = index / ReplayServer.CHUNK_CACHE_SIZE;
+        if (cacheIndex != this.openCacheIndex) {
+            if (this.openCacheIndex >= 0) {
+                this.zipOut.closeEntry();
+            }
+            this.zipOut.putNextEntry(new ZipEntry("level_chunk_caches/" + cacheIndex));
+            this.openCacheIndex = cacheIndex;
+        }
+
+        this.zipOut.write(length >>> 24);
+        this.zipOut.write(length >>> 16);
+        this.zipOut.write(length >>> 8);
+        this.zipOut.write(length);
+        this.zipOut.write(bytes, offset, length);
+
+        this.indexByHash.put(hash, index);
+        this.written += 1;
+        return index;
+    }
+
+    public void finish() throws IOException {
+        if (this.openCacheIndex >= 0) {
+            this.zipOut.closeEntry();
+            this.openCacheIndex = -1;
+        }
+    }
+
+    public int getWrittenCount() {
+        return this.written;
+    }
+
+    public int getDeduplicatedCount() {
+        return this.deduplicated;
+    }
+
+    private static final class RawChunkHash {
+        private final byte[] hash;
+        private final int hashCode;
+
+        private RawChunkHash(byte[] hash) {
+            this.hash = hash;
+            this.hashCode = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RawChunkHash that)) return false;
+            return this.hashCode == that.hashCode && Arrays.equals(this.hash, that.hash);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.moulberry.flashback.io;
+
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.playback.ReplayServer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams the raw entries of every level chunk cache inside a replay, both the legacy single {@code level_chunk_cache}
+ * and the {@code level_chunk_caches/N} blocks, without decoding any packets.
+ */
+public class LevelChunkCaches {
+
+    @FunctionalInterface
+    public interface EntryVisitor {
+        /**
+         * @param index the index used by {@link com.moulberry.flashback.action.ActionLevelChunkCached} in the source replay
+         * @param bytes a reused buffer containing the encoded packet, only valid until this method returns
+         * @param length the number of valid bytes in the buffer
+         */
+        void visit(int index, byte[] bytes, int length) throws IOException;
+    }
+
+    public static void forEachEntry(FileSystem fileSystem, EntryVisitor visitor) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+
+        Path levelChunkCachePath = fileSystem.getPath("/level_chunk_cache");
+        if (Files.exists(levelChunkCachePath)) {
+            buffer = visitCacheFile(levelChunkCachePath, 0, buffer, visitor);
+        }
+
+        int index = 0;
+        while (true) {
+            levelChunkCachePath = fileSystem.getPath("/level_chunk_caches/"+index);
+            if (Files.exists(levelChunkCachePath)) {
+                buffer = visitCacheFile(levelChunkCachePath, index * ReplayServer.CHUNK_CACHE_SIZE, buffer, visitor);
+                index += 1;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static byte[] visitCacheFile(Path path, int chunkCacheIndex, byte[] buffer, EntryVisitor visitor) throws IOException {
+        try (InputStream is = Files.newInputStream(path);
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(is))) {
+            while (true) {
+                int size;
+                try {
+                    size = dis.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (size < 0) {
+                    throw new IOException("Invalid level chunk cache entry size: " + size);
+                }
+                if (buffer.length < size) {
+                    buffer = new byte[Math.max(size, buffer.length * 2)];
+                }
+
+                try {
+                    dis.readFully(buffer, 0, size);
+                } catch (EOFException e) {
+                    Flashback.LOGGER.error("Ran out of bytes while reading {}, needed {}", path, size);
+                    break;
+                }
+
+                visitor.visit(chunkCacheIndex, buffer, size);
+                chunkCacheIndex += 1;
+            }
+        }
+        return buffer;
+    }
+
+}
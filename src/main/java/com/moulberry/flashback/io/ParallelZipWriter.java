@@ -0,0 +1,419 @@
+package com.moulberry.flashback.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a zip file whose entries are deflated in parallel. {@link java.util.zip.ZipOutputStream} can only deflate
+ * an entry while writing it, so this writes the zip structure itself: each entry is deflated into its own buffer on a
+ * small dedicated pool, and the buffers are written to the file in the order the entries were added.
+ * <p>
+ * Entries are only handed to the pool while the uncompressed size of the pending entries is below
+ * {@link #MAX_PENDING_BYTES}, which bounds the memory held by their buffers. Entries larger than
+ * {@link #STREAMED_ENTRY_SIZE} are instead deflated straight into the file on the calling thread, followed by a data
+ * descriptor. Zip64 records are written when the file needs them, so the output can be read by the zip filesystem like
+ * any other replay.
+ */
+public class ParallelZipWriter implements AutoCloseable {
+
+    private static final int MIN_BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final long MAX_PENDING_BYTES = 64 * 1024 * 1024;
+    private static final long STREAMED_ENTRY_SIZE = 16 * 1024 * 1024;
+    // Deflating is cheap compared to the rest of the export, so a few threads are enough and the shared pools are left alone
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int MAX_PENDING_ENTRIES = THREADS * 2;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "Flashback Zip Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param flags the general purpose flags, bit 0x0800 marks UTF-8 names and bit 0x0008 a data descriptor
+     */
+    private record CentralEntry(byte[] name, int method, int flags, long crc, long size, long compressedSize, long offset) {}
+
+    /**
+     * @param bufferedSize the uncompressed size of the entry if it's deflated into a buffer, otherwise 0
+     */
+    private record Pending(String name, long bufferedSize, CompletableFuture<CompressedEntry> future) {}
+
+    /**
+     * @param blocks the compressed data, or null if the entry is stored and is copied from {@code storedPath} instead
+     */
+    private record CompressedEntry(int method, long crc, long size, long compressedSize, List<byte[]> blocks, Path storedPath) {}
+
+    private final OutputStream out;
+    private final int level;
+    private final int dosTime;
+    private final int dosDate;
+
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long pendingBytes = 0;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private long position = 0;
+
+    public ParallelZipWriter(Path output, int level) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(output), 64 * 1024);
+        this.level = level;
+
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = (now.getHour() << 11) | (now.getMinute() << 5) | (now.getSecond() / 2);
+        this.dosDate = ((now.getYear() - 1980) << 9) | (now.getMonthValue() << 5) | now.getDayOfMonth();
+    }
+
+    public void addDeflated(String name, byte[] bytes) throws IOException {
+        this.addDeflated(name, bytes.length, () -> new ByteArrayInputStream(bytes));
+    }
+
+    public void addDeflated(String name, Path path) throws IOException {
+        this.addDeflated(name, Files.size(path), () -> Files.newInputStream(path));
+    }
+
+    private void addDeflated(String name, long size, InputSupplier inputSupplier) throws IOException {
+        if (size > STREAMED_ENTRY_SIZE) {
+            this.writeStreamed(name, size, inputSupplier);
+        } else {
+            this.add(name, size, CompletableFuture.supplyAsync(() -> this.deflate(inputSupplier), EXECUTOR));
+        }
+    }
+
+    /**
+     * Adds an entry without compression, only its checksum is computed on the executor
+     */
+    public void addStored(String name, Path path) throws IOException {
+        this.add(name, 0, CompletableFuture.supplyAsync(() -> {
+            CRC32 crc32 = new CRC32();
+            byte[] buffer = new byte[64 * 1024];
+            long size = 0;
+            try (InputStream is = Files.newInputStream(path)) {
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    crc32.update(buffer, 0, read);
+                    size += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new CompressedEntry(0, crc32.getValue(), size, size, null, path);
+        }, EXECUTOR));
+    }
+
+    private void add(String name, long bufferedSize, CompletableFuture<CompressedEntry> future) throws IOException {
+        this.pending.add(new Pending(name, bufferedSize, future));
+        this.pendingBytes += bufferedSize;
+        while (this.pending.size() > MAX_PENDING_ENTRIES || (this.pending.size() > 1 && this.pendingBytes > MAX_PENDING_BYTES)) {
+            this.writeNextPending();
+        }
+    }
+
+    @FunctionalInterface
+    private interface InputSupplier {
+        InputStream open() throws IOException;
+    }
+
+    private CompressedEntry deflate(InputSupplier inputSupplier) {
+        CRC32 crc32 = new CRC32();
+        BlockOutputStream blocks = new BlockOutputStream();
+        Deflater deflater = new Deflater(this.level, true);
+        try {
+            try (InputStream in = new CheckedInputStream(inputSupplier.open(), crc32);
+                    DeflaterOutputStream deflaterOut = new DeflaterOutputStream(blocks, deflater, 64 * 1024)) {
+                in.transferTo(deflaterOut);
+            }
+            return new CompressedEntry(8, crc32.getValue(), deflater.getBytesRead(), blocks.size, blocks.blocks, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflates a large entry directly into the file, since its size is only known afterwards it's written in a data
+     * descriptor after the data
+     */
+    private void writeStreamed(String name, long size, InputSupplier inputSupplier) throws IOException {
+        // Entries are written in the order they were added
+        while (!this.pending.isEmpty()) {
+            this.writeNextPending();
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = this.position;
+        // The compressed size can only exceed the uncompressed size by a tiny fraction, so this leaves plenty of room
+        boolean zip64 = size >= ZIP64_MAGIC / 2;
+        this.writeLocalHeader(nameBytes, 8, 0x0808, 0, 0, 0, zip64);
+
+        CRC32 crc32 = new CRC32();
+        Deflater deflater = new Deflater(this.level, true);
+        long compressedSize;
+        long uncompressedSize;
+        try {
+            try (InputStream in = new CheckedInputStream(inputSupplier.open(), crc32)) {
+                DeflaterOutputStream deflaterOut = new DeflaterOutputStream(this.out, deflater, 64 * 1024);
+                in.transferTo(deflaterOut);
+                // Finish rather than close, the file is still being written
+                deflaterOut.finish();
+            }
+            compressedSize = deflater.getBytesWritten();
+            uncompressedSize = deflater.getBytesRead();
+        } finally {
+            deflater.end();
+        }
+        this.position += compressedSize;
+
+        if (!zip64 && (uncompressedSize >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC)) {
+            throw new IOException("Size of " + name + " changed while it was being written");
+        }
+
+        // Data descriptor
+        this.writeInt(0x08074b50);
+        this.writeInt((int) crc32.getValue());
+        if (zip64) {
+            this.writeLong(compressedSize);
+            this.writeLong(uncompressedSize);
+        } else {
+            this.writeInt((int) compressedSize);
+            this.writeInt((int) uncompressedSize);
+        }
+
+        this.entries.add(new CentralEntry(nameBytes, 8, 0x0808, crc32.getValue(), uncompressedSize, compressedSize, offset));
+    }
+
+    private void writeNextPending() throws IOException {
+        Pending next = this.pending.poll();
+        if (next == null) {
+            return;
+        }
+        this.pendingBytes -= next.bufferedSize;
+
+        CompressedEntry entry;
+        try {
+            entry = next.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw e;
+        }
+
+        byte[] name = next.name.getBytes(StandardCharsets.UTF_8);
+        long offset = this.position;
+        boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+
+        this.writeLocalHeader(name, entry.method, 0x0800, entry.crc, entry.size, entry.compressedSize, zip64);
+
+        // Data
+        if (entry.blocks != null) {
+            long remaining = entry.compressedSize;
+            for (byte[] block : entry.blocks) {
+                int length = (int) Math.min(block.length, remaining);
+                this.writeBytes(block, length);
+                remaining -= length;
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(entry.storedPath)) {
+                long copied = in.transferTo(this.out);
+                if (copied != entry.size) {
+                    throw new IOException("Size of " + entry.storedPath + " changed while it was being written");
+                }
+                this.position += copied;
+            }
+        }
+
+        this.entries.add(new CentralEntry(name, entry.method, 0x0800, entry.crc, entry.size, entry.compressedSize, offset));
+    }
+
+    private void writeLocalHeader(byte[] name, int method, int flags, long crc, long size, long compressedSize, boolean zip64) throws IOException {
+        this.writeInt(0x04034b50);
+        this.writeShort(zip64 ? 45 : 20);
+        this.writeShort(flags);
+        this.writeShort(method);
+        this.writeShort(this.dosTime);
+        this.writeShort(this.dosDate);
+        this.writeInt((int) crc);
+        this.writeInt((int) (zip64 ? ZIP64_MAGIC : compressedSize));
+        this.writeInt((int) (zip64 ? ZIP64_MAGIC : size));
+        this.writeShort(name.length);
+        this.writeShort(zip64 ? 20 : 0);
+        this.writeBytes(name, name.length);
+        if (zip64) {
+            this.writeShort(0x0001);
+            this.writeShort(16);
+            this.writeLong(size);
+            this.writeLong(compressedSize);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!this.pending.isEmpty()) {
+                this.writeNextPending();
+            }
+
+            long centralDirectoryOffset = this.position;
+            for (CentralEntry entry : this.entries) {
+                boolean sizeZip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+                boolean offsetZip64 = entry.offset >= ZIP64_MAGIC;
+                int extraLength = (sizeZip64 ? 16 : 0) + (offsetZip64 ? 8 : 0);
+
+                this.writeInt(0x02014b50);
+                this.writeShort(45);
+                this.writeShort(extraLength > 0 ? 45 : 20);
+                this.writeShort(entry.flags);
+                this.writeShort(entry.method);
+                this.writeShort(this.dosTime);
+                this.writeShort(this.dosDate);
+                this.writeInt((int) entry.crc);
+                this.writeInt((int) (sizeZip64 ? ZIP64_MAGIC : entry.compressedSize));
+                this.writeInt((int) (sizeZip64 ? ZIP64_MAGIC : entry.size));
+                this.writeShort(entry.name.length);
+                this.writeShort(extraLength > 0 ? extraLength + 4 : 0);
+                this.writeShort(0); // Comment length
+                this.writeShort(0); // Disk number
+                this.writeShort(0); // Internal attributes
+                this.writeInt(0); // External attributes
+                this.writeInt((int) (offsetZip64 ? ZIP64_MAGIC : entry.offset));
+                this.writeBytes(entry.name, entry.name.length);
+                if (extraLength > 0) {
+                    this.writeShort(0x0001);
+                    this.writeShort(extraLength);
+                    if (sizeZip64) {
+                        this.writeLong(entry.size);
+                        this.writeLong(entry.compressedSize);
+                    }
+                    if (offsetZip64) {
+                        this.writeLong(entry.offset);
+                    }
+                }
+            }
+            long centralDirectorySize = this.position - centralDirectoryOffset;
+
+            int count = this.entries.size();
+            if (count >= 0xFFFF || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC) {
+                long zip64EndOffset = this.position;
+
+                // Zip64 end of central directory record
+                this.writeInt(0x06064b50);
+                this.writeLong(44);
+                this.writeShort(45);
+                this.writeShort(45);
+                this.writeInt(0);
+                this.writeInt(0);
+                this.writeLong(count);
+                this.writeLong(count);
+                this.writeLong(centralDirectorySize);
+                this.writeLong(centralDirectoryOffset);
+
+                // Zip64 end of central directory locator
+                this.writeInt(0x07064b50);
+                this.writeInt(0);
+                this.writeLong(zip64EndOffset);
+                this.writeInt(1);
+            }
+
+            // End of central directory record
+            this.writeInt(0x06054b50);
+            this.writeShort(0);
+            this.writeShort(0);
+            this.writeShort(Math.min(count, 0xFFFF));
+            this.writeShort(Math.min(count, 0xFFFF));
+            this.writeInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+            this.writeInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+            this.writeShort(0);
+        } finally {
+            for (Pending pending : this.pending) {
+                pending.future.cancel(false);
+            }
+            this.out.close();
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        this.out.write(value & 0xFF);
+        this.out.write((value >>> 8) & 0xFF);
+        this.position += 2;
+    }
+
+    private void writeInt(int value) throws IOException {
+        this.writeShort(value & 0xFFFF);
+        this.writeShort((value >>> 16) & 0xFFFF);
+    }
+
+    private void writeLong(long value) throws IOException {
+        this.writeInt((int) value);
+        this.writeInt((int) (value >>> 32));
+    }
+
+    private void writeBytes(byte[] bytes, int length) throws IOException {
+        this.out.write(bytes, 0, length);
+        this.position += length;
+    }
+
+    /**
+     * Collects output in fixed size blocks so that a large entry doesn't need a single contiguous array
+     */
+    private static class BlockOutputStream extends OutputStream {
+        private final List<byte[]> blocks = new ArrayList<>();
+        private byte[] current = null;
+        private int currentLength = 0;
+        private long size = 0;
+
+        private void nextBlock() {
+            // Blocks grow with the output so that small entries don't allocate a full block
+            this.current = new byte[(int) Math.min(MAX_BLOCK_SIZE, Math.max(MIN_BLOCK_SIZE, this.size))];
+            this.currentLength = 0;
+            this.blocks.add(this.current);
+        }
+
+        @Override
+        public void write(int b) {
+            if (this.current == null || this.currentLength == this.current.length) {
+                this.nextBlock();
+            }
+            this.current[this.currentLength++] = (byte) b;
+            this.size += 1;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                if (this.current == null || this.currentLength == this.current.length) {
+                    this.nextBlock();
+                }
+                int copy = Math.min(length, this.current.length - this.currentLength);
+                System.arraycopy(bytes, offset, this.current, this.currentLength, copy);
+                this.currentLength += copy;
+                this.size += copy;
+                offset += copy;
+                length -= copy;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.moulberry.flashback.io;
+
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.action.ActionNextTick;
+import com.moulberry.flashback.record.FlashbackChunkMeta;
+import com.moulberry.flashback.record.FlashbackMeta;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceLocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Write-ahead log for the replay chunk that is currently being recorded. Finalized bytes from the {@link ReplayWriter}
+ * are appended continuously and fsynced in groups, bounded by {@link #COMMIT_INTERVAL_NANOS} and {@link #COMMIT_SIZE}.
+ * The log starts with the name of the chunk it is mirroring, followed by a valid prefix of that chunk file, so after a
+ * crash it can be turned back into a chunk with {@link #recover(Path, FlashbackMeta)}. The name makes recovery
+ * idempotent: a log whose chunk is already listed in the metadata was left behind after the chunk had been written.
+ */
+public class RecordingSegmentLog {
+
+    public static final String FILE_NAME = "segment.flashback.log";
+    private static final int LOG_MAGIC = 0xF1A5B10C;
+    private static final long COMMIT_INTERVAL_NANOS = 1_000_000_000L;
+    private static final int COMMIT_SIZE = 4 * 1024 * 1024;
+
+    private final Path path;
+    private String chunkName;
+    private FileChannel channel = null;
+    private int committedBytes = 0;
+    private long lastCommitNanos = System.nanoTime();
+
+    public RecordingSegmentLog(Path recordFolder, String chunkName) {
+        this.path = recordFolder.resolve(FILE_NAME);
+        this.chunkName = chunkName;
+    }
+
+    /**
+     * Appends and fsyncs everything the writer has finalized since the last commit, if the time or size budget has
+     * been exceeded (or {@code force} is true)
+     *
+     * @param beforeSync called before the log is synced, used to sync files the new actions depend on (e.g. chunk caches)
+     * @return whether a commit happened
+     */
+    public boolean commit(ReplayWriter writer, boolean force, IOAction beforeSync) throws IOException {
+        if (!writer.canCommit()) {
+            return false;
+        }
+
+        int pending = writer.writtenBytes() - this.committedBytes;
+        if (pending <= 0) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        if (!force && pending < COMMIT_SIZE && now - this.lastCommitNanos < COMMIT_INTERVAL_NANOS) {
+            return false;
+        }
+
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+            FriendlyByteBuf header = new FriendlyByteBuf(Unpooled.buffer());
+            header.writeInt(LOG_MAGIC);
+            header.writeUtf(this.chunkName);
+            ByteBuffer byteBuffer = header.nioBuffer();
+            while (byteBuffer.hasRemaining()) {
+                this.channel.write(byteBuffer);
+            }
+        }
+
+        writer.writeBytesTo(this.channel, this.committedBytes, pending);
+        beforeSync.run();
+        this.channel.force(false);
+
+        this.committedBytes += pending;
+        this.lastCommitNanos = now;
+        return true;
+    }
+
+    /**
+     * Discards the log, called once the chunk it was mirroring and the metadata listing it have been durably written
+     *
+     * @param nextChunkName the name of the chunk that the log will mirror next
+     */
+    public void reset(String nextChunkName) throws IOException {
+        this.close();
+        Files.deleteIfExists(this.path);
+        this.chunkName = nextChunkName;
+        this.committedBytes = 0;
+        this.lastCommitNanos = System.nanoTime();
+    }
+
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface IOAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Converts a leftover segment log into a regular replay chunk, truncated to the last complete tick
+     */
+    public static void recover(Path recordFolder, FlashbackMeta meta) {
+        Path segmentPath = recordFolder.resolve(FILE_NAME);
+        if (!Files.exists(segmentPath)) {
+            return;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(segmentPath);
+            FriendlyByteBuf friendlyByteBuf = new FriendlyByteBuf(Unpooled.wrappedBuffer(bytes));
+
+            if (friendlyByteBuf.readableBytes() < 4 || friendlyByteBuf.readInt() != LOG_MAGIC) {
+                Flashback.LOGGER.warn("Segment log has invalid magic, skipping recovery");
+                return;
+            }
+
+            String chunkName = friendlyByteBuf.readUtf();
+            if (meta.chunks.containsKey(chunkName)) {
+                Flashback.LOGGER.info("Segment log for {} is already part of the metadata, nothing to recover", chunkName);
+                return;
+            }
+
+            int chunkStart = friendlyByteBuf.readerIndex();
+            if (friendlyByteBuf.readableBytes() < 4 || friendlyByteBuf.readInt() != Flashback.MAGIC) {
+                Flashback.LOGGER.warn("Segment log has invalid chunk magic, skipping recovery");
+                return;
+            }
+
+            ResourceLocation nextTickName = ActionNextTick.INSTANCE.name();
+            int nextTickActionId = -1;
+            int actions = friendlyByteBuf.readVarInt();
+            for (int i = 0; i < actions; i++) {
+                if (friendlyByteBuf.readResourceLocation().equals(nextTickName)) {
+                    nextTickActionId = i;
+                }
+            }
+
+            int snapshotSize = friendlyByteBuf.readInt();
+            friendlyByteBuf.skipBytes(snapshotSize);
+
+            int ticks = 0;
+            int endOfLastTick = -1;
+            while (friendlyByteBuf.readableBytes() >= 5) {
+                int id = friendlyByteBuf.readVarInt();
+                if (friendlyByteBuf.readableBytes() < 4) {
+                    break;
+                }
+                int size = friendlyByteBuf.readInt();
+                if (size < 0 || friendlyByteBuf.readableBytes() < size) {
+                    break;
+                }
+                friendlyByteBuf.skipBytes(size);
+
+                if (id == nextTickActionId) {
+                    ticks += 1;
+                    endOfLastTick = friendlyByteBuf.readerIndex();
+                }
+            }
+
+            if (ticks == 0) {
+                Flashback.LOGGER.info("Segment log contains no complete ticks, nothing to recover");
+                return;
+            }
+
+            Files.write(recordFolder.resolve(chunkName), Arrays.copyOfRange(bytes, chunkStart, endOfLastTick));
+
+            FlashbackChunkMeta chunkMeta = new FlashbackChunkMeta();
+            chunkMeta.duration = ticks;
+            meta.chunks.put(chunkName, chunkMeta);
+            meta.totalTicks = Math.max(0, meta.totalTicks) + ticks;
+
+            Flashback.LOGGER.info("Recovered {} ticks from segment log into {}", ticks, chunkName);
+        } catch (Exception e) {
+            Flashback.LOGGER.error("Unable to recover segment log", e);
+        }
+    }
+
+}
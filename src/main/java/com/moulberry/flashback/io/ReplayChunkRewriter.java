@@ -0,0 +1,242 @@
+package com.moulberry.flashback.io;
+
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.action.ActionLevelChunkCached;
+import it.unimi.dsi.fastutil.ints.Int2IntFunction;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntConsumer;
+
+/**
+ * Rewrites the {@link ActionLevelChunkCached} ids inside a replay chunk (c0.flashback, c1.flashback, ...) while streaming,
+ * copying every other action verbatim. The chunk is read twice so that the snapshot size can be written before the
+ * snapshot itself without buffering the whole chunk in memory.
+ * <p>
+ * Cached chunk ids which the remapping doesn't know about (e.g. from a truncated chunk cache) are dropped with a warning,
+ * the same way playback skips chunks it can't find in the cache.
+ */
+public class ReplayChunkRewriter {
+
+    private static final String LEVEL_CHUNK_CACHED_NAME = ActionLevelChunkCached.INSTANCE.name().toString();
+
+    public static void collectCachedChunkIds(Path chunkPath, IntConsumer consumer) throws IOException {
+        try (ChunkInput input = new ChunkInput(Files.newInputStream(chunkPath))) {
+            Header header = readHeader(input);
+            if (header.levelChunkCachedActionId < 0) {
+                return;
+            }
+
+            while (input.hasMore()) {
+                int id = input.readVarInt();
+                int size = input.readInt();
+                if (id == header.levelChunkCachedActionId) {
+                    long start = input.position;
+                    consumer.accept(input.readVarInt());
+                    input.skip(size - (input.position - start));
+                } else {
+                    input.skip(size);
+                }
+            }
+        }
+    }
+
+    public static void rewrite(Path chunkPath, OutputStream outputStream, Int2IntFunction remapCachedChunkId) throws IOException {
+        // First pass: work out how much the snapshot grows/shrinks due to varint size changes
+        int outputSnapshotSize;
+        try (ChunkInput input = new ChunkInput(Files.newInputStream(chunkPath))) {
+            Header header = readHeader(input);
+            if (header.levelChunkCachedActionId < 0) {
+                Files.copy(chunkPath, outputStream);
+                return;
+            }
+
+            long snapshotEnd = input.position + header.snapshotSize;
+            long delta = 0;
+            while (input.position < snapshotEnd) {
+                int id = input.readVarInt();
+                int size = input.readInt();
+                if (id == header.levelChunkCachedActionId) {
+                    long start = input.position;
+                    int newCachedChunkId = remapCachedChunkId.get(input.readVarInt());
+                    input.skip(size - (input.position - start));
+                    if (newCachedChunkId < 0) {
+                        delta -= varIntSize(id) + 4 + size;
+                    } else {
+                        delta += varIntSize(newCachedChunkId) - size;
+                    }
+                } else {
+                    input.skip(size);
+                }
+            }
+            outputSnapshotSize = Math.toIntExact(header.snapshotSize + delta);
+        }
+
+        // Second pass: actually write
+        DataOutputStream out = new DataOutputStream(outputStream);
+        try (ChunkInput input = new ChunkInput(Files.newInputStream(chunkPath))) {
+            Header header = readHeader(input);
+
+            out.writeInt(Flashback.MAGIC);
+            writeVarInt(out, header.actionNames.length);
+            for (String actionName : header.actionNames) {
+                byte[] bytes = actionName.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(outputSnapshotSize);
+
+            byte[] copyBuffer = new byte[8192];
+            int missingCachedChunks = 0;
+            while (input.hasMore()) {
+                int id = input.readVarInt();
+                int size = input.readInt();
+
+                if (id == header.levelChunkCachedActionId) {
+                    long start = input.position;
+                    int newCachedChunkId = remapCachedChunkId.get(input.readVarInt());
+                    input.skip(size - (input.position - start));
+
+                    if (newCachedChunkId < 0) {
+                        missingCachedChunks += 1;
+                        continue;
+                    }
+
+                    writeVarInt(out, id);
+                    out.writeInt(varIntSize(newCachedChunkId));
+                    writeVarInt(out, newCachedChunkId);
+                } else {
+                    writeVarInt(out, id);
+                    out.writeInt(size);
+                    input.copy(out, size, copyBuffer);
+                }
+            }
+
+            if (missingCachedChunks > 0) {
+                Flashback.LOGGER.warn("Dropped {} cached chunks from {} which were missing from the chunk cache", missingCachedChunks, chunkPath);
+            }
+        }
+        out.flush();
+    }
+
+    private record Header(String[] actionNames, int levelChunkCachedActionId, int snapshotSize) {}
+
+    private static Header readHeader(ChunkInput input) throws IOException {
+        int magic = input.readInt();
+        if (magic != Flashback.MAGIC) {
+            throw new RuntimeException("Invalid magic");
+        }
+
+        int levelChunkCachedActionId = -1;
+        int actions = input.readVarInt();
+        String[] actionNames = new String[actions];
+        for (int i = 0; i < actions; i++) {
+            int length = input.readVarInt();
+            byte[] bytes = new byte[length];
+            input.in.readFully(bytes);
+            input.position += length;
+
+            actionNames[i] = new String(bytes, StandardCharsets.UTF_8);
+            if (actionNames[i].equals(LEVEL_CHUNK_CACHED_NAME)) {
+                levelChunkCachedActionId = i;
+            }
+        }
+
+        int snapshotSize = input.readInt();
+        if (snapshotSize < 0) {
+            throw new RuntimeException("Invalid snapshot size: " + snapshotSize + " (0x" + Integer.toHexString(snapshotSize) + ")");
+        }
+
+        return new Header(actionNames, levelChunkCachedActionId, snapshotSize);
+    }
+
+    static int varIntSize(int value) {
+        for (int i = 1; i < 5; i++) {
+            if ((value & (-1 << i * 7)) == 0) {
+                return i;
+            }
+        }
+        return 5;
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & -128) != 0) {
+            out.write(value & 127 | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static class ChunkInput implements AutoCloseable {
+        private final DataInputStream in;
+        private long position = 0;
+
+        private ChunkInput(InputStream inputStream) {
+            this.in = new DataInputStream(new BufferedInputStream(inputStream));
+        }
+
+        private boolean hasMore() throws IOException {
+            this.in.mark(1);
+            int next = this.in.read();
+            if (next < 0) {
+                return false;
+            }
+            this.in.reset();
+            return true;
+        }
+
+        private int readInt() throws IOException {
+            int value = this.in.readInt();
+            this.position += 4;
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.in.readByte();
+                this.position += 1;
+                value |= (b & 127) << shift;
+                shift += 7;
+                if (shift > 35) {
+                    throw new IOException("VarInt too big");
+                }
+            } while ((b & 128) == 128);
+            return value;
+        }
+
+        private void skip(long bytes) throws IOException {
+            if (bytes < 0) {
+                throw new IOException("Action read past its declared size");
+            }
+            this.in.skipNBytes(bytes);
+            this.position += bytes;
+        }
+
+        private void copy(OutputStream out, int bytes, byte[] buffer) throws IOException {
+            int remaining = bytes;
+            while (remaining > 0) {
+                int read = Math.min(remaining, buffer.length);
+                this.in.readFully(buffer, 0, read);
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            this.position += bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+}
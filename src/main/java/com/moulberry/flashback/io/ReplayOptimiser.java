@@ -0,0 +1,130 @@
+package com.moulberry.flashback.io;
+
+import com.google.gson.JsonObject;
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.FlashbackGson;
+import com.moulberry.flashback.record.FlashbackMeta;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Rewrites an existing replay into the layout the current recorder produces. Everything is streamed, so memory usage
+ * only depends on the number of distinct level chunks, not on the size of the replay.
+ * <ul>
+ *     <li>The legacy single {@code level_chunk_cache} is migrated into lazily loaded {@code level_chunk_caches/N} blocks</li>
+ *     <li>Identical chunk cache entries are merged and entries that are never referenced are dropped</li>
+ *     <li>Replay chunks have their {@link com.moulberry.flashback.action.ActionLevelChunkCached} ids remapped</li>
+ * </ul>
+ * No separate seek index is written. The replay server seeks by replay chunk using the durations in metadata.json and
+ * the snapshot at the start of every chunk, so an index inside the zip would have nothing reading it.
+ */
+public class ReplayOptimiser {
+
+    public record Result(int originalChunkCacheEntries, int writtenChunkCacheEntries) {}
+
+    public static Result optimise(Path input, Path output) throws IOException {
+        Flashback.LOGGER.info("Optimising replay {} into {}", input, output);
+
+        try (FileSystem fileSystem = FileSystems.newFileSystem(input)) {
+            String metadataJson = Files.readString(fileSystem.getPath("/metadata.json"));
+            FlashbackMeta metadata = FlashbackMeta.fromJson(FlashbackGson.COMPRESSED.fromJson(metadataJson, JsonObject.class));
+            if (metadata == null) {
+                throw new RuntimeException("Unable to load /metadata.json");
+            }
+
+            // Find out which cached chunks are actually used
+            IntSet referencedCachedChunks = new IntOpenHashSet();
+            for (String chunkName : metadata.chunks.keySet()) {
+                ReplayChunkRewriter.collectCachedChunkIds(fileSystem.getPath("/" + chunkName), referencedCachedChunks::add);
+            }
+
+            int[] originalEntries = new int[1];
+            LevelChunkCacheWriter cacheWriter;
+
+            try (OutputStream os = Files.newOutputStream(output);
+                    BufferedOutputStream bos = new BufferedOutputStream(os);
+                    ZipOutputStream zipOut = new ZipOutputStream(bos)) {
+                zipOut.setLevel(Deflater.BEST_SPEED);
+
+                // Write metadata
+                zipOut.putNextEntry(new ZipEntry("metadata.json"));
+                zipOut.write(FlashbackGson.PRETTY.toJson(metadata.toJson()).getBytes(StandardCharsets.UTF_8));
+                zipOut.closeEntry();
+
+                // Write deduplicated level chunk caches
+                Int2IntMap levelChunkMappings = new Int2IntOpenHashMap();
+                levelChunkMappings.defaultReturnValue(-1);
+
+                cacheWriter = new LevelChunkCacheWriter(zipOut);
+                LevelChunkCaches.forEachEntry(fileSystem, (index, bytes, length) -> {
+                    originalEntries[0] += 1;
+                    if (referencedCachedChunks.contains(index)) {
+                        levelChunkMappings.put(index, cacheWriter.write(bytes, 0, length));
+                    }
+                });
+                cacheWriter.finish();
+
+                // Write chunks
+                for (String chunkName : metadata.chunks.keySet()) {
+                    zipOut.putNextEntry(new ZipEntry(chunkName));
+                    ReplayChunkRewriter.rewrite(fileSystem.getPath("/" + chunkName), zipOut, levelChunkMappings);
+                    zipOut.closeEntry();
+                }
+
+                // Copy everything else (icon, editor state, etc.)
+                Path root = fileSystem.getPath("/");
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        String name = root.relativize(file).toString();
+                        if (name.equals("metadata.json") || name.equals("level_chunk_cache") || name.startsWith("level_chunk_caches/")
+                                || metadata.chunks.containsKey(name)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        zipOut.putNextEntry(new ZipEntry(name));
+                        Files.copy(file, zipOut);
+                        zipOut.closeEntry();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+
+            Flashback.LOGGER.info("Optimised replay {}: {} chunk cache entries -> {}", input, originalEntries[0], cacheWriter.getWrittenCount());
+            return new Result(originalEntries[0], cacheWriter.getWrittenCount());
+        }
+    }
+
+    /**
+     * Optimises the replay in-place by writing to a sibling temporary file and then replacing the original
+     */
+    public static Result optimiseInPlace(Path replay) throws IOException {
+        Path temp = replay.resolveSibling(replay.getFileName().toString() + ".optimising");
+        try {
+            Result result = optimise(replay, temp);
+            Files.move(temp, replay, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return result;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+}
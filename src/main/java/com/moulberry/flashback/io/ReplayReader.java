@@ -5,10 +5,6 @@ import com.moulberry.flashback.playback.ReplayServer;
 import com.moulberry.flashback.action.Action;
 import com.moulberry.flashback.action.ActionRegistry;
 import io.netty.buffer.ByteBuf;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import it.unimi.dsi.fastutil.ints.IntSet;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.RegistryFriendlyByteBuf;
@@ -16,17 +12,38 @@ import net.minecraft.resources.ResourceLocation;
 
 public class ReplayReader {
 
+    /**
+     * Receives actions instead of them being handled by a {@link ReplayServer}, used to inspect replays without playing them
+     */
+    @FunctionalInterface
+    public interface ActionVisitor {
+        /**
+         * @param friendlyByteBuf the payload of the action, only valid until this method returns
+         */
+        void visit(Action action, RegistryFriendlyByteBuf friendlyByteBuf);
+    }
+
+    /**
+     * Verifies that every action consumes exactly the bytes it was written with. Disabled by default since it is only
+     * useful when developing new actions, enable with -Dflashback.debugReplayReader=true
+     */
+    private static final boolean DEBUG_ACTION_SIZES = Boolean.getBoolean("flashback.debugReplayReader");
+
     private final FriendlyByteBuf friendlyByteBuf;
     private final int replaySnapshotOffset;
     private final int replayActionsOffset;
-    private RegistryAccess registryAccess;
     private ResourceLocation lastActionName = null;
-    private final Int2ObjectMap<Action> actions = new Int2ObjectOpenHashMap<>();
-    private final Int2ObjectMap<ResourceLocation> ignoredActions = new Int2ObjectOpenHashMap<>();
+    private final Action[] actions;
+    private final ResourceLocation[] ignoredActions;
+
+    // Reusable view over the replay bytes that is narrowed to the current action, avoids allocating a slice & wrapper per action
+    private final ByteBuf actionView;
+    private RegistryFriendlyByteBuf actionBuffer;
 
     public ReplayReader(ByteBuf byteBuf, RegistryAccess registryAccess) {
         this.friendlyByteBuf = new FriendlyByteBuf(byteBuf);
-        this.registryAccess = registryAccess;
+        this.actionView = byteBuf.duplicate();
+        this.actionBuffer = new RegistryFriendlyByteBuf(this.actionView, registryAccess);
 
         int magic = this.friendlyByteBuf.readInt();
         if (magic != Flashback.MAGIC) {
@@ -34,18 +51,20 @@ public class ReplayReader {
         }
 
         int actions = this.friendlyByteBuf.readVarInt();
+        this.actions = new Action[actions];
+        this.ignoredActions = new ResourceLocation[actions];
         for (int i = 0; i < actions; i++) {
             ResourceLocation actionName = this.friendlyByteBuf.readResourceLocation();
             Action action = ActionRegistry.getAction(actionName);
 
             if (action == null) {
                 if (actionName.getPath().endsWith("optional")) {
-                    this.ignoredActions.put(i, actionName);
+                    this.ignoredActions[i] = actionName;
                 } else {
                     throw new RuntimeException("Missing action: " + actionName);
                 }
             } else {
-                this.actions.put(i, action);
+                this.actions[i] = action;
             }
         }
 
@@ -59,7 +78,9 @@ public class ReplayReader {
     }
 
     public void changeRegistryAccess(RegistryAccess registryAccess) {
-        this.registryAccess = registryAccess;
+        if (this.actionBuffer.registryAccess() != registryAccess) {
+            this.actionBuffer = new RegistryFriendlyByteBuf(this.actionView, registryAccess);
+        }
     }
 
     public void resetToStart() {
@@ -72,33 +93,29 @@ public class ReplayReader {
         replayServer.isProcessingSnapshot = true;
 
         while (this.friendlyByteBuf.readerIndex() < this.replayActionsOffset) {
-            int id = this.friendlyByteBuf.readVarInt();
-            Action action = this.actions.get(id);
-            if (action == null) {
-                if (this.ignoredActions.containsKey(id)) {
-                    this.lastActionName = this.ignoredActions.get(id);
-                    int size = this.friendlyByteBuf.readInt();
-                    this.friendlyByteBuf.skipBytes(size);
-                    continue;
-                }
-                throw new RuntimeException("Unknown action id: " + id + ". Last action was " + this.lastActionName);
-            }
-            this.lastActionName = action.name();
-
-            int size = this.friendlyByteBuf.readInt();
-            ByteBuf slice = this.friendlyByteBuf.readSlice(size);
-            RegistryFriendlyByteBuf registryFriendlyByteBuf = new RegistryFriendlyByteBuf(slice, this.registryAccess);
-            action.handle(replayServer, registryFriendlyByteBuf);
-
-            if (slice.readerIndex() < slice.writerIndex()) {
-                throw new RuntimeException("Action " + this.lastActionName + " failed to fully read. Had " + slice.writerIndex() + " bytes available, only read " + slice.readerIndex());
-            }
+            this.handleAction(replayServer, null);
         }
 
         replayServer.isProcessingSnapshot = false;
     }
 
     public boolean handleNextAction(ReplayServer replayServer) {
+        return this.handleNextAction(replayServer, null);
+    }
+
+    public void visitSnapshot(ActionVisitor visitor) {
+        this.friendlyByteBuf.readerIndex(this.replaySnapshotOffset);
+
+        while (this.friendlyByteBuf.readerIndex() < this.replayActionsOffset) {
+            this.handleAction(null, visitor);
+        }
+    }
+
+    public boolean visitNextAction(ActionVisitor visitor) {
+        return this.handleNextAction(null, visitor);
+    }
+
+    private boolean handleNextAction(ReplayServer replayServer, ActionVisitor visitor) {
         if (this.friendlyByteBuf.readerIndex() >= this.friendlyByteBuf.writerIndex()) {
             return false;
         }
@@ -106,29 +123,39 @@ public class ReplayReader {
             this.friendlyByteBuf.readerIndex(this.replayActionsOffset);
         }
 
+        this.handleAction(replayServer, visitor);
+        return true;
+    }
+
+    private void handleAction(ReplayServer replayServer, ActionVisitor visitor) {
         int id = this.friendlyByteBuf.readVarInt();
-        Action action = this.actions.get(id);
+        Action action = id >= 0 && id < this.actions.length ? this.actions[id] : null;
         if (action == null) {
-            if (this.ignoredActions.containsKey(id)) {
-                this.lastActionName = this.ignoredActions.get(id);
+            if (id >= 0 && id < this.ignoredActions.length && this.ignoredActions[id] != null) {
+                this.lastActionName = this.ignoredActions[id];
                 int size = this.friendlyByteBuf.readInt();
                 this.friendlyByteBuf.skipBytes(size);
-                return true;
+                return;
             }
             throw new RuntimeException("Unknown action id: " + id + ". Last action was " + this.lastActionName);
         }
         this.lastActionName = action.name();
 
         int size = this.friendlyByteBuf.readInt();
-        ByteBuf slice = this.friendlyByteBuf.readSlice(size);
-        RegistryFriendlyByteBuf registryFriendlyByteBuf = new RegistryFriendlyByteBuf(slice, this.registryAccess);
-        action.handle(replayServer, registryFriendlyByteBuf);
-
-        if (slice.readerIndex() < slice.writerIndex()) {
-            throw new RuntimeException("Action " + this.lastActionName + " failed to fully read. Had " + slice.writerIndex() + " bytes available, only read " + slice.readerIndex());
+        int start = this.friendlyByteBuf.readerIndex();
+        int end = start + size;
+        this.friendlyByteBuf.readerIndex(end);
+
+        this.actionView.setIndex(start, end);
+        if (visitor != null) {
+            visitor.visit(action, this.actionBuffer);
+        } else {
+            action.handle(replayServer, this.actionBuffer);
         }
 
-        return true;
+        if (DEBUG_ACTION_SIZES && this.actionView.readerIndex() < end) {
+            throw new RuntimeException("Action " + this.lastActionName + " failed to fully read. Had " + size + " bytes available, only read " + (this.actionView.readerIndex() - start));
+        }
     }
 
 }
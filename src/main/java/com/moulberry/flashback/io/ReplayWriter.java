@@ -10,6 +10,9 @@ import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.network.RegistryFriendlyByteBuf;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Objects;
 
@@ -163,6 +166,24 @@ public class ReplayWriter {
         return this.registryAccess;
     }
 
+    /**
+     * @return whether all bytes written so far are final, i.e. the snapshot has ended and no action is waiting for its size to be filled in
+     */
+    public boolean canCommit() {
+        return this.state == STATE_WRITING_DATA && this.writingAction == null;
+    }
+
+    public int writtenBytes() {
+        return this.dataBuffer.writerIndex();
+    }
+
+    public void writeBytesTo(FileChannel channel, int from, int length) throws IOException {
+        ByteBuffer byteBuffer = this.dataBufferInner.nioBuffer(from, length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+    }
+
     public byte[] popBytes() {
         if (this.writingAction != null) {
             throw new IllegalStateException("popBytes() called while still writing action " + this.writingAction.name());
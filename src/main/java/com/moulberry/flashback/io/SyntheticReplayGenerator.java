@@ -0,0 +1,558 @@
+package com.moulberry.flashback.io;
+
+import com.mojang.authlib.GameProfile;
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.FlashbackGson;
+import com.moulberry.flashback.action.ActionCreateLocalPlayer;
+import com.moulberry.flashback.action.ActionGamePacket;
+import com.moulberry.flashback.action.ActionLevelChunkCached;
+import com.moulberry.flashback.action.ActionMoveEntities;
+import com.moulberry.flashback.action.ActionNextTick;
+import com.moulberry.flashback.playback.ReplayServer;
+import com.moulberry.flashback.record.FlashbackChunkMeta;
+import com.moulberry.flashback.record.FlashbackMeta;
+import com.moulberry.flashback.record.Recorder;
+import com.moulberry.flashback.record.ReplayExporter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundAddEntityPacket;
+import net.minecraft.network.protocol.game.ClientboundForgetLevelChunkPacket;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.network.protocol.game.ClientboundLoginPacket;
+import net.minecraft.network.protocol.game.ClientboundPlayerInfoUpdatePacket;
+import net.minecraft.network.protocol.game.ClientboundSetChunkCacheCenterPacket;
+import net.minecraft.network.protocol.game.ClientboundSetDefaultSpawnPositionPacket;
+import net.minecraft.network.protocol.game.ClientboundSetTimePacket;
+import net.minecraft.network.protocol.game.ClientboundSystemChatPacket;
+import net.minecraft.network.protocol.game.CommonPlayerSpawnInfo;
+import net.minecraft.network.protocol.game.GameProtocols;
+import net.minecraft.util.SimpleBitStorage;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.GameType;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.Biomes;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.dimension.BuiltinDimensionTypes;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.phys.Vec3;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Generates replays of a configurable size from a seed, for load testing playback, seeking, combining and exporting
+ * without having to record a real session. The same settings always produce the same bytes.
+ * <p>
+ * The world is a flat overworld made of single-block sections, populated by players and mobs that wander around. The
+ * local player drifts across the world, which loads & unloads chunks at the edge of the view distance. Registry data
+ * isn't written, so the replay uses the vanilla registries of whoever plays it back.
+ */
+public class SyntheticReplayGenerator {
+
+    /**
+     * @param durationTicks length of the replay
+     * @param players number of other players, these also appear in the tab list
+     * @param entities number of non-player entities
+     * @param movementDensity fraction of entities (including players) that move each tick
+     * @param viewDistance radius of the square of chunks that is loaded around the local player
+     * @param chunkChurn chance per tick that the local player moves into a neighbouring chunk
+     * @param chatPerSecond average number of chat messages per second
+     */
+    public record Settings(long seed, int durationTicks, int players, int entities, float movementDensity, int viewDistance,
+                           float chunkChurn, float chatPerSecond) {
+        public static final Settings DEFAULT = new Settings(0, 20 * 60 * 5, 10, 200, 0.3f, 8, 0.02f, 0.5f);
+    }
+
+    // Segments are also split early if they get this large, to stay well below the maximum size of a buffer
+    private static final int MAX_SEGMENT_BYTES = 256 * 1024 * 1024;
+
+    // Overworld dimensions, the generated world always uses the overworld dimension type
+    private static final int MIN_Y = -64;
+    private static final int SECTIONS = 24;
+    private static final int SURFACE_SECTION = 8;
+    private static final int SURFACE_Y = MIN_Y + (SURFACE_SECTION + 1) * 16;
+
+    private static final int LOCAL_PLAYER_ID = 1;
+    private static final int FIRST_ENTITY_ID = 2;
+
+    private static final List<EntityType<?>> ENTITY_TYPES = List.of(EntityType.PIG, EntityType.COW, EntityType.SHEEP,
+        EntityType.CHICKEN, EntityType.ZOMBIE, EntityType.SKELETON, EntityType.VILLAGER, EntityType.ARMOR_STAND);
+    private static final List<Block> SURFACE_BLOCKS = List.of(Blocks.GRASS_BLOCK, Blocks.SAND, Blocks.SNOW_BLOCK,
+        Blocks.MOSS_BLOCK, Blocks.PODZOL);
+
+    private final Settings settings;
+    private final RegistryAccess registryAccess;
+    private final StreamCodec<ByteBuf, Packet<? super ClientGamePacketListener>> gamePacketCodec;
+    private final SplittableRandom random;
+
+    private final Holder<DimensionType> dimensionType;
+    private final int biomeId;
+    private final byte[] fullSkyLight = new byte[2048];
+
+    // Entity state, players come first
+    private final int entityCount;
+    private final UUID[] uuids;
+    private final EntityType<?>[] types;
+    private final double[] x;
+    private final double[] z;
+    private final float[] yaw;
+    private final boolean[] moved;
+    private final GameProfile localProfile;
+    private final GameProfile[] profiles;
+
+    private double localX = 8;
+    private double localZ = 8;
+    private int centerX = 0;
+    private int centerZ = 0;
+    private int directionX = 1;
+    private int directionZ = 0;
+    private int chatMessages = 0;
+
+    private final Long2IntMap cachedChunks = new Long2IntOpenHashMap();
+    private DataOutputStream chunkCacheOutput = null;
+    private int chunkCacheOutputIndex = -1;
+
+    private SyntheticReplayGenerator(Settings settings, RegistryAccess registryAccess) {
+        this.settings = settings;
+        this.registryAccess = registryAccess;
+        this.gamePacketCodec = GameProtocols.CLIENTBOUND_TEMPLATE.bind(RegistryFriendlyByteBuf.decorator(registryAccess)).codec();
+        this.random = new SplittableRandom(settings.seed());
+
+        this.dimensionType = registryAccess.registryOrThrow(Registries.DIMENSION_TYPE).getHolderOrThrow(BuiltinDimensionTypes.OVERWORLD);
+        Registry<Biome> biomes = registryAccess.registryOrThrow(Registries.BIOME);
+        this.biomeId = biomes.getId(biomes.getOrThrow(Biomes.PLAINS));
+        Arrays.fill(this.fullSkyLight, (byte) 0xFF);
+        this.cachedChunks.defaultReturnValue(-1);
+
+        this.entityCount = settings.players() + settings.entities();
+        this.uuids = new UUID[this.entityCount];
+        this.types = new EntityType[this.entityCount];
+        this.x = new double[this.entityCount];
+        this.z = new double[this.entityCount];
+        this.yaw = new float[this.entityCount];
+        this.moved = new boolean[this.entityCount];
+        this.profiles = new GameProfile[settings.players()];
+        this.localProfile = new GameProfile(this.nextUUID(), "SyntheticCamera");
+
+        double spread = settings.viewDistance() * 16;
+        for (int i = 0; i < this.entityCount; i++) {
+            this.uuids[i] = this.nextUUID();
+            if (i < settings.players()) {
+                this.types[i] = EntityType.PLAYER;
+                this.profiles[i] = new GameProfile(this.uuids[i], "Player" + i);
+            } else {
+                this.types[i] = ENTITY_TYPES.get(this.random.nextInt(ENTITY_TYPES.size()));
+            }
+            this.x[i] = this.random.nextDouble(-spread, spread);
+            this.z[i] = this.random.nextDouble(-spread, spread);
+            this.yaw[i] = (float) this.random.nextDouble(-180, 180);
+        }
+    }
+
+    /**
+     * Generates a replay folder, which can be opened once it has been exported with {@link ReplayExporter}
+     */
+    public static FlashbackMeta generate(Settings settings, RegistryAccess registryAccess, Path folder, String name) throws IOException {
+        Files.createDirectories(folder);
+        return new SyntheticReplayGenerator(settings, registryAccess).generate(folder, name);
+    }
+
+    /**
+     * Generates a replay zip, the same as the ones that are produced by recording
+     */
+    public static FlashbackMeta generateZip(Settings settings, RegistryAccess registryAccess, Path zip, String name) throws IOException {
+        Path folder = Files.createTempDirectory("flashback-synthetic");
+        try {
+            FlashbackMeta meta = generate(settings, registryAccess, folder, name);
+            ReplayExporter.export(folder, zip, name);
+            return meta;
+        } finally {
+            // The exporter only deletes the folder once the zip has been written
+            try {
+                FileUtils.deleteDirectory(folder.toFile());
+            } catch (Exception e) {
+                Flashback.LOGGER.error("Exception deleting synthetic replay folder", e);
+            }
+        }
+    }
+
+    private FlashbackMeta generate(Path folder, String name) throws IOException {
+        Flashback.LOGGER.info("Generating synthetic replay {} in {}", this.settings, folder);
+
+        FlashbackMeta meta = new FlashbackMeta();
+        meta.replayIdentifier = this.nextUUID();
+        meta.name = name;
+        meta.worldName = "Synthetic";
+        meta.dataVersion = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        meta.protocolVersion = SharedConstants.getProtocolVersion();
+        meta.versionString = SharedConstants.VERSION_STRING;
+
+        ReplayWriter writer = new ReplayWriter(this.registryAccess);
+        List<Packet<? super ClientGamePacketListener>> packets = new ArrayList<>();
+        IntArrayList movedEntities = new IntArrayList();
+
+        try {
+            this.writeSnapshot(writer, folder);
+
+            int ticksInSegment = 0;
+            for (int tick = 0; tick < this.settings.durationTicks(); tick++) {
+                boolean movedLocalPlayer = this.tickChunkChurn(packets);
+                this.tickChat(packets);
+                this.writeGamePackets(writer, packets, folder);
+                packets.clear();
+
+                this.tickMovement(movedEntities);
+                this.writeMoveEntities(writer, movedEntities, movedLocalPlayer);
+                movedEntities.clear();
+
+                writer.startAndFinishAction(ActionNextTick.INSTANCE);
+                ticksInSegment += 1;
+
+                boolean last = tick == this.settings.durationTicks() - 1;
+                if (last || ticksInSegment >= Recorder.CHUNK_LENGTH_SECONDS * 20 || writer.writtenBytes() >= MAX_SEGMENT_BYTES) {
+                    String chunkName = "c" + meta.chunks.size() + ".flashback";
+                    Files.write(folder.resolve(chunkName), writer.popBytes());
+
+                    FlashbackChunkMeta chunkMeta = new FlashbackChunkMeta();
+                    chunkMeta.duration = ticksInSegment;
+                    meta.chunks.put(chunkName, chunkMeta);
+                    meta.totalTicks = tick + 1;
+                    ticksInSegment = 0;
+
+                    if (!last) {
+                        this.writeSnapshot(writer, folder);
+                    }
+                }
+            }
+        } finally {
+            if (this.chunkCacheOutput != null) {
+                this.chunkCacheOutput.close();
+            }
+        }
+
+        Files.writeString(folder.resolve("metadata.json"), FlashbackGson.PRETTY.toJson(meta.toJson()));
+        return meta;
+    }
+
+    private UUID nextUUID() {
+        return new UUID(this.random.nextLong(), this.random.nextLong());
+    }
+
+    private void writeSnapshot(ReplayWriter writer, Path folder) throws IOException {
+        writer.startSnapshot();
+
+        List<Packet<? super ClientGamePacketListener>> packets = new ArrayList<>();
+        CommonPlayerSpawnInfo spawnInfo = new CommonPlayerSpawnInfo(this.dimensionType, Level.OVERWORLD, 0, GameType.SPECTATOR,
+            null, false, true, Optional.empty(), 0);
+        packets.add(new ClientboundLoginPacket(LOCAL_PLAYER_ID, false, Set.of(Level.OVERWORLD), this.settings.players() + 1,
+            this.settings.viewDistance(), this.settings.viewDistance(), false, true, false, spawnInfo, false));
+        this.writeGamePackets(writer, packets, folder);
+        packets.clear();
+
+        writer.startAction(ActionCreateLocalPlayer.INSTANCE);
+        RegistryFriendlyByteBuf friendlyByteBuf = writer.friendlyByteBuf();
+        friendlyByteBuf.writeUUID(this.localProfile.getId());
+        friendlyByteBuf.writeDouble(this.localX);
+        friendlyByteBuf.writeDouble(SURFACE_Y + 8);
+        friendlyByteBuf.writeDouble(this.localZ);
+        friendlyByteBuf.writeFloat(30);
+        friendlyByteBuf.writeFloat(0);
+        friendlyByteBuf.writeFloat(0);
+        friendlyByteBuf.writeVec3(Vec3.ZERO);
+        ByteBufCodecs.GAME_PROFILE.encode(friendlyByteBuf, this.localProfile);
+        friendlyByteBuf.writeVarInt(GameType.SPECTATOR.getId());
+        writer.finishAction(ActionCreateLocalPlayer.INSTANCE);
+
+        var infoUpdatePacket = new ClientboundPlayerInfoUpdatePacket(EnumSet.of(ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER,
+            ClientboundPlayerInfoUpdatePacket.Action.UPDATE_LISTED, ClientboundPlayerInfoUpdatePacket.Action.UPDATE_GAME_MODE), List.of());
+        infoUpdatePacket.entries = new ArrayList<>();
+        infoUpdatePacket.entries.add(new ClientboundPlayerInfoUpdatePacket.Entry(this.localProfile.getId(), this.localProfile,
+            false, 0, GameType.SPECTATOR, null, null));
+        for (GameProfile profile : this.profiles) {
+            infoUpdatePacket.entries.add(new ClientboundPlayerInfoUpdatePacket.Entry(profile.getId(), profile, true, 0,
+                GameType.SURVIVAL, null, null));
+        }
+        packets.add(infoUpdatePacket);
+
+        packets.add(new ClientboundSetTimePacket(0, 6000, false));
+        packets.add(new ClientboundSetDefaultSpawnPositionPacket(new BlockPos(0, SURFACE_Y, 0), 0));
+        packets.add(new ClientboundSetChunkCacheCenterPacket(this.centerX, this.centerZ));
+
+        int viewDistance = this.settings.viewDistance();
+        for (int chunkX = this.centerX - viewDistance; chunkX <= this.centerX + viewDistance; chunkX++) {
+            for (int chunkZ = this.centerZ - viewDistance; chunkZ <= this.centerZ + viewDistance; chunkZ++) {
+                packets.add(this.createChunkPacket(chunkX, chunkZ));
+            }
+        }
+
+        for (int i = 0; i < this.entityCount; i++) {
+            packets.add(new ClientboundAddEntityPacket(FIRST_ENTITY_ID + i, this.uuids[i], this.x[i], SURFACE_Y, this.z[i],
+                0, this.yaw[i], this.types[i], 0, Vec3.ZERO, this.yaw[i]));
+        }
+
+        this.writeGamePackets(writer, packets, folder);
+        writer.endSnapshot();
+    }
+
+    /**
+     * @return whether the local player moved
+     */
+    private boolean tickChunkChurn(List<Packet<? super ClientGamePacketListener>> packets) {
+        if (this.random.nextDouble() < this.settings.chunkChurn()) {
+            // Mostly keep going in the same direction, so that chunks are both revisited and newly loaded
+            if (this.random.nextInt(4) == 0) {
+                int direction = this.random.nextInt(4);
+                this.directionX = direction == 0 ? 1 : direction == 1 ? -1 : 0;
+                this.directionZ = direction == 2 ? 1 : direction == 3 ? -1 : 0;
+            }
+
+            int viewDistance = this.settings.viewDistance();
+            int oldCenterX = this.centerX;
+            int oldCenterZ = this.centerZ;
+            this.centerX += this.directionX;
+            this.centerZ += this.directionZ;
+            packets.add(new ClientboundSetChunkCacheCenterPacket(this.centerX, this.centerZ));
+
+            for (int chunkX = oldCenterX - viewDistance; chunkX <= oldCenterX + viewDistance; chunkX++) {
+                for (int chunkZ = oldCenterZ - viewDistance; chunkZ <= oldCenterZ + viewDistance; chunkZ++) {
+                    if (Math.abs(chunkX - this.centerX) > viewDistance || Math.abs(chunkZ - this.centerZ) > viewDistance) {
+                        packets.add(new ClientboundForgetLevelChunkPacket(new ChunkPos(chunkX, chunkZ)));
+                    }
+                }
+            }
+            for (int chunkX = this.centerX - viewDistance; chunkX <= this.centerX + viewDistance; chunkX++) {
+                for (int chunkZ = this.centerZ - viewDistance; chunkZ <= this.centerZ + viewDistance; chunkZ++) {
+                    if (Math.abs(chunkX - oldCenterX) > viewDistance || Math.abs(chunkZ - oldCenterZ) > viewDistance) {
+                        packets.add(this.createChunkPacket(chunkX, chunkZ));
+                    }
+                }
+            }
+        }
+
+        // Walk towards the center of the current chunk
+        double targetX = this.centerX * 16 + 8;
+        double targetZ = this.centerZ * 16 + 8;
+        if (this.localX == targetX && this.localZ == targetZ) {
+            return false;
+        }
+        this.localX += Math.max(-0.5, Math.min(0.5, targetX - this.localX));
+        this.localZ += Math.max(-0.5, Math.min(0.5, targetZ - this.localZ));
+        return true;
+    }
+
+    private void tickChat(List<Packet<? super ClientGamePacketListener>> packets) {
+        double messages = this.settings.chatPerSecond() / 20.0;
+        int count = (int) messages;
+        if (this.random.nextDouble() < messages - count) {
+            count += 1;
+        }
+
+        for (int i = 0; i < count; i++) {
+            String sender = this.profiles.length == 0 ? "Server" : this.profiles[this.random.nextInt(this.profiles.length)].getName();
+            this.chatMessages += 1;
+            packets.add(new ClientboundSystemChatPacket(Component.literal("<" + sender + "> Synthetic message #" + this.chatMessages), false));
+        }
+    }
+
+    private void tickMovement(IntArrayList movedEntities) {
+        if (this.entityCount == 0) {
+            return;
+        }
+
+        // Pick random entities instead of rolling for each one, so that large entity counts stay cheap
+        int count = (int) Math.round(this.entityCount * (double) this.settings.movementDensity());
+        for (int i = 0; i < count; i++) {
+            int index = this.random.nextInt(this.entityCount);
+            if (this.moved[index]) {
+                continue;
+            }
+            this.moved[index] = true;
+            movedEntities.add(index);
+
+            this.yaw[index] = (float) (this.yaw[index] + this.random.nextDouble(-20, 20));
+            double radians = Math.toRadians(this.yaw[index]);
+            this.x[index] -= Math.sin(radians) * 0.2;
+            this.z[index] += Math.cos(radians) * 0.2;
+        }
+
+        for (int i = 0; i < movedEntities.size(); i++) {
+            this.moved[movedEntities.getInt(i)] = false;
+        }
+    }
+
+    private void writeMoveEntities(ReplayWriter writer, IntArrayList movedEntities, boolean movedLocalPlayer) {
+        if (movedEntities.isEmpty() && !movedLocalPlayer) {
+            return;
+        }
+
+        writer.startAction(ActionMoveEntities.INSTANCE);
+        RegistryFriendlyByteBuf friendlyByteBuf = writer.friendlyByteBuf();
+
+        friendlyByteBuf.writeVarInt(1);
+        friendlyByteBuf.writeResourceKey(Level.OVERWORLD);
+
+        friendlyByteBuf.writeVarInt(movedEntities.size() + (movedLocalPlayer ? 1 : 0));
+        if (movedLocalPlayer) {
+            writeEntityPosition(friendlyByteBuf, LOCAL_PLAYER_ID, this.localX, SURFACE_Y + 8, this.localZ, 0, 30);
+        }
+        for (int i = 0; i < movedEntities.size(); i++) {
+            int index = movedEntities.getInt(i);
+            writeEntityPosition(friendlyByteBuf, FIRST_ENTITY_ID + index, this.x[index], SURFACE_Y, this.z[index], this.yaw[index], 0);
+        }
+
+        writer.finishAction(ActionMoveEntities.INSTANCE);
+    }
+
+    private static void writeEntityPosition(FriendlyByteBuf friendlyByteBuf, int id, double x, double y, double z, float yaw, float pitch) {
+        friendlyByteBuf.writeVarInt(id);
+        friendlyByteBuf.writeDouble(x);
+        friendlyByteBuf.writeDouble(y);
+        friendlyByteBuf.writeDouble(z);
+        friendlyByteBuf.writeFloat(yaw);
+        friendlyByteBuf.writeFloat(pitch);
+        friendlyByteBuf.writeFloat(yaw);
+        friendlyByteBuf.writeBoolean(true);
+    }
+
+    private void writeGamePackets(ReplayWriter writer, List<Packet<? super ClientGamePacketListener>> packets, Path folder) throws IOException {
+        for (Packet<? super ClientGamePacketListener> packet : packets) {
+            if (packet instanceof ClientboundLevelChunkWithLightPacket levelChunkPacket) {
+                writer.startAction(ActionLevelChunkCached.INSTANCE);
+                writer.friendlyByteBuf().writeVarInt(this.getOrWriteCachedChunk(levelChunkPacket, folder));
+                writer.finishAction(ActionLevelChunkCached.INSTANCE);
+            } else {
+                writer.startAction(ActionGamePacket.INSTANCE);
+                this.gamePacketCodec.encode(writer.friendlyByteBuf(), packet);
+                writer.finishAction(ActionGamePacket.INSTANCE);
+            }
+        }
+    }
+
+    /**
+     * The contents of a chunk only depend on its position, so chunks are deduplicated by position instead of by hash
+     */
+    private int getOrWriteCachedChunk(ClientboundLevelChunkWithLightPacket packet, Path folder) throws IOException {
+        long key = ChunkPos.asLong(packet.getX(), packet.getZ());
+        int index = this.cachedChunks.get(key);
+        if (index >= 0) {
+            return index;
+        }
+
+        index = this.cachedChunks.size();
+        this.cachedChunks.put(key, index);
+
+        int cacheIndex = index / ReplayServer.CHUNK_CACHE_SIZE;
+        if (cacheIndex != this.chunkCacheOutputIndex) {
+            if (this.chunkCacheOutput != null) {
+                this.chunkCacheOutput.close();
+            }
+            Path path = folder.resolve("level_chunk_caches").resolve("" + cacheIndex);
+            Files.createDirectories(path.getParent());
+            OutputStream os = Files.newOutputStream(path);
+            this.chunkCacheOutput = new DataOutputStream(new BufferedOutputStream(os));
+            this.chunkCacheOutputIndex = cacheIndex;
+        }
+
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.buffer(), this.registryAccess);
+        this.gamePacketCodec.encode(buf, packet);
+        this.chunkCacheOutput.writeInt(buf.writerIndex());
+        buf.readBytes(this.chunkCacheOutput, buf.writerIndex());
+        return index;
+    }
+
+    private ClientboundLevelChunkWithLightPacket createChunkPacket(int chunkX, int chunkZ) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.buffer(), this.registryAccess);
+        buf.writeInt(chunkX);
+        buf.writeInt(chunkZ);
+
+        // Heightmaps, every column is the same height
+        SimpleBitStorage heights = new SimpleBitStorage(9, 256);
+        for (int i = 0; i < 256; i++) {
+            heights.set(i, SURFACE_Y - MIN_Y);
+        }
+        CompoundTag heightmaps = new CompoundTag();
+        heightmaps.putLongArray("MOTION_BLOCKING", heights.getRaw());
+        heightmaps.putLongArray("WORLD_SURFACE", heights.getRaw());
+        buf.writeNbt(heightmaps);
+
+        // Sections, each filled with a single block state & biome
+        Block surface = SURFACE_BLOCKS.get(Math.floorMod(chunkX * 31 + chunkZ * 17 + (int) this.settings.seed(), SURFACE_BLOCKS.size()));
+        FriendlyByteBuf sections = new FriendlyByteBuf(Unpooled.buffer());
+        for (int section = 0; section < SECTIONS; section++) {
+            Block block;
+            if (section < 4) {
+                block = Blocks.DEEPSLATE;
+            } else if (section < SURFACE_SECTION) {
+                block = Blocks.STONE;
+            } else if (section == SURFACE_SECTION) {
+                block = surface;
+            } else {
+                block = Blocks.AIR;
+            }
+
+            sections.writeShort(block == Blocks.AIR ? 0 : 4096);
+            writeSingleValuePalette(sections, Block.getId(block.defaultBlockState()));
+            writeSingleValuePalette(sections, this.biomeId);
+        }
+        buf.writeVarInt(sections.writerIndex());
+        buf.writeBytes(sections);
+        buf.writeVarInt(0); // block entities
+
+        // Light, full sky light above the surface and nothing below
+        BitSet skyMask = new BitSet();
+        skyMask.set(SURFACE_SECTION + 2, SECTIONS + 2);
+        buf.writeBitSet(skyMask);
+        buf.writeBitSet(new BitSet());
+        buf.writeBitSet(new BitSet());
+        buf.writeBitSet(new BitSet());
+        List<byte[]> skyLight = new ArrayList<>();
+        for (int i = 0; i < skyMask.cardinality(); i++) {
+            skyLight.add(this.fullSkyLight);
+        }
+        buf.writeCollection(skyLight, FriendlyByteBuf::writeByteArray);
+        buf.writeCollection(List.<byte[]>of(), FriendlyByteBuf::writeByteArray);
+
+        return ClientboundLevelChunkWithLightPacket.STREAM_CODEC.decode(buf);
+    }
+
+    private static void writeSingleValuePalette(FriendlyByteBuf buf, int value) {
+        buf.writeByte(0); // bits per entry
+        buf.writeVarInt(value);
+        buf.writeVarInt(0); // data length
+    }
+
+}
@@ -4,16 +4,21 @@ import com.google.gson.*;
 import com.moulberry.flashback.keyframe.change.KeyframeChange;
 import com.moulberry.flashback.keyframe.impl.*;
 import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
+import com.moulberry.flashback.spline.Hermite;
 import com.moulberry.flashback.state.RealTimeMapping;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public abstract class Keyframe {
 
+    private static final AtomicInteger NEXT_VERSION = new AtomicInteger(0);
+
     private InterpolationType interpolationType = InterpolationType.getDefault();
+    // Assigned lazily, keyframes created by gson skip the constructor
+    private transient int version = 0;
 
     public InterpolationType interpolationType() {
         return interpolationType;
@@ -21,13 +26,43 @@ public abstract class Keyframe {
 
     public void interpolationType(InterpolationType interpolationType) {
         this.interpolationType = Objects.requireNonNullElse(interpolationType, InterpolationType.getDefault());
+        this.markModified();
+    }
+
+    /**
+     * A stamp for the current contents of this keyframe, unique across all keyframes. Used by caches to tell whether a
+     * keyframe changed without comparing its values, since keyframes are modified in place
+     */
+    public int version() {
+        int version = this.version;
+        if (version == 0) {
+            version = NEXT_VERSION.incrementAndGet();
+            this.version = version;
+        }
+        return version;
+    }
+
+    /**
+     * Must be called after modifying this keyframe in place
+     */
+    public void markModified() {
+        this.version = NEXT_VERSION.incrementAndGet();
+    }
+
+    /**
+     * Copies this keyframe keeping its version, for a copy that replaces this keyframe without changing it
+     */
+    public Keyframe copyUnmodified() {
+        Keyframe copy = this.copy();
+        copy.version = this.version();
+        return copy;
     }
 
     public abstract KeyframeType<?> keyframeType();
     public abstract Keyframe copy();
     public abstract KeyframeChange createChange();
     public abstract KeyframeChange createSmoothInterpolatedChange(Keyframe p1, Keyframe p2, Keyframe p3, float t0, float t1, float t2, float t3, float amount);
-    public abstract KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float tick);
+    public abstract KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float tick);
 
     public void renderEditKeyframe(Consumer<Consumer<Keyframe>> update) {}
 
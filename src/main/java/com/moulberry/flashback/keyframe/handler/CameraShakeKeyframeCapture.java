@@ -0,0 +1,45 @@
+package com.moulberry.flashback.keyframe.handler;
+
+import com.moulberry.flashback.keyframe.change.KeyframeChange;
+import com.moulberry.flashback.keyframe.change.KeyframeChangeCameraShake;
+import com.moulberry.flashback.keyframe.change.KeyframeChangeTickrate;
+
+import java.util.Set;
+
+public class CameraShakeKeyframeCapture implements KeyframeHandler {
+    private static final Set<Class<? extends KeyframeChange>> supportedChanges = Set.of(
+            KeyframeChangeCameraShake.class, KeyframeChangeTickrate.class
+    );
+
+    public boolean hasCameraShake = false;
+    public float frequencyX = 1.0f;
+    public float frequencyY = 1.0f;
+    public float tickrate = 20.0f;
+
+    public void reset() {
+        this.hasCameraShake = false;
+        this.tickrate = 20.0f;
+    }
+
+    @Override
+    public boolean supportsKeyframeChange(Class<? extends KeyframeChange> clazz) {
+        return supportedChanges.contains(clazz);
+    }
+
+    @Override
+    public boolean alwaysApplyLastKeyframe() {
+        return true;
+    }
+
+    @Override
+    public void applyTickrate(float tickrate) {
+        this.tickrate = tickrate;
+    }
+
+    @Override
+    public void applyCameraShake(float frequencyX, float amplitudeX, float frequencyY, float amplitudeY) {
+        this.hasCameraShake = true;
+        this.frequencyX = frequencyX;
+        this.frequencyY = frequencyY;
+    }
+}
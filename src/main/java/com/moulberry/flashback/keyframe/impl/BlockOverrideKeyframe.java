@@ -17,6 +17,7 @@ import com.moulberry.flashback.keyframe.change.KeyframeChange;
 import com.moulberry.flashback.keyframe.change.KeyframeChangeFreeze;
 import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
 import com.moulberry.flashback.keyframe.types.SpeedKeyframeType;
+import com.moulberry.flashback.spline.Hermite;
 import imgui.ImGui;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
@@ -27,7 +28,6 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.PalettedContainer;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 
@@ -83,7 +83,7 @@ public class BlockOverrideKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
         return null;
     }
 
@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.*;
 import com.moulberry.flashback.Interpolation;
 import com.moulberry.flashback.editor.ui.ImGuiHelper;
@@ -17,15 +16,20 @@ import com.moulberry.flashback.state.EditorState;
 import com.moulberry.flashback.state.EditorStateManager;
 import net.minecraft.util.Mth;
 import net.minecraft.world.entity.Entity;
-import org.apache.commons.math3.analysis.interpolation.HermiteInterpolator;
 import org.joml.Vector3d;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 public class CameraKeyframe extends Keyframe {
 
+    private static final Function<Keyframe, Vector3d> HERMITE_POSITION = k -> ((CameraKeyframe)k).position;
+    private static final ToDoubleFunction<Keyframe> HERMITE_YAW = k -> ((CameraKeyframe)k).yaw;
+    private static final ToDoubleFunction<Keyframe> HERMITE_PITCH = k -> ((CameraKeyframe)k).pitch;
+    private static final ToDoubleFunction<Keyframe> HERMITE_ROLL = k -> ((CameraKeyframe)k).roll;
+
     public final Vector3d position;
     public float yaw;
     public float pitch;
@@ -143,11 +147,11 @@ public class CameraKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
-        Vector3d position = Hermite.position(Maps.transformValues(keyframes, k -> ((CameraKeyframe)k).position), amount);
-        double yaw = Hermite.degrees(Maps.transformValues(keyframes, k -> (double) ((CameraKeyframe)k).yaw), amount);
-        double pitch = Hermite.degrees(Maps.transformValues(keyframes, k -> (double) ((CameraKeyframe)k).pitch), amount);
-        double roll = Hermite.degrees(Maps.transformValues(keyframes, k -> (double) ((CameraKeyframe)k).roll), amount);
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
+        Vector3d position = hermite.position(HERMITE_POSITION, amount);
+        double yaw = hermite.degrees(HERMITE_YAW, amount);
+        double pitch = hermite.degrees(HERMITE_PITCH, amount);
+        double roll = hermite.degrees(HERMITE_ROLL, amount);
 
         return new KeyframeChangeCameraPosition(position, yaw, pitch, roll);
     }
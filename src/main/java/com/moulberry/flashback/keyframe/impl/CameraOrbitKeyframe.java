@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -20,11 +19,17 @@ import com.moulberry.flashback.spline.Hermite;
 import org.joml.Vector3d;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 public class CameraOrbitKeyframe extends Keyframe {
 
+    private static final Function<Keyframe, Vector3d> HERMITE_CENTER = k -> ((CameraOrbitKeyframe)k).center;
+    private static final ToDoubleFunction<Keyframe> HERMITE_DISTANCE = k -> ((CameraOrbitKeyframe)k).distance;
+    private static final ToDoubleFunction<Keyframe> HERMITE_YAW = k -> ((CameraOrbitKeyframe)k).yaw;
+    private static final ToDoubleFunction<Keyframe> HERMITE_PITCH = k -> ((CameraOrbitKeyframe)k).pitch;
+
     public Vector3d center;
     public float distance;
     public float yaw;
@@ -118,13 +123,13 @@ public class CameraOrbitKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
-        Vector3d position = Hermite.position(Maps.transformValues(keyframes, k -> ((CameraOrbitKeyframe)k).center), amount);
-        double distance = Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraOrbitKeyframe)k).distance), amount);
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
+        Vector3d position = hermite.position(HERMITE_CENTER, amount);
+        double distance = hermite.value(HERMITE_DISTANCE, amount);
 
         // Note: we don't use Hermite#degrees because we want to allow multiple rotations in a single orbit
-        double yaw = Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraOrbitKeyframe)k).yaw), amount);
-        double pitch = Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraOrbitKeyframe)k).pitch), amount);
+        double yaw = hermite.value(HERMITE_YAW, amount);
+        double pitch = hermite.value(HERMITE_PITCH, amount);
 
         return createChangeFrom(position, (float) distance, (float) yaw, (float) pitch);
     }
@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -24,11 +23,16 @@ import com.moulberry.flashback.state.EditorStateManager;
 import imgui.ImGui;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 public class CameraShakeKeyframe extends Keyframe {
 
+    private static final ToDoubleFunction<Keyframe> HERMITE_FREQUENCY_X = k -> ((CameraShakeKeyframe)k).frequencyX;
+    private static final ToDoubleFunction<Keyframe> HERMITE_AMPLITUDE_X = k -> ((CameraShakeKeyframe)k).amplitudeX;
+    private static final ToDoubleFunction<Keyframe> HERMITE_FREQUENCY_Y = k -> ((CameraShakeKeyframe)k).frequencyY;
+    private static final ToDoubleFunction<Keyframe> HERMITE_AMPLITUDE_Y = k -> ((CameraShakeKeyframe)k).amplitudeY;
+
     private float frequencyX;
     private float amplitudeX;
     private float frequencyY;
@@ -152,11 +156,11 @@ public class CameraShakeKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
-        float frequencyX = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraShakeKeyframe)k).frequencyX), amount);
-        float amplitudeX = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraShakeKeyframe)k).amplitudeX), amount);
-        float frequencyY = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraShakeKeyframe)k).frequencyY), amount);
-        float amplitudeY = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((CameraShakeKeyframe)k).amplitudeY), amount);
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
+        float frequencyX = (float) hermite.value(HERMITE_FREQUENCY_X, amount);
+        float amplitudeX = (float) hermite.value(HERMITE_AMPLITUDE_X, amount);
+        float frequencyY = (float) hermite.value(HERMITE_FREQUENCY_Y, amount);
+        float amplitudeY = (float) hermite.value(HERMITE_AMPLITUDE_Y, amount);
 
         return new KeyframeChangeCameraShake(frequencyX, amplitudeX, frequencyY, amplitudeY);
     }
@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.*;
 import com.moulberry.flashback.Flashback;
 import com.moulberry.flashback.Interpolation;
@@ -17,11 +16,13 @@ import com.moulberry.flashback.spline.Hermite;
 import imgui.ImGui;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 public class FOVKeyframe extends Keyframe {
 
+    private static final ToDoubleFunction<Keyframe> HERMITE_FOCAL_LENGTH = k -> Utils.fovToFocalLength(((FOVKeyframe)k).fov);
+
     public float fov;
 
     public FOVKeyframe(float fov) {
@@ -77,8 +78,8 @@ public class FOVKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
-        float focalLength = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) Utils.fovToFocalLength(((FOVKeyframe)k).fov)), amount);
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
+        float focalLength = (float) hermite.value(HERMITE_FOCAL_LENGTH, amount);
         Flashback.getReplayServer().savefov = Utils.focalLengthToFov(focalLength);
         return new KeyframeChangeFov(Utils.focalLengthToFov(focalLength));
     }
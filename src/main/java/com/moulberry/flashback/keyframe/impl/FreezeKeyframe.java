@@ -18,10 +18,10 @@ import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
 import com.moulberry.flashback.keyframe.types.FreezeKeyframeType;
 import com.moulberry.flashback.keyframe.types.SpeedKeyframeType;
 import com.moulberry.flashback.spline.CatmullRom;
+import com.moulberry.flashback.spline.Hermite;
 import imgui.ImGui;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
 
 public class FreezeKeyframe extends Keyframe {
@@ -76,7 +76,7 @@ public class FreezeKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
         return this.createChange();
     }
 
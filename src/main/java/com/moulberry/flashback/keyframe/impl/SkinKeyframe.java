@@ -12,13 +12,13 @@ import com.moulberry.flashback.keyframe.change.KeyframeChange;
 import com.moulberry.flashback.keyframe.types.SkinKeyframeType;
 import com.moulberry.flashback.keyframe.change.KeyframeChangePlayerSkin; // New import
 import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
+import com.moulberry.flashback.spline.Hermite;
 import imgui.ImGui;
 import imgui.type.ImString; // Import ImString for editable text fields
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.lang.reflect.Type;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.UUID; // For UUID validation
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
@@ -128,7 +128,7 @@ public class SkinKeyframe extends Keyframe {
 
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float tick) {
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float tick) {
         // Skin changes are discrete and not interpolated.
         return new KeyframeChangePlayerSkin(this.entityUuid, this.skinIdentifier, this.isUuidSkin);
     }
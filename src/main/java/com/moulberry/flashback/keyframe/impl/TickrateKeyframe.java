@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.*;
 import com.moulberry.flashback.Interpolation;
 import com.moulberry.flashback.keyframe.Keyframe;
@@ -15,11 +14,13 @@ import com.moulberry.flashback.spline.Hermite;
 import imgui.ImGui;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 public class TickrateKeyframe extends Keyframe {
 
+    private static final ToDoubleFunction<Keyframe> HERMITE_TICKRATE = k -> ((TickrateKeyframe)k).tickrate;
+
     private float tickrate;
 
     public TickrateKeyframe(float tickrate) {
@@ -72,8 +73,8 @@ public class TickrateKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
-        float tickrate = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((TickrateKeyframe)k).tickrate), amount);
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
+        float tickrate = (float) hermite.value(HERMITE_TICKRATE, amount);
         return new KeyframeChangeTickrate(tickrate);
     }
 
@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.*;
 import com.moulberry.flashback.Interpolation;
 import com.moulberry.flashback.editor.ui.ImGuiHelper;
@@ -18,11 +17,13 @@ import imgui.ImGui;
 import imgui.type.ImInt;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 public class TimeOfDayKeyframe extends Keyframe {
 
+    private static final ToDoubleFunction<Keyframe> HERMITE_TIME = k -> ((TimeOfDayKeyframe)k).time;
+
     public int time;
 
     public TimeOfDayKeyframe(int time) {
@@ -74,8 +75,8 @@ public class TimeOfDayKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
-        int timeOfDay = (int) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((TimeOfDayKeyframe)k).time), amount);
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
+        int timeOfDay = (int) hermite.value(HERMITE_TIME, amount);
         return new KeyframeChangeTimeOfDay(timeOfDay);
     }
 
@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -23,7 +22,6 @@ import imgui.ImGui;
 import imgui.type.ImString;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Consumer;
 
 public class TimelapseKeyframe extends Keyframe {
@@ -77,7 +75,7 @@ public class TimelapseKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
         throw new UnsupportedOperationException();
     }
 
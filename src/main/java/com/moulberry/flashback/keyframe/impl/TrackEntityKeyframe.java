@@ -1,6 +1,5 @@
 package com.moulberry.flashback.keyframe.impl;
 
-import com.google.common.collect.Maps;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -26,12 +25,18 @@ import net.minecraft.world.entity.Entity;
 import org.joml.Vector3d;
 
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 public class TrackEntityKeyframe extends Keyframe {
 
+    private static final ToDoubleFunction<Keyframe> HERMITE_YAW_OFFSET = k -> ((TrackEntityKeyframe)k).yawOffset;
+    private static final ToDoubleFunction<Keyframe> HERMITE_PITCH_OFFSET = k -> ((TrackEntityKeyframe)k).pitchOffset;
+    private static final Function<Keyframe, Vector3d> HERMITE_POSITION_OFFSET = k -> ((TrackEntityKeyframe)k).positionOffset;
+    private static final Function<Keyframe, Vector3d> HERMITE_VIEW_OFFSET = k -> ((TrackEntityKeyframe)k).viewOffset;
+
     public UUID target;
     public TrackingBodyPart trackingBodyPart;
     public float yawOffset;
@@ -156,26 +161,26 @@ public class TrackEntityKeyframe extends Keyframe {
     }
 
     @Override
-    public KeyframeChange createHermiteInterpolatedChange(Map<Float, Keyframe> keyframes, float amount) {
+    public KeyframeChange createHermiteInterpolatedChange(Hermite<Keyframe> hermite, float amount) {
         float lowestTickDelta = Float.MAX_VALUE;
         UUID target = null;
         TrackingBodyPart trackingBodyPart = null;
-        for (Map.Entry<Float, Keyframe> entry : keyframes.entrySet()) {
-            float tickDelta = Math.abs(entry.getKey() - amount);
+        for (int i = 0; i < hermite.size(); i++) {
+            float tickDelta = Math.abs(hermite.time(i) - amount);
             if (tickDelta < lowestTickDelta) {
                 lowestTickDelta = tickDelta;
-                target = ((TrackEntityKeyframe)entry.getValue()).target;
-                trackingBodyPart = ((TrackEntityKeyframe)entry.getValue()).trackingBodyPart;
+                target = ((TrackEntityKeyframe)hermite.sample(i)).target;
+                trackingBodyPart = ((TrackEntityKeyframe)hermite.sample(i)).trackingBodyPart;
             }
         }
 
 
         // Note: we don't use Hermite#degrees because we want to allow multiple rotations in a single orbit
-        float yawOffset = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((TrackEntityKeyframe)k).yawOffset), amount);
-        float pitchOffset = (float) Hermite.value(Maps.transformValues(keyframes, k -> (double) ((TrackEntityKeyframe)k).pitchOffset), amount);
+        float yawOffset = (float) hermite.value(HERMITE_YAW_OFFSET, amount);
+        float pitchOffset = (float) hermite.value(HERMITE_PITCH_OFFSET, amount);
 
-        Vector3d positionOffset = Hermite.position(Maps.transformValues(keyframes, k -> ((TrackEntityKeyframe)k).positionOffset), amount);
-        Vector3d viewOffset = Hermite.position(Maps.transformValues(keyframes, k -> ((TrackEntityKeyframe)k).viewOffset), amount);
+        Vector3d positionOffset = hermite.position(HERMITE_POSITION_OFFSET, amount);
+        Vector3d viewOffset = hermite.position(HERMITE_VIEW_OFFSET, amount);
 
         return new KeyframeChangeTrackEntity(target, trackingBodyPart, yawOffset, pitchOffset, positionOffset, viewOffset);
     }
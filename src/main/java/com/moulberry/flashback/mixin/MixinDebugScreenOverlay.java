@@ -25,6 +25,9 @@ public class MixinDebugScreenOverlay {
     public void getGameInformation(CallbackInfoReturnable<List<String>> info) {
         if (Flashback.RECORDER != null) {
             info.getReturnValue().add(Flashback.RECORDER.getDebugString());
+            if (Flashback.getConfig().showRecordingStats) {
+                info.getReturnValue().addAll(Flashback.RECORDER.getStatsDebugLines());
+            }
         }
     }
 
@@ -19,6 +19,7 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.ChunkAccess;
 import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
 import net.minecraft.world.level.chunk.UpgradeData;
 import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.levelgen.blending.BlendingData;
@@ -30,8 +31,11 @@ import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.util.function.Consumer;
+
 @Mixin(LevelChunk.class)
 public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkExt {
 
@@ -55,6 +59,18 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
     @Unique
     private int cachedChunkId = -1;
 
+    // Incremented whenever the blocks of this chunk change, used to skip reapplying block overrides
+    @Unique
+    private int blockModCount = 0;
+
+    // Cached chunk that was loaded with block overrides merged into it, only valid while the blocks are unchanged
+    @Unique
+    private int overrideVariantChunkId = -1;
+    @Unique
+    private int overrideVariantVersion = 0;
+    @Unique
+    private int overrideVariantModCount = 0;
+
     @Override
     public int flashback$getCachedChunkId() {
         return this.cachedChunkId;
@@ -65,6 +81,29 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
         this.cachedChunkId = id;
     }
 
+    @Override
+    public void flashback$setOverrideVariant(int chunkId, int overrideVersion) {
+        this.overrideVariantChunkId = chunkId;
+        this.overrideVariantVersion = overrideVersion;
+        this.overrideVariantModCount = this.blockModCount;
+    }
+
+    @Override
+    public boolean flashback$isOverrideVariant(int chunkId, int overrideVersion) {
+        return chunkId >= 0 && this.overrideVariantChunkId == chunkId && this.overrideVariantVersion == overrideVersion &&
+            this.overrideVariantModCount == this.blockModCount;
+    }
+
+    @Override
+    public int flashback$getBlockModCount() {
+        return this.blockModCount;
+    }
+
+    @Inject(method = "replaceWithPacketData", at = @At("RETURN"))
+    public void replaceWithPacketData(CallbackInfo ci) {
+        this.blockModCount += 1;
+    }
+
     @Inject(method = "setBlockState", at = @At("RETURN"))
     public void setBlockState(BlockPos blockPos, BlockState blockState, boolean bl, CallbackInfoReturnable<BlockState> cir) {
         ReplayServer replayServer = Flashback.getReplayServer();
@@ -74,6 +113,7 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
 
         BlockState old = cir.getReturnValue();
         if (old != null && old != blockState) {
+            this.blockModCount += 1;
             replayServer.blockChangeOccurred(blockPos, blockState);
             this.cachedChunkId = -1;
         }
@@ -103,12 +143,7 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
         }
 
         this.cachedChunkId = -1;
-
-        // Update heightmaps
-        this.heightmaps.get(Heightmap.Types.MOTION_BLOCKING).update(localX, y, localZ, blockState);
-        this.heightmaps.get(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES).update(localX, y, localZ, blockState);
-        this.heightmaps.get(Heightmap.Types.OCEAN_FLOOR).update(localX, y, localZ, blockState);
-        this.heightmaps.get(Heightmap.Types.WORLD_SURFACE).update(localX, y, localZ, blockState);
+        this.blockModCount += 1;
 
         // Update air status
         boolean newHasOnlyAir = levelChunkSection.hasOnlyAir();
@@ -116,6 +151,101 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
             this.level.getChunkSource().getLightEngine().updateSectionStatus(blockPos, newHasOnlyAir);
         }
 
+        this.flashback$updateChangedBlock(levelChunkSection, blockPos, oldBlockState, blockState);
+
+        this.unsaved = true;
+        return oldBlockState;
+    }
+
+    @Override
+    public int flashback$setSectionBlocksWithoutUpdates(int sectionY, PalettedContainer<BlockState> blocks, BlockState skipState, Consumer<BlockPos> changed) {
+        int sectionIndex = this.getSectionIndexFromSectionY(sectionY);
+        if (sectionIndex < 0 || sectionIndex >= this.getSectionsCount()) {
+            return 0;
+        }
+
+        LevelChunkSection levelChunkSection = this.getSection(sectionIndex);
+        boolean oldHasOnlyAir = levelChunkSection.hasOnlyAir();
+
+        // Write every block while holding the section lock once, remembering what changed
+        short[] changedIndices = null;
+        BlockState[] oldStates = null;
+        BlockState[] newStates = null;
+        int changedCount = 0;
+
+        levelChunkSection.acquire();
+        try {
+            // Descending y, so that heightmaps below only need to scan down once per column
+            for (int y = 15; y >= 0; y--) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockState blockState = blocks.get(x, y, z);
+                        if (blockState == skipState) {
+                            continue;
+                        }
+
+                        BlockState oldBlockState = levelChunkSection.setBlockState(x, y, z, blockState, false);
+                        if (oldBlockState == blockState) {
+                            continue;
+                        }
+
+                        if (changedIndices == null) {
+                            changedIndices = new short[4096];
+                            oldStates = new BlockState[4096];
+                            newStates = new BlockState[4096];
+                        }
+                        changedIndices[changedCount] = (short) ((y << 8) | (z << 4) | x);
+                        oldStates[changedCount] = oldBlockState;
+                        newStates[changedCount] = blockState;
+                        changedCount += 1;
+                    }
+                }
+            }
+        } finally {
+            levelChunkSection.release();
+        }
+
+        if (changedCount == 0) {
+            return 0;
+        }
+
+        this.cachedChunkId = -1;
+        this.blockModCount += 1;
+
+        // Update air status once for the whole section
+        boolean newHasOnlyAir = levelChunkSection.hasOnlyAir();
+        if (oldHasOnlyAir != newHasOnlyAir) {
+            this.level.getChunkSource().getLightEngine().updateSectionStatus(SectionPos.of(this.chunkPos, sectionY), newHasOnlyAir);
+        }
+
+        // Update heightmaps, light & block entities against the final contents of the section
+        int baseX = this.chunkPos.getMinBlockX();
+        int baseY = SectionPos.sectionToBlockCoord(sectionY);
+        int baseZ = this.chunkPos.getMinBlockZ();
+        for (int i = 0; i < changedCount; i++) {
+            int index = changedIndices[i];
+            BlockPos blockPos = new BlockPos(baseX + (index & 0xF), baseY + (index >> 8), baseZ + ((index >> 4) & 0xF));
+            this.flashback$updateChangedBlock(levelChunkSection, blockPos, oldStates[i], newStates[i]);
+            changed.accept(blockPos);
+        }
+
+        this.unsaved = true;
+        return changedCount;
+    }
+
+    @Unique
+    private void flashback$updateChangedBlock(LevelChunkSection levelChunkSection, BlockPos blockPos, BlockState oldBlockState, BlockState blockState) {
+        int localX = blockPos.getX() & 0xF;
+        int y = blockPos.getY();
+        int localY = y & 0xF;
+        int localZ = blockPos.getZ() & 0xF;
+
+        // Update heightmaps
+        this.heightmaps.get(Heightmap.Types.MOTION_BLOCKING).update(localX, y, localZ, blockState);
+        this.heightmaps.get(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES).update(localX, y, localZ, blockState);
+        this.heightmaps.get(Heightmap.Types.OCEAN_FLOOR).update(localX, y, localZ, blockState);
+        this.heightmaps.get(Heightmap.Types.WORLD_SURFACE).update(localX, y, localZ, blockState);
+
         // Update light
         if (LightEngine.hasDifferentLightProperties(this, blockPos, oldBlockState, blockState)) {
             if (this.skyLightSources != null) {
@@ -130,7 +260,7 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
             this.removeBlockEntity(blockPos);
         }
         if (!levelChunkSection.getBlockState(localX, localY, localZ).is(block)) {
-            return oldBlockState;
+            return;
         }
         if (blockState.hasBlockEntity()) {
             BlockEntity blockEntity = this.getBlockEntity(blockPos, LevelChunk.EntityCreationType.CHECK);
@@ -144,9 +274,6 @@ public abstract class MixinLevelChunk extends ChunkAccess implements LevelChunkE
                 this.updateBlockEntityTicker(blockEntity);
             }
         }
-
-        this.unsaved = true;
-        return oldBlockState;
     }
 
 }
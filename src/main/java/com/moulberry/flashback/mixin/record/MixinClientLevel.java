@@ -46,6 +46,20 @@ public class MixinClientLevel {
         }
     }
 
+    @Inject(method = "addEntity", at = @At("RETURN"))
+    public void addEntity(Entity entity, CallbackInfo ci) {
+        if (Flashback.RECORDER != null) {
+            Flashback.RECORDER.onEntityAdded(entity.getId());
+        }
+    }
+
+    @Inject(method = "removeEntity", at = @At("HEAD"))
+    public void removeEntity(int id, Entity.RemovalReason removalReason, CallbackInfo ci) {
+        if (Flashback.RECORDER != null) {
+            Flashback.RECORDER.onEntityRemoved(id);
+        }
+    }
+
     @Inject(method = "levelEvent", at = @At("HEAD"))
     public void levelEvent(Player player, int type, BlockPos blockPos, int data, CallbackInfo ci) {
         if (Flashback.RECORDER != null && !Flashback.RECORDER.isPaused()) {
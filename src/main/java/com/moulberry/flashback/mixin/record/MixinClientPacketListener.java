@@ -0,0 +1,64 @@
+package com.moulberry.flashback.mixin.record;
+
+import com.moulberry.flashback.Flashback;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.multiplayer.ClientPacketListener;
+import net.minecraft.network.protocol.game.ClientboundMoveEntityPacket;
+import net.minecraft.network.protocol.game.ClientboundRotateHeadPacket;
+import net.minecraft.network.protocol.game.ClientboundSetPassengersPacket;
+import net.minecraft.network.protocol.game.ClientboundTeleportEntityPacket;
+import net.minecraft.world.entity.Entity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/*
+ * Marks entities moved by the server so that the recorder only has to check those at the end of the tick
+ * RETURN is only reached on the main thread, the handlers throw when called from the network thread
+ */
+@Mixin(ClientPacketListener.class)
+public class MixinClientPacketListener {
+
+    @Shadow
+    private ClientLevel level;
+
+    @Inject(method = "handleMoveEntity", at = @At("RETURN"))
+    public void handleMoveEntity(ClientboundMoveEntityPacket packet, CallbackInfo ci) {
+        if (Flashback.RECORDER != null) {
+            Entity entity = packet.getEntity(this.level);
+            if (entity != null) {
+                Flashback.RECORDER.markEntityMoved(entity.getId());
+            }
+        }
+    }
+
+    @Inject(method = "handleTeleportEntity", at = @At("RETURN"))
+    public void handleTeleportEntity(ClientboundTeleportEntityPacket packet, CallbackInfo ci) {
+        if (Flashback.RECORDER != null) {
+            Flashback.RECORDER.markEntityMoved(packet.getId());
+        }
+    }
+
+    @Inject(method = "handleRotateMob", at = @At("RETURN"))
+    public void handleRotateMob(ClientboundRotateHeadPacket packet, CallbackInfo ci) {
+        if (Flashback.RECORDER != null) {
+            Entity entity = packet.getEntity(this.level);
+            if (entity != null) {
+                Flashback.RECORDER.markEntityMoved(entity.getId());
+            }
+        }
+    }
+
+    @Inject(method = "handleSetEntityPassengersPacket", at = @At("RETURN"))
+    public void handleSetEntityPassengersPacket(ClientboundSetPassengersPacket packet, CallbackInfo ci) {
+        if (Flashback.RECORDER != null) {
+            Flashback.RECORDER.markEntityMoved(packet.getVehicle());
+            for (int passenger : packet.getPassengers()) {
+                Flashback.RECORDER.markEntityMoved(passenger);
+            }
+        }
+    }
+
+}
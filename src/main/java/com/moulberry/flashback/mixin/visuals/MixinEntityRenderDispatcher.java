@@ -30,11 +30,8 @@ public abstract class MixinEntityRenderDispatcher {
     @Inject(method = "shouldRender", at = @At("HEAD"), cancellable = true)
     public void shouldRender(Entity entity, Frustum frustum, double d, double e, double f, CallbackInfoReturnable<Boolean> cir) {
         EditorState editorState = EditorStateManager.getCurrent();
-        if (editorState != null && !editorState.filteredEntities.isEmpty()) {
-            String id = entity.getType().builtInRegistryHolder().key().location().toString();
-            if (editorState.filteredEntities.contains(id)) {
-                cir.setReturnValue(false);
-            }
+        if (editorState != null && editorState.isEntityTypeFiltered(entity.getType())) {
+            cir.setReturnValue(false);
         }
     }
 
@@ -42,7 +39,7 @@ public abstract class MixinEntityRenderDispatcher {
     public void renderBefore(Entity entity, double d, double e, double f, float g, float h, PoseStack poseStack, MultiBufferSource multiBufferSource, int i, CallbackInfo ci) {
         if (Flashback.isExporting()) {
             EditorState editorState = EditorStateManager.getCurrent();
-            if (editorState != null && editorState.hideDuringExport.contains(entity.getUUID())) {
+            if (editorState != null && editorState.isHiddenDuringExport(entity)) {
                 ci.cancel();
             }
         }
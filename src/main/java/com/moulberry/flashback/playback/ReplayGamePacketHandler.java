@@ -1432,6 +1432,10 @@ public class ReplayGamePacketHandler implements ClientGamePacketListener {
         var lightData = clientboundLightUpdatePacket.getLightData();
         this.applyLightData(levelLightEngine, x, z, lightData);
 
+        if (chunk instanceof LevelChunkExt ext) {
+            ext.flashback$setOverrideVariant(-1, 0);
+        }
+
         chunk.setUnsaved(true);
     }
 
@@ -46,6 +46,8 @@ import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.Util;
@@ -163,6 +165,18 @@ public class ReplayServer extends IntegratedServer {
 
     private record BlockAtPosition(long pos, BlockState blockState) {}
     private List<BlockAtPosition> pendingBlockOverrides = new ArrayList<>();
+    private final Long2ObjectMap<AppliedBlockOverride> appliedBlockOverrides = new Long2ObjectOpenHashMap<>();
+    private ServerLevel appliedBlockOverridesLevel = null;
+
+    // Block overrides of the scene being played, only set while handleActions holds the editor state lock
+    private Map<Integer, Keyframe> activeBlockOverrides = null;
+    private int activeBlockOverridesModCount = 0;
+
+    // Sections of the current block override keyframe grouped by chunk, so cached chunks can be patched before sending
+    private BlockOverrideKeyframe indexedBlockOverrideKeyframe = null;
+    private int indexedBlockOverrideModCount = 0;
+    private final Long2ObjectMap<LongList> blockOverrideSectionsByChunk = new Long2ObjectOpenHashMap<>();
+    private int blockOverrideVersion = 0;
 
     private int printFailedDecodePacketCount = 8;
 
@@ -745,11 +759,29 @@ public class ReplayServer extends IntegratedServer {
                 int z = packet.getZ();
                 LevelChunk chunk = this.gamePacketHandler.level().getChunk(x, z);
 
-                if (Flashback.EXPORT_JOB != null || !doesCachedChunkIdMatch(chunk, index) || this.gamePacketHandler.forceSendChunksDueToMovingPistonShenanigans.contains(ChunkPos.asLong(x, z))) {
+                BlockOverrideKeyframe blockOverrides = this.getActiveBlockOverrideKeyframe();
+                LongList overrideSections = blockOverrides == null ? null : this.blockOverrideSectionsByChunk.get(ChunkPos.asLong(x, z));
+
+                boolean matches;
+                if (overrideSections == null) {
+                    matches = doesCachedChunkIdMatch(chunk, index);
+                } else {
+                    matches = chunk instanceof LevelChunkExt ext && ext.flashback$isOverrideVariant(index, this.blockOverrideVersion);
+                }
+
+                if (Flashback.EXPORT_JOB != null || !matches || this.gamePacketHandler.forceSendChunksDueToMovingPistonShenanigans.contains(ChunkPos.asLong(x, z))) {
                     packet.handle(this.gamePacketHandler);
 
                     if (chunk instanceof LevelChunkExt ext) {
-                        ext.flashback$setCachedChunkId(index);
+                        if (overrideSections == null) {
+                            ext.flashback$setCachedChunkId(index);
+                            ext.flashback$setOverrideVariant(-1, 0);
+                        } else {
+                            // Merge the overrides before the chunk is sent, instead of sending the original followed by block updates
+                            this.applyBlockOverridesToLoadedChunk(chunk, ext, blockOverrides, overrideSections);
+                            ext.flashback$setCachedChunkId(-1);
+                            ext.flashback$setOverrideVariant(index, this.blockOverrideVersion);
+                        }
                     }
                 }
             } catch (Exception ignored) {
@@ -761,6 +793,64 @@ public class ReplayServer extends IntegratedServer {
         }
     }
 
+    @Nullable
+    private BlockOverrideKeyframe getActiveBlockOverrideKeyframe() {
+        if (this.activeBlockOverrides == null) {
+            return null;
+        }
+
+        BlockOverrideKeyframe keyframe = (BlockOverrideKeyframe) this.activeBlockOverrides.get(this.currentTick);
+        if (keyframe == null) {
+            return null;
+        }
+
+        if (keyframe != this.indexedBlockOverrideKeyframe || this.activeBlockOverridesModCount != this.indexedBlockOverrideModCount) {
+            this.indexedBlockOverrideKeyframe = keyframe;
+            this.indexedBlockOverrideModCount = this.activeBlockOverridesModCount;
+            this.blockOverrideVersion += 1;
+
+            BlockState emptyState = BlockOverrideKeyframe.EMPTY_STATE;
+            this.blockOverrideSectionsByChunk.clear();
+            for (Long2ObjectMap.Entry<PalettedContainer<BlockState>> entry : keyframe.blocks.long2ObjectEntrySet()) {
+                if (entry.getValue().maybeHas(blockState -> blockState != emptyState)) {
+                    long sectionPos = entry.getLongKey();
+                    long chunkPos = ChunkPos.asLong(BlockPos.getX(sectionPos), BlockPos.getZ(sectionPos));
+                    this.blockOverrideSectionsByChunk.computeIfAbsent(chunkPos, k -> new LongArrayList()).add(sectionPos);
+                }
+            }
+        }
+
+        return keyframe;
+    }
+
+    private void applyBlockOverridesToLoadedChunk(LevelChunk chunk, LevelChunkExt ext, BlockOverrideKeyframe keyframe, LongList sections) {
+        ServerLevel level = this.gamePacketHandler.level();
+        if (this.appliedBlockOverridesLevel != level) {
+            this.appliedBlockOverridesLevel = level;
+            this.appliedBlockOverrides.clear();
+        }
+
+        for (int i = 0; i < sections.size(); i++) {
+            long sectionPos = sections.getLong(i);
+            int sectionY = BlockPos.getY(sectionPos);
+            if (sectionY < level.getMinSection() || sectionY >= level.getMaxSection()) {
+                continue;
+            }
+
+            // The chunk hasn't been sent yet, so viewers don't need to be notified of the individual changes
+            PalettedContainer<BlockState> container = keyframe.blocks.get(sectionPos);
+            ext.flashback$setSectionBlocksWithoutUpdates(sectionY, container, BlockOverrideKeyframe.EMPTY_STATE, blockPos -> {});
+        }
+
+        // Mark every section as applied, so the regular pass after the tick doesn't write them again
+        int blockModCount = ext.flashback$getBlockModCount();
+        for (int i = 0; i < sections.size(); i++) {
+            long sectionPos = sections.getLong(i);
+            this.appliedBlockOverrides.put(sectionPos, new AppliedBlockOverride(chunk, keyframe.blocks.get(sectionPos),
+                blockModCount, this.activeBlockOverridesModCount));
+        }
+    }
+
     private static boolean doesCachedChunkIdMatch(LevelChunk chunk, int chunkId) {
         if (chunk instanceof LevelChunkExt ext) {
             return ext.flashback$getCachedChunkId() == chunkId;
@@ -1228,10 +1318,10 @@ public class ReplayServer extends IntegratedServer {
 
             for (KeyframeTrack keyframeTrack : scene.keyframeTracks) {
                 if (keyframeTrack.keyframeType == BlockOverrideKeyframeType.INSTANCE) {
-                    BlockOverrideKeyframe keyframe = (BlockOverrideKeyframe) keyframeTrack.keyframesByTick.get(currentTick);
+                    BlockOverrideKeyframe keyframe = (BlockOverrideKeyframe) keyframeTrack.mutableKeyframes().get(currentTick);
                     if (keyframe == null) {
                         keyframe = new BlockOverrideKeyframe();
-                        keyframeTrack.keyframesByTick.put(currentTick, keyframe);
+                        keyframeTrack.mutableKeyframes().put(currentTick, keyframe);
                     }
                     for (BlockAtPosition pendingBlockOverride : pendingBlockOverrides) {
                         long pos = pendingBlockOverride.pos;
@@ -1240,6 +1330,7 @@ public class ReplayServer extends IntegratedServer {
                         int z = BlockPos.getZ(pos);
                         keyframe.setBlock(x, y, z, pendingBlockOverride.blockState);
                     }
+                    keyframe.markModified();
                     added = true;
                     break;
                 }
@@ -1260,6 +1351,8 @@ public class ReplayServer extends IntegratedServer {
 
                 scene.keyframeTracks.add(keyframeTrack);
             }
+
+            editorState.markDirty();
         } finally {
             editorState.release(stamp);
         }
@@ -1328,6 +1421,7 @@ public class ReplayServer extends IntegratedServer {
         long stamp = editorState.acquireRead();
         try {
             EditorScene scene = editorState.getCurrentScene(stamp);
+            int editorModCount = editorState.modCount;
             Map<Integer, Keyframe> blockOverrideKeyframes = null;
 
             for (KeyframeTrack keyframeTrack : scene.keyframeTracks) {
@@ -1340,12 +1434,15 @@ public class ReplayServer extends IntegratedServer {
             if (blockOverrideKeyframes == null) {
                 editorState.release(stamp);
                 stamp = 0L;
+            } else {
+                this.activeBlockOverrides = blockOverrideKeyframes;
+                this.activeBlockOverridesModCount = editorModCount;
             }
 
             int lastBlockOverrideTick = this.currentTick;
             while (this.currentTick < this.targetTick) {
                 if (lastBlockOverrideTick != this.currentTick && blockOverrideKeyframes != null) {
-                    applyBlockOverrideKeyframes(blockOverrideKeyframes, lastBlockOverrideTick);
+                    applyBlockOverrideKeyframes(blockOverrideKeyframes, lastBlockOverrideTick, editorModCount);
                     lastBlockOverrideTick = this.currentTick;
                 }
 
@@ -1387,11 +1484,12 @@ public class ReplayServer extends IntegratedServer {
 
             if (blockOverrideKeyframes != null) {
                 if (lastBlockOverrideTick != this.currentTick) {
-                    applyBlockOverrideKeyframes(blockOverrideKeyframes, lastBlockOverrideTick);
+                    applyBlockOverrideKeyframes(blockOverrideKeyframes, lastBlockOverrideTick, editorModCount);
                 }
-                applyBlockOverrideKeyframes(blockOverrideKeyframes, this.currentTick);
+                applyBlockOverrideKeyframes(blockOverrideKeyframes, this.currentTick, editorModCount);
             }
         } finally {
+            this.activeBlockOverrides = null;
             if (stamp != 0) {
                 editorState.release(stamp);
             }
@@ -1399,12 +1497,16 @@ public class ReplayServer extends IntegratedServer {
         }
     }
 
-    private void applyBlockOverrideKeyframes(Map<Integer, Keyframe> blockOverrideKeyframes, int tick) {
+    private void applyBlockOverrideKeyframes(Map<Integer, Keyframe> blockOverrideKeyframes, int tick, int editorModCount) {
         ServerLevel level = this.gamePacketHandler.level();
         if (level != null) {
+            if (this.appliedBlockOverridesLevel != level) {
+                this.appliedBlockOverridesLevel = level;
+                this.appliedBlockOverrides.clear();
+            }
+
             BlockOverrideKeyframe keyframe = (BlockOverrideKeyframe) blockOverrideKeyframes.get(tick);
             if (keyframe != null) {
-                BlockPos.MutableBlockPos mutableBlockPos = new BlockPos.MutableBlockPos();
                 BlockState emptyState = BlockOverrideKeyframe.EMPTY_STATE;
                 for (Long2ObjectMap.Entry<PalettedContainer<BlockState>> chunkEntry : keyframe.blocks.long2ObjectEntrySet()) {
                     long chunkPos = chunkEntry.getLongKey();
@@ -1417,27 +1519,32 @@ public class ReplayServer extends IntegratedServer {
                     }
 
                     PalettedContainer<BlockState> container = chunkEntry.getValue();
-
                     LevelChunk levelChunk = level.getChunk(chunkX, chunkZ);
-                    for (int x = 0; x < 16; x++) {
-                        for (int y = 0; y < 16; y++) {
-                            for (int z = 0; z < 16; z++) {
-                                BlockState blockState = container.get(x, y, z);
-                                if (blockState == emptyState) continue;
-
-                                mutableBlockPos.set((chunkX << 4) + x, (chunkY << 4) + y, (chunkZ << 4) + z);
-                                BlockState old = ((LevelChunkExt)levelChunk).flashback$setBlockStateWithoutUpdates(mutableBlockPos, blockState);
-                                if (old != null) {
-                                    level.sendBlockUpdated(mutableBlockPos, old, blockState, 3);
-                                }
-                            }
-                        }
+                    if (!(levelChunk instanceof LevelChunkExt levelChunkExt)) {
+                        continue;
                     }
+
+                    // Skip the section if it hasn't changed since the same overrides were last applied to it
+                    AppliedBlockOverride applied = this.appliedBlockOverrides.get(chunkPos);
+                    if (applied != null && applied.chunk == levelChunk && applied.container == container &&
+                            applied.blockModCount == levelChunkExt.flashback$getBlockModCount() && applied.editorModCount == editorModCount) {
+                        continue;
+                    }
+
+                    if (container.maybeHas(blockState -> blockState != emptyState)) {
+                        // Changes are collected by the chunk holder and sent as one section update when broadcasting
+                        levelChunkExt.flashback$setSectionBlocksWithoutUpdates(chunkY, container, emptyState, level.getChunkSource()::blockChanged);
+                    }
+
+                    this.appliedBlockOverrides.put(chunkPos, new AppliedBlockOverride(levelChunk, container,
+                        levelChunkExt.flashback$getBlockModCount(), editorModCount));
                 }
             }
         }
     }
 
+    private record AppliedBlockOverride(LevelChunk chunk, PalettedContainer<BlockState> container, int blockModCount, int editorModCount) {}
+
     private void clearDataForPlayingSnapshot() {
         for (ReplayPlayer replayViewer : this.replayViewers) {
             for (UUID uuid : this.bossEvents.keySet()) {
@@ -0,0 +1,296 @@
+package com.moulberry.flashback.record;
+
+import com.moulberry.flashback.PacketHelper;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Display;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the last written position of every entity in parallel arrays, indexed by a slot which is assigned per entity id.
+ * <p>
+ * Entities are only compared against their last written position after being marked as dirty, either by the packets
+ * that move them or by being added to the level. An entity that changed is checked again on the next tick, which covers
+ * interpolation and client-side movement that follows a packet. Passengers are checked whenever their vehicle is and the
+ * local player is checked every tick. This means the cost per tick depends on the number of entities that move, rather
+ * than on the number of entities that are loaded.
+ */
+class EntityPositionTracker {
+
+    /**
+     * Entities which changed in the last call to {@link #collectChanged}, copied so that they can be written on another thread
+     *
+     * @param positions x, y, z for each entity
+     * @param angles yaw, pitch, head yaw for each entity
+     */
+    record Changes(int count, int[] ids, double[] positions, float[] angles, boolean[] onGround) {}
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Int2IntOpenHashMap slotById = new Int2IntOpenHashMap();
+
+    // Per slot
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] z = new double[INITIAL_CAPACITY];
+    private float[] yaw = new float[INITIAL_CAPACITY];
+    private float[] pitch = new float[INITIAL_CAPACITY];
+    private float[] headYRot = new float[INITIAL_CAPACITY];
+    private boolean[] onGround = new boolean[INITIAL_CAPACITY];
+    private boolean[] written = new boolean[INITIAL_CAPACITY];
+    private boolean[] dirty = new boolean[INITIAL_CAPACITY];
+    private int[] visitedTick = new int[INITIAL_CAPACITY];
+    private int slotCount = 0;
+
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+
+    private int[] dirtySlots = new int[INITIAL_CAPACITY];
+    private int dirtyCount = 0;
+    private int[] changedSlots = new int[INITIAL_CAPACITY];
+    private int changedCount = 0;
+
+    private int tick = 0;
+    private ClientLevel lastLevel = null;
+
+    EntityPositionTracker() {
+        this.slotById.defaultReturnValue(-1);
+    }
+
+    void markDirty(int id) {
+        int slot = this.slotById.get(id);
+        if (slot < 0) {
+            slot = this.allocateSlot(id);
+        }
+        this.markSlotDirty(slot);
+    }
+
+    /**
+     * Called when an entity is added to the level, its position will always be written on the next tick
+     */
+    void reset(int id) {
+        int slot = this.slotById.get(id);
+        if (slot >= 0) {
+            this.written[slot] = false;
+            this.markSlotDirty(slot);
+        } else {
+            this.markDirty(id);
+        }
+    }
+
+    void remove(int id) {
+        int slot = this.slotById.remove(id);
+        if (slot < 0) {
+            return;
+        }
+
+        // The slot may still be in the dirty list, it will be skipped there
+        this.ids[slot] = -1;
+        this.written[slot] = false;
+
+        if (this.freeCount == this.freeSlots.length) {
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlots.length * 2);
+        }
+        this.freeSlots[this.freeCount++] = slot;
+    }
+
+    void clear() {
+        this.slotById.clear();
+        Arrays.fill(this.dirty, 0, this.slotCount, false);
+        this.slotCount = 0;
+        this.freeCount = 0;
+        this.dirtyCount = 0;
+        this.lastLevel = null;
+    }
+
+    /**
+     * Checks every dirty entity against its last written position
+     *
+     * @return the number of entities that changed, which can be copied with {@link #copyChanges()}
+     */
+    int collectChanged(ClientLevel level, @Nullable Entity localPlayer) {
+        if (this.lastLevel != level) {
+            // Entities that were already loaded were never marked, so every entity needs to be checked once
+            this.clear();
+            this.lastLevel = level;
+            for (Entity entity : level.entitiesForRendering()) {
+                this.markDirty(entity.getId());
+            }
+        }
+
+        if (localPlayer != null) {
+            this.markDirty(localPlayer.getId());
+            Entity rootVehicle = localPlayer.getRootVehicle();
+            if (rootVehicle != localPlayer) {
+                this.markDirty(rootVehicle.getId());
+            }
+        }
+
+        this.tick += 1;
+        this.changedCount = 0;
+
+        // Passengers are appended to the dirty list while it is being iterated
+        for (int i = 0; i < this.dirtyCount; i++) {
+            int slot = this.dirtySlots[i];
+            this.dirty[slot] = false;
+
+            int id = this.ids[slot];
+            if (id < 0 || this.visitedTick[slot] == this.tick) {
+                continue;
+            }
+            this.visitedTick[slot] = this.tick;
+
+            Entity entity = level.getEntity(id);
+            if (entity == null) {
+                this.remove(id);
+                continue;
+            }
+            if (PacketHelper.shouldIgnoreEntity(entity)) {
+                continue;
+            }
+
+            if (this.update(slot, entity)) {
+                if (this.changedCount == this.changedSlots.length) {
+                    this.changedSlots = Arrays.copyOf(this.changedSlots, this.changedSlots.length * 2);
+                }
+                this.changedSlots[this.changedCount++] = slot;
+            }
+
+            if (entity.isVehicle()) {
+                for (Entity passenger : entity.getPassengers()) {
+                    this.markDirty(passenger.getId());
+                }
+            }
+        }
+        this.dirtyCount = 0;
+
+        // Anything that changed is checked again next tick, in case it is still moving
+        for (int i = 0; i < this.changedCount; i++) {
+            this.markSlotDirty(this.changedSlots[i]);
+        }
+
+        return this.changedCount;
+    }
+
+    Changes copyChanges() {
+        int count = this.changedCount;
+        int[] ids = new int[count];
+        double[] positions = new double[count * 3];
+        float[] angles = new float[count * 3];
+        boolean[] onGround = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            int slot = this.changedSlots[i];
+            ids[i] = this.ids[slot];
+            positions[i*3] = this.x[slot];
+            positions[i*3 + 1] = this.y[slot];
+            positions[i*3 + 2] = this.z[slot];
+            angles[i*3] = this.yaw[slot];
+            angles[i*3 + 1] = this.pitch[slot];
+            angles[i*3 + 2] = this.headYRot[slot];
+            onGround[i] = this.onGround[slot];
+        }
+
+        return new Changes(count, ids, positions, angles, onGround);
+    }
+
+    private boolean update(int slot, Entity entity) {
+        double x, y, z;
+        float yaw, pitch, headYRot;
+        if (entity instanceof LivingEntity livingEntity) {
+            x = livingEntity.lerpTargetX();
+            y = livingEntity.lerpTargetY();
+            z = livingEntity.lerpTargetZ();
+            yaw = livingEntity.lerpTargetYRot();
+            pitch = livingEntity.lerpTargetXRot();
+            headYRot = (float) (livingEntity.lerpHeadSteps > 0 ? livingEntity.lerpYHeadRot : livingEntity.getYHeadRot());
+        } else if (entity instanceof Display display) {
+            x = display.lerpTargetX();
+            y = display.lerpTargetY();
+            z = display.lerpTargetZ();
+            yaw = display.lerpTargetYRot();
+            pitch = display.lerpTargetXRot();
+            headYRot = display.getYHeadRot();
+        } else {
+            var trackingPosition = entity.trackingPosition();
+            x = trackingPosition.x;
+            y = trackingPosition.y;
+            z = trackingPosition.z;
+            yaw = entity.getYRot();
+            pitch = entity.getXRot();
+            headYRot = entity.getYHeadRot();
+        }
+        yaw = Mth.wrapDegrees(yaw);
+        pitch = Mth.wrapDegrees(pitch);
+        headYRot = Mth.wrapDegrees(headYRot);
+        boolean onGround = entity.onGround();
+
+        if (this.written[slot] && Double.compare(this.x[slot], x) == 0 && Double.compare(this.y[slot], y) == 0 &&
+                Double.compare(this.z[slot], z) == 0 && Float.compare(this.yaw[slot], yaw) == 0 &&
+                Float.compare(this.pitch[slot], pitch) == 0 && Float.compare(this.headYRot[slot], headYRot) == 0 &&
+                this.onGround[slot] == onGround) {
+            return false;
+        }
+
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.z[slot] = z;
+        this.yaw[slot] = yaw;
+        this.pitch[slot] = pitch;
+        this.headYRot[slot] = headYRot;
+        this.onGround[slot] = onGround;
+        this.written[slot] = true;
+        return true;
+    }
+
+    private void markSlotDirty(int slot) {
+        if (this.dirty[slot]) {
+            return;
+        }
+        this.dirty[slot] = true;
+
+        if (this.dirtyCount == this.dirtySlots.length) {
+            this.dirtySlots = Arrays.copyOf(this.dirtySlots, this.dirtySlots.length * 2);
+        }
+        this.dirtySlots[this.dirtyCount++] = slot;
+    }
+
+    private int allocateSlot(int id) {
+        int slot;
+        if (this.freeCount > 0) {
+            slot = this.freeSlots[--this.freeCount];
+        } else {
+            if (this.slotCount == this.ids.length) {
+                this.grow(this.ids.length * 2);
+            }
+            slot = this.slotCount++;
+        }
+
+        this.ids[slot] = id;
+        this.written[slot] = false;
+        this.visitedTick[slot] = 0;
+        this.slotById.put(id, slot);
+        return slot;
+    }
+
+    private void grow(int capacity) {
+        this.ids = Arrays.copyOf(this.ids, capacity);
+        this.x = Arrays.copyOf(this.x, capacity);
+        this.y = Arrays.copyOf(this.y, capacity);
+        this.z = Arrays.copyOf(this.z, capacity);
+        this.yaw = Arrays.copyOf(this.yaw, capacity);
+        this.pitch = Arrays.copyOf(this.pitch, capacity);
+        this.headYRot = Arrays.copyOf(this.headYRot, capacity);
+        this.onGround = Arrays.copyOf(this.onGround, capacity);
+        this.written = Arrays.copyOf(this.written, capacity);
+        this.dirty = Arrays.copyOf(this.dirty, capacity);
+        this.visitedTick = Arrays.copyOf(this.visitedTick, capacity);
+    }
+
+}
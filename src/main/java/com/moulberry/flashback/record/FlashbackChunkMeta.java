@@ -6,11 +6,54 @@ import org.jetbrains.annotations.Nullable;
 public class FlashbackChunkMeta {
     public int duration = 0;
     public boolean forcePlaySnapshot = false;
+    @Nullable
+    public Stats stats = null;
+
+    /**
+     * Counters collected by the {@link com.moulberry.flashback.io.AsyncReplaySaver} while the chunk was recorded
+     *
+     * @param packets game & configuration packets written
+     * @param bytes bytes of encoded actions and new chunk cache entries written
+     * @param chunkPackets level chunk packets written
+     * @param chunkCacheHits level chunk packets which were already in the chunk cache
+     * @param maxQueueDepth the highest number of tasks waiting for the saver thread
+     * @param queueStalls the number of times the recorder had to wait for space in the queue
+     * @param elapsedMillis real time spent recording the chunk
+     */
+    public record Stats(long packets, long bytes, int chunkPackets, int chunkCacheHits, int maxQueueDepth,
+                        int queueStalls, long elapsedMillis) {
+        public JsonObject toJson() {
+            JsonObject stats = new JsonObject();
+            stats.addProperty("packets", this.packets);
+            stats.addProperty("bytes", this.bytes);
+            stats.addProperty("chunkPackets", this.chunkPackets);
+            stats.addProperty("chunkCacheHits", this.chunkCacheHits);
+            stats.addProperty("maxQueueDepth", this.maxQueueDepth);
+            stats.addProperty("queueStalls", this.queueStalls);
+            stats.addProperty("elapsedMillis", this.elapsedMillis);
+            return stats;
+        }
+
+        public static Stats fromJson(JsonObject stats) {
+            return new Stats(
+                stats.has("packets") ? stats.get("packets").getAsLong() : 0,
+                stats.has("bytes") ? stats.get("bytes").getAsLong() : 0,
+                stats.has("chunkPackets") ? stats.get("chunkPackets").getAsInt() : 0,
+                stats.has("chunkCacheHits") ? stats.get("chunkCacheHits").getAsInt() : 0,
+                stats.has("maxQueueDepth") ? stats.get("maxQueueDepth").getAsInt() : 0,
+                stats.has("queueStalls") ? stats.get("queueStalls").getAsInt() : 0,
+                stats.has("elapsedMillis") ? stats.get("elapsedMillis").getAsLong() : 0
+            );
+        }
+    }
 
     public JsonObject toJson() {
         JsonObject chunkMeta = new JsonObject();
         chunkMeta.addProperty("duration", this.duration);
         chunkMeta.addProperty("forcePlaySnapshot", this.forcePlaySnapshot);
+        if (this.stats != null) {
+            chunkMeta.add("stats", this.stats.toJson());
+        }
         return chunkMeta;
     }
 
@@ -25,6 +68,9 @@ public class FlashbackChunkMeta {
         if (chunkMeta.has("forcePlaySnapshot")) {
             flashbackChunkMeta.forcePlaySnapshot = chunkMeta.get("forcePlaySnapshot").getAsBoolean();
         }
+        if (chunkMeta.has("stats") && chunkMeta.get("stats").isJsonObject()) {
+            flashbackChunkMeta.stats = Stats.fromJson(chunkMeta.getAsJsonObject("stats"));
+        }
 
         return flashbackChunkMeta;
     }
@@ -0,0 +1,73 @@
+package com.moulberry.flashback.record;
+
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.protocol.Packet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packets captured by the {@link Recorder} during a tick, in the order they were received.
+ * <p>
+ * A batch is handed to the {@link com.moulberry.flashback.io.AsyncReplaySaver} as a whole and reused once it has been
+ * written, so capturing a packet doesn't allocate once the arrays have grown to fit a tick worth of packets.
+ */
+public class PacketBatch {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int SHRINK_CAPACITY = 1 << 16;
+
+    private Packet<?>[] packets = new Packet<?>[INITIAL_CAPACITY];
+    private ConnectionProtocol[] phases = new ConnectionProtocol[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void add(Packet<?> packet, ConnectionProtocol phase) {
+        if (this.size == this.packets.length) {
+            this.packets = Arrays.copyOf(this.packets, this.size * 2);
+            this.phases = Arrays.copyOf(this.phases, this.size * 2);
+        }
+        this.packets[this.size] = packet;
+        this.phases[this.size] = phase;
+        this.size += 1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public Packet<?> get(int index) {
+        return this.packets[index];
+    }
+
+    public ConnectionProtocol phase(int index) {
+        return this.phases[index];
+    }
+
+    /**
+     * @return a view of the packets from {@code from} (inclusive) to {@code to} (exclusive), only valid until the batch is cleared
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Packet<?>> List<T> view(int from, int to) {
+        return (List<T>) (List<?>) Arrays.asList(this.packets).subList(from, to);
+    }
+
+    /**
+     * Releases the packets so they can be garbage collected
+     */
+    void clear() {
+        if (this.packets.length > SHRINK_CAPACITY && this.size < this.packets.length / 4) {
+            // Don't hold on to a large array after a burst of packets
+            this.packets = new Packet<?>[INITIAL_CAPACITY];
+            this.phases = new ConnectionProtocol[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(this.packets, 0, this.size, null);
+            Arrays.fill(this.phases, 0, this.size, null);
+        }
+        this.size = 0;
+    }
+
+}
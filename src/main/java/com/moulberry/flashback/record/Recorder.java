@@ -1,7 +1,5 @@
 package com.moulberry.flashback.record;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.mojang.authlib.GameProfile;
 import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.datafixers.util.Pair;
@@ -59,7 +57,6 @@ import net.minecraft.sounds.SoundSource;
 import net.minecraft.tags.TagNetworkSerialization;
 import net.minecraft.util.Mth;
 import net.minecraft.world.InteractionHand;
-import net.minecraft.world.entity.Display;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EquipmentSlot;
 import net.minecraft.world.entity.Leashable;
@@ -84,15 +81,14 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 
 public class Recorder {
 
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     public static final int CHUNK_LENGTH_SECONDS = 5 * 60;
 
     private final AsyncReplaySaver asyncReplaySaver;
@@ -104,17 +100,13 @@ public class Recorder {
     private final FlashbackMeta metadata = new FlashbackMeta();
     private boolean hasTakenScreenshot = false;
 
-    private record PacketWithPhase(Packet<?> packet, ConnectionProtocol phase){}
-    private final Queue<PacketWithPhase> pendingPackets = new ConcurrentLinkedQueue<>();
+    // Packets are captured from both the network thread and the main thread. The batch is swapped out under the lock
+    // at the end of each tick, and given back by the saver once it has been written
+    private final Object capturedPacketsLock = new Object();
+    private PacketBatch capturedPackets = new PacketBatch();
+    private final AtomicReference<PacketBatch> spareBatch = new AtomicReference<>(null);
 
-    private record Position(double x, double y, double z, float yaw, float pitch, float headYRot, boolean onGround) {
-        public Position {
-            yaw = Mth.wrapDegrees(yaw);
-            pitch = Mth.wrapDegrees(pitch);
-            headYRot = Mth.wrapDegrees(headYRot);
-        }
-    }
-    private final WeakHashMap<Entity, Position> lastPositions = new WeakHashMap<>();
+    private final EntityPositionTracker entityPositions = new EntityPositionTracker();
 
     // Local player data
     private final List<Object> lastPlayerEntityMeta = new ArrayList<>();
@@ -219,6 +211,48 @@ public class Recorder {
         return builder.toString();
     }
 
+    // Previous sample of the saver counters, rates shown in the debug overlay are averaged over at least a second
+    private long lastStatsNanos = -1;
+    private long lastStatsPackets = 0;
+    private long lastStatsBytes = 0;
+    private int lastStatsTicks = 0;
+    private double packetsPerTick = 0;
+    private double bytesPerSecond = 0;
+
+    public List<String> getStatsDebugLines() {
+        long nanos = System.nanoTime();
+        long packets = this.asyncReplaySaver.writtenPackets();
+        long bytes = this.asyncReplaySaver.writtenBytes();
+
+        if (this.lastStatsNanos < 0) {
+            this.lastStatsNanos = nanos;
+            this.lastStatsPackets = packets;
+            this.lastStatsBytes = bytes;
+            this.lastStatsTicks = this.writtenTicks;
+        } else if (nanos - this.lastStatsNanos >= 1_000_000_000L) {
+            int ticks = this.writtenTicks - this.lastStatsTicks;
+            this.packetsPerTick = ticks <= 0 ? 0 : (double) (packets - this.lastStatsPackets) / ticks;
+            this.bytesPerSecond = (bytes - this.lastStatsBytes) * 1_000_000_000.0 / (nanos - this.lastStatsNanos);
+
+            this.lastStatsNanos = nanos;
+            this.lastStatsPackets = packets;
+            this.lastStatsBytes = bytes;
+            this.lastStatsTicks = this.writtenTicks;
+        }
+
+        long chunkPackets = this.asyncReplaySaver.writtenChunkPackets();
+        long chunkCacheHits = this.asyncReplaySaver.chunkCacheHits();
+        double hitRate = chunkPackets == 0 ? 0 : chunkCacheHits * 100.0 / chunkPackets;
+
+        return List.of(
+            String.format("[Flashback] Packets/t: %.1f. Written: %.1f KiB/s (%d MiB)", this.packetsPerTick,
+                this.bytesPerSecond / 1024.0, bytes / 1024 / 1024),
+            String.format("[Flashback] Chunk cache hits: %d/%d (%.1f%%)", chunkCacheHits, chunkPackets, hitRate),
+            String.format("[Flashback] Save queue: %d/%d. Stalls: %d", this.asyncReplaySaver.queueDepth(),
+                AsyncReplaySaver.QUEUE_CAPACITY, this.asyncReplaySaver.queueStalls())
+        );
+    }
+
     private PositionAndAngle lastPlayerPositionAndAngle = null;
     private float lastPlayerPositionAndAnglePartialTick;
     private final TreeMap<Float, PositionAndAngle> partialPositions = new TreeMap<>();
@@ -252,6 +286,9 @@ public class Recorder {
         if (this.needsInitialSnapshot) {
             this.needsInitialSnapshot = false;
             this.writeSnapshot(true);
+
+            // Write metadata immediately so that the segment log can be recovered even if the first chunk never gets written
+            this.asyncReplaySaver.writeMetadata(this.metadata.toJson());
         }
 
         this.finishedConfiguration |= this.flushPackets();
@@ -325,9 +362,7 @@ public class Recorder {
             chunkMeta.duration = this.writtenTicksInChunk;
             this.metadata.chunks.put(chunkName, chunkMeta);
             this.metadata.totalTicks = this.writtenTicks;
-            String metadata = GSON.toJson(this.metadata.toJson());
-
-            this.asyncReplaySaver.writeReplayChunk(chunkName, metadata);
+            this.asyncReplaySaver.writeReplayChunk(chunkName, this.metadata.toJson());
 
             this.writtenTicksInChunk = 0;
 
@@ -588,43 +623,16 @@ public class Recorder {
     private void writeEntityPositions() {
         ClientLevel level = Minecraft.getInstance().level;
         if (level == null) {
-            this.lastPositions.clear();
+            this.entityPositions.clear();
             return;
         }
 
-        record IdWithPosition(int id, Position position) {}
-        List<IdWithPosition> changedPositions = new ArrayList<>();
-
-        for (Entity entity : level.entitiesForRendering()) {
-            if (PacketHelper.shouldIgnoreEntity(entity)) {
-                continue;
-            }
-
-            Position position;
-            if (entity instanceof LivingEntity livingEntity) {
-                double lerpHeadRot = livingEntity.lerpHeadSteps > 0 ? livingEntity.lerpYHeadRot : livingEntity.getYHeadRot();
-                position = new Position(livingEntity.lerpTargetX(), entity.lerpTargetY(), entity.lerpTargetZ(),
-                    entity.lerpTargetYRot(), entity.lerpTargetXRot(), (float) lerpHeadRot, entity.onGround());
-            } else if (entity instanceof Display display) {
-                position = new Position(display.lerpTargetX(), display.lerpTargetY(), display.lerpTargetZ(),
-                    display.lerpTargetYRot(), display.lerpTargetXRot(), display.getYHeadRot(), entity.onGround());
-            } else {
-                var trackingPosition = entity.trackingPosition();
-                position = new Position(trackingPosition.x, trackingPosition.y, trackingPosition.z,
-                    entity.getYRot(), entity.getXRot(), entity.getYHeadRot(), entity.onGround());
-            }
-            Position lastPosition = this.lastPositions.get(entity);
-
-            if (!Objects.equals(position, lastPosition)) {
-                this.lastPositions.put(entity, position);
-                changedPositions.add(new IdWithPosition(entity.getId(), position));
-            }
-        }
-
-        if (changedPositions.isEmpty()) {
+        if (this.entityPositions.collectChanged(level, Minecraft.getInstance().player) == 0) {
             return;
         }
 
+        EntityPositionTracker.Changes changes = this.entityPositions.copyChanges();
+
         this.asyncReplaySaver.submit(writer -> {
             writer.startAction(ActionMoveEntities.INSTANCE);
             RegistryFriendlyByteBuf friendlyByteBuf = writer.friendlyByteBuf();
@@ -632,45 +640,71 @@ public class Recorder {
             friendlyByteBuf.writeVarInt(1);
             friendlyByteBuf.writeResourceKey(level.dimension());
 
-            friendlyByteBuf.writeVarInt(changedPositions.size());
-            for (IdWithPosition changedPosition : changedPositions) {
-                friendlyByteBuf.writeVarInt(changedPosition.id);
-                friendlyByteBuf.writeDouble(changedPosition.position.x);
-                friendlyByteBuf.writeDouble(changedPosition.position.y);
-                friendlyByteBuf.writeDouble(changedPosition.position.z);
-                friendlyByteBuf.writeFloat(changedPosition.position.yaw);
-                friendlyByteBuf.writeFloat(changedPosition.position.pitch);
-                friendlyByteBuf.writeFloat(changedPosition.position.headYRot);
-                friendlyByteBuf.writeBoolean(changedPosition.position.onGround);
+            friendlyByteBuf.writeVarInt(changes.count());
+            for (int i = 0; i < changes.count(); i++) {
+                friendlyByteBuf.writeVarInt(changes.ids()[i]);
+                friendlyByteBuf.writeDouble(changes.positions()[i*3]);
+                friendlyByteBuf.writeDouble(changes.positions()[i*3 + 1]);
+                friendlyByteBuf.writeDouble(changes.positions()[i*3 + 2]);
+                friendlyByteBuf.writeFloat(changes.angles()[i*3]);
+                friendlyByteBuf.writeFloat(changes.angles()[i*3 + 1]);
+                friendlyByteBuf.writeFloat(changes.angles()[i*3 + 2]);
+                friendlyByteBuf.writeBoolean(changes.onGround()[i]);
             }
 
             writer.finishAction(ActionMoveEntities.INSTANCE);
         });
     }
 
+    /**
+     * Called when a packet moves an entity, so that its position is checked at the end of the tick
+     */
+    public void markEntityMoved(int entityId) {
+        this.entityPositions.markDirty(entityId);
+    }
+
+    public void onEntityAdded(int entityId) {
+        this.entityPositions.reset(entityId);
+    }
+
+    public void onEntityRemoved(int entityId) {
+        this.entityPositions.remove(entityId);
+    }
+
     public boolean flushPackets() {
-        if (this.pendingPackets.isEmpty()) {
-            return false;
+        PacketBatch batch;
+        synchronized (this.capturedPacketsLock) {
+            if (this.capturedPackets.isEmpty()) {
+                return false;
+            }
+
+            batch = this.capturedPackets;
+            PacketBatch spare = this.spareBatch.getAndSet(null);
+            this.capturedPackets = spare != null ? spare : new PacketBatch();
         }
 
         boolean endedConfiguration = false;
 
-        List<Packet<? super ClientGamePacketListener>> gamePackets = new ArrayList<>();
-        List<Packet<? super ClientConfigurationPacketListener>> configurationPackets = new ArrayList<>();
+        // Consecutive packets in the same phase are written as a single range of the batch
+        ConnectionProtocol rangePhase = null;
+        int rangeStart = 0;
 
-        PacketWithPhase packet;
-        while ((packet = this.pendingPackets.poll()) != null) {
-            if (packet.phase == ConnectionProtocol.PLAY) {
-                if (!configurationPackets.isEmpty()) {
-                    this.asyncReplaySaver.writeConfigurationPackets(this.configurationPacketCodec, configurationPackets);
-                    configurationPackets.clear();
-                }
+        for (int i = 0; i < batch.size(); i++) {
+            ConnectionProtocol phase = batch.phase(i);
+            if (phase != ConnectionProtocol.PLAY && phase != ConnectionProtocol.CONFIGURATION) {
+                throw new IllegalArgumentException("Unsupported phase: " + phase);
+            }
 
-                gamePackets.add(((Packet<? super ClientGamePacketListener>) packet.packet));
+            if (phase != rangePhase) {
+                this.writePacketRange(batch, rangePhase, rangeStart, i);
+                rangePhase = phase;
+                rangeStart = i;
+            }
 
-                if (packet.packet instanceof ClientboundLoginPacket) {
-                    this.asyncReplaySaver.writeGamePackets(this.gamePacketCodec, gamePackets);
-                    gamePackets.clear();
+            if (phase == ConnectionProtocol.PLAY) {
+                if (batch.get(i) instanceof ClientboundLoginPacket) {
+                    this.writePacketRange(batch, rangePhase, rangeStart, i + 1);
+                    rangeStart = i + 1;
 
                     this.writeCreateLocalPlayer();
                 }
@@ -679,33 +713,37 @@ public class Recorder {
                     endedConfiguration = true;
                     this.isConfiguring = false;
                 }
-            } else if (packet.phase == ConnectionProtocol.CONFIGURATION) {
-                if (!gamePackets.isEmpty()) {
-                    this.asyncReplaySaver.writeGamePackets(this.gamePacketCodec, gamePackets);
-                    gamePackets.clear();
-                }
-
-                configurationPackets.add(((Packet<? super ClientConfigurationPacketListener>) packet.packet));
-
-                this.isConfiguring = true;
             } else {
-                throw new IllegalArgumentException("Unsupported phase: " + packet.phase);
+                this.isConfiguring = true;
             }
         }
 
-        if (!configurationPackets.isEmpty()) {
-            this.asyncReplaySaver.writeConfigurationPackets(this.configurationPacketCodec, configurationPackets);
+        this.writePacketRange(batch, rangePhase, rangeStart, batch.size());
+
+        this.asyncReplaySaver.submit(writer -> {
+            batch.clear();
+            this.spareBatch.set(batch);
+        });
+
+        return endedConfiguration;
+    }
+
+    private void writePacketRange(PacketBatch batch, @Nullable ConnectionProtocol phase, int from, int to) {
+        if (from >= to) {
+            return;
         }
-        if (!gamePackets.isEmpty()) {
-            this.asyncReplaySaver.writeGamePackets(this.gamePacketCodec, gamePackets);
 
-            if (this.isConfiguring) {
-                endedConfiguration = true;
-                this.isConfiguring = false;
-            }
+        if (phase == ConnectionProtocol.PLAY) {
+            this.asyncReplaySaver.writeGamePackets(this.gamePacketCodec, batch, from, to);
+        } else if (phase == ConnectionProtocol.CONFIGURATION) {
+            this.asyncReplaySaver.writeConfigurationPackets(this.configurationPacketCodec, batch, from, to);
         }
+    }
 
-        return endedConfiguration;
+    private void capturePacket(Packet<?> packet, ConnectionProtocol phase) {
+        synchronized (this.capturedPacketsLock) {
+            this.capturedPackets.add(packet, phase);
+        }
     }
 
     private void writeCreateLocalPlayer() {
@@ -751,7 +789,7 @@ public class Recorder {
             return;
         }
 
-        this.pendingPackets.add(new PacketWithPhase(new ClientboundLevelEventPacket(type, blockPos, data, globalEvent), ConnectionProtocol.PLAY));
+        this.capturePacket(new ClientboundLevelEventPacket(type, blockPos, data, globalEvent), ConnectionProtocol.PLAY);
     }
 
     public void writeSound(Holder<SoundEvent> holder, SoundSource soundSource, double x, double y, double z, float volume, float pitch, long seed) {
@@ -759,7 +797,7 @@ public class Recorder {
             return;
         }
 
-        this.pendingPackets.add(new PacketWithPhase(new ClientboundSoundPacket(holder, soundSource, x, y, z, volume, pitch, seed), ConnectionProtocol.PLAY));
+        this.capturePacket(new ClientboundSoundPacket(holder, soundSource, x, y, z, volume, pitch, seed), ConnectionProtocol.PLAY);
     }
 
     public void writeEntitySound(Holder<SoundEvent> holder, SoundSource soundSource, Entity entity, float volume, float pitch, long seed) {
@@ -767,7 +805,7 @@ public class Recorder {
             return;
         }
 
-        this.pendingPackets.add(new PacketWithPhase(new ClientboundSoundEntityPacket(holder, soundSource, entity, volume, pitch, seed), ConnectionProtocol.PLAY));
+        this.capturePacket(new ClientboundSoundEntityPacket(holder, soundSource, entity, volume, pitch, seed), ConnectionProtocol.PLAY);
     }
 
     public void writePacketAsync(Packet<?> packet, ConnectionProtocol phase) {
@@ -808,7 +846,7 @@ public class Recorder {
             }
         }
 
-        this.pendingPackets.add(new PacketWithPhase(packet, phase));
+        this.capturePacket(packet, phase);
     }
 
     public void writeSnapshot(boolean asActualSnapshot) {
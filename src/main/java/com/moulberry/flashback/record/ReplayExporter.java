@@ -4,20 +4,17 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.io.ParallelZipWriter;
+import com.moulberry.flashback.io.RecordingSegmentLog;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Iterator;
 import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class ReplayExporter {
 
@@ -39,6 +36,9 @@ public class ReplayExporter {
             meta.name = name;
         }
 
+        // Recover any ticks that were committed to the segment log but never made it into a chunk
+        RecordingSegmentLog.recover(recordFolder, meta);
+
         // Validate
         meta.chunks.keySet().removeIf(chunkName -> {
             Path chunkPath = recordFolder.resolve(chunkName);
@@ -62,62 +62,40 @@ public class ReplayExporter {
         }
 
         try {
-            FileOutputStream fos = new FileOutputStream(outputFile.toFile());
-            BufferedOutputStream bos = new BufferedOutputStream(fos);
-            ZipOutputStream zipOut = new ZipOutputStream(bos);
-            zipOut.setLevel(Deflater.BEST_SPEED);
-
-            // Write metadata
-            ZipEntry zipEntry = new ZipEntry("metadata.json");
-            zipOut.putNextEntry(zipEntry);
-            zipOut.write(GSON.toJson(meta.toJson()).getBytes(StandardCharsets.UTF_8));
-            zipOut.closeEntry();
-
-            // Write chunked level chunk caches
-            Path levelChunkCaches = recordFolder.resolve("level_chunk_caches");
-            if (Files.exists(levelChunkCaches) && Files.isDirectory(levelChunkCaches)) {
-                try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(levelChunkCaches)) {
-                    for (Path path : directoryStream) {
-                        zipEntry = new ZipEntry("level_chunk_caches/" + path.getFileName().toString());
-                        zipOut.putNextEntry(zipEntry);
-                        Files.copy(path, zipOut);
-                        zipOut.closeEntry();
+            boolean storeLevelChunkCaches = Flashback.getConfig().storeLevelChunkCaches;
+
+            // Entries are deflated (or checksummed, if stored) in parallel and written in order
+            try (ParallelZipWriter zipWriter = new ParallelZipWriter(outputFile, Deflater.BEST_SPEED)) {
+                zipWriter.addDeflated("metadata.json", GSON.toJson(meta.toJson()).getBytes(StandardCharsets.UTF_8));
+
+                // Chunked level chunk caches
+                Path levelChunkCaches = recordFolder.resolve("level_chunk_caches");
+                if (Files.exists(levelChunkCaches) && Files.isDirectory(levelChunkCaches)) {
+                    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(levelChunkCaches)) {
+                        for (Path path : directoryStream) {
+                            addEntry(zipWriter, "level_chunk_caches/" + path.getFileName().toString(), path, storeLevelChunkCaches);
+                        }
                     }
                 }
-            }
-
-            // Write level chunk cache
-            Path levelChunkCachePath = recordFolder.resolve("level_chunk_cache");
-            if (Files.exists(levelChunkCachePath)) {
-                zipEntry = new ZipEntry("level_chunk_cache");
-                zipOut.putNextEntry(zipEntry);
-                Files.copy(levelChunkCachePath, zipOut);
-                zipOut.closeEntry();
-            }
 
-            // Write icon
-            Path iconPath = recordFolder.resolve("icon.png");
-            if (Files.exists(iconPath)) {
-                zipEntry = new ZipEntry("icon.png");
-                zipOut.putNextEntry(zipEntry);
-                Files.copy(iconPath, zipOut);
-                zipOut.closeEntry();
-            }
+                // Level chunk cache
+                Path levelChunkCachePath = recordFolder.resolve("level_chunk_cache");
+                if (Files.exists(levelChunkCachePath)) {
+                    addEntry(zipWriter, "level_chunk_cache", levelChunkCachePath, storeLevelChunkCaches);
+                }
 
-            // Write chunks
-            for (String chunkName : meta.chunks.keySet()) {
-                Path chunkPath = recordFolder.resolve(chunkName);
+                // Icon
+                Path iconPath = recordFolder.resolve("icon.png");
+                if (Files.exists(iconPath)) {
+                    zipWriter.addDeflated("icon.png", iconPath);
+                }
 
-                zipEntry = new ZipEntry(chunkName);
-                zipOut.putNextEntry(zipEntry);
-                Files.copy(chunkPath, zipOut);
-                zipOut.closeEntry();
+                // Chunks
+                for (String chunkName : meta.chunks.keySet()) {
+                    zipWriter.addDeflated(chunkName, recordFolder.resolve(chunkName));
+                }
             }
 
-            zipOut.close();
-            bos.close();
-            fos.close();
-
             // Delete record folder
             try {
                 FileUtils.deleteDirectory(recordFolder.toFile());
@@ -129,6 +107,14 @@ public class ReplayExporter {
         }
     }
 
+    private static void addEntry(ParallelZipWriter zipWriter, String name, Path path, boolean store) throws IOException {
+        if (store) {
+            zipWriter.addStored(name, path);
+        } else {
+            zipWriter.addDeflated(name, path);
+        }
+    }
+
     @Nullable
     private static FlashbackMeta tryReadMeta(Path file) {
         Flashback.LOGGER.info("Trying to read metadata json {}", file);
@@ -4,7 +4,9 @@ import com.google.gson.JsonObject;
 import com.moulberry.flashback.Flashback;
 import com.moulberry.flashback.FlashbackGson;
 import com.moulberry.flashback.exporting.AsyncFileDialogs;
+import com.moulberry.flashback.io.ReplayOptimiser;
 import com.moulberry.flashback.record.FlashbackMeta;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.components.Button;
 import net.minecraft.client.gui.components.EditBox;
@@ -22,6 +24,7 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
@@ -65,7 +68,13 @@ public class EditReplayScreen extends Screen {
         rowHelper.addChild(new BottomTextWidget(204, 10, Component.literal(""), this.font), 2);
 
         rowHelper.addChild(Button.builder(Component.literal("Combine With Other Replay"), button -> {
-            this.minecraft.setScreen(new CombineReplayScreen(this, this.replayPath, null, null));
+            this.minecraft.setScreen(new CombineReplayScreen(this, List.of(this.replayPath), null));
+        }).width(204).build(), 2);
+
+        rowHelper.addChild(Button.builder(Component.literal("Optimise Replay"), button -> {
+            button.active = false;
+            button.setMessage(Component.literal("Optimising..."));
+            this.optimiseReplay();
         }).width(204).build(), 2);
 
         this.saveChangesButton = rowHelper.addChild(Button.builder(Component.literal("Save Changes"), button -> {
@@ -101,6 +110,27 @@ public class EditReplayScreen extends Screen {
         this.clearFocus();
     }
 
+    private void optimiseReplay() {
+        Path replayPath = this.replayPath;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return ReplayOptimiser.optimiseInPlace(replayPath);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, Util.ioPool()).whenComplete((result, throwable) -> Minecraft.getInstance().execute(() -> {
+            Component message;
+            if (throwable != null) {
+                Flashback.LOGGER.error("Unable to optimise replay", throwable);
+                message = Component.literal("Unable to optimise replay: " + throwable.getMessage());
+            } else {
+                message = Component.literal("Level chunk cache entries: " + result.originalChunkCacheEntries() + " -> " + result.writtenChunkCacheEntries());
+            }
+            Minecraft.getInstance().setScreen(new AlertScreen(() -> Minecraft.getInstance().setScreen(this.lastScreen),
+                Component.literal("Optimise Replay"), message));
+        }));
+    }
+
     private void setReplayName(String name) {
         this.changedReplayName = name;
         this.updateSaveChangesActive();
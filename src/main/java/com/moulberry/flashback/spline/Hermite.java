@@ -5,50 +5,106 @@ import org.apache.commons.math3.analysis.interpolation.HermiteInterpolator;
 import org.joml.Vector3d;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Hermite interpolation over a fixed run of samples. The interpolator for each value is only built the first time it
+ * is requested and is reused afterwards, so sampling doesn't need to rebuild it for every evaluated tick.
+ * <p>
+ * Interpolators are cached by the getter that extracts the value, so getters should be constants (e.g. static fields)
+ * rather than capturing lambdas.
+ */
+public class Hermite<T> {
+
+    private final float[] times;
+    private final T[] samples;
+
+    private final Map<Object, HermiteInterpolator> positionInterpolators = new ConcurrentHashMap<>();
+    private final Map<Object, HermiteInterpolator> valueInterpolators = new ConcurrentHashMap<>();
+    private final Map<Object, HermiteInterpolator> degreesInterpolators = new ConcurrentHashMap<>();
+
+    /**
+     * @param times the time of each sample, must be strictly increasing
+     */
+    public Hermite(float[] times, T[] samples) {
+        if (times.length != samples.length) {
+            throw new IllegalArgumentException("Expected the same number of times and samples");
+        }
+        this.times = times;
+        this.samples = samples;
+    }
+
+    public int size() {
+        return this.samples.length;
+    }
+
+    public float time(int index) {
+        return this.times[index];
+    }
+
+    public T sample(int index) {
+        return this.samples[index];
+    }
 
-public class Hermite {
+    public Vector3d position(Function<T, Vector3d> getter, float amount) {
+        HermiteInterpolator hermiteInterpolator = this.positionInterpolators.get(getter);
+        if (hermiteInterpolator == null) {
+            hermiteInterpolator = new HermiteInterpolator();
 
-    public static Vector3d position(Map<Float, Vector3d> map, float amount) {
-        HermiteInterpolator hermiteInterpolator = new HermiteInterpolator();
+            double[] array = new double[3];
+            for (int i = 0; i < this.samples.length; i++) {
+                Vector3d position = getter.apply(this.samples[i]);
+                array[0] = position.x;
+                array[1] = position.y;
+                array[2] = position.z;
 
-        double[] array = new double[3];
-        for (Map.Entry<Float, Vector3d> entry : map.entrySet()) {
-            array[0] = entry.getValue().x;
-            array[1] = entry.getValue().y;
-            array[2] = entry.getValue().z;
+                hermiteInterpolator.addSamplePoint(this.times[i], array);
+            }
 
-            hermiteInterpolator.addSamplePoint(entry.getKey(), array);
+            this.positionInterpolators.put(getter, hermiteInterpolator);
         }
 
         var values = hermiteInterpolator.value(amount);
         return new Vector3d(values[0], values[1], values[2]);
     }
 
-    public static double value(Map<Float, Double> map, float amount) {
-        HermiteInterpolator hermiteInterpolator = new HermiteInterpolator();
+    public double value(ToDoubleFunction<T> getter, float amount) {
+        HermiteInterpolator hermiteInterpolator = this.valueInterpolators.get(getter);
+        if (hermiteInterpolator == null) {
+            hermiteInterpolator = new HermiteInterpolator();
 
-        double[] array = new double[1];
-        for (Map.Entry<Float, Double> entry : map.entrySet()) {
-            array[0] = entry.getValue();
-            hermiteInterpolator.addSamplePoint(entry.getKey(), array);
+            double[] array = new double[1];
+            for (int i = 0; i < this.samples.length; i++) {
+                array[0] = getter.applyAsDouble(this.samples[i]);
+                hermiteInterpolator.addSamplePoint(this.times[i], array);
+            }
+
+            this.valueInterpolators.put(getter, hermiteInterpolator);
         }
 
         return hermiteInterpolator.value(amount)[0];
     }
 
-    public static double degrees(Map<Float, Double> map, float amount) {
-        HermiteInterpolator hermiteInterpolator = new HermiteInterpolator();
+    public double degrees(ToDoubleFunction<T> getter, float amount) {
+        HermiteInterpolator hermiteInterpolator = this.degreesInterpolators.get(getter);
+        if (hermiteInterpolator == null) {
+            hermiteInterpolator = new HermiteInterpolator();
+
+            double lastAngle = 0.0;
 
-        double lastAngle = 0.0;
+            double[] array = new double[1];
+            for (int i = 0; i < this.samples.length; i++) {
+                double angle = lastAngle + Mth.wrapDegrees(getter.applyAsDouble(this.samples[i]) - lastAngle);
+                array[0] = angle;
 
-        double[] array = new double[1];
-        for (Map.Entry<Float, Double> entry : map.entrySet()) {
-            double angle = lastAngle + Mth.wrapDegrees(entry.getValue() - lastAngle);
-            array[0] = angle;
+                hermiteInterpolator.addSamplePoint(this.times[i], array);
 
-            hermiteInterpolator.addSamplePoint(entry.getKey(), array);
+                lastAngle = angle;
+            }
 
-            lastAngle = angle;
+            this.degreesInterpolators.put(getter, hermiteInterpolator);
         }
 
         return Mth.wrapDegrees(hermiteInterpolator.value(amount)[0]);
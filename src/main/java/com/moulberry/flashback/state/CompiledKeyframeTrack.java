@@ -0,0 +1,278 @@
+package com.moulberry.flashback.state;
+
+import com.moulberry.flashback.editor.ui.ReplayUI;
+import com.moulberry.flashback.keyframe.Keyframe;
+import com.moulberry.flashback.keyframe.KeyframeType;
+import com.moulberry.flashback.keyframe.change.KeyframeChange;
+import com.moulberry.flashback.keyframe.change.KeyframeChangeTickrate;
+import com.moulberry.flashback.keyframe.impl.TimelapseKeyframe;
+import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
+import com.moulberry.flashback.keyframe.interpolation.SidedInterpolationType;
+import com.moulberry.flashback.keyframe.types.TimelapseKeyframeType;
+import com.moulberry.flashback.spline.Hermite;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable snapshot of a {@link KeyframeTrack} flattened into arrays sorted by tick. Neighbouring keyframes and the
+ * extent of each hermite run are precomputed, so finding the keyframes around a tick is a binary search instead of
+ * several {@link java.util.TreeMap} lookups. Hermite interpolators are built once per segment and cached, since they
+ * depend on every keyframe in the run rather than just the neighbouring ones.
+ * <p>
+ * The keyframe arrays never change after construction. The hermite cache is the only mutable state, it is an
+ * {@link AtomicReferenceArray} so that a segment built by one thread is safely visible to others. Two threads racing to
+ * build the same segment just build it twice.
+ */
+public class CompiledKeyframeTrack {
+
+    public final KeyframeType<?> keyframeType;
+    private final int[] ticks;
+    private final Keyframe[] keyframes;
+    private final SidedInterpolationType[] leftSides;
+    private final SidedInterpolationType[] rightSides;
+    private final boolean[] holds;
+
+    // First keyframe of the hermite run that contains each keyframe, the run is broken by hold keyframes
+    private final int[] hermiteRunStart;
+    // Last keyframe of the hermite run when interpolating from each keyframe, includes the next hold keyframe
+    private final int[] hermiteRunEnd;
+    // Lazily built hermite interpolation for the segment starting at each keyframe
+    private final AtomicReferenceArray<HermiteSegment> hermiteSegments;
+
+    public CompiledKeyframeTrack(KeyframeTrack track) {
+        this.keyframeType = track.keyframeType;
+
+        int count = track.keyframesByTick.size();
+        this.ticks = new int[count];
+        this.keyframes = new Keyframe[count];
+        this.leftSides = new SidedInterpolationType[count];
+        this.rightSides = new SidedInterpolationType[count];
+        this.holds = new boolean[count];
+
+        int index = 0;
+        for (Map.Entry<Integer, Keyframe> entry : track.keyframesByTick.entrySet()) {
+            InterpolationType interpolationType = entry.getValue().interpolationType();
+            this.ticks[index] = entry.getKey();
+            this.keyframes[index] = entry.getValue();
+            this.leftSides[index] = interpolationType.leftSide;
+            this.rightSides[index] = interpolationType.rightSide;
+            this.holds[index] = interpolationType == InterpolationType.HOLD;
+            index += 1;
+        }
+
+        this.hermiteRunStart = new int[count];
+        for (int i = 0; i < count; i++) {
+            this.hermiteRunStart[i] = i > 0 && !this.holds[i - 1] ? this.hermiteRunStart[i - 1] : i;
+        }
+
+        this.hermiteRunEnd = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            if (i + 1 >= count) {
+                this.hermiteRunEnd[i] = i;
+            } else {
+                this.hermiteRunEnd[i] = this.holds[i + 1] ? i + 1 : this.hermiteRunEnd[i + 1];
+            }
+        }
+
+        this.hermiteSegments = new AtomicReferenceArray<>(count);
+    }
+
+    public boolean isEmpty() {
+        return this.ticks.length == 0;
+    }
+
+    public int lastTick() {
+        return this.ticks[this.ticks.length - 1];
+    }
+
+    /**
+     * @return the index of the last keyframe at or before {@code tick}, or -1 if there is none
+     */
+    private int floorIndex(int tick) {
+        int index = Arrays.binarySearch(this.ticks, tick);
+        if (index >= 0) {
+            return index;
+        }
+        return -index - 2;
+    }
+
+    private float realTime(int index, @Nullable RealTimeMapping realTimeMapping) {
+        return realTimeMapping == null ? this.ticks[index] : realTimeMapping.getRealTime(this.ticks[index]);
+    }
+
+    @Nullable
+    public KeyframeChange createKeyframeChange(float tick, @Nullable RealTimeMapping realTimeMapping) {
+        if (this.keyframeType == TimelapseKeyframeType.INSTANCE) {
+            return this.createTimelapseChange(tick);
+        }
+
+        int lowerIndex = this.floorIndex((int) tick);
+        if (lowerIndex < 0) {
+            return null;
+        }
+
+        Keyframe lowerKeyframe = this.keyframes[lowerIndex];
+        int lowerTick = this.ticks[lowerIndex];
+
+        if (tick == lowerTick) {
+            return lowerKeyframe.createChange();
+        }
+
+        SidedInterpolationType leftInterpolation = this.rightSides[lowerIndex];
+
+        // Immediately apply hold
+        if (leftInterpolation == SidedInterpolationType.HOLD) {
+            return lowerKeyframe.createChange();
+        }
+
+        // Get next keyframe, skip if tick is not between two keyframes
+        int ceilIndex = lowerIndex + 1;
+        if (ceilIndex >= this.ticks.length) {
+            if ((int) tick == lowerTick) {
+                return lowerKeyframe.createChange();
+            }
+            return null;
+        }
+
+        Keyframe ceilKeyframe = this.keyframes[ceilIndex];
+
+        SidedInterpolationType rightInterpolation = this.leftSides[ceilIndex];
+        if (rightInterpolation == SidedInterpolationType.HOLD) {
+            rightInterpolation = leftInterpolation;
+        }
+
+        float realTimeTick = realTimeMapping == null ? tick : realTimeMapping.getRealTime(tick);
+        float realTimeLowerTick = this.realTime(lowerIndex, realTimeMapping);
+        float realTimeCeilTick = this.realTime(ceilIndex, realTimeMapping);
+
+        float amount = (realTimeTick - realTimeLowerTick) / (realTimeCeilTick - realTimeLowerTick);
+
+        KeyframeChange leftChange = null;
+        KeyframeChange rightChange = null;
+
+        if (leftInterpolation == SidedInterpolationType.SMOOTH ||
+                rightInterpolation == SidedInterpolationType.SMOOTH) {
+            int beforeIndex = lowerIndex - 1;
+            if (beforeIndex < 0 || this.holds[beforeIndex]) { // don't include the right-side of the hold keyframe
+                beforeIndex = lowerIndex;
+            }
+
+            int afterAfterIndex = ceilIndex + 1;
+            if (afterAfterIndex >= this.ticks.length || this.holds[ceilIndex]) { // ceil is to the left of afterAfter
+                afterAfterIndex = ceilIndex;
+            }
+
+            float realTimeBeforeTick = this.realTime(beforeIndex, realTimeMapping);
+            float realTimeAfterTick = this.realTime(afterAfterIndex, realTimeMapping);
+
+            KeyframeChange smoothChange = this.keyframes[beforeIndex].createSmoothInterpolatedChange(lowerKeyframe, ceilKeyframe,
+                this.keyframes[afterAfterIndex], realTimeBeforeTick, realTimeLowerTick, realTimeCeilTick, realTimeAfterTick, amount);
+
+            if (leftInterpolation == SidedInterpolationType.SMOOTH) {
+                leftChange = smoothChange;
+            }
+            if (rightInterpolation == SidedInterpolationType.SMOOTH) {
+                rightChange = smoothChange;
+            }
+        }
+        if (leftInterpolation == SidedInterpolationType.HERMITE ||
+                rightInterpolation == SidedInterpolationType.HERMITE) {
+            Hermite<Keyframe> hermite = this.getHermiteSegment(lowerIndex, realTimeMapping);
+            KeyframeChange hermiteChange = lowerKeyframe.createHermiteInterpolatedChange(hermite, realTimeTick);
+            if (leftInterpolation == SidedInterpolationType.HERMITE) {
+                leftChange = hermiteChange;
+            }
+            if (rightInterpolation == SidedInterpolationType.HERMITE) {
+                rightChange = hermiteChange;
+            }
+        }
+        if (leftChange == null || rightChange == null) {
+            double adjustedAmount = SidedInterpolationType.interpolate(leftInterpolation, rightInterpolation, amount);
+
+            KeyframeChange keyframeChange = lowerKeyframe.createChange();
+
+            if (adjustedAmount != 0.0) {
+                KeyframeChange keyframeChangeCeil = ceilKeyframe.createChange();
+                keyframeChange = KeyframeChange.interpolateSafe(keyframeChange, keyframeChangeCeil, (float) adjustedAmount);
+            }
+
+            if (leftChange == null) {
+                leftChange = keyframeChange;
+            }
+            if (rightChange == null) {
+                rightChange = keyframeChange;
+            }
+        }
+
+        return KeyframeChange.interpolateSafe(leftChange, rightChange, amount);
+    }
+
+    private Hermite<Keyframe> getHermiteSegment(int lowerIndex, @Nullable RealTimeMapping realTimeMapping) {
+        int mappingVersion = realTimeMapping == null ? -1 : realTimeMapping.size();
+
+        HermiteSegment segment = this.hermiteSegments.get(lowerIndex);
+        if (segment != null && segment.isValid(realTimeMapping, mappingVersion)) {
+            return segment.hermite;
+        }
+
+        int runStart = this.hermiteRunStart[lowerIndex];
+        int runEnd = this.hermiteRunEnd[lowerIndex + 1];
+
+        // Neighbouring segments in the same run share the same samples, and therefore the same interpolators
+        HermiteSegment previous = lowerIndex > 0 ? this.hermiteSegments.get(lowerIndex - 1) : null;
+        if (previous != null && previous.runStart == runStart && previous.runEnd == runEnd && previous.isValid(realTimeMapping, mappingVersion)) {
+            segment = previous;
+        } else {
+            int count = runEnd - runStart + 1;
+            float[] times = new float[count];
+            for (int i = 0; i < count; i++) {
+                times[i] = this.realTime(runStart + i, realTimeMapping);
+            }
+            Keyframe[] samples = Arrays.copyOfRange(this.keyframes, runStart, runEnd + 1);
+            segment = new HermiteSegment(runStart, runEnd, realTimeMapping, mappingVersion, new Hermite<>(times, samples));
+        }
+
+        this.hermiteSegments.set(lowerIndex, segment);
+        return segment.hermite;
+    }
+
+    private record HermiteSegment(int runStart, int runEnd, @Nullable RealTimeMapping realTimeMapping, int mappingVersion, Hermite<Keyframe> hermite) {
+        private boolean isValid(@Nullable RealTimeMapping realTimeMapping, int mappingVersion) {
+            return this.realTimeMapping == realTimeMapping && this.mappingVersion == mappingVersion;
+        }
+    }
+
+    @Nullable
+    private KeyframeChangeTickrate createTimelapseChange(float tick) {
+        if (this.ticks.length == 0) {
+            return null;
+        }
+
+        int lowerIndex = this.floorIndex((int) tick);
+        int ceilIndex = lowerIndex + 1;
+
+        if (ceilIndex >= this.ticks.length && lowerIndex >= 0 && this.ticks[lowerIndex] == (int) tick) {
+            ceilIndex = lowerIndex;
+            lowerIndex -= 1;
+        }
+
+        if (lowerIndex >= 0 && ceilIndex < this.ticks.length) {
+            int lowerTicks = ((TimelapseKeyframe) this.keyframes[lowerIndex]).ticks;
+            int ceilTicks = ((TimelapseKeyframe) this.keyframes[ceilIndex]).ticks;
+
+            if (ceilTicks <= lowerTicks) {
+                ReplayUI.setInfoOverlayShort("Unable to timelapse. Right keyframe's time must be greater than left keyframe's time");
+                return null;
+            } else {
+                double tickrate = (double) (this.ticks[ceilIndex] - this.ticks[lowerIndex]) / (ceilTicks - lowerTicks) * 20;
+                return new KeyframeChangeTickrate((float) tickrate);
+            }
+        }
+
+        return null;
+    }
+
+}
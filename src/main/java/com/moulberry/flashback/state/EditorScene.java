@@ -15,10 +15,38 @@ public class EditorScene {
 
     private final EditorSceneHistory history = new EditorSceneHistory();
 
+    // History changes that haven't been written to the journal yet, see EditorStateJournal
+    private transient List<EditorStateJournal.Change> unsavedChanges = null;
+
     public EditorScene(String name) {
         this.name = name;
     }
 
+    /**
+     * Copies this scene, sharing the keyframes of each track until they are modified. The copy starts with an empty
+     * history
+     */
+    public EditorScene copy(boolean withKeyframes) {
+        EditorScene copy = new EditorScene(this.name);
+        copy.exportStartTicks = this.exportStartTicks;
+        copy.exportEndTicks = this.exportEndTicks;
+        if (withKeyframes) {
+            for (KeyframeTrack keyframeTrack : this.keyframeTracks) {
+                copy.keyframeTracks.add(keyframeTrack.copy());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Copies this scene along with its history, for an {@link EditorStateJournal} snapshot
+     */
+    EditorScene copyWithHistory() {
+        EditorScene copy = this.copy(true);
+        copy.history.copyFrom(this.history);
+        return copy;
+    }
+
     public void setKeyframe(int trackIndex, int tick, Keyframe keyframe) {
         if (trackIndex >= this.keyframeTracks.size()) {
             return;
@@ -49,14 +77,44 @@ public class EditorScene {
         }
 
         this.history.push(this, entry);
+        this.recordChange(new EditorStateJournal.Change(EditorStateJournal.CHANGE_PUSH, entry));
     }
 
     public void undo(Consumer<String> descriptionConsumer) {
-        this.history.undo(this, descriptionConsumer);
+        if (this.history.undo(this, descriptionConsumer)) {
+            this.recordChange(new EditorStateJournal.Change(EditorStateJournal.CHANGE_UNDO, null));
+        }
     }
 
     public void redo(Consumer<String> descriptionConsumer) {
-        this.history.redo(this, descriptionConsumer);
+        if (this.history.redo(this, descriptionConsumer)) {
+            this.recordChange(new EditorStateJournal.Change(EditorStateJournal.CHANGE_REDO, null));
+        }
+    }
+
+    private void recordChange(EditorStateJournal.Change change) {
+        if (this.unsavedChanges == null) {
+            this.unsavedChanges = new ArrayList<>();
+        }
+        this.unsavedChanges.add(change);
+    }
+
+    List<EditorStateJournal.Change> drainUnsavedChanges() {
+        if (this.unsavedChanges == null || this.unsavedChanges.isEmpty()) {
+            return List.of();
+        }
+        List<EditorStateJournal.Change> changes = this.unsavedChanges;
+        this.unsavedChanges = null;
+        return changes;
+    }
+
+    void applyJournalChange(EditorStateJournal.Change change) {
+        switch (change.type()) {
+            case EditorStateJournal.CHANGE_PUSH -> this.history.push(this, change.entry());
+            case EditorStateJournal.CHANGE_UNDO -> this.history.undo(this, description -> {});
+            case EditorStateJournal.CHANGE_REDO -> this.history.redo(this, description -> {});
+            default -> throw new IllegalArgumentException("Unknown journal change type: " + change.type());
+        }
     }
 
     public void setExportTicks(int start, int end, int totalTicks) {
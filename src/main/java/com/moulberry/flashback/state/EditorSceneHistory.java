@@ -9,6 +9,15 @@ public class EditorSceneHistory {
     private final List<EditorSceneHistoryEntry> entries = new ArrayList<>();
     private int position = 0;
 
+    /**
+     * Entries aren't modified once they have been pushed, so they are shared with the copy
+     */
+    void copyFrom(EditorSceneHistory other) {
+        this.entries.clear();
+        this.entries.addAll(other.entries);
+        this.position = other.position;
+    }
+
     public void push(EditorScene editorScene, EditorSceneHistoryEntry entry) {
         while (this.entries.size() > this.position) {
             this.entries.removeLast();
@@ -26,9 +35,9 @@ public class EditorSceneHistory {
         this.position += 1;
     }
 
-    public void undo(EditorScene editorScene, Consumer<String> descriptionConsumer) {
+    public boolean undo(EditorScene editorScene, Consumer<String> descriptionConsumer) {
         if (this.position == 0) {
-            return;
+            return false;
         }
 
         this.position -= 1;
@@ -37,11 +46,12 @@ public class EditorSceneHistory {
             undo.apply(editorScene);
         }
         descriptionConsumer.accept("Undo '" + entry.description() + "'");
+        return true;
     }
 
-    public void redo(EditorScene editorScene, Consumer<String> descriptionConsumer) {
+    public boolean redo(EditorScene editorScene, Consumer<String> descriptionConsumer) {
         if (this.position >= this.entries.size()) {
-            return;
+            return false;
         }
 
         EditorSceneHistoryEntry entry = this.entries.get(this.position);
@@ -51,6 +61,7 @@ public class EditorSceneHistory {
         descriptionConsumer.accept("Redo '" + entry.description() + "'");
 
         this.position += 1;
+        return true;
     }
 
 }
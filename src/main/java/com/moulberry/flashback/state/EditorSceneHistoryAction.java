@@ -22,7 +22,7 @@ public interface EditorSceneHistoryAction {
             if (this.trackIndex < editorScene.keyframeTracks.size()) {
                 KeyframeTrack track = editorScene.keyframeTracks.get(this.trackIndex);
                 if (track.keyframeType == this.type) {
-                    track.keyframesByTick.put(this.tick, this.keyframe.copy());
+                    track.mutableKeyframes().put(this.tick, this.keyframe.copy());
                 }
             }
         }
@@ -57,7 +57,7 @@ public interface EditorSceneHistoryAction {
             if (this.trackIndex < editorScene.keyframeTracks.size()) {
                 KeyframeTrack track = editorScene.keyframeTracks.get(this.trackIndex);
                 if (track.keyframeType == this.type) {
-                    track.keyframesByTick.remove(this.tick);
+                    track.mutableKeyframes().remove(this.tick);
                 }
             }
         }
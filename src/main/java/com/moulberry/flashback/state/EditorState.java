@@ -13,17 +13,21 @@ import com.moulberry.flashback.keyframe.handler.KeyframeHandler;
 import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
 import com.moulberry.flashback.playback.ReplayServer;
 import com.moulberry.flashback.visuals.ReplayVisuals;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.Registry;
+import net.minecraft.core.particles.ParticleType;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantLock;
@@ -36,8 +40,12 @@ public class EditorState {
     public volatile transient int modCount = ThreadLocalRandom.current().nextInt();
     private volatile transient int lastRealTimeMappingModCount = this.modCount;
     private volatile transient RealTimeMapping realTimeMapping = null;
+    private volatile transient KeyframeEvaluationPlan evaluationPlan = null;
+    // Set by markDirty, history changes only set dirty since they can be appended to the journal instead
+    private volatile transient boolean dirtyOutsideHistory = false;
+    private transient int savedSceneIndex = 0;
 
-    public final ReplayVisuals replayVisuals = new ReplayVisuals();
+    public final ReplayVisuals replayVisuals;
 
     private final StampedLock sceneLock = new StampedLock();
     private final List<EditorScene> scenes;
@@ -60,7 +68,16 @@ public class EditorState {
     public Set<String> filteredEntities = new HashSet<>();
     public Set<String> filteredParticles = new HashSet<>();
 
+    // Render filters compiled into bitsets of registry ids, rebuilt after markRenderFiltersChanged
+    private transient BitSet filteredEntityIds = null;
+    private transient BitSet filteredParticleIds = null;
+
+    // hideDuringExport projected onto the ids of entities in the client level, kept up to date as entities load & unload
+    private volatile transient IntOpenHashSet hiddenDuringExportIds = null;
+    private transient ClientLevel hiddenDuringExportLevel = null;
+
     public EditorState() {
+        this.replayVisuals = new ReplayVisuals();
         this.scenes = new ArrayList<>();
         this.scenes.add(new EditorScene("Scene 1"));
 
@@ -73,6 +90,11 @@ public class EditorState {
         }
     }
 
+    private EditorState(ReplayVisuals replayVisuals) {
+        this.replayVisuals = replayVisuals;
+        this.scenes = new ArrayList<>();
+    }
+
     @ApiStatus.Internal
     public long acquireRead() {
         return this.sceneLock.readLock();
@@ -144,23 +166,175 @@ public class EditorState {
 
     public void markDirty() {
         this.dirty = true;
+        this.dirtyOutsideHistory = true;
         this.modCount += 1;
     }
 
-    public void save(Path path) {
-        this.dirty = false;
+    /**
+     * Must be used instead of {@link #markDirty()} after pushing, undoing or redoing history on a scene when nothing else
+     * was modified, so that the change can be appended to the {@link EditorStateJournal} instead of needing a snapshot
+     */
+    public void markHistoryDirty() {
+        this.dirty = true;
+        this.modCount += 1;
+    }
+
+    /**
+     * Must be called after modifying {@link #filteredEntities} or {@link #filteredParticles}
+     */
+    public void markRenderFiltersChanged() {
+        this.filteredEntityIds = null;
+        this.filteredParticleIds = null;
+        this.markDirty();
+    }
+
+    public boolean isEntityTypeFiltered(EntityType<?> entityType) {
+        BitSet filtered = this.filteredEntityIds;
+        if (filtered == null) {
+            filtered = compileRenderFilter(BuiltInRegistries.ENTITY_TYPE, this.filteredEntities);
+            this.filteredEntityIds = filtered;
+        }
+        if (filtered.isEmpty()) {
+            return false;
+        }
+        int id = BuiltInRegistries.ENTITY_TYPE.getId(entityType);
+        return id >= 0 && filtered.get(id);
+    }
+
+    public boolean isParticleTypeFiltered(ParticleType<?> particleType) {
+        BitSet filtered = this.filteredParticleIds;
+        if (filtered == null) {
+            filtered = compileRenderFilter(BuiltInRegistries.PARTICLE_TYPE, this.filteredParticles);
+            this.filteredParticleIds = filtered;
+        }
+        if (filtered.isEmpty()) {
+            return false;
+        }
+        int id = BuiltInRegistries.PARTICLE_TYPE.getId(particleType);
+        return id >= 0 && filtered.get(id);
+    }
+
+    public void setHiddenDuringExport(UUID uuid, boolean hidden) {
+        if (hidden) {
+            this.hideDuringExport.add(uuid);
+        } else {
+            this.hideDuringExport.remove(uuid);
+        }
+        this.hiddenDuringExportIds = null;
+        this.markDirty();
+    }
+
+    public void clearHiddenDuringExport() {
+        this.hideDuringExport.clear();
+        this.hiddenDuringExportIds = null;
+        this.markDirty();
+    }
+
+    public boolean isHiddenDuringExport(Entity entity) {
+        if (this.hideDuringExport.isEmpty()) {
+            return false;
+        }
+        if (!(entity.level() instanceof ClientLevel clientLevel)) {
+            return this.hideDuringExport.contains(entity.getUUID());
+        }
 
-        String serialized = FlashbackGson.COMPRESSED.toJson(this, EditorState.class);
+        IntOpenHashSet ids = this.hiddenDuringExportIds;
+        if (ids == null || this.hiddenDuringExportLevel != clientLevel) {
+            ids = new IntOpenHashSet();
+            for (Entity other : clientLevel.entitiesForRendering()) {
+                if (this.hideDuringExport.contains(other.getUUID())) {
+                    ids.add(other.getId());
+                }
+            }
+            this.hiddenDuringExportLevel = clientLevel;
+            this.hiddenDuringExportIds = ids;
+        }
+        return ids.contains(entity.getId());
+    }
+
+    public void onClientEntityLoad(Entity entity, ClientLevel level) {
+        IntOpenHashSet ids = this.hiddenDuringExportIds;
+        if (ids != null && level == this.hiddenDuringExportLevel && this.hideDuringExport.contains(entity.getUUID())) {
+            ids.add(entity.getId());
+        }
+    }
+
+    public void onClientEntityUnload(Entity entity, ClientLevel level) {
+        IntOpenHashSet ids = this.hiddenDuringExportIds;
+        if (ids != null && level == this.hiddenDuringExportLevel) {
+            ids.remove(entity.getId());
+        }
+    }
+
+    private static <T> BitSet compileRenderFilter(Registry<T> registry, Set<String> filtered) {
+        BitSet bitSet = new BitSet();
+        for (String key : filtered) {
+            ResourceLocation resourceLocation = ResourceLocation.tryParse(key);
+            if (resourceLocation == null) {
+                continue;
+            }
+            T value = registry.get(resourceLocation);
+            if (value != null && resourceLocation.equals(registry.getKey(value))) {
+                bitSet.set(registry.getId(value));
+            }
+        }
+        return bitSet;
+    }
+
+    /**
+     * Collects the history changes made to each scene since the last save, for appending to an {@link EditorStateJournal}
+     *
+     * @return the changes, or null if something other than history changes was modified and a snapshot is needed
+     */
+    @Nullable
+    List<EditorStateJournal.SceneChange> drainJournalChanges() {
+        long stamp = this.sceneLock.writeLock();
+        try {
+            if (this.dirtyOutsideHistory || this.sceneIndex != this.savedSceneIndex) {
+                return null;
+            }
+
+            List<EditorStateJournal.SceneChange> changes = new ArrayList<>();
+            for (int i = 0; i < this.scenes.size(); i++) {
+                for (EditorStateJournal.Change change : this.scenes.get(i).drainUnsavedChanges()) {
+                    changes.add(new EditorStateJournal.SceneChange(i, change));
+                }
+            }
+
+            this.markSaved();
+            return changes;
+        } finally {
+            this.sceneLock.unlock(stamp);
+        }
+    }
 
+    /**
+     * Copies the entire state including history for an {@link EditorStateJournal} snapshot, discarding any unsaved
+     * history changes since they are included in the snapshot. Keyframes are shared with the copy, so it's cheap to
+     * create under the lock and can be serialized on another thread
+     */
+    EditorState createSnapshot() {
+        long stamp = this.sceneLock.writeLock();
         try {
-            Files.createDirectories(path.getParent());
-            Files.writeString(path, serialized, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE,
-                    StandardOpenOption.SYNC);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            EditorState snapshot = this.copyWithoutScenes();
+            for (EditorScene scene : this.scenes) {
+                scene.drainUnsavedChanges();
+                snapshot.scenes.add(scene.copyWithHistory());
+            }
+            snapshot.sceneIndex = this.sceneIndex;
+            this.markSaved();
+            return snapshot;
+        } finally {
+            this.sceneLock.unlock(stamp);
         }
     }
 
+    void markSaved() {
+        this.dirty = false;
+        this.dirtyOutsideHistory = false;
+        this.savedSceneIndex = this.sceneIndex;
+    }
+
     @Nullable
     public static EditorState load(Path path) {
         if (!Files.exists(path)) {
@@ -178,91 +352,86 @@ public class EditorState {
         }
     }
 
+    /**
+     * Copies the editor state, e.g. for an export. Keyframes are shared with the copy until either side modifies them,
+     * so the cost doesn't depend on the number of keyframes. History isn't copied
+     */
     public EditorState copy() {
-        String serialized = FlashbackGson.COMPRESSED.toJson(this, EditorState.class);
-        return FlashbackGson.COMPRESSED.fromJson(serialized, EditorState.class);
+        return this.copy(true);
     }
 
     public EditorState copyWithoutKeyframes() {
-        String serialized = FlashbackGson.COMPRESSED.toJson(this, EditorState.class);
-        EditorState editorState = FlashbackGson.COMPRESSED.fromJson(serialized, EditorState.class);
-        for (EditorScene scene : editorState.scenes) {
-            scene.keyframeTracks.clear();
-        }
-        return editorState;
+        return this.copy(false);
     }
 
-    public void applyKeyframes(KeyframeHandler keyframeHandler, float tick) {
-        Set<Class<? extends KeyframeChange>> applied = new HashSet<>();
-        Map<Class<? extends KeyframeChange>, KeyframeTrack> maybeApplyLastTick = new HashMap<>();
-
-        updateRealtimeMappingsIfNeeded();
+    private EditorState copy(boolean withKeyframes) {
+        EditorState copy = this.copyWithoutScenes();
 
         long stamp = this.sceneLock.readLock();
         try {
-            for (KeyframeTrack keyframeTrack : this.currentScene().keyframeTracks) {
-                // Ignore lines that are disabled
-                if (!keyframeTrack.enabled) {
-                    continue;
-                }
-
-                Class<? extends KeyframeChange> keyframeChangeType = keyframeTrack.keyframeType.keyframeChangeType();
-
-                // Already applied a keyframe of this type earlier, skip
-                if (keyframeChangeType == null || applied.contains(keyframeChangeType)) {
-                    continue;
-                }
-
-                if (!keyframeTrack.keyframeType.supportsHandler(keyframeHandler)) {
-                    continue;
-                }
-
-                // Try to apply keyframes, mark applied if successful
-
-                KeyframeChange change = keyframeTrack.createKeyframeChange(tick, this.realTimeMapping);
-                if (change == null) {
-                    if (keyframeHandler.alwaysApplyLastKeyframe() && !keyframeTrack.keyframeType.neverApplyLastKeyframe() && !keyframeTrack.keyframesByTick.isEmpty()) {
-                        if (keyframeTrack.keyframesByTick.lastKey() <= tick) {
-                            KeyframeTrack oldTrack = maybeApplyLastTick.get(keyframeChangeType);
-                            if (oldTrack == null || keyframeTrack.keyframesByTick.lastKey() > oldTrack.keyframesByTick.lastKey()) {
-                                maybeApplyLastTick.put(keyframeChangeType, keyframeTrack);
-                            }
-                        }
-                    }
-                    continue;
-                }
-
-                if (change.getClass() != keyframeChangeType) {
-                    throw new IllegalStateException("Expected " + keyframeChangeType + ", got " + change.getClass() + ". Caused by: " + keyframeTrack.keyframeType.id());
-                }
-
-                applied.add(keyframeChangeType);
-                maybeApplyLastTick.remove(keyframeChangeType);
-                change.apply(keyframeHandler);
+            for (EditorScene scene : this.scenes) {
+                copy.scenes.add(scene.copy(withKeyframes));
             }
+            copy.sceneIndex = this.sceneIndex;
+        } finally {
+            this.sceneLock.unlock(stamp);
+        }
 
-            if (keyframeHandler.alwaysApplyLastKeyframe() && !maybeApplyLastTick.isEmpty()) {
-                for (Map.Entry<Class<? extends KeyframeChange>, KeyframeTrack> entry : maybeApplyLastTick.entrySet()) {
-                    KeyframeTrack keyframeTrack = entry.getValue();
-                    KeyframeChange change = keyframeTrack.createKeyframeChange(keyframeTrack.keyframesByTick.lastKey(), this.realTimeMapping);
+        return copy;
+    }
 
-                    if (change == null) {
-                        continue;
-                    }
+    private EditorState copyWithoutScenes() {
+        EditorState copy = new EditorState(FlashbackGson.COMPRESSED.fromJson(FlashbackGson.COMPRESSED.toJsonTree(this.replayVisuals), ReplayVisuals.class));
+        copy.zoomMin = this.zoomMin;
+        copy.zoomMax = this.zoomMax;
+        copy.audioSourceEntity = this.audioSourceEntity;
+        copy.hideDuringExport = new HashSet<>(this.hideDuringExport);
+        copy.hideNametags = new HashSet<>(this.hideNametags);
+        copy.skinOverride = new HashMap<>(this.skinOverride);
+        copy.skinOverrideFromFile = new HashMap<>(this.skinOverrideFromFile);
+        copy.nameOverride = new HashMap<>(this.nameOverride);
+        copy.glowingOverride = new HashMap<>(this.glowingOverride);
+        copy.hideTeamPrefix = new HashSet<>(this.hideTeamPrefix);
+        copy.hideTeamSuffix = new HashSet<>(this.hideTeamSuffix);
+        copy.hideBelowName = new HashSet<>(this.hideBelowName);
+        copy.hideCape = new HashSet<>(this.hideCape);
+        copy.filteredEntities = new HashSet<>(this.filteredEntities);
+        copy.filteredParticles = new HashSet<>(this.filteredParticles);
+        return copy;
+    }
 
-                    if (change.getClass() != entry.getKey()) {
-                        throw new IllegalStateException("Expected " + entry.getKey() + ", got " + change.getClass() + ". Caused by: " + keyframeTrack.keyframeType.id());
-                    }
+    public void applyKeyframes(KeyframeHandler keyframeHandler, float tick) {
+        updateRealtimeMappingsIfNeeded();
+        this.getEvaluationPlan().apply(keyframeHandler, tick);
+    }
 
-                    change.apply(keyframeHandler);
-                }
-            }
+    private KeyframeEvaluationPlan getEvaluationPlan() {
+        KeyframeEvaluationPlan plan = this.evaluationPlan;
+        if (plan != null && plan.modCount == this.modCount && plan.sceneIndex == this.sceneIndex && plan.realTimeMapping == this.realTimeMapping) {
+            return plan;
+        }
+
+        long stamp = this.sceneLock.readLock();
+        try {
+            // Read modCount before compiling so that a concurrent modification causes another rebuild
+            plan = KeyframeEvaluationPlan.compile(this.currentScene(), this.modCount, this.sceneIndex, this.realTimeMapping);
+            this.evaluationPlan = plan;
+            return plan;
         } finally {
             this.sceneLock.unlock(stamp);
         }
     }
 
     private void updateRealtimeMappingsIfNeeded() {
+        // Fast path, avoid taking the lock when the mapping is already up-to-date
+        if (Flashback.getConfig().useRealtimeInterpolation) {
+            if (this.realTimeMapping != null && this.lastRealTimeMappingModCount == this.modCount) {
+                return;
+            }
+        } else if (this.realTimeMapping == null) {
+            return;
+        }
+
         long stamp = this.sceneLock.readLock();
         try {
             FlashbackConfig config = Flashback.getConfig();
@@ -277,7 +446,8 @@ public class EditorState {
                 stamp = this.sceneLock.writeLock();
 
                 if (this.realTimeMapping == null || this.lastRealTimeMappingModCount != this.modCount) {
-                    this.calculateRealtimeMappings();
+                    this.lastRealTimeMappingModCount = this.modCount;
+                    this.realTimeMapping = this.calculateRealtimeMappings();
                 }
             }
         } finally {
@@ -285,11 +455,10 @@ public class EditorState {
         }
     }
 
-    private void calculateRealtimeMappings() {
-        this.lastRealTimeMappingModCount = this.modCount;
-        this.realTimeMapping = new RealTimeMapping();
+    private RealTimeMapping calculateRealtimeMappings() {
+        RealTimeMapping realTimeMapping = new RealTimeMapping();
 
-        List<KeyframeTrack> applicableTracks = new ArrayList<>();
+        List<CompiledKeyframeTrack> applicableTracks = new ArrayList<>();
         int start = -1;
         int end = -1;
         int lastApplicableKeyframe = -1;
@@ -306,7 +475,7 @@ public class EditorState {
                 continue;
             }
 
-            applicableTracks.add(keyframeTrack);
+            applicableTracks.add(keyframeTrack.compile());
 
             int trackStart = keyframeTrack.keyframesByTick.firstKey();
             int trackEnd = keyframeTrack.keyframesByTick.lastKey();
@@ -326,14 +495,14 @@ public class EditorState {
         }
 
         if (applicableTracks.isEmpty() || start < 0 || end < 0) {
-            return;
+            return realTimeMapping;
         }
 
         float lastSpeed = Float.NaN;
 
         for (int tick = start; tick <= end; tick++) {
-            for (KeyframeTrack keyframeTrack : applicableTracks) {
-                KeyframeChange change = keyframeTrack.createKeyframeChange(tick, this.realTimeMapping);
+            for (CompiledKeyframeTrack keyframeTrack : applicableTracks) {
+                KeyframeChange change = keyframeTrack.createKeyframeChange(tick, realTimeMapping);
                 if (!(change instanceof KeyframeChangeTickrate changeTickrate)) {
                     continue;
                 }
@@ -341,7 +510,7 @@ public class EditorState {
                 float newSpeed = changeTickrate.tickrate() / 20.0f;
                 if (newSpeed != lastSpeed) {
                     lastSpeed = newSpeed;
-                    this.realTimeMapping.addMapping(tick, newSpeed);
+                    realTimeMapping.addMapping(tick, newSpeed);
                 }
                 break;
             }
@@ -349,37 +518,38 @@ public class EditorState {
 
         // Check if the tick afterwards has a change, if it does then the last keyframe is probably a hold keyframe
         // So we can just apply that speed for the remainder
-        for (KeyframeTrack keyframeTrack : applicableTracks) {
-            KeyframeChange change = keyframeTrack.createKeyframeChange(end+1, this.realTimeMapping);
+        for (CompiledKeyframeTrack keyframeTrack : applicableTracks) {
+            KeyframeChange change = keyframeTrack.createKeyframeChange(end+1, realTimeMapping);
             if (!(change instanceof KeyframeChangeTickrate changeTickrate)) {
                 continue;
             }
 
             float newSpeed = changeTickrate.tickrate() / 20.0f;
             if (newSpeed != lastSpeed) {
-                this.realTimeMapping.addMapping(end+1, newSpeed);
+                realTimeMapping.addMapping(end+1, newSpeed);
             }
-            return;
+            return realTimeMapping;
         }
 
         // We need to try applying the last keyframe for the remainder
-        for (KeyframeTrack keyframeTrack : applicableTracks) {
-            if (!keyframeTrack.keyframeType.neverApplyLastKeyframe() && keyframeTrack.keyframesByTick.lastKey() == lastApplicableKeyframe) {
-                KeyframeChange change = keyframeTrack.createKeyframeChange(lastApplicableKeyframe, this.realTimeMapping);
+        for (CompiledKeyframeTrack keyframeTrack : applicableTracks) {
+            if (!keyframeTrack.keyframeType.neverApplyLastKeyframe() && keyframeTrack.lastTick() == lastApplicableKeyframe) {
+                KeyframeChange change = keyframeTrack.createKeyframeChange(lastApplicableKeyframe, realTimeMapping);
                 if (!(change instanceof KeyframeChangeTickrate changeTickrate)) {
                     break;
                 }
 
                 float newSpeed = changeTickrate.tickrate() / 20.0f;
                 if (newSpeed != lastSpeed) {
-                    this.realTimeMapping.addMapping(end+1, newSpeed);
+                    realTimeMapping.addMapping(end+1, newSpeed);
                 }
-                return;
+                return realTimeMapping;
             }
         }
 
         // Failing to apply the last keyframe, we reset the speed to normal
-        this.realTimeMapping.addMapping(end+1, 1.0f);
+        realTimeMapping.addMapping(end+1, 1.0f);
+        return realTimeMapping;
     }
 
     public void setExportTicks(int start, int end, int totalTicks) {
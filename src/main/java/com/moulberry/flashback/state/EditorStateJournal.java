@@ -0,0 +1,326 @@
+package com.moulberry.flashback.state;
+
+import com.google.gson.stream.JsonWriter;
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.FlashbackGson;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persists an {@link EditorState} as a compressed snapshot plus an append-only journal of the history changes
+ * (push/undo/redo) made to its scenes since. Appending a change only costs as much as the change itself, the whole
+ * state is only rewritten when compacting. All file IO happens in order on a dedicated thread.
+ * <p>
+ * Snapshot: {@code int magic, int version, long snapshotId, deflated json}<br>
+ * Journal: {@code int magic, int version, long snapshotId} followed by records of
+ * {@code byte type, int sceneIndex, int length, byte[length] json, int crc32}
+ */
+public class EditorStateJournal {
+
+    public static final byte CHANGE_PUSH = 0;
+    public static final byte CHANGE_UNDO = 1;
+    public static final byte CHANGE_REDO = 2;
+
+    private static final int SNAPSHOT_MAGIC = 0x46425354;
+    private static final int JOURNAL_MAGIC = 0x46424A4C;
+    private static final int VERSION = 1;
+
+    private static final int COMPACT_AFTER_RECORDS = 512;
+    private static final long COMPACT_AFTER_BYTES = 4 * 1024 * 1024;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Flashback Editor State Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public record Change(byte type, @Nullable EditorSceneHistoryEntry entry) {}
+
+    public record SceneChange(int sceneIndex, Change change) {}
+
+    private final Path snapshotPath;
+    private final Path backupSnapshotPath;
+    private final Path journalPath;
+
+    private long snapshotId = 0;
+    private int journalRecords = 0;
+    private long journalBytes = 0;
+
+    public EditorStateJournal(Path directory, String name) {
+        this.snapshotPath = directory.resolve(name + ".snapshot");
+        this.backupSnapshotPath = directory.resolve(name + ".snapshot.old");
+        this.journalPath = directory.resolve(name + ".journal");
+    }
+
+    public boolean needsCompaction() {
+        return this.snapshotId == 0 || this.journalRecords >= COMPACT_AFTER_RECORDS || this.journalBytes >= COMPACT_AFTER_BYTES;
+    }
+
+    /**
+     * Writes a new snapshot and starts an empty journal for it. The snapshot should be created with
+     * {@link EditorState#createSnapshot()} on the thread that owns the state, the (potentially large) serialization &
+     * compression is done on the writer thread.
+     */
+    public void writeSnapshot(EditorState snapshot) {
+        this.writeSnapshot(snapshot, null);
+    }
+
+    /**
+     * @param onWritten run on the writer thread once the snapshot & its empty journal are on disk, not run if writing failed
+     */
+    public void writeSnapshot(EditorState snapshot, @Nullable Runnable onWritten) {
+        long snapshotId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        this.snapshotId = snapshotId;
+        this.journalRecords = 0;
+        this.journalBytes = 0;
+
+        EXECUTOR.execute(() -> {
+            try {
+                Files.createDirectories(this.snapshotPath.getParent());
+
+                Path temp = this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + ".tmp");
+                try (OutputStream os = Files.newOutputStream(temp);
+                        BufferedOutputStream bos = new BufferedOutputStream(os);
+                        DataOutputStream dos = new DataOutputStream(bos)) {
+                    dos.writeInt(SNAPSHOT_MAGIC);
+                    dos.writeInt(VERSION);
+                    dos.writeLong(snapshotId);
+                    dos.flush();
+
+                    DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(bos);
+                    Writer writer = new OutputStreamWriter(deflaterOutputStream, StandardCharsets.UTF_8);
+                    FlashbackGson.COMPRESSED.toJson(snapshot, EditorState.class, new JsonWriter(writer));
+                    writer.flush();
+                    deflaterOutputStream.finish();
+                    bos.flush();
+                }
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+
+                // Keep the previous snapshot (and its journal) as a backup until the new one is in place
+                if (Files.exists(this.snapshotPath)) {
+                    Files.move(this.snapshotPath, this.backupSnapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(temp, this.snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                ByteBuffer header = ByteBuffer.allocate(16);
+                header.putInt(JOURNAL_MAGIC);
+                header.putInt(VERSION);
+                header.putLong(snapshotId);
+                header.flip();
+                try (FileChannel channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel.write(header);
+                    channel.force(false);
+                }
+
+                if (onWritten != null) {
+                    onWritten.run();
+                }
+            } catch (Exception e) {
+                Flashback.LOGGER.error("Failed to write editor state snapshot", e);
+            }
+        });
+    }
+
+    /**
+     * Appends history changes to the journal, only valid after a snapshot has been loaded or written
+     */
+    public void appendChanges(List<SceneChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            CRC32 crc32 = new CRC32();
+            for (SceneChange sceneChange : changes) {
+                Change change = sceneChange.change;
+                byte[] payload = change.entry == null ? new byte[0] :
+                    FlashbackGson.COMPRESSED.toJson(change.entry).getBytes(StandardCharsets.UTF_8);
+
+                crc32.reset();
+                crc32.update(change.type);
+                crc32.update(payload);
+
+                dos.writeByte(change.type);
+                dos.writeInt(sceneChange.sceneIndex);
+                dos.writeInt(payload.length);
+                dos.write(payload);
+                dos.writeInt((int) crc32.getValue());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        byte[] bytes = baos.toByteArray();
+        this.journalRecords += changes.size();
+        this.journalBytes += bytes.length;
+
+        EXECUTOR.execute(() -> {
+            try (FileChannel channel = FileChannel.open(this.journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (Exception e) {
+                Flashback.LOGGER.error("Failed to append to editor state journal", e);
+            }
+        });
+    }
+
+    /**
+     * Blocks until all pending writes have completed
+     */
+    public void flush() {
+        try {
+            EXECUTOR.submit(() -> {}).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Flashback.LOGGER.error("Failed to wait for editor state writes", e);
+        }
+    }
+
+    /**
+     * Loads the latest snapshot and replays the journal on top of it, falling back to the backup snapshot if needed
+     */
+    @Nullable
+    public EditorState load() {
+        for (Path path : new Path[]{this.snapshotPath, this.backupSnapshotPath}) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+
+            try {
+                EditorState editorState = this.loadSnapshot(path);
+                if (editorState != null) {
+                    this.replayJournal(editorState);
+                    editorState.markSaved();
+                    return editorState;
+                }
+            } catch (Exception e) {
+                Flashback.LOGGER.error("Error loading editor state snapshot {}", path, e);
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private EditorState loadSnapshot(Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path);
+                BufferedInputStream bis = new BufferedInputStream(is);
+                DataInputStream dis = new DataInputStream(bis)) {
+            if (dis.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Invalid snapshot magic");
+            }
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            long snapshotId = dis.readLong();
+
+            EditorState editorState = FlashbackGson.COMPRESSED.fromJson(new InputStreamReader(new InflaterInputStream(bis), StandardCharsets.UTF_8),
+                EditorState.class);
+            if (editorState != null) {
+                this.snapshotId = snapshotId;
+            }
+            return editorState;
+        }
+    }
+
+    private void replayJournal(EditorState editorState) {
+        this.journalRecords = 0;
+        this.journalBytes = 0;
+
+        if (!Files.exists(this.journalPath)) {
+            return;
+        }
+
+        long stamp = editorState.acquireWrite();
+        try (InputStream is = Files.newInputStream(this.journalPath);
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(is))) {
+            if (dis.readInt() != JOURNAL_MAGIC || dis.readInt() != VERSION || dis.readLong() != this.snapshotId) {
+                // Journal belongs to a different snapshot, its changes are either already included or lost
+                return;
+            }
+
+            List<EditorScene> scenes = editorState.getScenes(stamp);
+            CRC32 crc32 = new CRC32();
+            while (true) {
+                byte type;
+                try {
+                    type = dis.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int sceneIndex = dis.readInt();
+                int length = dis.readInt();
+                if (length < 0 || length > COMPACT_AFTER_BYTES * 4) {
+                    Flashback.LOGGER.warn("Editor state journal has an invalid record length, ignoring the remainder");
+                    break;
+                }
+                byte[] payload = dis.readNBytes(length);
+                if (payload.length != length) {
+                    break;
+                }
+                int expectedCrc = dis.readInt();
+
+                crc32.reset();
+                crc32.update(type);
+                crc32.update(payload);
+                if ((int) crc32.getValue() != expectedCrc) {
+                    Flashback.LOGGER.warn("Editor state journal has a corrupt record, ignoring the remainder");
+                    break;
+                }
+
+                EditorSceneHistoryEntry entry = null;
+                if (length > 0) {
+                    entry = FlashbackGson.COMPRESSED.fromJson(new String(payload, StandardCharsets.UTF_8), EditorSceneHistoryEntry.class);
+                }
+
+                if (sceneIndex >= 0 && sceneIndex < scenes.size()) {
+                    scenes.get(sceneIndex).applyJournalChange(new Change(type, entry));
+                }
+
+                this.journalRecords += 1;
+                this.journalBytes += 13 + length;
+            }
+        } catch (EOFException e) {
+            // Incomplete record at the end of the journal, caused by a crash during a write
+        } catch (Exception e) {
+            Flashback.LOGGER.error("Error replaying editor state journal", e);
+        } finally {
+            editorState.release(stamp);
+        }
+    }
+
+}
@@ -6,7 +6,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.locks.ReentrantLock;
@@ -14,10 +14,12 @@ import java.util.concurrent.locks.ReentrantLock;
 public class EditorStateManager {
 
     private static long AUTOSAVE_INTERVAL_MILLIS = 30 * 1000; // 30 seconds
+    private static long JOURNAL_INTERVAL_MILLIS = 5 * 1000; // 5 seconds
 
     private static final ReentrantLock lock = new ReentrantLock();
     private static UUID currentUuid = null;
     private static EditorState current = null;
+    private static EditorStateJournal journal = null;
     private static long lastSave = 0;
 
     public static void saveIfNeeded() {
@@ -32,8 +34,20 @@ public class EditorStateManager {
 
             if (!current.dirty) {
                 lastSave = currentTime;
-            } else if (currentTime < lastSave || currentTime - lastSave > AUTOSAVE_INTERVAL_MILLIS) {
-                save();
+            } else if (currentTime < lastSave || currentTime - lastSave > JOURNAL_INTERVAL_MILLIS) {
+                // Cheap path, only append the history changes made since the last save
+                if (!journal.needsCompaction()) {
+                    List<EditorStateJournal.SceneChange> changes = current.drainJournalChanges();
+                    if (changes != null) {
+                        journal.appendChanges(changes);
+                        lastSave = currentTime;
+                        return;
+                    }
+                }
+
+                if (currentTime < lastSave || currentTime - lastSave > AUTOSAVE_INTERVAL_MILLIS) {
+                    save();
+                }
             }
         } finally {
             lock.unlock();
@@ -46,26 +60,37 @@ public class EditorStateManager {
             return;
         }
 
-        Path normalPath = getPath(currentUuid, false);
-        Path oldPath = getPath(currentUuid, true);
+        journal.writeSnapshot(current.createSnapshot());
+        lastSave = System.currentTimeMillis();
+    }
 
-        // Backup
-        if (Files.exists(normalPath)) {
+    /**
+     * Writes the first snapshot of a state loaded from the legacy json, the json is only deleted once the snapshot is on disk
+     */
+    private static void saveMigrated(Path normalPath, Path backupPath) {
+        journal.writeSnapshot(current.createSnapshot(), () -> {
             try {
-                Files.move(normalPath, oldPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException ignored) {}
-        }
-
-        // Save
-        current.save(normalPath);
+                Files.deleteIfExists(normalPath);
+                Files.deleteIfExists(backupPath);
+            } catch (IOException e) {
+                Flashback.LOGGER.error("Failed to delete migrated editor state", e);
+            }
+        });
         lastSave = System.currentTimeMillis();
     }
 
     private static void load() {
         lastSave = System.currentTimeMillis();
 
-        Path normalPath = getPath(currentUuid, false);
-        Path backupPath = getPath(currentUuid, true);
+        journal = new EditorStateJournal(getDirectory(), currentUuid.toString());
+        current = journal.load();
+        if (current != null) {
+            return;
+        }
+
+        // Editor states from older versions were saved as plain json
+        Path normalPath = getLegacyPath(currentUuid, false);
+        Path backupPath = getLegacyPath(currentUuid, true);
 
         if (Files.exists(normalPath)) {
             current = EditorState.load(normalPath);
@@ -74,6 +99,7 @@ public class EditorStateManager {
                     Files.deleteIfExists(normalPath);
                 } catch (IOException ignored) {}
             } else {
+                saveMigrated(normalPath, backupPath);
                 return;
             }
         }
@@ -85,6 +111,7 @@ public class EditorStateManager {
                     Files.deleteIfExists(backupPath);
                 } catch (IOException ignored) {}
             } else {
+                saveMigrated(normalPath, backupPath);
                 return;
             }
         }
@@ -97,8 +124,12 @@ public class EditorStateManager {
             lock.lock();
 
             save();
+            if (journal != null) {
+                journal.flush();
+            }
             current = null;
             currentUuid = null;
+            journal = null;
         } finally {
             lock.unlock();
         }
@@ -122,6 +153,9 @@ public class EditorStateManager {
 
             if (current == null || !Objects.equals(currentUuid, replayUuid)) {
                 save();
+                if (journal != null) {
+                    journal.flush();
+                }
                 currentUuid = replayUuid;
                 load();
             }
@@ -132,16 +166,18 @@ public class EditorStateManager {
         }
     }
 
-    private static Path getPath(UUID replayUuid, boolean old) {
+    private static Path getDirectory() {
+        return Flashback.getDataDirectory().resolve("editor_states");
+    }
+
+    private static Path getLegacyPath(UUID replayUuid, boolean old) {
         Objects.requireNonNull(replayUuid);
 
         String filename = replayUuid + ".json";
         if (old) {
             filename += ".old";
         }
-        return Flashback.getDataDirectory()
-                .resolve("editor_states")
-                .resolve(filename);
+        return getDirectory().resolve(filename);
     }
 
 }
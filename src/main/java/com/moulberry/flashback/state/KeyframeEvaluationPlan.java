@@ -0,0 +1,150 @@
+package com.moulberry.flashback.state;
+
+import com.moulberry.flashback.keyframe.change.KeyframeChange;
+import com.moulberry.flashback.keyframe.handler.KeyframeHandler;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, precompiled form of the current scene used by {@link EditorState#applyKeyframes(KeyframeHandler, float)}.
+ * Built whenever the editor state's modCount changes, after which it can be evaluated from any thread without locking.
+ * Each distinct {@link KeyframeChange} type gets a slot so that the "only apply the first track of each type" rule is
+ * tracked in a bitmask instead of a set.
+ */
+public class KeyframeEvaluationPlan {
+
+    private static final int MAX_SLOTS = Long.SIZE;
+
+    final int modCount;
+    final int sceneIndex;
+    final @Nullable RealTimeMapping realTimeMapping;
+
+    private final CompiledKeyframeTrack[] tracks;
+    private final int[] trackSlots;
+    private final Class<?>[] slotTypes;
+    private final int[][] tracksBySlot;
+
+    private KeyframeEvaluationPlan(int modCount, int sceneIndex, @Nullable RealTimeMapping realTimeMapping, CompiledKeyframeTrack[] tracks,
+            int[] trackSlots, Class<?>[] slotTypes, int[][] tracksBySlot) {
+        this.modCount = modCount;
+        this.sceneIndex = sceneIndex;
+        this.realTimeMapping = realTimeMapping;
+        this.tracks = tracks;
+        this.trackSlots = trackSlots;
+        this.slotTypes = slotTypes;
+        this.tracksBySlot = tracksBySlot;
+    }
+
+    static KeyframeEvaluationPlan compile(EditorScene scene, int modCount, int sceneIndex, @Nullable RealTimeMapping realTimeMapping) {
+        List<CompiledKeyframeTrack> tracks = new ArrayList<>();
+        IntArrayList trackSlots = new IntArrayList();
+        List<Class<?>> slotTypes = new ArrayList<>();
+        List<IntArrayList> tracksBySlot = new ArrayList<>();
+
+        for (KeyframeTrack keyframeTrack : scene.keyframeTracks) {
+            // Ignore tracks that are disabled or can never produce a change
+            if (!keyframeTrack.enabled || keyframeTrack.keyframesByTick.isEmpty()) {
+                continue;
+            }
+
+            Class<? extends KeyframeChange> keyframeChangeType = keyframeTrack.keyframeType.keyframeChangeType();
+            if (keyframeChangeType == null) {
+                continue;
+            }
+
+            int slot = slotTypes.indexOf(keyframeChangeType);
+            if (slot < 0) {
+                slot = slotTypes.size();
+                if (slot >= MAX_SLOTS) {
+                    throw new IllegalStateException("Too many keyframe change types, at most " + MAX_SLOTS + " are supported");
+                }
+                slotTypes.add(keyframeChangeType);
+                tracksBySlot.add(new IntArrayList());
+            }
+
+            tracksBySlot.get(slot).add(tracks.size());
+            trackSlots.add(slot);
+            tracks.add(keyframeTrack.compile());
+        }
+
+        int[][] tracksBySlotArray = new int[tracksBySlot.size()][];
+        for (int i = 0; i < tracksBySlotArray.length; i++) {
+            tracksBySlotArray[i] = tracksBySlot.get(i).toIntArray();
+        }
+
+        return new KeyframeEvaluationPlan(modCount, sceneIndex, realTimeMapping, tracks.toArray(new CompiledKeyframeTrack[0]),
+            trackSlots.toIntArray(), slotTypes.toArray(new Class<?>[0]), tracksBySlotArray);
+    }
+
+    public void apply(KeyframeHandler keyframeHandler, float tick) {
+        long applied = 0;
+
+        for (int i = 0; i < this.tracks.length; i++) {
+            int slot = this.trackSlots[i];
+
+            // Already applied a keyframe of this type earlier, skip
+            if ((applied & (1L << slot)) != 0) {
+                continue;
+            }
+
+            CompiledKeyframeTrack track = this.tracks[i];
+            if (!track.keyframeType.supportsHandler(keyframeHandler)) {
+                continue;
+            }
+
+            // Try to apply keyframes, mark applied if successful
+            KeyframeChange change = track.createKeyframeChange(tick, this.realTimeMapping);
+            if (change == null) {
+                continue;
+            }
+
+            this.checkChangeType(change, slot, track);
+            applied |= 1L << slot;
+            change.apply(keyframeHandler);
+        }
+
+        if (!keyframeHandler.alwaysApplyLastKeyframe()) {
+            return;
+        }
+
+        // For types that weren't applied, fall back to the last keyframe of the track which ended most recently
+        for (int slot = 0; slot < this.slotTypes.length; slot++) {
+            if ((applied & (1L << slot)) != 0) {
+                continue;
+            }
+
+            CompiledKeyframeTrack lastTrack = null;
+            for (int trackIndex : this.tracksBySlot[slot]) {
+                CompiledKeyframeTrack track = this.tracks[trackIndex];
+                if (track.keyframeType.neverApplyLastKeyframe() || !track.keyframeType.supportsHandler(keyframeHandler)) {
+                    continue;
+                }
+                if (track.lastTick() <= tick && (lastTrack == null || track.lastTick() > lastTrack.lastTick())) {
+                    lastTrack = track;
+                }
+            }
+
+            if (lastTrack == null) {
+                continue;
+            }
+
+            KeyframeChange change = lastTrack.createKeyframeChange(lastTrack.lastTick(), this.realTimeMapping);
+            if (change == null) {
+                continue;
+            }
+
+            this.checkChangeType(change, slot, lastTrack);
+            change.apply(keyframeHandler);
+        }
+    }
+
+    private void checkChangeType(KeyframeChange change, int slot, CompiledKeyframeTrack track) {
+        if (change.getClass() != this.slotTypes[slot]) {
+            throw new IllegalStateException("Expected " + this.slotTypes[slot] + ", got " + change.getClass() + ". Caused by: " + track.keyframeType.id());
+        }
+    }
+
+}
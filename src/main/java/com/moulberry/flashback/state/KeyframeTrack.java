@@ -1,25 +1,20 @@
 package com.moulberry.flashback.state;
 
-import com.google.common.collect.Maps;
-import com.google.common.collect.Range;
-import com.moulberry.flashback.editor.ui.ReplayUI;
 import com.moulberry.flashback.keyframe.Keyframe;
 import com.moulberry.flashback.keyframe.KeyframeType;
-import com.moulberry.flashback.keyframe.change.KeyframeChange;
-import com.moulberry.flashback.keyframe.change.KeyframeChangeTickrate;
-import com.moulberry.flashback.keyframe.impl.TimelapseKeyframe;
-import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
-import com.moulberry.flashback.keyframe.interpolation.SidedInterpolationType;
-import com.moulberry.flashback.keyframe.types.TimelapseKeyframeType;
 import imgui.type.ImString;
-import org.jetbrains.annotations.Nullable;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class KeyframeTrack {
 
+    private static final AtomicInteger NEXT_VERSION = new AtomicInteger(0);
+
     public final KeyframeType<?> keyframeType;
     public TreeMap<Integer, Keyframe> keyframesByTick = new TreeMap<>();
     public boolean enabled = true;
@@ -30,202 +25,132 @@ public class KeyframeTrack {
     public transient boolean forceFocusTrack = false;
     public transient float animatedOffsetInUi = 0.0f;
 
+    // Set while keyframesByTick is shared with a copy of this track, see mutableKeyframes
+    private transient boolean sharedKeyframes = false;
+    private transient SortedKeyframes sortedKeyframes = null;
+    // See version(), assigned lazily since tracks created by gson skip the constructor
+    private transient int version = 0;
+
     public KeyframeTrack(KeyframeType<?> keyframeType) {
         this.keyframeType = keyframeType;
     }
 
-    @Nullable
-    public KeyframeChange createKeyframeChange(float tick, @Nullable RealTimeMapping realTimeMapping) {
-        if (this.keyframeType == TimelapseKeyframeType.INSTANCE) {
-            return this.tryApplyKeyframesTimelapse(tick);
-        }
-
-        // Skip if empty
-        TreeMap<Integer, Keyframe> keyframeTimes = this.keyframesByTick;
-        if (keyframeTimes.isEmpty()) {
-            return null;
-        }
-
-        Map.Entry<Integer, Keyframe> lowerEntry = keyframeTimes.floorEntry((int) tick);
-        if (lowerEntry == null) {
-            return null;
-        }
-
-        Keyframe lowerKeyframe = lowerEntry.getValue();
-
-        if (tick == lowerEntry.getKey()) {
-            return lowerKeyframe.createChange();
-        }
-
-        SidedInterpolationType leftInterpolation = lowerEntry.getValue().interpolationType().rightSide;
-
-        // Immediately apply hold
-        if (leftInterpolation == SidedInterpolationType.HOLD) {
-            return lowerKeyframe.createChange();
-        }
+    /**
+     * Copies this track without copying its keyframes. The keyframes are shared until either track is modified
+     * through {@link #mutableKeyframes()}
+     */
+    public KeyframeTrack copy() {
+        KeyframeTrack copy = new KeyframeTrack(this.keyframeType);
+        copy.keyframesByTick = this.keyframesByTick;
+        copy.enabled = this.enabled;
+        copy.customName = this.customName;
+        copy.customColour = this.customColour;
+        copy.version = this.version();
+
+        copy.sharedKeyframes = true;
+        this.sharedKeyframes = true;
+        return copy;
+    }
 
-        // Get next entry, skip if tick is not between two keyframes
-        Map.Entry<Integer, Keyframe> ceilEntry = keyframeTimes.ceilingEntry(lowerEntry.getKey() + 1);
-        if (ceilEntry == null) {
-            if ((int) tick == lowerEntry.getKey()) {
-                return lowerKeyframe.createChange();
+    /**
+     * Must be used instead of {@link #keyframesByTick} when modifying the keyframes, or any keyframe inside of them
+     */
+    public TreeMap<Integer, Keyframe> mutableKeyframes() {
+        if (this.sharedKeyframes) {
+            TreeMap<Integer, Keyframe> keyframes = new TreeMap<>();
+            for (Map.Entry<Integer, Keyframe> entry : this.keyframesByTick.entrySet()) {
+                keyframes.put(entry.getKey(), entry.getValue().copyUnmodified());
             }
-            return null;
+            this.keyframesByTick = keyframes;
+            this.sharedKeyframes = false;
         }
+        this.version = NEXT_VERSION.incrementAndGet();
+        return this.keyframesByTick;
+    }
 
-        SidedInterpolationType rightInterpolation = ceilEntry.getValue().interpolationType().leftSide;
-        if (rightInterpolation == SidedInterpolationType.HOLD) {
-            rightInterpolation = leftInterpolation;
+    /**
+     * A stamp for the current keyframes of this track, which changes whenever they are accessed through
+     * {@link #mutableKeyframes()}. Unique across all tracks, except for copies that still share their keyframes
+     */
+    public int version() {
+        int version = this.version;
+        if (version == 0) {
+            version = NEXT_VERSION.incrementAndGet();
+            this.version = version;
         }
+        return version;
+    }
 
-        float realTimeTick = realTimeMapping == null ? tick : realTimeMapping.getRealTime(tick);
-        float realTimeLowerTick = realTimeMapping == null ? lowerEntry.getKey() : realTimeMapping.getRealTime(lowerEntry.getKey());
-        float realTimeCeilTick = realTimeMapping == null ? ceilEntry.getKey() : realTimeMapping.getRealTime(ceilEntry.getKey());
-
-        float amount = (realTimeTick - realTimeLowerTick) / (realTimeCeilTick - realTimeLowerTick);
-
-        KeyframeChange leftChange = null;
-        KeyframeChange rightChange = null;
-
-        if (leftInterpolation == SidedInterpolationType.SMOOTH ||
-                rightInterpolation == SidedInterpolationType.SMOOTH) {
-            Map.Entry<Integer, Keyframe> beforeEntry = keyframeTimes.floorEntry(lowerEntry.getKey() - 1);
-            if (beforeEntry == null || beforeEntry.getValue().interpolationType() == InterpolationType.HOLD) { // don't include the right-side of the hold keyframe
-                beforeEntry = lowerEntry;
-            }
-
-            Map.Entry<Integer, Keyframe> afterAfterEntry = keyframeTimes.ceilingEntry(ceilEntry.getKey() + 1);
-            if (afterAfterEntry == null || ceilEntry.getValue().interpolationType() == InterpolationType.HOLD) { // ceil is to the left of afterAfter
-                afterAfterEntry = ceilEntry;
-            }
-
-            float realTimeBeforeTick = realTimeMapping == null ? beforeEntry.getKey() : realTimeMapping.getRealTime(beforeEntry.getKey());
-            float realTimeAfterTick = realTimeMapping == null ? afterAfterEntry.getKey() : realTimeMapping.getRealTime(afterAfterEntry.getKey());
-
-            KeyframeChange smoothChange = beforeEntry.getValue().createSmoothInterpolatedChange(lowerEntry.getValue(), ceilEntry.getValue(), afterAfterEntry.getValue(),
-                realTimeBeforeTick, realTimeLowerTick, realTimeCeilTick, realTimeAfterTick, amount);
-
-            if (leftInterpolation == SidedInterpolationType.SMOOTH) {
-                leftChange = smoothChange;
-            }
-            if (rightInterpolation == SidedInterpolationType.SMOOTH) {
-                rightChange = smoothChange;
+    /**
+     * Appends the tick & {@link Keyframe#version()} of up to {@code count} keyframes to a cache key, so that the key
+     * changes when any of them is added, removed, moved or modified, without affecting the keys of other keyframes
+     */
+    public static void appendKeyframeVersions(LongArrayList key, NavigableMap<Integer, Keyframe> keyframes, int count) {
+        for (Map.Entry<Integer, Keyframe> entry : keyframes.entrySet()) {
+            if (count-- <= 0) {
+                break;
             }
+            key.add(((long) entry.getKey() << 32) | (entry.getValue().version() & 0xFFFFFFFFL));
         }
-        if (leftInterpolation == SidedInterpolationType.HERMITE ||
-                rightInterpolation == SidedInterpolationType.HERMITE) {
-            Integer minKey = lowerEntry.getKey();
-
-            while (minKey != null) {
-                Map.Entry<Integer, Keyframe> before = keyframeTimes.floorEntry(minKey - 1);
-
-                if (before == null) {
-                    minKey = null;
-                    break;
-                } else if (before.getValue().interpolationType() == InterpolationType.HOLD) {
-                    // don't include the right-side of the hold keyframe, or anything before it
-                    break;
-                }
-
-                minKey = before.getKey();
-            }
-
-            Integer maxKey = ceilEntry.getKey();
-
-            while (maxKey != null) {
-                Map.Entry<Integer, Keyframe> after = keyframeTimes.ceilingEntry(maxKey + 1);
-
-                if (after == null) {
-                    maxKey = null;
-                    break;
-                } else if (after.getValue().interpolationType() == InterpolationType.HOLD) {
-                    // include the hold keyframe, but not anything after it
-                    maxKey = after.getKey();
-                    break;
-                }
-
-                maxKey = after.getKey();
-            }
-
-            Map<Integer, Keyframe> subMap;
-
-            if (minKey != null) {
-                if (maxKey != null) {
-                    subMap = Maps.subMap(this.keyframesByTick, Range.closed(minKey, maxKey));
-                } else {
-                    subMap = Maps.subMap(this.keyframesByTick, Range.atLeast(minKey));
-                }
-            } else if (maxKey != null) {
-                subMap = Maps.subMap(this.keyframesByTick, Range.atMost(maxKey));
-            } else {
-                subMap = this.keyframesByTick;
-            }
+    }
 
-            Map<Float, Keyframe> transformedMap = new HashMap<>();
-            for (Map.Entry<Integer, Keyframe> entry : subMap.entrySet()) {
-                float realtime = realTimeMapping == null ? entry.getKey() : realTimeMapping.getRealTime(entry.getKey());
-                transformedMap.put(realtime, entry.getValue());
-            }
+    public CompiledKeyframeTrack compile() {
+        return new CompiledKeyframeTrack(this);
+    }
 
-            KeyframeChange hermiteChange = lowerKeyframe.createHermiteInterpolatedChange(transformedMap, realTimeTick);
-            if (leftInterpolation == SidedInterpolationType.HERMITE) {
-                leftChange = hermiteChange;
-            }
-            if (rightInterpolation == SidedInterpolationType.HERMITE) {
-                rightChange = hermiteChange;
-            }
+    /**
+     * Sorted arrays of the keyframes, for scanning a range of ticks without going through the TreeMap for every
+     * keyframe. Cached until the editor state's modCount changes
+     */
+    public SortedKeyframes sortedKeyframes(int modCount) {
+        SortedKeyframes sortedKeyframes = this.sortedKeyframes;
+        if (sortedKeyframes == null || sortedKeyframes.modCount != modCount || sortedKeyframes.source != this.keyframesByTick ||
+                sortedKeyframes.size() != this.keyframesByTick.size()) {
+            sortedKeyframes = new SortedKeyframes(modCount, this.keyframesByTick);
+            this.sortedKeyframes = sortedKeyframes;
         }
-        if (leftChange == null || rightChange == null) {
-            double adjustedAmount = SidedInterpolationType.interpolate(leftInterpolation, rightInterpolation, amount);
-
-            KeyframeChange keyframeChange = lowerKeyframe.createChange();
-
-            if (adjustedAmount != 0.0) {
-                KeyframeChange keyframeChangeCeil = ceilEntry.getValue().createChange();
-                keyframeChange = KeyframeChange.interpolateSafe(keyframeChange, keyframeChangeCeil, (float) adjustedAmount);
-            }
+        return sortedKeyframes;
+    }
 
-            if (leftChange == null) {
-                leftChange = keyframeChange;
-            }
-            if (rightChange == null) {
-                rightChange = keyframeChange;
+    public static class SortedKeyframes {
+        private final int modCount;
+        private final TreeMap<Integer, Keyframe> source;
+        private final int[] ticks;
+        private final Keyframe[] keyframes;
+
+        private SortedKeyframes(int modCount, TreeMap<Integer, Keyframe> source) {
+            this.modCount = modCount;
+            this.source = source;
+            this.ticks = new int[source.size()];
+            this.keyframes = new Keyframe[source.size()];
+
+            int index = 0;
+            for (Map.Entry<Integer, Keyframe> entry : source.entrySet()) {
+                this.ticks[index] = entry.getKey();
+                this.keyframes[index] = entry.getValue();
+                index += 1;
             }
         }
 
-        return KeyframeChange.interpolateSafe(leftChange, rightChange, amount);
-    }
-
-    @Nullable
-    private KeyframeChangeTickrate tryApplyKeyframesTimelapse(float tick) {
-        // Skip if empty
-        TreeMap<Integer, Keyframe> keyframeTimes = this.keyframesByTick;
-        if (keyframeTimes.isEmpty()) {
-            return null;
+        public int size() {
+            return this.ticks.length;
         }
 
-        Map.Entry<Integer, Keyframe> lowerEntry = keyframeTimes.floorEntry((int) tick);
-        Map.Entry<Integer, Keyframe> ceilEntry = keyframeTimes.ceilingEntry(((int) tick) + 1);
-
-        if (ceilEntry == null && lowerEntry != null && lowerEntry.getKey() == (int) tick) {
-            ceilEntry = lowerEntry;
-            lowerEntry = keyframeTimes.floorEntry((int) tick - 1);
+        public int tick(int index) {
+            return this.ticks[index];
         }
 
-        if (lowerEntry != null && ceilEntry != null) {
-            int lowerTicks = ((TimelapseKeyframe) lowerEntry.getValue()).ticks;
-            int ceilTicks = ((TimelapseKeyframe) ceilEntry.getValue()).ticks;
-
-            if (ceilTicks <= lowerTicks) {
-                ReplayUI.setInfoOverlayShort("Unable to timelapse. Right keyframe's time must be greater than left keyframe's time");
-                return null;
-            } else {
-                double tickrate = (double) (ceilEntry.getKey() - lowerEntry.getKey()) / (ceilTicks - lowerTicks) * 20;
-                return new KeyframeChangeTickrate((float) tickrate);
-            }
+        public Keyframe keyframe(int index) {
+            return this.keyframes[index];
         }
 
-        return null;
+        /**
+         * @return the index of the first keyframe at or after {@code tick}, or {@link #size()} if there is none
+         */
+        public int ceilingIndex(int tick) {
+            int index = Arrays.binarySearch(this.ticks, tick);
+            return index >= 0 ? index : -index - 1;
+        }
     }
 
 }
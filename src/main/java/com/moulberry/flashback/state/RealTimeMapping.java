@@ -1,35 +1,55 @@
 package com.moulberry.flashback.state;
 
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 public class RealTimeMapping {
 
-    private final NavigableMap<Integer, SpeedChange> map = new TreeMap<>();
-
-    private record SpeedChange(float speedFactor, float realTimeUntilThisPoint) {}
+    // Speed changes stored as parallel arrays sorted by tick, so lookups are a binary search without boxing
+    private int[] ticks = new int[8];
+    private float[] speedFactors = new float[8];
+    private float[] realTimesUntilThisPoint = new float[8];
+    private int size = 0;
 
     public void addMapping(int tick, float speed) {
-        if (this.map.ceilingKey(tick) != null) {
+        if (this.size > 0 && this.ticks[this.size - 1] >= tick) {
             throw new IllegalStateException("Must call addMapping with tick that is greater than the last");
         }
         float realTimeUntilThisPoint = getRealTime(tick);
-        this.map.put(tick, new SpeedChange(speed, realTimeUntilThisPoint));
+
+        if (this.size == this.ticks.length) {
+            int newLength = this.size * 2;
+            this.ticks = Arrays.copyOf(this.ticks, newLength);
+            this.speedFactors = Arrays.copyOf(this.speedFactors, newLength);
+            this.realTimesUntilThisPoint = Arrays.copyOf(this.realTimesUntilThisPoint, newLength);
+        }
+
+        this.ticks[this.size] = tick;
+        this.speedFactors[this.size] = speed;
+        this.realTimesUntilThisPoint[this.size] = realTimeUntilThisPoint;
+        this.size += 1;
+    }
+
+    /**
+     * @return the number of speed changes, increases every time {@link #addMapping(int, float)} is called
+     */
+    public int size() {
+        return this.size;
     }
 
     public float getRealTime(float tick) {
-        if (tick <= 0 || this.map.isEmpty()) {
+        if (tick <= 0 || this.size == 0) {
             return tick;
         }
 
-        var entry = map.floorEntry((int) tick);
-        if (entry == null) {
-            return tick;
+        int index = Arrays.binarySearch(this.ticks, 0, this.size, (int) tick);
+        if (index < 0) {
+            index = -index - 2;
+            if (index < 0) {
+                return tick;
+            }
         }
 
-        SpeedChange change = entry.getValue();
-
-        return change.realTimeUntilThisPoint + (tick - entry.getKey()) / change.speedFactor;
+        return this.realTimesUntilThisPoint[index] + (tick - this.ticks[index]) / this.speedFactors[index];
     }
 
 }
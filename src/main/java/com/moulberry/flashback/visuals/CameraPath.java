@@ -10,12 +10,15 @@ import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.Tesselator;
 import com.mojang.blaze3d.vertex.VertexBuffer;
 import com.mojang.blaze3d.vertex.VertexFormat;
+import com.moulberry.flashback.Flashback;
 import com.moulberry.flashback.Utils;
 import com.moulberry.flashback.combo_options.Sizing;
 import com.moulberry.flashback.editor.ui.windows.TimelineWindow;
+import com.moulberry.flashback.keyframe.Keyframe;
 import com.moulberry.flashback.keyframe.KeyframeType;
 import com.moulberry.flashback.keyframe.change.*;
 import com.moulberry.flashback.keyframe.handler.KeyframeHandler;
+import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
 import com.moulberry.flashback.keyframe.types.CameraKeyframeType;
 import com.moulberry.flashback.keyframe.types.CameraOrbitKeyframeType;
 import com.moulberry.flashback.keyframe.types.FOVKeyframeType;
@@ -24,6 +27,10 @@ import com.moulberry.flashback.state.EditorScene;
 import com.moulberry.flashback.state.EditorState;
 import com.moulberry.flashback.state.EditorStateManager;
 import com.moulberry.flashback.state.KeyframeTrack;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.GameRenderer;
@@ -34,16 +41,25 @@ import org.joml.Quaternionf;
 import org.joml.Vector3d;
 import org.joml.Vector3f;
 
-import java.util.EnumSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class CameraPath {
 
+    // Maximum distance (in blocks) the sampled path may deviate from the straight line between two samples
+    private static final double SAMPLE_TOLERANCE = 0.02;
+    private static final int INITIAL_SUBDIVISIONS = 8;
+    private static final int MAX_SAMPLES_PER_SEGMENT = 2000;
+
     private static VertexBuffer cameraPathVertexBuffer = null;
-    private static CameraPathArgs lastCameraPathArgs = null;
+    private static MeshKey lastMeshKey = null;
     private static Vector3d basePosition = null;
-    private static int lastEditorStateModCount = 0;
-    private static int lastCursorTick = 0;
+
+    // Sampled positions for each segment between two camera keyframes, kept until a keyframe it depends on changes
+    private static Map<SegmentKey, double[]> segmentCache = new HashMap<>();
 
     public static void renderCameraPath(PoseStack poseStack, Camera camera, ReplayServer replayServer) {
         RenderSystem.assertOnRenderThread();
@@ -54,23 +70,34 @@ public class CameraPath {
 
         EditorState state = replayServer.getEditorState();
         int replayTick = TimelineWindow.getCursorTick();
+        boolean showEntirePath = state.replayVisuals.cameraPathShowEntirePath;
 
-        if (lastEditorStateModCount != state.modCount || lastCursorTick != replayTick) {
-            CameraPathArgs cameraPathArgs;
+        // Only rebuild when the scene changes or the cursor moves past one of the surrounding camera keyframes
+        MeshKey meshKey = lastMeshKey;
+        if (meshKey == null || meshKey.modCount != state.modCount || meshKey.showEntirePath != showEntirePath ||
+                replayTick < meshKey.lastCameraTick || (meshKey.nextCameraTick != -1 && replayTick >= meshKey.nextCameraTick)) {
+            int modCount = state.modCount;
+            List<PathSegment> segments;
+            int[] cameraTicks;
 
             long stamp = state.acquireRead();
             try {
-                cameraPathArgs = createCameraPathArgs(state.getCurrentScene(stamp), replayTick);
+                EditorScene scene = state.getCurrentScene(stamp);
+                cameraTicks = collectCameraTicks(scene);
+                segments = createSegments(scene, cameraTicks);
             } finally {
                 state.release(stamp);
             }
 
-            if (lastEditorStateModCount != state.modCount || !cameraPathArgs.equals(lastCameraPathArgs)) {
-                lastCameraPathArgs = cameraPathArgs;
+            int lastIndex = findFloorIndex(cameraTicks, replayTick);
+            int lastCameraTick = lastIndex >= 0 ? cameraTicks[lastIndex] : Integer.MIN_VALUE;
+            int nextCameraTick = lastIndex + 1 < cameraTicks.length ? cameraTicks[lastIndex + 1] : -1;
+            meshKey = new MeshKey(modCount, showEntirePath, lastCameraTick, nextCameraTick);
 
+            if (!meshKey.equals(lastMeshKey)) {
                 BufferBuilder bufferBuilder = Tesselator.getInstance().begin(VertexFormat.Mode.LINES, DefaultVertexFormat.POSITION_COLOR_NORMAL);
                 Vector3d basePosition = new Vector3d(camera.getPosition().x, camera.getPosition().y, camera.getPosition().z);
-                buildCameraPath(state, basePosition.mul(-1, new Vector3d()), cameraPathArgs, bufferBuilder);
+                buildCameraPath(state, basePosition.mul(-1, new Vector3d()), cameraTicks, lastIndex, segments, showEntirePath, bufferBuilder);
 
                 if (cameraPathVertexBuffer != null) {
                     cameraPathVertexBuffer.close();
@@ -87,8 +114,7 @@ public class CameraPath {
                 }
             }
 
-            lastEditorStateModCount = state.modCount;
-            lastCursorTick = replayTick;
+            lastMeshKey = meshKey;
         }
 
         if (cameraPathVertexBuffer == null) {
@@ -137,98 +163,139 @@ public class CameraPath {
         RenderSystem.enableCull();
     }
 
-    private record CameraPathArgs(int lastLastCameraTick, int lastCameraTick, int nextCameraTick, int nextNextCameraTick) {}
-
-    private static CameraPathArgs createCameraPathArgs(EditorScene scene, int replayTick) {
-        int lastCameraTick = -1;
-        int nextCameraTick = -1;
+    private record MeshKey(int modCount, boolean showEntirePath, int lastCameraTick, int nextCameraTick) {}
 
-        for (int trackIndex = 0; trackIndex < scene.keyframeTracks.size(); trackIndex++) {
-            KeyframeTrack keyframeTrack = scene.keyframeTracks.get(trackIndex);
-            if (keyframeTrack.enabled && isChangeCameraKeyframeType(keyframeTrack.keyframeType.keyframeChangeType()) && !keyframeTrack.keyframesByTick.isEmpty()) {
-                var lastEntry = keyframeTrack.keyframesByTick.floorEntry(replayTick);
-                var nextEntry = keyframeTrack.keyframesByTick.ceilingEntry(replayTick + 1);
+    private record SegmentKey(int fromTick, int toTick, LongArrayList dependencies) {}
 
-                if (lastEntry != null && (lastCameraTick == -1 || lastEntry.getKey() > lastCameraTick)) {
-                    lastCameraTick = lastEntry.getKey();
-                }
-                if (nextEntry != null && (nextCameraTick == -1 || nextEntry.getKey() < nextCameraTick)) {
-                    nextCameraTick = nextEntry.getKey();
-                }
+    private record PathSegment(int fromIndex, SegmentKey key) {}
 
-                if (lastEntry != null && nextEntry != null) {
-                    break;
+    private static int[] collectCameraTicks(EditorScene scene) {
+        IntSortedSet ticks = new IntRBTreeSet();
+        for (KeyframeTrack keyframeTrack : scene.keyframeTracks) {
+            if (keyframeTrack.enabled && isChangeCameraKeyframeType(keyframeTrack.keyframeType.keyframeChangeType())) {
+                for (int tick : keyframeTrack.keyframesByTick.keySet()) {
+                    ticks.add(tick);
                 }
             }
         }
+        return ticks.toIntArray();
+    }
 
-        int lastLastCameraTick = -1;
-        int nextNextCameraTick = -1;
+    private static int findFloorIndex(int[] ticks, int tick) {
+        int index = Arrays.binarySearch(ticks, tick);
+        return index >= 0 ? index : -index - 2;
+    }
 
-        for (int trackIndex = 0; trackIndex < scene.keyframeTracks.size(); trackIndex++) {
-            KeyframeTrack keyframeTrack = scene.keyframeTracks.get(trackIndex);
-            if (keyframeTrack.enabled && isChangeCameraKeyframeType(keyframeTrack.keyframeType.keyframeChangeType()) && !keyframeTrack.keyframesByTick.isEmpty()) {
-                var lastLastEntry = lastCameraTick == -1 ? null : keyframeTrack.keyframesByTick.floorEntry(lastCameraTick - 1);
-                var nextNextEntry = nextCameraTick == -1 ? null : keyframeTrack.keyframesByTick.ceilingEntry(nextCameraTick + 1);
+    /**
+     * Creates the segments between consecutive camera keyframes, along with the keyframes that can influence the shape
+     * of each segment. Segments whose dependencies haven't changed can reuse their previously sampled positions.
+     */
+    private static List<PathSegment> createSegments(EditorScene scene, int[] cameraTicks) {
+        LongArrayList globalDependencies = new LongArrayList();
+        List<KeyframeTrack> cameraTracks = new ArrayList<>();
+
+        for (KeyframeTrack keyframeTrack : scene.keyframeTracks) {
+            if (!keyframeTrack.enabled) {
+                continue;
+            }
+
+            Class<? extends KeyframeChange> keyframeChangeType = keyframeTrack.keyframeType.keyframeChangeType();
+            if (isChangeCameraKeyframeType(keyframeChangeType)) {
+                cameraTracks.add(keyframeTrack);
+            } else if (keyframeChangeType != null && KeyframeChangeTickrate.class.isAssignableFrom(keyframeChangeType) &&
+                    Flashback.getConfig().useRealtimeInterpolation) {
+                // Speed changes affect the camera path when realtime interpolation is enabled
+                globalDependencies.add(trackDependency(keyframeTrack));
+            }
+        }
 
-                if (lastLastEntry != null && lastLastCameraTick == -1) {
-                    lastLastCameraTick = lastLastEntry.getKey();
+        // Hermite interpolation depends on every keyframe in the run, so the whole track is a single dependency
+        boolean[] hermite = new boolean[cameraTracks.size()];
+        for (int trackIndex = 0; trackIndex < cameraTracks.size(); trackIndex++) {
+            for (Keyframe keyframe : cameraTracks.get(trackIndex).keyframesByTick.values()) {
+                if (keyframe.interpolationType() == InterpolationType.HERMITE) {
+                    hermite[trackIndex] = true;
+                    break;
                 }
-                if (nextNextEntry != null && nextNextCameraTick == -1) {
-                    nextNextCameraTick = nextNextEntry.getKey();
+            }
+        }
+
+        List<PathSegment> segments = new ArrayList<>();
+        for (int i = 0; i + 1 < cameraTicks.length; i++) {
+            int fromTick = cameraTicks[i];
+            int toTick = cameraTicks[i + 1];
+
+            LongArrayList dependencies = new LongArrayList(globalDependencies);
+            for (int trackIndex = 0; trackIndex < cameraTracks.size(); trackIndex++) {
+                KeyframeTrack keyframeTrack = cameraTracks.get(trackIndex);
+                if (hermite[trackIndex]) {
+                    dependencies.add(trackDependency(keyframeTrack));
+                } else {
+                    // Smooth interpolation depends on up to two keyframes on either side
+                    dependencies.add(-1L);
+                    KeyframeTrack.appendKeyframeVersions(dependencies, keyframeTrack.keyframesByTick.headMap(fromTick, true).descendingMap(), 3);
+                    KeyframeTrack.appendKeyframeVersions(dependencies, keyframeTrack.keyframesByTick.subMap(fromTick, false, toTick, false), Integer.MAX_VALUE);
+                    KeyframeTrack.appendKeyframeVersions(dependencies, keyframeTrack.keyframesByTick.tailMap(toTick, true), 3);
                 }
             }
+
+            segments.add(new PathSegment(i, new SegmentKey(fromTick, toTick, dependencies)));
         }
+        return segments;
+    }
 
-        return new CameraPathArgs(lastLastCameraTick, lastCameraTick, nextCameraTick, nextNextCameraTick);
+    private static long trackDependency(KeyframeTrack keyframeTrack) {
+        // Negative, so it can't be mistaken for a keyframe's tick & version
+        return ((long) Integer.MIN_VALUE << 32) | (keyframeTrack.version() & 0xFFFFFFFFL);
     }
 
-    private static void buildCameraPath(EditorState state, Vector3d offset, CameraPathArgs args, BufferBuilder bufferBuilder) {
+    private static void buildCameraPath(EditorState state, Vector3d offset, int[] cameraTicks, int lastIndex,
+            List<PathSegment> segments, boolean showEntirePath, BufferBuilder bufferBuilder) {
         var handler = new CapturingKeyframeHandler();
         var fovHandler = new FovCapturingKeyframeHandler();
         float defaultFov = Minecraft.getInstance().options.fov().get();
 
-        if (args.lastCameraTick != -1) {
-            fovHandler.fov = defaultFov;
-            state.applyKeyframes(handler, args.lastCameraTick);
-            state.applyKeyframes(fovHandler, args.lastCameraTick);
+        // Only show the keyframes surrounding the cursor, unless the entire path should be shown
+        int firstShown = showEntirePath ? 0 : Math.max(0, lastIndex - 1);
+        int lastShown = showEntirePath ? cameraTicks.length - 1 : Math.min(cameraTicks.length - 1, lastIndex + 2);
 
-            renderCamera(bufferBuilder, handler.position.add(offset, new Vector3d()), handler.angle, fovHandler.fov,
-                getCameraColour(false, false), 1.0f);
-
-            if (args.lastLastCameraTick != -1) {
-                fovHandler.fov = defaultFov;
-                state.applyKeyframes(handler, args.lastLastCameraTick);
-                state.applyKeyframes(fovHandler, args.lastLastCameraTick);
+        for (int i = firstShown; i <= lastShown; i++) {
+            fovHandler.fov = defaultFov;
+            state.applyKeyframes(handler, cameraTicks[i]);
+            state.applyKeyframes(fovHandler, cameraTicks[i]);
 
-                renderCamera(bufferBuilder, handler.position.add(offset, new Vector3d()), handler.angle, fovHandler.fov,
-                    getCameraColour(false, false), 0.6f);
-                renderPath(bufferBuilder, args.lastLastCameraTick, args.lastCameraTick, state, offset, handler, 0.6f);
+            if (handler.position == null) {
+                continue;
             }
+
+            float opacity = i == lastIndex || i == lastIndex + 1 ? 1.0f : 0.6f;
+            renderCamera(bufferBuilder, handler.position.add(offset, new Vector3d()), handler.angle, fovHandler.fov,
+                getCameraColour(false, false), opacity);
         }
 
-        if (args.nextCameraTick != -1) {
-            fovHandler.fov = defaultFov;
-            state.applyKeyframes(handler, args.nextCameraTick);
-            state.applyKeyframes(fovHandler, args.nextCameraTick);
+        Map<SegmentKey, double[]> newSegmentCache = new HashMap<>();
 
-            renderCamera(bufferBuilder, handler.position.add(offset, new Vector3d()), handler.angle, fovHandler.fov,
-                getCameraColour(false, false), 1.0f);
+        for (PathSegment segment : segments) {
+            double[] positions = segmentCache.get(segment.key);
 
-            if (args.nextNextCameraTick != -1) {
-                fovHandler.fov = defaultFov;
-                state.applyKeyframes(handler, args.nextNextCameraTick);
-                state.applyKeyframes(fovHandler, args.nextNextCameraTick);
+            if (segment.fromIndex < firstShown || segment.fromIndex >= lastShown) {
+                // Keep hidden segments that are still valid, so moving the cursor doesn't need to resample them
+                if (positions != null) {
+                    newSegmentCache.put(segment.key, positions);
+                }
+                continue;
+            }
 
-                renderCamera(bufferBuilder, handler.position.add(offset, new Vector3d()), handler.angle, fovHandler.fov,
-                    getCameraColour(false, false), 0.6f);
-                renderPath(bufferBuilder, args.nextCameraTick, args.nextNextCameraTick, state, offset, handler, 0.6f);
+            if (positions == null) {
+                positions = samplePath(state, handler, segment.key.fromTick, segment.key.toTick);
             }
-        }
+            newSegmentCache.put(segment.key, positions);
 
-        if (args.lastCameraTick != -1 && args.nextCameraTick != -1) {
-            renderPath(bufferBuilder, args.lastCameraTick, args.nextCameraTick, state, offset, handler, 1.0f);
+            float opacity = segment.fromIndex == lastIndex ? 1.0f : 0.6f;
+            renderPath(bufferBuilder, positions, offset, opacity);
         }
+
+        segmentCache = newSegmentCache;
     }
 
     private static int getCameraColour(boolean selected, boolean current) {
@@ -241,32 +308,96 @@ public class CameraPath {
         }
     }
 
-    private static void renderPath(BufferBuilder bufferBuilder, int fromTick, int toTick,
-            EditorState editorState, Vector3d offset, CapturingKeyframeHandler handler, float opacity) {
-        Vector3d lastPosition = null;
+    /**
+     * Samples the camera position between two keyframes, subdividing adaptively so that straight sections only need a
+     * few vertices while tight curves get more
+     */
+    private static double[] samplePath(EditorState editorState, CapturingKeyframeHandler handler, int fromTick, int toTick) {
+        DoubleArrayList positions = new DoubleArrayList();
+        int minStep = (toTick - fromTick) / MAX_SAMPLES_PER_SEGMENT + 1;
+
+        editorState.applyKeyframes(handler, fromTick);
+        if (handler.position == null) {
+            return new double[0];
+        }
+        positions.add(handler.position.x);
+        positions.add(handler.position.y);
+        positions.add(handler.position.z);
+
+        int subdivisions = Math.max(1, Math.min(INITIAL_SUBDIVISIONS, (toTick - fromTick) / minStep));
+        int lastTick = fromTick;
+        for (int i = 1; i <= subdivisions; i++) {
+            int tick = i == subdivisions ? toTick : fromTick + (int) ((long) (toTick - fromTick) * i / subdivisions);
+            editorState.applyKeyframes(handler, tick);
+            Vector3d position = handler.position;
+
+            int lastOffset = positions.size() - 3;
+            subdivide(editorState, handler, positions, lastTick, positions.getDouble(lastOffset), positions.getDouble(lastOffset + 1),
+                positions.getDouble(lastOffset + 2), tick, position.x, position.y, position.z, minStep);
+            lastTick = tick;
+        }
 
-        int step = (toTick - fromTick) / 2000 + 1;
+        return positions.toDoubleArray();
+    }
 
-        for (int tick = fromTick; tick <= toTick; tick += step) {
-            editorState.applyKeyframes(handler, tick);
-            Vector3d position = handler.position.add(offset, new Vector3d());
-
-            if (lastPosition != null) {
-                double dx = position.x - lastPosition.x;
-                double dy = position.y - lastPosition.y;
-                double dz = position.z - lastPosition.z;
-                float distanceInv = 1f / (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
-                dx *= distanceInv;
-                dy *= distanceInv;
-                dz *= distanceInv;
-
-                bufferBuilder.addVertex((float) lastPosition.x, (float) lastPosition.y, (float) lastPosition.z).setColor(1.0f, 1.0f, 0.1f, 0.0f)
-                             .setNormal((float) dx, (float) dy, (float) dz);
-                bufferBuilder.addVertex((float) position.x, (float) position.y, (float) position.z).setColor(1.0f, 1.0f, 0.1f, opacity)
-                             .setNormal((float) dx, (float) dy, (float) dz);
+    private static void subdivide(EditorState editorState, CapturingKeyframeHandler handler, DoubleArrayList positions,
+            int fromTick, double fromX, double fromY, double fromZ, int toTick, double toX, double toY, double toZ, int minStep) {
+        if (toTick - fromTick > minStep) {
+            int midTick = fromTick + (toTick - fromTick) / 2;
+            editorState.applyKeyframes(handler, midTick);
+            Vector3d mid = handler.position;
+            double midX = mid.x;
+            double midY = mid.y;
+            double midZ = mid.z;
+
+            if (distanceToLineSqr(midX, midY, midZ, fromX, fromY, fromZ, toX, toY, toZ) > SAMPLE_TOLERANCE * SAMPLE_TOLERANCE) {
+                subdivide(editorState, handler, positions, fromTick, fromX, fromY, fromZ, midTick, midX, midY, midZ, minStep);
+                subdivide(editorState, handler, positions, midTick, midX, midY, midZ, toTick, toX, toY, toZ, minStep);
+                return;
             }
+        }
+
+        positions.add(toX);
+        positions.add(toY);
+        positions.add(toZ);
+    }
+
+    private static double distanceToLineSqr(double x, double y, double z, double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        double lengthSqr = dx*dx + dy*dy + dz*dz;
+
+        double t = 0.0;
+        if (lengthSqr > 0.0) {
+            t = Math.max(0.0, Math.min(1.0, ((x - x1)*dx + (y - y1)*dy + (z - z1)*dz) / lengthSqr));
+        }
+
+        double px = x1 + dx*t - x;
+        double py = y1 + dy*t - y;
+        double pz = z1 + dz*t - z;
+        return px*px + py*py + pz*pz;
+    }
 
-            lastPosition = position;
+    private static void renderPath(BufferBuilder bufferBuilder, double[] positions, Vector3d offset, float opacity) {
+        for (int i = 3; i + 2 < positions.length; i += 3) {
+            float lastX = (float) (positions[i - 3] + offset.x);
+            float lastY = (float) (positions[i - 2] + offset.y);
+            float lastZ = (float) (positions[i - 1] + offset.z);
+            float x = (float) (positions[i] + offset.x);
+            float y = (float) (positions[i + 1] + offset.y);
+            float z = (float) (positions[i + 2] + offset.z);
+
+            float dx = x - lastX;
+            float dy = y - lastY;
+            float dz = z - lastZ;
+            float distanceInv = 1f / (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+            dx *= distanceInv;
+            dy *= distanceInv;
+            dz *= distanceInv;
+
+            bufferBuilder.addVertex(lastX, lastY, lastZ).setColor(1.0f, 1.0f, 0.1f, 0.0f).setNormal(dx, dy, dz);
+            bufferBuilder.addVertex(x, y, z).setColor(1.0f, 1.0f, 0.1f, opacity).setNormal(dx, dy, dz);
         }
     }
 
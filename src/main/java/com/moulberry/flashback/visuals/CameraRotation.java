@@ -9,12 +9,6 @@ import org.joml.Quaternionf;
 
 public class CameraRotation {
 
-    private static final FastNoiseLite fastNoiseLite = new FastNoiseLite();
-
-    private static float shakeTimeY = 0.0f;
-    private static float shakeTimeX = 0.0f;
-    private static float lastShakeReplayTick = 0.0f;
-
     public static Quaternionf modifyViewQuaternion(Quaternionf quaternionf) {
         EditorState editorState = EditorStateManager.getCurrent();
         if (editorState == null) {
@@ -34,40 +28,15 @@ public class CameraRotation {
 
         ReplayServer replayServer = Flashback.getReplayServer();
         if (replayServer != null && visuals.overrideCameraShake && (Flashback.isExporting() || !replayServer.replayPaused)) {
-            float tick = Flashback.isExporting() ? (float) Flashback.EXPORT_JOB.getCurrentTickDouble() : replayServer.getPartialReplayTick();
-            float speedFactor = 20.0f / replayServer.getDesiredTickRate(false);
-
-            if (tick < lastShakeReplayTick) {
-                lastShakeReplayTick = tick;
-                shakeTimeY = 0.0f;
-                shakeTimeX = 0.0f;
-            } else if (tick > lastShakeReplayTick) {
-                float yFrequency = visuals.cameraShakeYFrequency;
-                float xFrequency = visuals.cameraShakeXFrequency;
-
-                shakeTimeY += (tick - lastShakeReplayTick) * speedFactor * yFrequency * 2.0f;
-                shakeTimeX += (tick - lastShakeReplayTick) * speedFactor * xFrequency * 2.0f;
-                lastShakeReplayTick = tick;
-            }
-
-            float yAmplitude = visuals.cameraShakeYAmplitude;
-            float xAmplitude = visuals.cameraShakeXAmplitude;
-
-
-
-            float noiseForYaw = fastNoiseLite.GetNoise(shakeTimeX, -10000);
-            float noiseForPitch = fastNoiseLite.GetNoise(-10000, shakeTimeY);
+            float tick = Flashback.isExporting() ? getExportTick() : replayServer.getPartialReplayTick();
+            CameraShakeTable.Shake shake = CameraShakeTable.sample(editorState, tick, replayServer.getTotalReplayTicks());
 
             // Yaw rotation (Y-axis) uses xAmplitude:
-            Flashback.getReplayServer().ShakeY = noiseForYaw * xAmplitude;
+            Flashback.getReplayServer().ShakeY = shake.yaw();
             // Pitch rotation (X-axis) uses yAmplitude:
-            Flashback.getReplayServer().ShakeX = noiseForPitch * yAmplitude;
-
-            float yRot = noiseForYaw * 2*(float)Math.PI;
-            float xRot = noiseForPitch * 2*(float)Math.PI;
+            Flashback.getReplayServer().ShakeX = shake.pitch();
 
-
-            quaternionf = quaternionf.rotateYXZ(yRot * xAmplitude/360, xRot * yAmplitude/360, 0);
+            quaternionf = quaternionf.rotateYXZ((float) Math.toRadians(shake.yaw()), (float) Math.toRadians(shake.pitch()), 0);
         }else {
             // Reset shake if not active
             Flashback.getReplayServer().ShakeX = 0.0f;
@@ -76,4 +45,8 @@ public class CameraRotation {
         return quaternionf;
     }
 
+    public static float getExportTick() {
+        return (float) (Flashback.EXPORT_JOB.getSettings().startTick() + Flashback.EXPORT_JOB.getCurrentTickDouble());
+    }
+
 }
@@ -0,0 +1,320 @@
+package com.moulberry.flashback.visuals;
+
+import com.moulberry.flashback.Flashback;
+import com.moulberry.flashback.keyframe.Keyframe;
+import com.moulberry.flashback.keyframe.KeyframeType;
+import com.moulberry.flashback.keyframe.change.KeyframeChange;
+import com.moulberry.flashback.keyframe.change.KeyframeChangeCameraShake;
+import com.moulberry.flashback.keyframe.change.KeyframeChangeTickrate;
+import com.moulberry.flashback.keyframe.handler.CameraShakeKeyframeCapture;
+import com.moulberry.flashback.keyframe.interpolation.InterpolationType;
+import com.moulberry.flashback.state.EditorScene;
+import com.moulberry.flashback.state.EditorState;
+import com.moulberry.flashback.state.KeyframeTrack;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precomputed camera shake, so the shake at a tick only depends on the tick and not on which frames were rendered
+ * before it. This keeps the viewport, every export of the same editor state and the exported camera json in agreement.
+ * <p>
+ * The noise along each axis is baked once into a table which is sampled linearly. The noise position (phase) is the
+ * shake frequency integrated over the real time elapsed, which is baked per tick from the camera shake and tickrate
+ * keyframes. Since the phase at a tick only depends on earlier ticks, it's baked lazily up to the sampled tick and
+ * modifying a keyframe only discards the ticks from the first one it can affect. Without any of those keyframes nothing
+ * needs to be baked.
+ */
+public class CameraShakeTable {
+
+    private static final float NOISE_STEP = 0.5f;
+    private static final int NOISE_SIZE = 1 << 18;
+    // The end of the table is blended into the start so that wrapping around doesn't cause a jump
+    private static final int NOISE_BLEND = 1 << 12;
+
+    private static float[] noiseYaw = null;
+    private static float[] noisePitch = null;
+
+    private static CameraShakeTable cached = null;
+
+    private final EditorState editorState;
+    private final int sceneIndex;
+    private final int totalTicks;
+    // The modCount at which the tracks were last collected
+    private int modCount;
+    private boolean realtimeInterpolation;
+    private List<TrackKeyframes> tracks;
+
+    // Phase contributed by camera shake keyframes, up to the start of each tick. Null without camera shake keyframes
+    private double[] keyframedPhaseX = null;
+    private double[] keyframedPhaseY = null;
+    // Real time (in ticks) without a camera shake keyframe, up to the start of each tick. The frequency from the visuals
+    // window is used there, so it can be changed without rebaking. Null without camera shake or tickrate keyframes,
+    // in which case it's equal to the tick
+    private double[] unkeyframedTime = null;
+    // Entries up to and including this index are baked
+    private int bakedUntil = 0;
+    private final CameraShakeKeyframeCapture capture = new CameraShakeKeyframeCapture();
+
+    public record Shake(float yaw, float pitch) {}
+
+    /**
+     * The keyframes of an enabled camera shake or tickrate track, see {@link KeyframeTrack#appendKeyframeVersions}
+     */
+    private record TrackKeyframes(KeyframeType<?> type, int version, boolean cameraShake, boolean hermite, LongArrayList keyframes) {
+        private int tick(int index) {
+            return (int) (this.keyframes.getLong(index) >> 32);
+        }
+
+        /**
+         * @return the first tick whose value can depend on the keyframe at {@code index}
+         */
+        private int firstAffectedTick(int index) {
+            // Hermite interpolation depends on every keyframe in the run, smooth on up to two keyframes on either side
+            if (this.hermite || index < 2) {
+                return 0;
+            }
+            return this.tick(Math.min(index, this.keyframes.size()) - 2);
+        }
+    }
+
+    private CameraShakeTable(EditorState editorState, int totalTicks) {
+        this.editorState = editorState;
+        this.sceneIndex = editorState.getSceneIndex();
+        this.totalTicks = totalTicks;
+        this.modCount = editorState.modCount;
+        this.realtimeInterpolation = Flashback.getConfig().useRealtimeInterpolation;
+        this.tracks = collectTracks(editorState, List.of());
+        this.allocate();
+    }
+
+    public static Shake sample(EditorState editorState, float tick, int totalTicks) {
+        CameraShakeTable table = cached;
+        if (table == null || table.editorState != editorState || table.sceneIndex != editorState.getSceneIndex() ||
+                table.totalTicks != totalTicks) {
+            table = new CameraShakeTable(editorState, totalTicks);
+            cached = table;
+        } else if (table.modCount != editorState.modCount) {
+            table.update();
+        }
+        return table.sample(editorState.replayVisuals, tick);
+    }
+
+    /**
+     * Collects the tracks again after a modification, discarding the baked ticks from the first one that changed
+     */
+    private void update() {
+        this.modCount = this.editorState.modCount;
+        List<TrackKeyframes> oldTracks = this.tracks;
+        List<TrackKeyframes> newTracks = collectTracks(this.editorState, oldTracks);
+        boolean realtimeInterpolation = Flashback.getConfig().useRealtimeInterpolation;
+        this.tracks = newTracks;
+
+        if (oldTracks.size() != newTracks.size() || this.realtimeInterpolation != realtimeInterpolation) {
+            this.realtimeInterpolation = realtimeInterpolation;
+            this.allocate();
+            return;
+        }
+
+        int firstAffectedTick = Integer.MAX_VALUE;
+        int firstTickrateChange = Integer.MAX_VALUE;
+        for (int i = 0; i < newTracks.size(); i++) {
+            TrackKeyframes oldTrack = oldTracks.get(i);
+            TrackKeyframes newTrack = newTracks.get(i);
+            if (oldTrack == newTrack) {
+                continue;
+            }
+            if (oldTrack.type != newTrack.type || oldTrack.hermite != newTrack.hermite) {
+                this.allocate();
+                return;
+            }
+
+            int index = 0;
+            int size = Math.min(oldTrack.keyframes.size(), newTrack.keyframes.size());
+            while (index < size && oldTrack.keyframes.getLong(index) == newTrack.keyframes.getLong(index)) {
+                index += 1;
+            }
+            if (index == oldTrack.keyframes.size() && index == newTrack.keyframes.size()) {
+                continue;
+            }
+
+            int affectedTick = Math.min(oldTrack.firstAffectedTick(index), newTrack.firstAffectedTick(index));
+            firstAffectedTick = Math.min(firstAffectedTick, affectedTick);
+            if (!newTrack.cameraShake) {
+                firstTickrateChange = Math.min(firstTickrateChange, affectedTick);
+            }
+        }
+
+        // With realtime interpolation, a speed change moves every camera shake keyframe after it in time
+        if (this.realtimeInterpolation && firstTickrateChange != Integer.MAX_VALUE) {
+            for (TrackKeyframes track : newTracks) {
+                if (track.cameraShake) {
+                    int index = 0;
+                    while (index < track.keyframes.size() && track.tick(index) <= firstTickrateChange) {
+                        index += 1;
+                    }
+                    firstAffectedTick = Math.min(firstAffectedTick, track.firstAffectedTick(index));
+                }
+            }
+        }
+
+        this.bakedUntil = Math.min(this.bakedUntil, Math.max(0, firstAffectedTick));
+    }
+
+    private static List<TrackKeyframes> collectTracks(EditorState editorState, List<TrackKeyframes> previous) {
+        List<TrackKeyframes> tracks = new ArrayList<>();
+
+        long stamp = editorState.acquireRead();
+        try {
+            EditorScene scene = editorState.getCurrentScene(stamp);
+            for (KeyframeTrack keyframeTrack : scene.keyframeTracks) {
+                if (!keyframeTrack.enabled || keyframeTrack.keyframesByTick.isEmpty()) {
+                    continue;
+                }
+
+                Class<? extends KeyframeChange> keyframeChangeType = keyframeTrack.keyframeType.keyframeChangeType();
+                boolean cameraShake;
+                if (keyframeChangeType == null) {
+                    continue;
+                } else if (KeyframeChangeCameraShake.class.isAssignableFrom(keyframeChangeType)) {
+                    cameraShake = true;
+                } else if (KeyframeChangeTickrate.class.isAssignableFrom(keyframeChangeType)) {
+                    cameraShake = false;
+                } else {
+                    continue;
+                }
+
+                // Reuse the keyframes if the track wasn't modified
+                int index = tracks.size();
+                if (index < previous.size() && previous.get(index).version == keyframeTrack.version() &&
+                        previous.get(index).type == keyframeTrack.keyframeType) {
+                    tracks.add(previous.get(index));
+                    continue;
+                }
+
+                boolean hermite = false;
+                for (Keyframe keyframe : keyframeTrack.keyframesByTick.values()) {
+                    if (keyframe.interpolationType() == InterpolationType.HERMITE) {
+                        hermite = true;
+                        break;
+                    }
+                }
+
+                LongArrayList keyframes = new LongArrayList(keyframeTrack.keyframesByTick.size());
+                KeyframeTrack.appendKeyframeVersions(keyframes, keyframeTrack.keyframesByTick, Integer.MAX_VALUE);
+                tracks.add(new TrackKeyframes(keyframeTrack.keyframeType, keyframeTrack.version(), cameraShake, hermite, keyframes));
+            }
+        } finally {
+            editorState.release(stamp);
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Allocates the tables needed by the current tracks, discarding everything that was baked
+     */
+    private void allocate() {
+        boolean hasCameraShake = false;
+        for (TrackKeyframes track : this.tracks) {
+            hasCameraShake |= track.cameraShake;
+        }
+
+        this.bakedUntil = 0;
+        this.keyframedPhaseX = hasCameraShake ? new double[this.totalTicks + 2] : null;
+        this.keyframedPhaseY = hasCameraShake ? new double[this.totalTicks + 2] : null;
+        this.unkeyframedTime = this.tracks.isEmpty() ? null : new double[this.totalTicks + 2];
+    }
+
+    private void bakeUntil(int index) {
+        if (this.unkeyframedTime == null) {
+            return;
+        }
+
+        for (int tick = this.bakedUntil; tick < index; tick++) {
+            this.capture.reset();
+            this.editorState.applyKeyframes(this.capture, tick);
+
+            double realTime = this.capture.tickrate <= 0 ? 0.0 : 20.0 / this.capture.tickrate;
+
+            this.unkeyframedTime[tick + 1] = this.unkeyframedTime[tick];
+            if (this.keyframedPhaseX != null) {
+                this.keyframedPhaseX[tick + 1] = this.keyframedPhaseX[tick];
+                this.keyframedPhaseY[tick + 1] = this.keyframedPhaseY[tick];
+            }
+
+            if (this.capture.hasCameraShake) {
+                this.keyframedPhaseX[tick + 1] += realTime * this.capture.frequencyX * 2.0;
+                this.keyframedPhaseY[tick + 1] += realTime * this.capture.frequencyY * 2.0;
+            } else {
+                this.unkeyframedTime[tick + 1] += realTime;
+            }
+        }
+        this.bakedUntil = Math.max(this.bakedUntil, index);
+    }
+
+    private Shake sample(ReplayVisuals visuals, float tick) {
+        tick = Math.max(0, Math.min(this.totalTicks + 1, tick));
+        int index = Math.min(this.totalTicks, (int) tick);
+        double amount = tick - index;
+        this.bakeUntil(index + 1);
+
+        double unkeyframedTime = this.unkeyframedTime == null ? tick : lerp(this.unkeyframedTime, index, amount);
+        double phaseX = unkeyframedTime * visuals.cameraShakeXFrequency * 2.0;
+        double phaseY = unkeyframedTime * visuals.cameraShakeYFrequency * 2.0;
+        if (this.keyframedPhaseX != null) {
+            phaseX += lerp(this.keyframedPhaseX, index, amount);
+            phaseY += lerp(this.keyframedPhaseY, index, amount);
+        }
+
+        ensureNoiseBaked();
+        float noiseForYaw = sampleNoise(noiseYaw, phaseX);
+        float noiseForPitch = sampleNoise(noisePitch, phaseY);
+
+        // Yaw uses the x amplitude and pitch uses the y amplitude
+        return new Shake(noiseForYaw * visuals.cameraShakeXAmplitude, noiseForPitch * visuals.cameraShakeYAmplitude);
+    }
+
+    private static double lerp(double[] values, int index, double amount) {
+        return values[index] + (values[index + 1] - values[index]) * amount;
+    }
+
+    private static float sampleNoise(float[] noise, double phase) {
+        double position = phase / NOISE_STEP;
+        double floor = Math.floor(position);
+        int index = Math.floorMod((long) floor, NOISE_SIZE);
+        float amount = (float) (position - floor);
+        float from = noise[index];
+        float to = noise[(index + 1) % NOISE_SIZE];
+        return from + (to - from) * amount;
+    }
+
+    private static void ensureNoiseBaked() {
+        if (noiseYaw != null) {
+            return;
+        }
+
+        FastNoiseLite fastNoiseLite = new FastNoiseLite();
+        float[] yaw = new float[NOISE_SIZE];
+        float[] pitch = new float[NOISE_SIZE];
+
+        for (int i = 0; i < NOISE_SIZE; i++) {
+            float position = i * NOISE_STEP;
+            yaw[i] = fastNoiseLite.GetNoise(position, -10000);
+            pitch[i] = fastNoiseLite.GetNoise(-10000, position);
+
+            int blendIndex = i - (NOISE_SIZE - NOISE_BLEND);
+            if (blendIndex >= 0) {
+                float wrapped = (i - NOISE_SIZE) * NOISE_STEP;
+                float amount = (float) blendIndex / NOISE_BLEND;
+                yaw[i] += (fastNoiseLite.GetNoise(wrapped, -10000) - yaw[i]) * amount;
+                pitch[i] += (fastNoiseLite.GetNoise(-10000, wrapped) - pitch[i]) * amount;
+            }
+        }
+
+        noisePitch = pitch;
+        noiseYaw = yaw;
+    }
+
+}
@@ -52,6 +52,7 @@ public class ReplayVisuals {
     public boolean ruleOfThirdsGuide = false;
     public boolean centerGuide = false;
     public boolean cameraPath = true;
+    public boolean cameraPathShowEntirePath = false;
     public Sizing sizing = Sizing.KEEP_ASPECT_RATIO;
     public AspectRatio changeAspectRatio = AspectRatio.ASPECT_16_9;
 